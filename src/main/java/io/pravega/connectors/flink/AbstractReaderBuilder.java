@@ -9,8 +9,10 @@
  */
 package io.pravega.connectors.flink;
 
+import io.pravega.client.BatchClientFactory;
 import io.pravega.client.stream.Stream;
 import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
 import io.pravega.connectors.flink.util.StreamWithBoundaries;
 import lombok.Data;
 import org.apache.flink.util.Preconditions;
@@ -18,7 +20,6 @@ import org.apache.flink.util.Preconditions;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * A base builder for connectors that consume a Pravega stream.
@@ -35,8 +36,11 @@ public abstract class AbstractReaderBuilder<B extends AbstractReaderBuilder> imp
 
     private boolean enableMetrics = true;
 
+    private final List<PayloadCodec> compressionCodecs;
+
     protected AbstractReaderBuilder() {
         this.streams = new ArrayList<>(1);
+        this.compressionCodecs = new ArrayList<>(1);
         this.pravegaConfig = PravegaConfig.fromDefaults();
     }
 
@@ -120,6 +124,40 @@ public abstract class AbstractReaderBuilder<B extends AbstractReaderBuilder> imp
         return forStream(stream, StreamCut.UNBOUNDED);
     }
 
+    /**
+     * Add a stream to be read by the source, between the given timestamps.
+     *
+     * The timestamps are resolved to stream cuts through the time index of the stream, which is maintained by a
+     * {@link FlinkPravegaWriter} with the time index enabled, at the granularity of its checkpoints: the source
+     * reads from the latest indexed watermark at or before the start timestamp, up to the earliest indexed
+     * watermark after the end timestamp. Events outside of the timestamps may thus be read.
+     *
+     * @param streamSpec the unqualified or qualified name of the stream.
+     * @param startTime the start timestamp, or {@code Long.MIN_VALUE} to read from the earliest available position.
+     * @param endTime the end timestamp, or {@code Long.MAX_VALUE} to leave the stream unbounded.
+     * @return A builder to configure and create a reader.
+     */
+    public B forStream(final String streamSpec, final long startTime, final long endTime) {
+        streams.add(StreamSpec.of(streamSpec, startTime, endTime));
+        return builder();
+    }
+
+    /**
+     * Add a stream to be read by the source, between the given timestamps.
+     *
+     * The timestamps are resolved to stream cuts through the time index of the stream, as described in
+     * {@link #forStream(String, long, long)}.
+     *
+     * @param stream Stream.
+     * @param startTime the start timestamp, or {@code Long.MIN_VALUE} to read from the earliest available position.
+     * @param endTime the end timestamp, or {@code Long.MAX_VALUE} to leave the stream unbounded.
+     * @return A builder to configure and create a reader.
+     */
+    public B forStream(final Stream stream, final long startTime, final long endTime) {
+        Preconditions.checkNotNull(stream, "stream");
+        return forStream(stream.getScopedName(), startTime, endTime);
+    }
+
     /**
      * Gets the Pravega configuration.
      */
@@ -134,9 +172,55 @@ public abstract class AbstractReaderBuilder<B extends AbstractReaderBuilder> imp
     protected List<StreamWithBoundaries> resolveStreams() {
         Preconditions.checkState(!streams.isEmpty(), "At least one stream must be supplied.");
         PravegaConfig pravegaConfig = getPravegaConfig();
-        return streams.stream()
-                .map(s -> StreamWithBoundaries.of(pravegaConfig.resolve(s.streamSpec), s.from, s.to))
-                .collect(Collectors.toList());
+        List<StreamWithBoundaries> resolved = new ArrayList<>(streams.size());
+        BatchClientFactory batchClientFactory = null;
+        try {
+            for (StreamSpec s : streams) {
+                Stream stream = pravegaConfig.resolve(s.streamSpec);
+                if (s.startTime == null) {
+                    resolved.add(StreamWithBoundaries.of(stream, s.from, s.to));
+                } else {
+                    // the time index is only read for the streams sought by time
+                    if (batchClientFactory == null) {
+                        batchClientFactory = createBatchClientFactory(stream.getScope());
+                    }
+                    resolved.add(StreamTimeIndex.resolve(batchClientFactory, stream, s.startTime, s.endTime));
+                }
+            }
+        } finally {
+            if (batchClientFactory != null) {
+                batchClientFactory.close();
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Describes the streams to be read as requested, without reading the time indexes: each stream by its qualified
+     * name and the hash codes of its boundaries, or its timestamps if sought by time.
+     */
+    protected List<String> describeStreams() {
+        Preconditions.checkState(!streams.isEmpty(), "At least one stream must be supplied.");
+        PravegaConfig pravegaConfig = getPravegaConfig();
+        List<String> described = new ArrayList<>(streams.size());
+        for (StreamSpec s : streams) {
+            String name = pravegaConfig.resolve(s.streamSpec).getScopedName();
+            if (s.startTime == null) {
+                described.add(name + '/' + s.from.hashCode() + '/' + s.to.hashCode());
+            } else {
+                described.add(name + "/@" + s.startTime + "/@" + s.endTime);
+            }
+        }
+        return described;
+    }
+
+    /**
+     * Create the {@link BatchClientFactory} which reads the time indexes of the streams.
+     *
+     * @param scope the scope of the first stream sought by time.
+     */
+    protected BatchClientFactory createBatchClientFactory(String scope) {
+        return BatchClientFactory.withScope(scope, getPravegaConfig().getClientConfig());
     }
 
     /**
@@ -157,6 +241,25 @@ public abstract class AbstractReaderBuilder<B extends AbstractReaderBuilder> imp
         return enableMetrics;
     }
 
+    /**
+     * Add a codec of the compressed events of the streams, in addition to the {@link DeflateCodec}, which the
+     * reader always decompresses.
+     *
+     * @param codec the codec, as configured on the writers.
+     * @return A builder to configure and create a reader.
+     */
+    public B withCompressionCodec(PayloadCodec codec) {
+        this.compressionCodecs.add(Preconditions.checkNotNull(codec, "codec"));
+        return builder();
+    }
+
+    /**
+     * Gets the codecs of the compressed events, in addition to the built-in ones.
+     */
+    protected List<PayloadCodec> getCompressionCodecs() {
+        return compressionCodecs;
+    }
+
     protected abstract B builder();
 
     /**
@@ -170,19 +273,28 @@ public abstract class AbstractReaderBuilder<B extends AbstractReaderBuilder> imp
         private final String streamSpec;
         private final StreamCut from;
         private final StreamCut to;
+        // the timestamps to resolve through the time index of the stream, or null
+        private final Long startTime;
+        private final Long endTime;
 
         public static StreamSpec of(String streamSpec, StreamCut from, StreamCut to) {
             Preconditions.checkNotNull(streamSpec, "streamSpec");
             Preconditions.checkNotNull(streamSpec, "from");
             Preconditions.checkNotNull(streamSpec, "to");
-            return new StreamSpec(streamSpec, from, to);
+            return new StreamSpec(streamSpec, from, to, null, null);
         }
 
         public static StreamSpec of(Stream stream, StreamCut from, StreamCut to) {
             Preconditions.checkNotNull(stream, "stream");
             Preconditions.checkNotNull(stream, "from");
             Preconditions.checkNotNull(stream, "to");
-            return new StreamSpec(stream.getScopedName(), from, to);
+            return new StreamSpec(stream.getScopedName(), from, to, null, null);
+        }
+
+        public static StreamSpec of(String streamSpec, long startTime, long endTime) {
+            Preconditions.checkNotNull(streamSpec, "streamSpec");
+            Preconditions.checkArgument(startTime <= endTime, "The start timestamp must not be after the end timestamp.");
+            return new StreamSpec(streamSpec, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED, startTime, endTime);
         }
     }
 
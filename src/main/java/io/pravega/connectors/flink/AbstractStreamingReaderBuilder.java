@@ -10,14 +10,21 @@
 package io.pravega.connectors.flink;
 
 import com.google.common.base.Preconditions;
+import io.pravega.client.admin.StreamManager;
 import io.pravega.client.stream.ReaderGroupConfig;
+import io.pravega.client.stream.StreamCut;
 import io.pravega.connectors.flink.util.FlinkPravegaUtils;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
 import io.pravega.connectors.flink.watermark.AssignerWithTimeWindows;
+import io.pravega.connectors.flink.watermark.MultiStreamWatermarkPolicy;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.time.Time;
 import org.apache.flink.util.SerializedValue;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * An abstract streaming reader builder.
@@ -32,6 +39,13 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
     private static final Time DEFAULT_EVENT_READ_TIMEOUT = Time.seconds(1);
     private static final Time DEFAULT_CHECKPOINT_INITIATE_TIMEOUT = Time.seconds(5);
     private static final int  DEFAULT_MAX_OUTSTANDING_CHECKPOINT_REQUEST = 3;
+    private static final int DEFAULT_MAX_EVENTS_PER_BATCH = 1;
+    private static final Time DEFAULT_MAX_BATCH_TIME = Time.milliseconds(0);
+    private static final int DEFAULT_DESERIALIZATION_PARALLELISM = 0;
+    private static final long DEFAULT_MAX_IN_FLIGHT_DESERIALIZATION_BYTES = 64 * 1024 * 1024;
+    private static final MultiStreamWatermarkPolicy DEFAULT_WATERMARK_POLICY = MultiStreamWatermarkPolicy.MIN;
+    private static final Time DEFAULT_IDLE_TIMEOUT = Time.milliseconds(0);
+    private static final Time DEFAULT_MAX_WATERMARK_DRIFT = Time.milliseconds(0);
 
     protected String uid;
     protected String readerGroupScope;
@@ -40,11 +54,27 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
     protected Time checkpointInitiateTimeout;
     protected Time eventReadTimeout;
     protected int maxOutstandingCheckpointRequest;
+    protected int maxEventsPerBatch;
+    protected Time maxBatchTime;
+    protected int deserializationParallelism;
+    protected long maxInFlightDeserializationBytes;
+    protected MultiStreamWatermarkPolicy watermarkPolicy;
+    protected Time idleTimeout;
+    protected Time maxWatermarkDrift;
+    protected boolean historicalCatchUp;
+    protected ReadRateLimitProvider readRateLimitProvider;
 
     protected AbstractStreamingReaderBuilder() {
         this.checkpointInitiateTimeout = DEFAULT_CHECKPOINT_INITIATE_TIMEOUT;
         this.eventReadTimeout = DEFAULT_EVENT_READ_TIMEOUT;
         this.maxOutstandingCheckpointRequest = DEFAULT_MAX_OUTSTANDING_CHECKPOINT_REQUEST;
+        this.maxEventsPerBatch = DEFAULT_MAX_EVENTS_PER_BATCH;
+        this.maxBatchTime = DEFAULT_MAX_BATCH_TIME;
+        this.deserializationParallelism = DEFAULT_DESERIALIZATION_PARALLELISM;
+        this.maxInFlightDeserializationBytes = DEFAULT_MAX_IN_FLIGHT_DESERIALIZATION_BYTES;
+        this.watermarkPolicy = DEFAULT_WATERMARK_POLICY;
+        this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        this.maxWatermarkDrift = DEFAULT_MAX_WATERMARK_DRIFT;
     }
 
     /**
@@ -128,6 +158,135 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
         return builder();
     }
 
+    /**
+     * Enables batched emission of events (default: disabled).
+     * <p>
+     * The reader drains up to {@code maxEventsPerBatch} events, or as many events as it can read within
+     * {@code maxBatchTime}, whichever comes first, and emits them under a single acquisition of the checkpoint lock.
+     * A batch is always cut short by a checkpoint, by the end of the stream, or when no event is available,
+     * so the checkpoint semantics and the timestamp assignment are the same as with per-event emission.
+     *
+     * @param maxEventsPerBatch the maximum number of events in a batch.
+     * @param maxBatchTime the maximum time spent draining events into a batch.
+     */
+    public B withBatchedEmission(int maxEventsPerBatch, Time maxBatchTime) {
+        Preconditions.checkArgument(maxEventsPerBatch > 0, "maxEventsPerBatch must be > 0");
+        Preconditions.checkArgument(maxBatchTime.getSize() > 0, "maxBatchTime must be > 0");
+        this.maxEventsPerBatch = maxEventsPerBatch;
+        this.maxBatchTime = maxBatchTime;
+        return builder();
+    }
+
+    /**
+     * Enables the asynchronous deserialization of events (default: disabled).
+     * <p>
+     * The reader reads the raw events and deserializes them on a pool of {@code parallelism} threads, each with its
+     * own copy of the deserialization schema. The events are emitted in the order in which they were read, and all
+     * the events read before a checkpoint are emitted before the checkpoint is triggered. The reader stops reading
+     * while the raw events submitted to, but not yet emitted by, the deserialization exceed {@code maxInFlightBytes}.
+     * <p>
+     * The events which are deserialized at the same time are emitted under a single acquisition of the checkpoint lock,
+     * so the setting of {@link #withBatchedEmission} does not apply in this mode.
+     *
+     * @param parallelism the number of deserialization threads.
+     * @param maxInFlightBytes the maximum number of raw bytes in flight.
+     */
+    public B withAsyncDeserialization(int parallelism, long maxInFlightBytes) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+        Preconditions.checkArgument(maxInFlightBytes > 0, "maxInFlightBytes must be > 0");
+        this.deserializationParallelism = parallelism;
+        this.maxInFlightDeserializationBytes = maxInFlightBytes;
+        return builder();
+    }
+
+    /**
+     * Sets the policy which combines the watermarks of the streams into the watermark of the reader in event-time
+     * mode (default: {@link MultiStreamWatermarkPolicy#MIN}).
+     *
+     * @param watermarkPolicy the watermark policy.
+     */
+    public B withWatermarkPolicy(MultiStreamWatermarkPolicy watermarkPolicy) {
+        this.watermarkPolicy = Preconditions.checkNotNull(watermarkPolicy);
+        return builder();
+    }
+
+    /**
+     * Enables the idleness detection of the reader (default: disabled).
+     * <p>
+     * When a parallel reader reads no event for {@code idleTimeout}, e.g. because it is assigned no segment or only
+     * segments without new events, the reader marks itself as temporarily idle, so that it does not hold back the
+     * watermark of the downstream operators. The reader resumes automatically once it reads events again.
+     *
+     * @param idleTimeout the time without any event after which the reader is marked as idle.
+     */
+    public B withIdleTimeout(Time idleTimeout) {
+        Preconditions.checkArgument(idleTimeout.getSize() > 0, "timeout must be > 0");
+        this.idleTimeout = idleTimeout;
+        return builder();
+    }
+
+    /**
+     * Enables the watermark alignment of the parallel readers in event-time mode (default: disabled).
+     * <p>
+     * Each parallel reader shares the highest timestamp it has emitted through a global aggregate of the job,
+     * and pauses while it is ahead of the slowest reader of the reader group by more than {@code maxDrift}.
+     * This bounds the state which the downstream operators buffer between the fastest and the slowest readers,
+     * e.g. when replaying a stream. A paused reader still reads a few events per second, so that it keeps
+     * receiving the checkpoint events.
+     * <p>
+     * A reader which has not emitted any event yet holds back the other readers until it is marked as idle, so the
+     * alignment requires the idleness detection, see {@link #withIdleTimeout(Time)}.
+     *
+     * @param maxDrift the maximum drift between the event time of a reader and the slowest reader.
+     */
+    public B withWatermarkAlignment(Time maxDrift) {
+        Preconditions.checkArgument(maxDrift.getSize() > 0, "maxDrift must be > 0");
+        this.maxWatermarkDrift = maxDrift;
+        return builder();
+    }
+
+    /**
+     * Enables the historical catch-up phase of the reader (default: disabled).
+     * <p>
+     * The historical part of each stream, i.e. up to its tail when the job starts, or up to its end stream cut if
+     * bounded, is split into segment ranges which are read in parallel with the batch client, regardless of the
+     * order of the segments. Once a parallel reader has read its segment ranges, it joins the reader group at the
+     * next checkpoint, and the reader group reads the streams from where the catch-up phase ended.
+     * This speeds up the backfill of a large stream, at the cost of the per-routing-key ordering of the historical
+     * events, so it is only supported in processing-time mode.
+     */
+    public B withHistoricalCatchUp() {
+        this.historicalCatchUp = true;
+        return builder();
+    }
+
+    /**
+     * Limits the read rate of the reader (default: unlimited).
+     * <p>
+     * The limits apply to the reader as a whole and are divided evenly across its parallel instances. Each instance
+     * blocks before reading the next event while the events it has read exceed its share of either limit.
+     * This keeps a replay from flooding the job, and the checkpoint barriers from being held back by the backpressure.
+     *
+     * @param maxEventsPerSecond the maximum number of events read per second.
+     * @param maxBytesPerSecond the maximum number of bytes read per second.
+     */
+    public B withReadRateLimit(double maxEventsPerSecond, double maxBytesPerSecond) {
+        this.readRateLimitProvider = new ReadRateLimiter.FixedReadRateLimitProvider(maxEventsPerSecond, maxBytesPerSecond);
+        return builder();
+    }
+
+    /**
+     * Limits the read rate of the reader with a limit which may change while the job is running (default: unlimited).
+     * <p>
+     * Each parallel instance of the reader polls the provider about once per second, see {@link ReadRateLimitProvider}.
+     *
+     * @param readRateLimitProvider the provider of the read rate limit.
+     */
+    public B withReadRateLimit(ReadRateLimitProvider readRateLimitProvider) {
+        this.readRateLimitProvider = Preconditions.checkNotNull(readRateLimitProvider);
+        return builder();
+    }
+
     protected abstract DeserializationSchema<T> getDeserializationSchema();
 
     protected abstract SerializedValue<AssignerWithTimeWindows<T>> getAssignerWithTimeWindows();
@@ -144,7 +303,10 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
      * @return an uninitiailized reader as a source function.
      */
     FlinkPravegaReader<T> buildSourceFunction() {
-        ReaderGroupInfo readerGroupInfo = buildReaderGroupInfo();
+        // the time indexes are read once, so that the reader group and the catch-up phase agree on the stream cuts
+        final List<StreamWithBoundaries> streams = resolveStreams();
+        final List<StreamWithBoundaries> catchUpStreams = this.historicalCatchUp ? resolveCatchUpStreams(streams) : Collections.emptyList();
+        ReaderGroupInfo readerGroupInfo = buildReaderGroupInfo(streams, catchUpStreams);
         return new FlinkPravegaReader<>(
                 Optional.ofNullable(this.uid).orElseGet(this::generateUid),
                 getPravegaConfig().getClientConfig(),
@@ -155,7 +317,17 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
                 getAssignerWithTimeWindows(),
                 this.eventReadTimeout,
                 this.checkpointInitiateTimeout,
-                isMetricsEnabled());
+                isMetricsEnabled(),
+                this.maxEventsPerBatch,
+                this.maxBatchTime,
+                this.deserializationParallelism,
+                this.maxInFlightDeserializationBytes,
+                this.watermarkPolicy,
+                this.idleTimeout,
+                this.maxWatermarkDrift,
+                catchUpStreams,
+                this.readRateLimitProvider,
+                getCompressionCodecs());
     }
 
     /**
@@ -164,6 +336,17 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
      * @return {@link ReaderGroupInfo}
      */
     ReaderGroupInfo buildReaderGroupInfo() {
+        return buildReaderGroupInfo(resolveStreams(), Collections.emptyList());
+    }
+
+    /**
+     * Build reader group configuration, in which each stream of the catch-up phase starts where its catch-up ends.
+     *
+     * @param streams the streams to be read, as resolved by {@link #resolveStreams()}.
+     * @param catchUpStreams the streams of the catch-up phase, as resolved by {@link #resolveCatchUpStreams(List)}.
+     * @return {@link ReaderGroupInfo}
+     */
+    ReaderGroupInfo buildReaderGroupInfo(List<StreamWithBoundaries> streams, List<StreamWithBoundaries> catchUpStreams) {
         // rgConfig
         ReaderGroupConfig.ReaderGroupConfigBuilder rgConfigBuilder = ReaderGroupConfig
                 .builder()
@@ -172,7 +355,11 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
         if (this.readerGroupRefreshTime != null) {
             rgConfigBuilder.groupRefreshTimeMillis(this.readerGroupRefreshTime.toMilliseconds());
         }
-        resolveStreams().forEach(s -> rgConfigBuilder.stream(s.getStream(), s.getFrom(), s.getTo()));
+        for (int i = 0; i < streams.size(); i++) {
+            StreamWithBoundaries s = streams.get(i);
+            StreamCut from = catchUpStreams.isEmpty() ? s.getFrom() : catchUpStreams.get(i).getTo();
+            rgConfigBuilder.stream(s.getStream(), from, s.getTo());
+        }
         final ReaderGroupConfig rgConfig = rgConfigBuilder.build();
 
         // rgScope
@@ -186,20 +373,34 @@ abstract class AbstractStreamingReaderBuilder<T, B extends AbstractStreamingRead
         return new ReaderGroupInfo(rgConfig, rgScope, rgName);
     }
 
+    /**
+     * Resolves the streams to be read in the catch-up phase, each from its start stream cut up to its end stream cut,
+     * or up to its current tail if unbounded.
+     *
+     * @param streams the streams to be read, as resolved by {@link #resolveStreams()}.
+     */
+    List<StreamWithBoundaries> resolveCatchUpStreams(List<StreamWithBoundaries> streams) {
+        try (StreamManager streamManager = StreamManager.create(getPravegaConfig().getClientConfig())) {
+            return streams.stream()
+                    .map(s -> StreamWithBoundaries.of(s.getStream(), s.getFrom(), s.getTo() != StreamCut.UNBOUNDED ? s.getTo()
+                            : streamManager.getStreamInfo(s.getStream().getScope(), s.getStream().getStreamName()).getTailStreamCut()))
+                    .collect(Collectors.toList());
+        }
+    }
+
     /**
      * Generate a UID for the source, to distinguish the state associated with the checkpoint hook.  A good generated UID will:
      * 1. be stable across savepoints for the same inputs
      * 2. disambiguate one source from another (e.g. in a program that uses numerous instances of {@link FlinkPravegaReader})
      * 3. allow for reconfiguration of the timeouts
+     *
+     * The streams sought by time are identified by their requested timestamps rather than by the stream cuts they
+     * currently resolve to, which move as the time indexes grow.
      */
     String generateUid() {
         StringBuilder sb = new StringBuilder();
         sb.append(readerGroupScope).append('\n');
-        resolveStreams().forEach(s -> sb
-                .append(s.getStream().getScopedName())
-                .append('/').append(s.getFrom().hashCode())
-                .append('/').append(s.getTo().hashCode())
-                .append('\n'));
+        describeStreams().forEach(s -> sb.append(s).append('\n'));
         return Integer.toString(sb.toString().hashCode());
     }
 
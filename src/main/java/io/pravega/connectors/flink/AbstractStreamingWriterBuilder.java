@@ -9,10 +9,14 @@
  */
 package io.pravega.connectors.flink;
 
+import io.pravega.client.stream.Stream;
 import org.apache.flink.api.common.serialization.SerializationSchema;
 import org.apache.flink.api.common.time.Time;
 import org.apache.flink.util.Preconditions;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * An abstract streaming writer builder.
  *
@@ -28,12 +32,19 @@ public abstract class AbstractStreamingWriterBuilder<T, B extends AbstractStream
 
     protected PravegaWriterMode writerMode;
     protected boolean enableWatermark;
+    protected boolean enableTimeIndex;
     protected Time txnLeaseRenewalPeriod;
+    protected final Map<String, ZoneMapFieldExtractor<T>> zoneMapFields = new LinkedHashMap<>();
+    protected int maxInFlightEvents;
+    protected long maxInFlightBytes;
 
     protected AbstractStreamingWriterBuilder() {
         writerMode = PravegaWriterMode.ATLEAST_ONCE;
         enableWatermark = false;
+        enableTimeIndex = false;
         txnLeaseRenewalPeriod = Time.milliseconds(DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS);
+        maxInFlightEvents = FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_EVENTS;
+        maxInFlightBytes = FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_BYTES;
     }
 
     /**
@@ -56,6 +67,72 @@ public abstract class AbstractStreamingWriterBuilder<T, B extends AbstractStream
         return builder();
     }
 
+    /**
+     * Enable the time index of the stream.
+     *
+     * When enabled, the writer appends a sample of the watermark and the tail of the stream at each completed
+     * checkpoint to a companion stream, named after the stream with the {@code -timeindex} suffix. Readers then
+     * seek the stream by time, e.g. with {@link AbstractReaderBuilder#forStream(Stream, long, long)}.
+     * Watermarks must be assigned to the events of the job.
+     *
+     * @param enableTimeIndex boolean
+     */
+    public B enableTimeIndex(boolean enableTimeIndex) {
+        this.enableTimeIndex = enableTimeIndex;
+        return builder();
+    }
+
+    /**
+     * Summarizes a field of the events in the zone maps of the stream.
+     *
+     * Each parallel instance of the writer appends, at each checkpoint, the minimum and maximum value of the summarized
+     * fields over the events it wrote since the previous checkpoint to a companion stream, named after the stream with
+     * the {@code -zonemap} suffix. Batch readers then skip the segment ranges which cannot match a {@link ZoneMapFilter}.
+     * The zone maps are not supported by the {@code EXACTLY_ONCE} writer mode.
+     *
+     * The writer must be the only writer of the stream while it runs: the zone maps do not summarize the events
+     * appended meanwhile by other writers, e.g. plain writers or other jobs, which the batch readers may then skip.
+     *
+     * @param field     The name of the field.
+     * @param extractor The extractor of the value of the field from an event.
+     */
+    public B withZoneMap(String field, ZoneMapFieldExtractor<T> extractor) {
+        Preconditions.checkNotNull(field, "field");
+        this.zoneMapFields.put(field, Preconditions.checkNotNull(extractor, "extractor"));
+        return builder();
+    }
+
+    /**
+     * Sets the maximum number of events written but not yet acknowledged by Pravega, per parallel instance.
+     *
+     * When the limit is reached, e.g. while a segment store is unavailable, the writer blocks until some events are
+     * acknowledged, which applies backpressure to the job instead of buffering the events on the heap. The writes in
+     * flight are not bounded by default. The limit is not supported by the {@code EXACTLY_ONCE} writer mode.
+     *
+     * @param maxInFlightEvents the maximum number of events in flight.
+     */
+    public B withMaxInFlightEvents(int maxInFlightEvents) {
+        Preconditions.checkArgument(maxInFlightEvents > 0, "The maximum number of events in flight must be a positive value.");
+        this.maxInFlightEvents = maxInFlightEvents;
+        return builder();
+    }
+
+    /**
+     * Sets the maximum number of serialized bytes of the events written but not yet acknowledged by Pravega, per
+     * parallel instance.
+     *
+     * When the limit is reached, the writer blocks until some events are acknowledged, as with
+     * {@link #withMaxInFlightEvents(int)}; an event larger than the limit is written alone. The writes in flight are not
+     * bounded by default. The limit is not supported by the {@code EXACTLY_ONCE} writer mode.
+     *
+     * @param maxInFlightBytes the maximum number of bytes in flight.
+     */
+    public B withMaxInFlightBytes(long maxInFlightBytes) {
+        Preconditions.checkArgument(maxInFlightBytes > 0, "The maximum number of bytes in flight must be a positive value.");
+        this.maxInFlightBytes = maxInFlightBytes;
+        return builder();
+    }
+
     /**
      * Sets the transaction lease renewal period.
      *
@@ -89,6 +166,13 @@ public abstract class AbstractStreamingWriterBuilder<T, B extends AbstractStream
                 writerMode,
                 txnLeaseRenewalPeriod.toMilliseconds(),
                 enableWatermark,
-                isMetricsEnabled());
+                isMetricsEnabled(),
+                enableTimeIndex,
+                zoneMapFields,
+                maxInFlightEvents,
+                maxInFlightBytes,
+                getMaxEventBatchSize(),
+                getEventBatchLingerMillis(),
+                getCompressionCodec());
     }
 }
@@ -11,6 +11,7 @@ package io.pravega.connectors.flink;
 
 import io.pravega.client.stream.Stream;
 import lombok.Data;
+import org.apache.flink.api.common.time.Time;
 import org.apache.flink.util.Preconditions;
 
 import java.io.Serializable;
@@ -28,6 +29,12 @@ public abstract class AbstractWriterBuilder<B extends AbstractWriterBuilder> imp
 
     private boolean enableMetrics = true;
 
+    private int maxEventBatchSize = EventBatcher.NO_BATCHING;
+
+    private long eventBatchLingerMillis;
+
+    private PayloadCodec compressionCodec;
+
     public AbstractWriterBuilder() {
         this.pravegaConfig = PravegaConfig.fromDefaults();
     }
@@ -101,6 +108,61 @@ public abstract class AbstractWriterBuilder<B extends AbstractWriterBuilder> imp
         return enableMetrics;
     }
 
+    /**
+     * Enables the batching of the events (default: disabled).
+     * <p>
+     * The events with the same routing key are packed into a single Pravega event of up to the given size, which is
+     * written once full, or once its first event waited for the linger time. The readers of this connector unpack the
+     * batches transparently. The other readers of the stream must not be used with the event batching.
+     *
+     * @param maxBatchSize the maximum size of a batch, in bytes.
+     * @param lingerTime the maximum time an event waits in a batch before it is written.
+     * @return A builder to configure and create a writer.
+     */
+    public B withEventBatching(int maxBatchSize, Time lingerTime) {
+        Preconditions.checkArgument(maxBatchSize > EventBatch.HEADER_SIZE, "maxBatchSize must be > %s", EventBatch.HEADER_SIZE);
+        Preconditions.checkArgument(lingerTime.toMilliseconds() > 0, "lingerTime must be > 0");
+        this.maxEventBatchSize = maxBatchSize;
+        this.eventBatchLingerMillis = lingerTime.toMilliseconds();
+        return builder();
+    }
+
+    /**
+     * Gets the maximum size of the event batches, or {@code 0} if the events are not batched.
+     */
+    protected int getMaxEventBatchSize() {
+        return maxEventBatchSize;
+    }
+
+    /**
+     * Gets the maximum time an event waits in a batch, in milliseconds.
+     */
+    protected long getEventBatchLingerMillis() {
+        return eventBatchLingerMillis;
+    }
+
+    /**
+     * Compresses the serialized events with the given codec (default: not compressed).
+     * <p>
+     * The compressed events carry a header, so that the readers of this connector detect and decompress them, and the
+     * events which do not shrink are written plain. The readers must know the codec, see {@link DeflateCodec}.
+     * The batches of events are compressed as a whole, see {@link #withEventBatching(int, Time)}.
+     *
+     * @param codec the codec, e.g. a {@link DeflateCodec}.
+     * @return A builder to configure and create a writer.
+     */
+    public B withCompression(PayloadCodec codec) {
+        this.compressionCodec = Preconditions.checkNotNull(codec, "codec");
+        return builder();
+    }
+
+    /**
+     * Gets the codec of the written events, or null if they are not compressed.
+     */
+    protected PayloadCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
     protected abstract B builder();
 
     /**
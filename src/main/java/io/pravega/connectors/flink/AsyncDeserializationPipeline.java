@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.stream.Serializer;
+import org.apache.flink.util.FlinkException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * An order-preserving pipeline which deserializes raw events on a bounded pool of worker threads.
+ *
+ * <p>Events are submitted in the order in which they were read and are taken out in the same order,
+ * regardless of the order in which their deserialization completes. Each worker thread uses its own
+ * deserializer instance, since deserialization schemas are not required to be thread-safe. The deserialization
+ * time is not measured here: a deserializer may sample its own, see {@link ReaderMetrics#timed(Serializer)}.
+ *
+ * <p>The pipeline is driven by a single thread; only the metrics may be read from other threads.
+ *
+ * @param <T> The type of the event.
+ */
+class AsyncDeserializationPipeline<T> implements AutoCloseable {
+
+    private final ExecutorService executorService;
+
+    private final ThreadLocal<Serializer<T>> deserializer;
+
+    private final ArrayDeque<PendingEvent<T>> pendingEvents = new ArrayDeque<>();
+
+    private final long maxInFlightBytes;
+
+    private final int maxPendingEvents;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicLong inFlightBytes = new AtomicLong();
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param deserializerFactory The factory creating a deserializer for each worker thread.
+     * @param parallelism         The number of worker threads.
+     * @param maxInFlightBytes    The maximum number of raw bytes submitted but not yet taken out of the pipeline.
+     * @param maxPendingEvents    The maximum number of events submitted but not yet taken out of the pipeline.
+     */
+    AsyncDeserializationPipeline(Supplier<Serializer<T>> deserializerFactory, int parallelism,
+                                 long maxInFlightBytes, int maxPendingEvents) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+        Preconditions.checkArgument(maxInFlightBytes > 0, "maxInFlightBytes must be > 0");
+        Preconditions.checkArgument(maxPendingEvents > 0, "maxPendingEvents must be > 0");
+        this.executorService = Executors.newFixedThreadPool(parallelism);
+        this.deserializer = ThreadLocal.withInitial(Preconditions.checkNotNull(deserializerFactory));
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * Submits a raw event for deserialization.
+     *
+     * @param event The serialized event.
+     */
+    void submit(ByteBuffer event) {
+        final int size = event.remaining();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> deserializer.get().deserialize(event), executorService);
+        pendingEvents.addLast(new PendingEvent<>(future, size));
+        queueDepth.set(pendingEvents.size());
+        inFlightBytes.addAndGet(size);
+    }
+
+    /**
+     * Returns true if there is no event in the pipeline.
+     */
+    boolean isEmpty() {
+        return pendingEvents.isEmpty();
+    }
+
+    /**
+     * Returns true if no further event should be submitted before the oldest one is taken out of the pipeline.
+     */
+    boolean isFull() {
+        return !pendingEvents.isEmpty()
+                && (inFlightBytes.get() >= maxInFlightBytes || pendingEvents.size() >= maxPendingEvents);
+    }
+
+    /**
+     * Returns true if the oldest event in the pipeline has been deserialized.
+     */
+    boolean isNextDone() {
+        return !pendingEvents.isEmpty() && pendingEvents.peekFirst().future.isDone();
+    }
+
+    /**
+     * Waits until the oldest event in the pipeline has been deserialized.
+     */
+    void awaitNext() throws InterruptedException {
+        if (!pendingEvents.isEmpty()) {
+            await(pendingEvents.peekFirst());
+        }
+    }
+
+    /**
+     * Waits until all the events in the pipeline have been deserialized.
+     */
+    void awaitAll() throws InterruptedException {
+        for (PendingEvent<T> pendingEvent : pendingEvents) {
+            await(pendingEvent);
+        }
+    }
+
+    /**
+     * Takes the oldest event out of the pipeline, waiting for its deserialization if needed.
+     *
+     * @return the deserialized event.
+     * @throws FlinkException if the event could not be deserialized.
+     */
+    T takeNext() throws InterruptedException, FlinkException {
+        Preconditions.checkState(!pendingEvents.isEmpty(), "no pending event");
+        PendingEvent<T> pendingEvent = pendingEvents.removeFirst();
+        queueDepth.set(pendingEvents.size());
+        inFlightBytes.addAndGet(-pendingEvent.size);
+        try {
+            return pendingEvent.future.get();
+        } catch (ExecutionException e) {
+            throw new FlinkException("Failed to deserialize an event", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the number of events submitted but not yet taken out of the pipeline.
+     */
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Gets the number of raw bytes submitted but not yet taken out of the pipeline.
+     */
+    long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        pendingEvents.clear();
+        queueDepth.set(0);
+        inFlightBytes.set(0);
+    }
+
+    private static void await(PendingEvent<?> pendingEvent) throws InterruptedException {
+        try {
+            pendingEvent.future.get();
+        } catch (ExecutionException e) {
+            // the failure is surfaced when the event is taken out of the pipeline
+        }
+    }
+
+    private static class PendingEvent<T> {
+        private final CompletableFuture<T> future;
+        private final int size;
+
+        PendingEvent(CompletableFuture<T> future, int size) {
+            this.future = future;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.apache.flink.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link PayloadCodec} based on the Deflate algorithm of the JDK, which is known to all the readers.
+ *
+ * <p>The codec reuses its zlib streams, whose native memory is released by {@link #close()}.
+ */
+public final class DeflateCodec implements PayloadCodec {
+
+    // the identifier of the codec
+    static final byte ID = 1;
+
+    private static final long serialVersionUID = 1L;
+
+    private final int level;
+
+    // the zlib streams are expensive to allocate, so they are allocated once and reused until the codec is closed
+    private transient Deflater deflater;
+
+    private transient Inflater inflater;
+
+    /**
+     * Creates a codec with the default compression level.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     */
+    public DeflateCodec(int level) {
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+                        || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+                "Invalid compression level %s", level);
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public synchronized ByteBuffer compress(ByteBuffer payload) {
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        deflater.reset();
+        deflater.setLevel(level);
+        setInput(payload, deflater::setInput);
+        deflater.finish();
+        byte[] output = new byte[Math.max(64, payload.remaining() / 2)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    @Override
+    public synchronized ByteBuffer decompress(ByteBuffer compressed, int uncompressedSize) {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        setInput(compressed, inflater::setInput);
+        // the spare byte lets the end of the stream be read once all the bytes are inflated
+        byte[] output = new byte[uncompressedSize + 1];
+        int size = 0;
+        try {
+            while (!inflater.finished() && size < output.length) {
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid Deflate payload", e);
+        }
+        Preconditions.checkArgument(inflater.finished(), "Truncated Deflate payload");
+        Preconditions.checkArgument(size == uncompressedSize,
+                "Invalid Deflate payload of %s bytes instead of %s", size, uncompressedSize);
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private static void setInput(ByteBuffer buffer, InputSetter setter) {
+        if (buffer.hasArray()) {
+            setter.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            setter.setInput(bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeflateCodec{level=" + level + '}';
+    }
+
+    private interface InputSetter {
+        void setInput(byte[] bytes, int offset, int length);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of serialized events with the same routing key, written as a single Pravega event.
+ *
+ * <p>A batch starts with a header made of a magic number, which tells the batches from the plain events, and the
+ * number of events. Each event follows, preceded by its length. The readers unpack the batches transparently, see
+ * {@link #unpack(ByteBuffer)}.
+ */
+final class EventBatch {
+
+    // the magic number of the batches, whose last byte is the version of the format
+    static final long MAGIC = 0x8F50524156424101L;
+
+    static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final String routingKey;
+
+    private final long creationTime;
+
+    private final List<ByteBuffer> events = new ArrayList<>();
+
+    private int size = HEADER_SIZE;
+
+    /**
+     * Creates a new, empty batch.
+     *
+     * @param routingKey   The routing key of the events.
+     * @param creationTime The creation time of the batch, in milliseconds.
+     */
+    EventBatch(String routingKey, long creationTime) {
+        this.routingKey = routingKey;
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * Adds a serialized event.
+     *
+     * @param event The serialized event.
+     */
+    void add(ByteBuffer event) {
+        events.add(event);
+        size += Integer.BYTES + event.remaining();
+    }
+
+    String getRoutingKey() {
+        return routingKey;
+    }
+
+    long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Returns the number of events of the batch.
+     */
+    int count() {
+        return events.size();
+    }
+
+    /**
+     * Returns the size of the serialized batch, in bytes.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Serializes the batch.
+     */
+    ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(MAGIC);
+        buffer.putInt(events.size());
+        for (ByteBuffer event : events) {
+            buffer.putInt(event.remaining());
+            buffer.put(event.duplicate());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns true if the given serialized event is a batch.
+     *
+     * @param buffer The serialized event.
+     */
+    static boolean isBatch(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getLong(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Unpacks the events of the given serialized event, if it is a batch.
+     *
+     * @param buffer The serialized event.
+     * @return the serialized events of the batch, in order, or the given event if it is not a batch.
+     */
+    static List<ByteBuffer> unpack(ByteBuffer buffer) {
+        if (!isBatch(buffer)) {
+            return Collections.singletonList(buffer);
+        }
+        ByteBuffer batch = buffer.slice();
+        batch.position(Long.BYTES);
+        int count = batch.getInt();
+        Preconditions.checkArgument(count >= 0, "Invalid event batch of %s events", count);
+        List<ByteBuffer> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = batch.getInt();
+            Preconditions.checkArgument(length >= 0 && length <= batch.remaining(), "Invalid event of %s bytes in an event batch", length);
+            ByteBuffer event = batch.slice();
+            event.limit(length);
+            events.add(event);
+            batch.position(batch.position() + length);
+        }
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatch{routingKey=" + routingKey + ", count=" + events.size() + ", size=" + size + '}';
+    }
+}
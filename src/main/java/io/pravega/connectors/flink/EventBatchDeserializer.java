@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.stream.Serializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A deserializer which unpacks the {@link EventBatch}es, for the readers which deserialize one Pravega event at a time.
+ *
+ * <p>The deserialization of a batch deserializes all its events, returns the first one, and keeps the others, which
+ * the reader takes with {@link #next()} before reading the next Pravega event. The plain events are deserialized
+ * as usual. The compressed events are decompressed first, see {@link PayloadCompression}. The events of a batch
+ * which deserialize to null are skipped. This class is not thread-safe.
+ *
+ * @param <T> The type of the event.
+ */
+final class EventBatchDeserializer<T> implements Serializer<T> {
+
+    private final Serializer<T> deserializer;
+
+    private final PayloadCompression compression;
+
+    // the events of the last batch which are not taken yet
+    private final ArrayDeque<T> remaining = new ArrayDeque<>();
+
+    /**
+     * Creates a new deserializer, which decompresses the events of the built-in codecs.
+     *
+     * @param deserializer The deserializer of the events.
+     */
+    EventBatchDeserializer(Serializer<T> deserializer) {
+        this(deserializer, new PayloadCompression());
+    }
+
+    /**
+     * Creates a new deserializer.
+     *
+     * @param deserializer The deserializer of the events.
+     * @param compression  The decompression of the events, which precedes their unpacking.
+     */
+    EventBatchDeserializer(Serializer<T> deserializer, PayloadCompression compression) {
+        this.deserializer = Preconditions.checkNotNull(deserializer, "deserializer");
+        this.compression = Preconditions.checkNotNull(compression, "compression");
+    }
+
+    @Override
+    public ByteBuffer serialize(T value) {
+        throw new IllegalStateException("serialize() called within a deserializer");
+    }
+
+    @Override
+    public T deserialize(ByteBuffer serializedValue) {
+        ByteBuffer payload = compression.decompress(serializedValue);
+        if (!EventBatch.isBatch(payload)) {
+            return deserializer.deserialize(payload);
+        }
+        List<ByteBuffer> events = EventBatch.unpack(payload);
+        for (ByteBuffer event : events) {
+            T deserialized = deserializer.deserialize(event);
+            if (deserialized != null) {
+                remaining.add(deserialized);
+            }
+        }
+        return remaining.poll();
+    }
+
+    /**
+     * Returns true if events of the last batch are left to take.
+     */
+    boolean hasNext() {
+        return !remaining.isEmpty();
+    }
+
+    /**
+     * Takes the next event of the last batch.
+     *
+     * @return the next event.
+     */
+    T next() {
+        if (remaining.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return remaining.poll();
+    }
+
+    /**
+     * Discards the events of the last batch left to take.
+     */
+    void clear() {
+        remaining.clear();
+    }
+}
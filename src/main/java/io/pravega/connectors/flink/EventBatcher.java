@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.stream.Serializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Packs the events written by a writer into {@link EventBatch}es, one open batch per routing key.
+ *
+ * <p>A batch is closed once the next event of its routing key does not fit in it, or once it is older than the linger
+ * time. The batches of a routing key are closed in order, so that its events are written in order. An event larger
+ * than the maximum size of a batch is written alone. This class is not thread-safe.
+ *
+ * @param <T> The type of the event.
+ */
+final class EventBatcher<T> {
+
+    // the maximum batch size which disables the event batching
+    static final int NO_BATCHING = 0;
+
+    private final Serializer<T> serializer;
+
+    private final int maxBatchSize;
+
+    private final long lingerMillis;
+
+    // the open batches by routing key, the oldest first
+    private final LinkedHashMap<String, EventBatch> openBatches = new LinkedHashMap<>();
+
+    /**
+     * Creates a new batcher.
+     *
+     * @param serializer   The serializer of the events.
+     * @param maxBatchSize The maximum size of a batch, in bytes.
+     * @param lingerMillis The maximum time an event waits in an open batch, in milliseconds.
+     */
+    EventBatcher(Serializer<T> serializer, int maxBatchSize, long lingerMillis) {
+        Preconditions.checkArgument(maxBatchSize > EventBatch.HEADER_SIZE, "maxBatchSize must be > %s", EventBatch.HEADER_SIZE);
+        Preconditions.checkArgument(lingerMillis >= 0, "lingerMillis must be >= 0");
+        this.serializer = Preconditions.checkNotNull(serializer, "serializer");
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Adds an event to the open batch of its routing key.
+     *
+     * @param routingKey The routing key of the event.
+     * @param event      The event.
+     * @param now        The current time, in milliseconds.
+     * @return the batch closed to make room for the event, to be written, or null.
+     */
+    EventBatch add(String routingKey, T event, long now) {
+        ByteBuffer serialized = serializer.serialize(event);
+        EventBatch closed = null;
+        EventBatch batch = openBatches.get(routingKey);
+        if (batch != null && batch.size() + Integer.BYTES + serialized.remaining() > maxBatchSize) {
+            closed = openBatches.remove(routingKey);
+            batch = null;
+        }
+        if (batch == null) {
+            batch = new EventBatch(routingKey, now);
+            openBatches.put(routingKey, batch);
+        }
+        batch.add(serialized);
+        return closed;
+    }
+
+    /**
+     * Closes the open batches which are older than the linger time.
+     *
+     * @param now The current time, in milliseconds.
+     * @return the closed batches, to be written in order.
+     */
+    List<EventBatch> pollExpired(long now) {
+        List<EventBatch> expired = Collections.emptyList();
+        Iterator<EventBatch> iterator = openBatches.values().iterator();
+        while (iterator.hasNext()) {
+            EventBatch batch = iterator.next();
+            if (now - batch.getCreationTime() < lingerMillis) {
+                break;
+            }
+            if (expired.isEmpty()) {
+                expired = new ArrayList<>();
+            }
+            expired.add(batch);
+            iterator.remove();
+        }
+        return expired;
+    }
+
+    /**
+     * Closes all the open batches.
+     *
+     * @return the closed batches, to be written in order.
+     */
+    List<EventBatch> drain() {
+        List<EventBatch> batches = new ArrayList<>(openBatches.values());
+        openBatches.clear();
+        return batches;
+    }
+
+    /**
+     * Returns true if no batch is open.
+     */
+    boolean isEmpty() {
+        return openBatches.isEmpty();
+    }
+}
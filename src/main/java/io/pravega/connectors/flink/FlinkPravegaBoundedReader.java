@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.ClientConfig;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.pravega.connectors.flink.util.FlinkPravegaUtils.createDeserializer;
+
+/**
+ * A bounded Flink source function which reads Pravega streams between two stream cuts in a Flink streaming job.
+ *
+ * <p>The streams are split into segment ranges, as with the {@link FlinkPravegaInputFormat}, which are assigned to
+ * the parallel instances of the source and read with the batch client. Each parallel instance stores the segment
+ * ranges left to read in its operator state, so the source is checkpointed by Flink like any other source, without
+ * a reader group and its master hook. Be aware that the segment ranges are read regardless of the order of the
+ * segments, so the events of a routing key are not read in order.
+ */
+@Slf4j
+public class FlinkPravegaBoundedReader<T> extends RichParallelSourceFunction<T>
+        implements ResultTypeQueryable<T>, CheckpointedFunction {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String DEFAULT_CLIENT_SCOPE_NAME = "__NOT_USED";
+
+    // the name of the operator state which holds the segment ranges left to read
+    private static final String STATE_NAME = "pravega-segment-ranges";
+
+    // ----- configuration fields -----
+
+    // The Pravega client configuration.
+    final ClientConfig clientConfig;
+
+    // The streams to read, each with both its start and end stream cuts.
+    final List<StreamWithBoundaries> streams;
+
+    // The supplied event deserializer.
+    final DeserializationSchema<T> deserializationSchema;
+
+    // The codecs of the compressed events, in addition to the built-in ones.
+    final List<PayloadCodec> compressionCodecs;
+
+    // ----- runtime fields -----
+
+    // Flag to terminate the source. volatile, because 'stop()' and 'cancel()'
+    // may be called asynchronously
+    private volatile boolean running = true;
+
+    // the segment ranges left to read by this source, restored or assigned when opened
+    private transient List<PravegaInputSplit> splits;
+
+    // the operator state holding the segment ranges left to read
+    private transient ListState<PravegaInputSplit> splitState;
+
+    // the batch client factory, reused for all the segment ranges read by this source
+    private transient BatchClientFactory batchClientFactory;
+
+    // the reader of the segment ranges
+    private transient SegmentRangeReader<T> splitReader;
+
+    // the decompression of the events, closed along with the source
+    private transient PayloadCompression compression;
+
+    /**
+     * Creates a new bounded Flink Pravega source function.
+     *
+     * @param clientConfig          The Pravega client configuration.
+     * @param streams               The streams to read, each with both its start and end stream cuts.
+     * @param deserializationSchema The implementation to deserialize events from Pravega streams.
+     * @param compressionCodecs     The codecs of the compressed events, in addition to the built-in ones.
+     */
+    protected FlinkPravegaBoundedReader(ClientConfig clientConfig, List<StreamWithBoundaries> streams,
+                                        DeserializationSchema<T> deserializationSchema, List<PayloadCodec> compressionCodecs) {
+        this.clientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig");
+        this.streams = new ArrayList<>(Preconditions.checkNotNull(streams, "streams"));
+        this.deserializationSchema = Preconditions.checkNotNull(deserializationSchema, "deserializationSchema");
+        this.streams.forEach(s -> Preconditions.checkArgument(s.getTo() != StreamCut.UNBOUNDED,
+                "An end stream cut must be supplied for stream %s", s.getStream().getScopedName()));
+        this.compressionCodecs = new ArrayList<>(Preconditions.checkNotNull(compressionCodecs, "compressionCodecs"));
+    }
+
+    // ------------------------------------------------------------------------
+    //  source function methods
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void run(SourceContext<T> ctx) throws Exception {
+        log.info("{} : Starting to read {} segment ranges", getRuntimeContext().getTaskNameWithSubtasks(), splits.size());
+
+        while (this.running) {
+            if (!splitReader.hasNext()) {
+                // no segment range is left to read
+                synchronized (ctx.getCheckpointLock()) {
+                    splitReader.commit();
+                }
+                log.info("{} : Completed reading the segment ranges", getRuntimeContext().getTaskNameWithSubtasks());
+                return;
+            }
+
+            final T event = splitReader.next();
+            if (this.deserializationSchema.isEndOfStream(event)) {
+                // Found stream end marker.
+                log.info("{} : Reached end of stream", getRuntimeContext().getTaskNameWithSubtasks());
+                return;
+            }
+
+            synchronized (ctx.getCheckpointLock()) {
+                ctx.collect(event);
+                // the reader only advances past whole event batches, so their other events are emitted along
+                while (splitReader.hasBatchedNext()) {
+                    final T batchedEvent = splitReader.next();
+                    if (this.deserializationSchema.isEndOfStream(batchedEvent)) {
+                        log.info("{} : Reached end of stream", getRuntimeContext().getTaskNameWithSubtasks());
+                        return;
+                    }
+                    ctx.collect(batchedEvent);
+                }
+                splitReader.commit();
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        this.running = false;
+    }
+
+    @Override
+    public TypeInformation<T> getProducedType() {
+        return this.deserializationSchema.getProducedType();
+    }
+
+    // ------------------------------------------------------------------------
+    //  life cycle and checkpointing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Opens the source. Unless restored, every parallel instance of the source enumerates the same segment ranges,
+     * and keeps its share of them.
+     *
+     * <p>The enumeration queries the controller for each stream. When the streams have both a start and an end
+     * stream cut, the segment ranges are cached and shared by the parallel instances in the same TaskManager, so
+     * each stream is enumerated once per TaskManager. When a stream is read from its head, each parallel instance
+     * enumerates it, as its head may be truncated meanwhile.
+     */
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        batchClientFactory = createBatchClientFactory();
+        if (splits == null) {
+            splits = SegmentRangeReader.assignSplits(
+                    SegmentRangeReader.createSplits(batchClientFactory, clientConfig.getControllerURI(), streams),
+                    getRuntimeContext().getIndexOfThisSubtask(),
+                    getRuntimeContext().getNumberOfParallelSubtasks());
+        }
+        compression = new PayloadCompression(null, compressionCodecs);
+        splitReader = new SegmentRangeReader<>(batchClientFactory, createDeserializer(deserializationSchema), splits,
+                compression);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (splitReader != null) {
+            splitReader.close();
+        }
+        if (compression != null) {
+            compression.close();
+        }
+        if (batchClientFactory != null) {
+            // closing the client factory also closes the batch client connection
+            batchClientFactory.close();
+        }
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        splitState = context.getOperatorStateStore().getListState(new ListStateDescriptor<>(STATE_NAME, PravegaInputSplit.class));
+        if (context.isRestored()) {
+            splits = new ArrayList<>();
+            splitState.get().forEach(splits::add);
+            log.info("{} restored {} segment ranges left to read", getRuntimeContext().getTaskNameWithSubtasks(), splits.size());
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        splitState.update(splitReader.snapshot());
+    }
+
+    /**
+     * Create the {@link BatchClientFactory} which reads the segment ranges.
+     */
+    protected BatchClientFactory createBatchClientFactory() {
+        return BatchClientFactory.withScope(DEFAULT_CLIENT_SCOPE_NAME, clientConfig);
+    }
+
+    // ------------------------------------------------------------------------
+    //  configuration
+    // ------------------------------------------------------------------------
+
+    /**
+     * Gets a builder for {@link FlinkPravegaBoundedReader} to read Pravega streams between stream cuts using the Flink streaming API.
+     * @param <T> the element type.
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * A builder for {@link FlinkPravegaBoundedReader}.
+     *
+     * @param <T> the element type.
+     */
+    public static class Builder<T> extends AbstractReaderBuilder<FlinkPravegaBoundedReader.Builder<T>> {
+
+        private DeserializationSchema<T> deserializationSchema;
+
+        protected Builder<T> builder() {
+            return this;
+        }
+
+        /**
+         * Sets the deserialization schema.
+         *
+         * @param deserializationSchema The deserialization schema
+         */
+        public Builder<T> withDeserializationSchema(DeserializationSchema<T> deserializationSchema) {
+            this.deserializationSchema = deserializationSchema;
+            return builder();
+        }
+
+        protected DeserializationSchema<T> getDeserializationSchema() {
+            Preconditions.checkState(deserializationSchema != null, "Deserialization schema must not be null.");
+            return deserializationSchema;
+        }
+
+        /**
+         * Builds a {@link FlinkPravegaBoundedReader} based on the configuration.
+         *
+         * @throws IllegalStateException if the configuration is invalid.
+         * @throws IllegalArgumentException if a stream has no end stream cut.
+         */
+        public FlinkPravegaBoundedReader<T> build() {
+            return new FlinkPravegaBoundedReader<>(getPravegaConfig().getClientConfig(), resolveStreams(), getDeserializationSchema(),
+                    getCompressionCodecs());
+        }
+    }
+}
@@ -17,12 +17,11 @@ import io.pravega.client.BatchClientFactory;
 import io.pravega.client.batch.SegmentIterator;
 import io.pravega.client.batch.SegmentRange;
 import io.pravega.client.stream.Serializer;
-import io.pravega.connectors.flink.serialization.WrappingSerializer;
 import io.pravega.connectors.flink.util.FlinkPravegaUtils;
 
 import io.pravega.connectors.flink.util.StreamWithBoundaries;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.flink.api.common.io.DefaultInputSplitAssigner;
+import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.api.common.io.InputFormat;
 import org.apache.flink.api.common.io.RichInputFormat;
 import org.apache.flink.api.common.io.statistics.BaseStatistics;
@@ -34,6 +33,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A Flink {@link InputFormat} that can be added as a source to read from Pravega in a Flink batch job.
@@ -41,10 +42,21 @@ import java.util.List;
 @Slf4j
 public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputSplit> {
 
+    // the segment ranges are not split by default
+    static final long NO_TARGET_SPLIT_SIZE = Long.MAX_VALUE;
+
+    // the events are not read ahead by default
+    static final long NO_PREFETCH = 0L;
+
     private static final long serialVersionUID = 1L;
 
     private static final String DEFAULT_CLIENT_SCOPE_NAME = "__NOT_USED";
 
+    // the maximum number of streams whose segments are enumerated concurrently
+    private static final int MAX_ENUMERATION_PARALLELISM = 16;
+
+    private static final long ENUMERATION_TIMEOUT_MILLIS = 60000L;
+
     // The Pravega client configuration.
     private final ClientConfig clientConfig;
 
@@ -57,27 +69,83 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
     // The supplied event deserializer.
     private final DeserializationSchema<T> deserializationSchema;
 
+    // The filter of the events, used to skip segment ranges according to the zone maps of the streams.
+    private final ZoneMapFilter zoneMapFilter;
+
+    // The target size of the input splits, in bytes; larger segment ranges are split at known event boundaries.
+    private final long targetSplitSize;
+
+    // The maximum number of bytes of the events read ahead of their processing, or 0 if they are read on demand.
+    private final long prefetchBufferSize;
+
+    // The codecs of the compressed events, in addition to the built-in ones.
+    private final List<PayloadCodec> compressionCodecs;
+
     // The batch client factory implementation used to read Pravega segments; this instance is reused for all segments read by this input format.
     private transient BatchClientFactory batchClientFactory;
 
-    // The iterator for the currently read input split (i.e. a Pravega segment).
+    // The iterator for the currently read segment range of the input split.
     private transient SegmentIterator<T> segmentIterator;
 
+    // The segment ranges of the input split left to read after the current one.
+    private transient Iterator<SegmentRange> remainingSegmentRanges;
+
+    // The deserializer of the events, which unpacks the event batches.
+    private transient EventBatchDeserializer<T> deserializer;
+
+    // The reader of the input split which reads ahead, if prefetching is enabled, instead of the segment iterator.
+    private transient PrefetchingSegmentReader<T> prefetchingReader;
+
+    // The decompression of the events of the current input split.
+    private transient PayloadCompression compression;
+
+    // The executor which reads ahead the input splits, if prefetching is enabled.
+    private transient ExecutorService prefetchExecutor;
+
+    // The statistics of the streams, computed once per job.
+    private transient PravegaInputStatistics statistics;
+
     /**
      * Creates a new Flink Pravega {@link InputFormat} which can be added as a source to a Flink batch job.
      *
      * @param clientConfig          The pravega client configuration.
      * @param streams               The list of streams to read events from.
      * @param deserializationSchema The implementation to deserialize events from pravega streams.
+     * @param zoneMapFilter         The filter of the events, used to skip segment ranges according to the zone maps.
+     * @param targetSplitSize       The target size of the input splits, in bytes.
+     * @param prefetchBufferSize    The maximum number of bytes of the events read ahead, or 0 to read them on demand.
+     * @param compressionCodecs     The codecs of the compressed events, in addition to the built-in ones.
      */
     protected FlinkPravegaInputFormat(
             ClientConfig clientConfig,
             List<StreamWithBoundaries> streams,
-            DeserializationSchema<T> deserializationSchema) {
+            DeserializationSchema<T> deserializationSchema,
+            ZoneMapFilter zoneMapFilter,
+            long targetSplitSize,
+            long prefetchBufferSize,
+            List<PayloadCodec> compressionCodecs) {
+        Preconditions.checkArgument(targetSplitSize > 0, "targetSplitSize must be > 0");
+        Preconditions.checkArgument(prefetchBufferSize >= 0, "prefetchBufferSize must be >= 0");
         this.clientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig");
         this.clientScope = DEFAULT_CLIENT_SCOPE_NAME;
         this.streams = Preconditions.checkNotNull(streams, "streams");
         this.deserializationSchema = Preconditions.checkNotNull(deserializationSchema, "deserializationSchema");
+        this.zoneMapFilter = Preconditions.checkNotNull(zoneMapFilter, "zoneMapFilter");
+        this.targetSplitSize = targetSplitSize;
+        this.prefetchBufferSize = prefetchBufferSize;
+        this.compressionCodecs = new ArrayList<>(Preconditions.checkNotNull(compressionCodecs, "compressionCodecs"));
+    }
+
+    /**
+     * Creates a copy of this input format which skips the segment ranges which cannot match the given filter. The
+     * streams must have had no other writer than the one maintaining their zone maps, see
+     * {@link io.pravega.connectors.flink.util.ZoneMapIndex}.
+     *
+     * @param zoneMapFilter The filter of the events.
+     */
+    FlinkPravegaInputFormat<T> withZoneMapFilter(ZoneMapFilter zoneMapFilter) {
+        return new FlinkPravegaInputFormat<>(clientConfig, streams, deserializationSchema, zoneMapFilter, targetSplitSize,
+                prefetchBufferSize, compressionCodecs);
     }
 
     // ------------------------------------------------------------------------
@@ -88,14 +156,25 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
     public void openInputFormat() throws IOException {
         super.openInputFormat();
         this.batchClientFactory = BatchClientFactory.withScope(clientScope, clientConfig);
+        if (prefetchBufferSize != NO_PREFETCH) {
+            this.prefetchExecutor = createPrefetchExecutor();
+        }
     }
 
     @Override
     public void closeInputFormat() throws IOException {
+        if (this.prefetchExecutor != null) {
+            this.prefetchExecutor.shutdownNow();
+        }
         // closing the client factory also closes the batch client connection
         this.batchClientFactory.close();
     }
 
+    @VisibleForTesting
+    protected ExecutorService createPrefetchExecutor() {
+        return Executors.newSingleThreadExecutor();
+    }
+
     @Override
     public void configure(Configuration parameters) {
         // nothing to configure
@@ -103,36 +182,69 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
 
     @Override
     public BaseStatistics getStatistics(BaseStatistics cachedStatistics) throws IOException {
-        // no statistics available, by default.
-        return cachedStatistics;
+        if (cachedStatistics instanceof PravegaInputStatistics) {
+            return cachedStatistics;
+        }
+        if (statistics == null) {
+            // getStatistics() is called by the optimizer in the client, so a short-living connection is used here
+            try (BatchClientFactory batchClientFactory = BatchClientFactory.withScope(clientScope, clientConfig);
+                 PayloadCompression compression = new PayloadCompression(null, compressionCodecs)) {
+                statistics = PravegaInputStatistics.compute(batchClientFactory, streams, compression);
+                log.info("Computed the statistics of the input streams: {}", statistics);
+            } catch (RuntimeException e) {
+                log.warn("Failed to compute the statistics of the input streams", e);
+                return cachedStatistics;
+            }
+        }
+        return statistics;
     }
 
     @Override
     public PravegaInputSplit[] createInputSplits(int minNumSplits) throws IOException {
-        List<PravegaInputSplit> splits = new ArrayList<>();
+        List<PravegaInputSplit> splits;
 
         // createInputSplits() is called in the JM, so we have to establish separate
         // short-living connections to Pravega here to retrieve the segments list
         try (
                 BatchClientFactory batchClientFactory = BatchClientFactory.withScope(clientScope, clientConfig)
             ) {
-
-            for (StreamWithBoundaries stream : streams) {
-                Iterator<SegmentRange> segmentRangeIterator =
-                        batchClientFactory.getSegments(stream.getStream(), stream.getFrom(), stream.getTo()).getIterator();
-                while (segmentRangeIterator.hasNext()) {
-                    splits.add(new PravegaInputSplit(splits.size(), segmentRangeIterator.next()));
-                }
+            splits = createSplits(batchClientFactory);
+            if (targetSplitSize != NO_TARGET_SPLIT_SIZE) {
+                // split before pruning, so that the zone maps apply to the smaller segment ranges
+                splits = SegmentRangeReader.subdivideSplits(batchClientFactory, splits, targetSplitSize);
             }
+            if (!zoneMapFilter.equals(ZoneMapFilter.all())) {
+                int count = splits.size();
+                splits = SegmentRangeReader.pruneSplits(batchClientFactory, splits, zoneMapFilter);
+                log.info("Skipped {} of {} input splits which cannot match {}", count - splits.size(), count, zoneMapFilter);
+            }
+        }
+        if (targetSplitSize != NO_TARGET_SPLIT_SIZE) {
+            splits = SegmentRangeReader.coalesceSplits(splits, targetSplitSize);
         }
 
         log.info("Prepared {} input splits", splits.size());
         return splits.toArray(new PravegaInputSplit[splits.size()]);
     }
 
+    // enumerates the segment ranges of the streams concurrently, since each stream costs a round-trip to the controller
+    private List<PravegaInputSplit> createSplits(BatchClientFactory batchClientFactory) throws IOException {
+        if (streams.size() <= 1) {
+            return SegmentRangeReader.createSplits(batchClientFactory, clientConfig.getControllerURI(), streams);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(streams.size(), MAX_ENUMERATION_PARALLELISM));
+        try {
+            return SegmentRangeReader.createSplits(batchClientFactory, clientConfig.getControllerURI(), streams, executor,
+                    ENUMERATION_TIMEOUT_MILLIS);
+        } finally {
+            // interrupts the enumerations still running, which cancelling their futures does not
+            executor.shutdownNow();
+        }
+    }
+
     @Override
     public InputSplitAssigner getInputSplitAssigner(PravegaInputSplit[] inputSplits) {
-        return new DefaultInputSplitAssigner(inputSplits);
+        return new LargestFirstInputSplitAssigner(inputSplits);
     }
 
     // ------------------------------------------------------------------------
@@ -142,28 +254,66 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
     @Override
     public void open(PravegaInputSplit split) throws IOException {
         // create the adapter between Pravega's serializers and Flink's serializers
-        @SuppressWarnings("unchecked")
-        final Serializer<T> deserializer = deserializationSchema instanceof WrappingSerializer
-                ? ((WrappingSerializer<T>) deserializationSchema).getWrappedSerializer()
-                : new FlinkPravegaUtils.FlinkDeserializer<>(deserializationSchema);
+        Serializer<T> eventDeserializer = FlinkPravegaUtils.createDeserializer(deserializationSchema);
+        this.compression = new PayloadCompression(null, compressionCodecs);
+
+        if (prefetchBufferSize != NO_PREFETCH) {
+            // read ahead all the segment ranges of the input split, one after the other
+            this.prefetchingReader = new PrefetchingSegmentReader<>(batchClientFactory, split.getSegmentRanges(), eventDeserializer,
+                    prefetchBufferSize, compression);
+            this.prefetchingReader.start(prefetchExecutor);
+            return;
+        }
+
+        // decompress the events and unpack the event batches, if any
+        this.deserializer = new EventBatchDeserializer<>(eventDeserializer, compression);
 
-        // build a new iterator for each input split.  Note that the endOffset parameter is not used by the Batch API at the moment.
-        this.segmentIterator = batchClientFactory.readSegment(split.getSegmentRange(), deserializer);
+        // build a new iterator for each segment range of the input split, the first one now.
+        this.remainingSegmentRanges = split.getSegmentRanges().iterator();
+        this.segmentIterator = batchClientFactory.readSegment(remainingSegmentRanges.next(), deserializer);
     }
 
     @Override
     public boolean reachedEnd() throws IOException {
-        return !this.segmentIterator.hasNext();
+        if (this.prefetchingReader != null) {
+            return !this.prefetchingReader.hasNext();
+        }
+        if (this.deserializer.hasNext()) {
+            // the other events of an event batch
+            return false;
+        }
+        while (!this.segmentIterator.hasNext()) {
+            if (!remainingSegmentRanges.hasNext()) {
+                return true;
+            }
+            this.segmentIterator.close();
+            this.segmentIterator = batchClientFactory.readSegment(remainingSegmentRanges.next(), deserializer);
+        }
+        return false;
     }
 
     @Override
     public T nextRecord(T t) throws IOException {
-        return this.segmentIterator.next();
+        if (this.prefetchingReader != null) {
+            return this.prefetchingReader.next();
+        }
+        return this.deserializer.hasNext() ? this.deserializer.next() : this.segmentIterator.next();
     }
 
     @Override
     public void close() throws IOException {
-        this.segmentIterator.close();
+        if (this.prefetchingReader != null) {
+            this.prefetchingReader.close();
+            this.prefetchingReader = null;
+        }
+        if (this.segmentIterator != null) {
+            this.segmentIterator.close();
+            this.segmentIterator = null;
+        }
+        if (this.compression != null) {
+            this.compression.close();
+            this.compression = null;
+        }
     }
 
     /**
@@ -183,6 +333,12 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
 
         private DeserializationSchema<T> deserializationSchema;
 
+        private ZoneMapFilter zoneMapFilter = ZoneMapFilter.all();
+
+        private long targetSplitSize = NO_TARGET_SPLIT_SIZE;
+
+        private long prefetchBufferSize = NO_PREFETCH;
+
         protected Builder<T> builder() {
             return this;
         }
@@ -197,13 +353,58 @@ public class FlinkPravegaInputFormat<T> extends RichInputFormat<T, PravegaInputS
             return builder();
         }
 
+        /**
+         * Sets the filter of the events, used to skip the segment ranges which cannot hold a matching event according
+         * to the zone maps of the streams. The events of the segment ranges which are read are not filtered.
+         *
+         * <p>The zone maps only summarize the events of the writer which maintains them, so the streams must have had
+         * no other writer while it ran, otherwise the events of the other writers may be skipped.
+         *
+         * @param zoneMapFilter The filter of the events.
+         */
+        public Builder<T> withZoneMapFilter(ZoneMapFilter zoneMapFilter) {
+            this.zoneMapFilter = Preconditions.checkNotNull(zoneMapFilter, "zoneMapFilter");
+            return builder();
+        }
+
+        /**
+         * Sets the target size of the input splits, so that the large segments are read in parallel and the small
+         * ones are read together.
+         *
+         * The segment ranges larger than the target size are split at the event boundaries recorded by the time index
+         * and the zone maps of their stream, if any, into input splits of at least the target size. The segment ranges
+         * of a stream without such indexes are not split. The segment ranges smaller than the target size are combined
+         * into input splits of about the target size.
+         *
+         * @param targetSplitSize The target size of the input splits, in bytes.
+         */
+        public Builder<T> withTargetSplitSize(long targetSplitSize) {
+            Preconditions.checkArgument(targetSplitSize > 0, "The target split size must be a positive value.");
+            this.targetSplitSize = targetSplitSize;
+            return builder();
+        }
+
+        /**
+         * Enables reading the events ahead of their processing, on a background thread, so that the round-trips to
+         * the segment stores overlap with the processing of the events. The next segment range of an input split is
+         * opened while the events of the current one are still being processed.
+         *
+         * @param prefetchBufferSize The maximum number of bytes of the events read ahead, per parallel instance.
+         */
+        public Builder<T> withPrefetchBufferSize(long prefetchBufferSize) {
+            Preconditions.checkArgument(prefetchBufferSize > 0, "The prefetch buffer size must be a positive value.");
+            this.prefetchBufferSize = prefetchBufferSize;
+            return builder();
+        }
+
         protected DeserializationSchema<T> getDeserializationSchema() {
             Preconditions.checkState(deserializationSchema != null, "Deserialization schema must not be null.");
             return deserializationSchema;
         }
 
         public FlinkPravegaInputFormat<T> build() {
-            return new FlinkPravegaInputFormat<>(getPravegaConfig().getClientConfig(), resolveStreams(), getDeserializationSchema());
+            return new FlinkPravegaInputFormat<>(getPravegaConfig().getClientConfig(), resolveStreams(), getDeserializationSchema(), zoneMapFilter,
+                    targetSplitSize, prefetchBufferSize, getCompressionCodecs());
         }
     }
 }
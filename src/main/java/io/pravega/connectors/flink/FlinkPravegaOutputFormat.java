@@ -14,7 +14,6 @@ import io.pravega.client.ClientConfig;
 import io.pravega.client.EventStreamClientFactory;
 import io.pravega.client.stream.EventStreamWriter;
 import io.pravega.client.stream.EventWriterConfig;
-import io.pravega.client.stream.Serializer;
 import io.pravega.client.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.flink.annotation.VisibleForTesting;
@@ -26,10 +25,9 @@ import org.apache.flink.util.ExceptionUtils;
 import org.apache.flink.util.Preconditions;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -61,30 +59,49 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
     // The router used to partition events within a stream.
     private final PravegaEventRouter<T> eventRouter;
 
-    // Pravega event writer instance.
-    private transient EventStreamWriter<T> pravegaWriter;
+    // Pravega event writer instance, which writes the events serialized by the eventSerializer, or the batches of events.
+    private transient EventStreamWriter<ByteBuffer> pravegaWriter;
+
+    // the serializer of the events, which also compresses the batches of events
+    private transient FlinkPravegaWriter.FlinkSerializer<T> eventSerializer;
 
     // Error which will be detected asynchronously and reported to Flink.
     private final AtomicReference<Throwable> writeError;
 
     // Used to track confirmation from all writes to ensure guaranteed writes upon close.
-    private final AtomicInteger pendingWritesCount;
+    private final PendingWrites pendingWrites;
+
+    // the maximum size of the event batches in bytes, or EventBatcher.NO_BATCHING if the events are not batched
+    private final int maxEventBatchSize;
+
+    // the maximum time an event waits in an open batch, in milliseconds
+    private final long eventBatchLingerMillis;
 
-    private transient ExecutorService executorService;
+    // the codec of the written events, or null if they are not compressed
+    private final PayloadCodec compressionCodec;
+
+    // the batcher of the events, if the events are batched, or null
+    private transient EventBatcher<T> eventBatcher;
 
     /**
      * Creates a new Flink Pravega {@link OutputFormat} which can be added as a sink to a Flink batch job.
      *
-     * @param clientConfig          The Pravega client configuration.
-     * @param stream                The stream to write the events.
-     * @param serializationSchema   The implementation to serialize events that will be written to pravega stream.
-     * @param eventRouter           The event router to be used while writing the events.
+     * @param clientConfig           The Pravega client configuration.
+     * @param stream                 The stream to write the events.
+     * @param serializationSchema    The implementation to serialize events that will be written to pravega stream.
+     * @param eventRouter            The event router to be used while writing the events.
+     * @param maxEventBatchSize      The maximum size of the event batches in bytes, or 0 to not batch the events.
+     * @param eventBatchLingerMillis The maximum time an event waits in a batch, in milliseconds.
+     * @param compressionCodec       The codec of the written events, or null to not compress them.
      */
     protected FlinkPravegaOutputFormat(
             final ClientConfig clientConfig,
             final Stream stream,
             final SerializationSchema<T> serializationSchema,
-            final PravegaEventRouter<T> eventRouter) {
+            final PravegaEventRouter<T> eventRouter,
+            final int maxEventBatchSize,
+            final long eventBatchLingerMillis,
+            final PayloadCodec compressionCodec) {
         this.clientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig");
         Preconditions.checkNotNull(stream, "stream");
         this.stream = stream.getStreamName();
@@ -92,7 +109,14 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
         this.serializationSchema = Preconditions.checkNotNull(serializationSchema, "serializationSchema");
         this.eventRouter = Preconditions.checkNotNull(eventRouter, "eventRouter");
         this.writeError = new AtomicReference<>(null);
-        this.pendingWritesCount = new AtomicInteger(0);
+        this.pendingWrites = new PendingWrites();
+        Preconditions.checkArgument(maxEventBatchSize == EventBatcher.NO_BATCHING || maxEventBatchSize > EventBatch.HEADER_SIZE,
+                "maxEventBatchSize must be > %s", EventBatch.HEADER_SIZE);
+        Preconditions.checkArgument(maxEventBatchSize == EventBatcher.NO_BATCHING || eventBatchLingerMillis > 0,
+                "eventBatchLingerMillis must be > 0");
+        this.maxEventBatchSize = maxEventBatchSize;
+        this.eventBatchLingerMillis = eventBatchLingerMillis;
+        this.compressionCodec = compressionCodec;
     }
 
 
@@ -103,19 +127,46 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
 
     @Override
     public void open(int taskNumber, int numTasks) throws IOException {
-        Serializer<T> eventSerializer = new FlinkPravegaWriter.FlinkSerializer<>(serializationSchema);
+        eventSerializer = new FlinkPravegaWriter.FlinkSerializer<>(serializationSchema,
+                compressionCodec != null ? new PayloadCompression(compressionCodec, Collections.emptyList()) : null);
         EventWriterConfig writerConfig = EventWriterConfig.builder().build();
         clientFactory = createClientFactory(scope, clientConfig);
-        pravegaWriter = clientFactory.createEventWriter(stream, eventSerializer, writerConfig);
-        this.executorService = createExecutorService();
+        pravegaWriter = clientFactory.createEventWriter(stream, new FlinkPravegaWriter.SerializedEventSerializer(), writerConfig);
+        if (maxEventBatchSize != EventBatcher.NO_BATCHING) {
+            eventBatcher = new EventBatcher<>(new FlinkPravegaWriter.FlinkSerializer<>(serializationSchema),
+                    maxEventBatchSize, eventBatchLingerMillis);
+        }
     }
 
     @Override
     public void writeRecord(T record) throws IOException {
         checkWriteError();
-        this.pendingWritesCount.incrementAndGet();
-        final CompletableFuture<Void> future = pravegaWriter.writeEvent(eventRouter.getRoutingKey(record), record);
-        future.whenCompleteAsync(
+        final String routingKey = eventRouter.getRoutingKey(record);
+        if (eventBatcher == null) {
+            writeEvent(routingKey, eventSerializer.serialize(record));
+            return;
+        }
+        // the linger time is checked on each record, since a batch job has no idle time to fill
+        final long now = System.currentTimeMillis();
+        EventBatch closed = eventBatcher.add(routingKey, record, now);
+        if (closed != null) {
+            writeBatch(closed);
+        }
+        for (EventBatch batch : eventBatcher.pollExpired(now)) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(EventBatch batch) {
+        // the batched events are compressed together
+        writeEvent(batch.getRoutingKey(), eventSerializer.compress(batch.toByteBuffer()));
+    }
+
+    private void writeEvent(String routingKey, ByteBuffer event) {
+        this.pendingWrites.register();
+        final CompletableFuture<Void> future = pravegaWriter.writeEvent(routingKey, event);
+        // the callback runs on the thread completing the write, since it does not block
+        future.whenComplete(
                 (result, e) -> {
                     if (e != null) {
                         log.warn("Detected a write failure: {}", e);
@@ -124,12 +175,8 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
                         // finding the root cause. Storing all errors will not be feasible.
                         writeError.compareAndSet(null, e);
                     }
-                    synchronized (this) {
-                        pendingWritesCount.decrementAndGet();
-                        this.notify();
-                    }
-                },
-                executorService
+                    pendingWrites.complete();
+                }
         );
     }
 
@@ -149,12 +196,8 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
             clientFactory.close();
         }
 
-        if (executorService != null) {
-            try {
-                executorService.shutdown();
-            } catch (Exception e) {
-                exception = ExceptionUtils.firstOrSuppressed(e, exception);
-            }
+        if (eventSerializer != null) {
+            eventSerializer.close();
         }
 
         if (exception != null) {
@@ -164,18 +207,15 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
     }
 
     private void flushAndVerify() throws IOException {
+        if (eventBatcher != null) {
+            for (EventBatch batch : eventBatcher.drain()) {
+                writeBatch(batch);
+            }
+        }
         pravegaWriter.flush();
 
         // Wait until all errors, if any, have been recorded.
-        synchronized (this) {
-            while (this.pendingWritesCount.get() > 0) {
-                try {
-                    this.wait();
-                } catch (InterruptedException e) {
-                    throw new IOException("received interrupted exception while waiting for the writes to complete", e);
-                }
-            }
-        }
+        this.pendingWrites.awaitCompletion();
 
         // Verify that no events have been lost so far.
         checkWriteError();
@@ -194,11 +234,6 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
         return EventStreamClientFactory.withScope(scopeName, clientConfig);
     }
 
-    @VisibleForTesting
-    protected ExecutorService createExecutorService() {
-        return Executors.newSingleThreadExecutor();
-    }
-
     @VisibleForTesting
     protected SerializationSchema<T> getSerializationSchema() {
         return serializationSchema;
@@ -220,8 +255,8 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
     }
 
     @VisibleForTesting
-    protected AtomicInteger getPendingWritesCount() {
-        return pendingWritesCount;
+    protected int getPendingWritesCount() {
+        return pendingWrites.count();
     }
 
     @VisibleForTesting
@@ -274,7 +309,10 @@ public class FlinkPravegaOutputFormat<T> extends RichOutputFormat<T> {
                             getPravegaConfig().getClientConfig(),
                             resolveStream(),
                             serializationSchema,
-                            eventRouter
+                            eventRouter,
+                            getMaxEventBatchSize(),
+                            getEventBatchLingerMillis(),
+                            getCompressionCodec()
                     );
         }
     }
@@ -10,29 +10,44 @@
 package io.pravega.connectors.flink;
 
 import com.google.common.base.Preconditions;
+import io.pravega.client.BatchClientFactory;
 import io.pravega.client.ClientConfig;
 import io.pravega.client.admin.ReaderGroupManager;
+import io.pravega.client.admin.StreamManager;
 import io.pravega.client.stream.Checkpoint;
 import io.pravega.client.stream.EventRead;
 import io.pravega.client.stream.EventStreamReader;
 import io.pravega.client.stream.ReaderConfig;
 import io.pravega.client.stream.ReaderGroup;
 import io.pravega.client.stream.ReaderGroupConfig;
+import io.pravega.client.stream.Serializer;
 import io.pravega.client.stream.Stream;
 import io.pravega.client.stream.StreamCut;
 import io.pravega.client.stream.TruncatedDataException;
+import io.pravega.client.stream.impl.ByteBufferSerializer;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
 import io.pravega.connectors.flink.watermark.AssignerWithTimeWindows;
+import io.pravega.connectors.flink.watermark.MultiStreamWatermarkPolicy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.time.Time;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.ClosureCleaner;
 import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
 import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MeterView;
 import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
 import org.apache.flink.runtime.checkpoint.MasterTriggerRestoreHook;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
 import org.apache.flink.streaming.api.checkpoint.ExternallyInducedSource;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
@@ -41,14 +56,21 @@ import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
 import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
 import org.apache.flink.util.FlinkException;
+import org.apache.flink.util.InstantiationUtil;
 import org.apache.flink.util.SerializedValue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
+import static io.pravega.connectors.flink.util.FlinkPravegaUtils.createDeserializer;
 import static io.pravega.connectors.flink.util.FlinkPravegaUtils.createPravegaReader;
 
 /**
@@ -59,7 +81,7 @@ import static io.pravega.connectors.flink.util.FlinkPravegaUtils.createPravegaRe
 @Slf4j
 public class FlinkPravegaReader<T>
         extends RichParallelSourceFunction<T>
-        implements ResultTypeQueryable<T>, ExternallyInducedSource<T, Checkpoint> {
+        implements ResultTypeQueryable<T>, ExternallyInducedSource<T, Checkpoint>, CheckpointedFunction {
 
     // ----- metrics field constants -----
 
@@ -79,12 +101,89 @@ public class FlinkPravegaReader<T>
 
     protected static final String STREAM_NAMES_METRICS_GAUGE = "streams";
 
-    protected static final String SEGMENT_POSITIONS_METRICS_GAUGE = "segmentPositions";
+    protected static final String WATERMARK_LAG_METRICS_GAUGE = "watermarkLag";
+
+    protected static final String DESERIALIZATION_QUEUE_DEPTH_METRICS_GAUGE = "deserializationQueueDepth";
+
+    protected static final String DESERIALIZATION_IN_FLIGHT_BYTES_METRICS_GAUGE = "deserializationInFlightBytes";
+
+    protected static final String DESERIALIZATION_TIME_METRICS_HISTOGRAM = "deserializationTimeNanos";
+
+    protected static final String ALIGNMENT_PAUSED_TIME_METRICS_COUNTER = "alignmentPausedTimeMillis";
+
+    // Pravega reader metric name for the ratio of the decompressed size of the compressed events to their size
+    protected static final String COMPRESSION_RATIO_METRICS_GAUGE = "compressionRatio";
+
+    // Pravega reader metric name for the time spent decompressing the events
+    protected static final String DECOMPRESSION_TIME_METRICS_COUNTER = "decompressionTimeNanos";
+
+    // Pravega reader metric name for the time spent throttled by the read rate limit
+    protected static final String READ_THROTTLED_TIME_METRICS_COUNTER = "readThrottledTimeMillis";
+
+    // Pravega reader metric name for the number of events read
+    protected static final String EVENTS_READ_METRICS_COUNTER = "eventsRead";
+
+    // Pravega reader metric name for the number of events read per second
+    protected static final String EVENTS_READ_RATE_METRICS_METER = "eventsReadPerSecond";
+
+    // Pravega reader metric name for the number of bytes read
+    protected static final String BYTES_READ_METRICS_COUNTER = "bytesRead";
+
+    // Pravega reader metric name for the number of bytes read per second
+    protected static final String BYTES_READ_RATE_METRICS_METER = "bytesReadPerSecond";
+
+    // Pravega reader metric name for the number of reads which returned neither an event nor a checkpoint
+    protected static final String EMPTY_READS_METRICS_COUNTER = "emptyReads";
+
+    // Pravega reader metric name for the time spent waiting for the next event
+    protected static final String READ_WAIT_TIME_METRICS_HISTOGRAM = "readWaitTimeNanos";
+
+    // Pravega reader metric name for the difference between the processing time and the timestamp of the events
+    protected static final String EVENT_TIME_LAG_METRICS_HISTOGRAM = "eventTimeLagMillis";
 
     protected static final String SEPARATOR = ",";
 
     private static final long serialVersionUID = 1L;
 
+    // upper bound for the pre-allocated capacity of the emission batch
+    private static final int MAX_INITIAL_BATCH_CAPACITY = 1024;
+
+    // the maximum number of events waiting in the asynchronous deserialization, per deserialization thread
+    private static final int MAX_PENDING_EVENTS_PER_DESERIALIZATION_THREAD = 1024;
+
+    // the number of recent samples kept by the histogram metrics
+    private static final int HISTOGRAM_WINDOW_SIZE = 1024;
+
+    // the time span over which the meters compute their rates
+    private static final int METER_TIME_SPAN_SECONDS = 60;
+
+    // the time after which the cached metrics of the reader group are refreshed
+    private static final long READER_GROUP_METRICS_TTL_MILLIS = 10000L;
+
+    // the number of consecutive empty reads after which a bounded reader checks whether the reader group is done
+    private static final int BOUNDED_READ_CHECK_EMPTY_READS = 2;
+
+    // the minimum interval between the checks of a bounded reader, which query the reader group state
+    private static final long BOUNDED_READ_CHECK_INTERVAL_MILLIS = 1000L;
+
+    // the name prefix of the global aggregate which aligns the parallel instances of a reader group
+    private static final String WATERMARK_ALIGNMENT_AGGREGATE_PREFIX = "pravega-watermark-alignment-";
+
+    // the interval between the updates of the global event time for the watermark alignment
+    private static final long WATERMARK_ALIGNMENT_UPDATE_INTERVAL_MILLIS = 1000L;
+
+    // the interval between the polls of the read rate limit provider
+    private static final long READ_RATE_LIMIT_UPDATE_INTERVAL_MILLIS = 1000L;
+
+    // the name suffix of the reader group which delivers the checkpoints to the sources in the catch-up phase
+    private static final String CATCH_UP_READER_GROUP_SUFFIX = "-catchup";
+
+    // the name of the operator state which holds the segment ranges left to read in the catch-up phase
+    private static final String CATCH_UP_STATE_NAME = "pravega-catch-up-segment-ranges";
+
+    // the interval between the polls for checkpoints while reading the segment ranges in the catch-up phase
+    private static final long CATCH_UP_CHECKPOINT_POLL_INTERVAL_MILLIS = 100L;
+
     // ----- configuration fields -----
 
     // the uuid of the checkpoint hook, used to store state and resume existing state from savepoints
@@ -108,6 +207,15 @@ public class FlinkPravegaReader<T>
     // The supplied event timestamp and watermark assigner.
     final SerializedValue<AssignerWithTimeWindows<T>> assignerWithTimeWindows;
 
+    // The policy which combines the watermarks of the streams (only in event-time mode).
+    final MultiStreamWatermarkPolicy watermarkPolicy;
+
+    // the time without any event after which the source is marked as temporarily idle, or 0 to disable
+    final Time idleTimeout;
+
+    // the maximum drift between the event time of this source and the minimum event time of its reader group, or 0 to disable
+    final Time maxWatermarkDrift;
+
     // the timeout for reading events from Pravega
     final Time eventReadTimeout;
 
@@ -117,6 +225,28 @@ public class FlinkPravegaReader<T>
     // flag to enable/disable metrics
     final boolean enableMetrics;
 
+    // the maximum number of events emitted under a single acquisition of the checkpoint lock
+    final int maxEventsPerBatch;
+
+    // the maximum time spent draining events into a single batch
+    final Time maxBatchTime;
+
+    // the number of threads deserializing events asynchronously, or 0 to deserialize them on the source thread
+    final int deserializationParallelism;
+
+    // the maximum number of raw bytes submitted to, but not yet emitted by, the asynchronous deserialization
+    final long maxInFlightDeserializationBytes;
+
+    // the streams read with the batch client before joining the reader group, each up to the start of the
+    // stream in the reader group, or empty to disable the catch-up phase
+    final List<StreamWithBoundaries> catchUpStreams;
+
+    // the provider of the read rate limit of the reader group, or null to disable
+    final ReadRateLimitProvider readRateLimitProvider;
+
+    // the codecs of the compressed events, in addition to the built-in ones
+    final List<PayloadCodec> compressionCodecs;
+
     // ----- runtime fields -----
 
     // Flag to terminate the source. volatile, because 'stop()' and 'cancel()'
@@ -130,6 +260,48 @@ public class FlinkPravegaReader<T>
     // Pravega reader group
     private transient ReaderGroup readerGroup = null;
 
+    // whether the source is marked as temporarily idle. volatile, because it is read by the watermark emitter
+    private transient volatile boolean markedIdle;
+
+    // the id of the last triggered checkpoint
+    private transient long lastCheckpointId;
+
+    // the segment ranges left to read by this source in the catch-up phase, restored or assigned when opened
+    private transient List<PravegaInputSplit> catchUpSplits;
+
+    // the operator state holding the segment ranges left to read in the catch-up phase
+    private transient ListState<PravegaInputSplit> catchUpState;
+
+    // the batch client factory of the catch-up phase
+    private transient BatchClientFactory batchClientFactory;
+
+    // the reader of the segment ranges in the catch-up phase, or null if there is none
+    private transient SegmentRangeReader<T> catchUpSplitReader;
+
+    // the deserializer of the reader which deserializes on the source thread, which unpacks the event batches
+    private transient EventBatchDeserializer<T> eventBatchDeserializer;
+
+    // the reader of the catch-up reader group, which delivers the checkpoints until this source is in the reader group
+    private transient EventStreamReader<ByteBuffer> catchUpCheckpointReader;
+
+    // the checkpoint at which this source joins the reader group, to be triggered once it has joined
+    private transient String handoffCheckpointName;
+
+    // the limiter of the read rate of this source, or null if there is none
+    private transient ReadRateLimiter readRateLimiter;
+
+    // the metrics of the reading loop, which are registered only if the metrics are enabled
+    private transient ReaderMetrics readerMetrics;
+
+    // the decompression of the events, on the source thread
+    private transient PayloadCompression compression;
+
+    // the cached metrics of the reader group, reported by the first subtask only, or null
+    private transient ReaderGroupMetricsCache readerGroupMetricsCache;
+
+    // the earliest time of the next check whether a bounded reader group is done
+    private transient long nextBoundedReadCheckTime;
+
     // ------------------------------------------------------------------------
 
     /**
@@ -153,13 +325,27 @@ public class FlinkPravegaReader<T>
      * @param eventReadTimeout          The event read timeout.
      * @param checkpointInitiateTimeout The checkpoint initiation timeout.
      * @param enableMetrics             Flag to indicate whether metrics needs to be enabled or not.
+     * @param maxEventsPerBatch         The maximum number of events emitted under a single acquisition of the checkpoint lock.
+     * @param maxBatchTime              The maximum time spent draining events into a single batch.
+     * @param deserializationParallelism      The number of threads deserializing events asynchronously, or 0 to deserialize them on the source thread.
+     * @param maxInFlightDeserializationBytes The maximum number of raw bytes submitted to, but not yet emitted by, the asynchronous deserialization.
+     * @param watermarkPolicy           The policy which combines the watermarks of the streams (only in event-time mode).
+     * @param idleTimeout               The time without any event after which the source is marked as temporarily idle, or 0 to disable.
+     * @param maxWatermarkDrift         The maximum drift between the event time of this source and the minimum event time of its reader group, or 0 to disable (only in event-time mode).
+     * @param catchUpStreams            The streams read with the batch client before joining the reader group, or empty to disable the catch-up phase (only in processing-time mode).
+     * @param readRateLimitProvider     The provider of the read rate limit of the reader group, or null to disable.
+     * @param compressionCodecs         The codecs of the compressed events, in addition to the built-in ones.
      */
     protected FlinkPravegaReader(String hookUid, ClientConfig clientConfig,
                                  ReaderGroupConfig readerGroupConfig, String readerGroupScope, String readerGroupName,
                                  DeserializationSchema<T> deserializationSchema,
                                  SerializedValue<AssignerWithTimeWindows<T>> assignerWithTimeWindows,
                                  Time eventReadTimeout, Time checkpointInitiateTimeout,
-                                 boolean enableMetrics) {
+                                 boolean enableMetrics, int maxEventsPerBatch, Time maxBatchTime,
+                                 int deserializationParallelism, long maxInFlightDeserializationBytes,
+                                 MultiStreamWatermarkPolicy watermarkPolicy, Time idleTimeout,
+                                 Time maxWatermarkDrift, List<StreamWithBoundaries> catchUpStreams,
+                                 ReadRateLimitProvider readRateLimitProvider, List<PayloadCodec> compressionCodecs) {
 
         this.hookUid = Preconditions.checkNotNull(hookUid, "hookUid");
         this.clientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig");
@@ -171,6 +357,25 @@ public class FlinkPravegaReader<T>
         this.checkpointInitiateTimeout = Preconditions.checkNotNull(checkpointInitiateTimeout, "checkpointInitiateTimeout");
         this.enableMetrics = enableMetrics;
         this.assignerWithTimeWindows = assignerWithTimeWindows;
+        Preconditions.checkArgument(maxEventsPerBatch > 0, "maxEventsPerBatch must be > 0");
+        this.maxEventsPerBatch = maxEventsPerBatch;
+        this.maxBatchTime = Preconditions.checkNotNull(maxBatchTime, "maxBatchTime");
+        Preconditions.checkArgument(deserializationParallelism >= 0, "deserializationParallelism must be >= 0");
+        Preconditions.checkArgument(maxInFlightDeserializationBytes > 0, "maxInFlightDeserializationBytes must be > 0");
+        this.deserializationParallelism = deserializationParallelism;
+        this.maxInFlightDeserializationBytes = maxInFlightDeserializationBytes;
+        this.watermarkPolicy = Preconditions.checkNotNull(watermarkPolicy, "watermarkPolicy");
+        this.idleTimeout = Preconditions.checkNotNull(idleTimeout, "idleTimeout");
+        this.maxWatermarkDrift = Preconditions.checkNotNull(maxWatermarkDrift, "maxWatermarkDrift");
+        Preconditions.checkArgument(!isWatermarkAlignmentEnabled() || isEventTimeMode(),
+                "The watermark alignment requires a timestamp assigner");
+        Preconditions.checkArgument(!isWatermarkAlignmentEnabled() || idleTimeout.toMilliseconds() > 0,
+                "The watermark alignment requires an idle timeout");
+        this.catchUpStreams = new ArrayList<>(Preconditions.checkNotNull(catchUpStreams, "catchUpStreams"));
+        Preconditions.checkArgument(!isCatchUpEnabled() || !isEventTimeMode(),
+                "The catch-up phase is not supported in event-time mode");
+        this.readRateLimitProvider = readRateLimitProvider;
+        this.compressionCodecs = new ArrayList<>(Preconditions.checkNotNull(compressionCodecs, "compressionCodecs"));
     }
 
     /**
@@ -181,9 +386,8 @@ public class FlinkPravegaReader<T>
         //       See https://github.com/pravega/flink-connectors/issues/130.
         log.info("Creating reader group: {}/{} for the Flink job", this.readerGroupScope, this.readerGroupName);
         createReaderGroup();
-        if (isEventTimeMode()) {
-            Preconditions.checkArgument(readerGroup.getStreamNames().size() == 1,
-                    "Only 1 Pravega stream is allowed in the event-time mode");
+        if (isCatchUpEnabled()) {
+            createCatchUpReaderGroup();
         }
     }
 
@@ -191,6 +395,45 @@ public class FlinkPravegaReader<T>
         return assignerWithTimeWindows != null;
     }
 
+    private boolean isAsyncDeserializationEnabled() {
+        return deserializationParallelism > 0;
+    }
+
+    private boolean isWatermarkAlignmentEnabled() {
+        return maxWatermarkDrift.toMilliseconds() > 0;
+    }
+
+    private boolean isCatchUpEnabled() {
+        return !catchUpStreams.isEmpty();
+    }
+
+    private boolean isBounded() {
+        return readerGroupConfig.getEndingStreamCuts().values().stream().noneMatch(StreamCut.UNBOUNDED::equals);
+    }
+
+    /**
+     * Returns true if all the streams have an end stream cut, and the reader group has read them up to it.
+     *
+     * <p>The segments which reach their end stream cut are removed from the reader group, so the unread bytes
+     * drop to zero only once every segment of every stream has been read up to its end stream cut.
+     * As the check queries the reader group state, which is a round trip to Pravega, it is only made once the
+     * reader has read nothing for a few consecutive reads, and at most once per check interval. The unread bytes
+     * are computed from the positions of the readers, so the end may only be detected after the next checkpoint.
+     *
+     * @param emptyReads The number of consecutive reads which returned neither an event nor a checkpoint.
+     */
+    private boolean isBoundedReadCompleted(int emptyReads) {
+        if (emptyReads < BOUNDED_READ_CHECK_EMPTY_READS || !isBounded()) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (now < nextBoundedReadCheckTime) {
+            return false;
+        }
+        nextBoundedReadCheckTime = now + BOUNDED_READ_CHECK_INTERVAL_MILLIS;
+        return readerGroup.getMetrics().unreadBytes() == 0;
+    }
+
     private long autoWatermarkInterval() {
         return getRuntimeContext().getExecutionConfig().getAutoWatermarkInterval();
     }
@@ -198,7 +441,8 @@ public class FlinkPravegaReader<T>
     private class PeriodicWatermarkEmitter implements ProcessingTimeCallback {
 
         private EventStreamReader<?> pravegaReader;
-        private Stream stream;
+        private final List<StreamWatermark> streamWatermarks;
+        private final List<Watermark> currentWatermarks;
         private final SourceContext<?> ctx;
         private final ProcessingTimeService timerService;
         private long lastWatermarkTimestamp;
@@ -208,11 +452,17 @@ public class FlinkPravegaReader<T>
                 EventStreamReader<?> pravegaReader, SourceContext<?> ctx, ClassLoader userCodeClassLoader,
                 ProcessingTimeService timerService) throws Exception {
             this.pravegaReader = Preconditions.checkNotNull(pravegaReader);
-            this.stream = Stream.of(readerGroup.getStreamNames().iterator().next());
+            this.streamWatermarks = readerGroup.getStreamNames().stream()
+                    .map(scopedStream -> new StreamWatermark(Stream.of(scopedStream)))
+                    .collect(Collectors.toList());
+            this.currentWatermarks = new ArrayList<>(streamWatermarks.size());
             this.ctx = Preconditions.checkNotNull(ctx);
             this.timerService = Preconditions.checkNotNull(timerService);
             this.lastWatermarkTimestamp = Long.MIN_VALUE;
             this.userAssigner = assignerWithTimeWindows.deserializeValue(userCodeClassLoader);
+            if (enableMetrics) {
+                registerWatermarkMetrics(streamWatermarks);
+            }
         }
 
         protected void start() {
@@ -221,7 +471,22 @@ public class FlinkPravegaReader<T>
 
         @Override
         public void onProcessingTime(long timestamp) {
-            Watermark watermark = userAssigner.getWatermark(pravegaReader.getCurrentTimeWindow(stream));
+            // emitting a watermark would make the idle source active again
+            if (markedIdle) {
+                timerService.registerTimer(timerService.getCurrentProcessingTime() + autoWatermarkInterval(), this);
+                return;
+            }
+
+            // query the watermark of every stream and combine them according to the policy
+            currentWatermarks.clear();
+            for (StreamWatermark streamWatermark : streamWatermarks) {
+                Watermark streamMark = userAssigner.getWatermark(pravegaReader.getCurrentTimeWindow(streamWatermark.stream));
+                if (streamMark != null) {
+                    streamWatermark.timestamp = streamMark.getTimestamp();
+                }
+                currentWatermarks.add(streamMark);
+            }
+            Watermark watermark = watermarkPolicy.combine(currentWatermarks);
 
             if (watermark != null && watermark.getTimestamp() > lastWatermarkTimestamp) {
                 lastWatermarkTimestamp = watermark.getTimestamp();
@@ -234,6 +499,21 @@ public class FlinkPravegaReader<T>
         }
     }
 
+    /**
+     * The latest watermark of a stream read by this source.
+     */
+    private static class StreamWatermark {
+
+        private final Stream stream;
+
+        // read by the metrics
+        private volatile long timestamp = Long.MIN_VALUE;
+
+        private StreamWatermark(Stream stream) {
+            this.stream = stream;
+        }
+    }
+
     // ------------------------------------------------------------------------
     //  source function methods
     // ------------------------------------------------------------------------
@@ -243,65 +523,438 @@ public class FlinkPravegaReader<T>
 
         final String readerId = getRuntimeContext().getTaskNameWithSubtasks();
 
+        if (catchUpSplitReader != null && !runCatchUp(ctx, readerId)) {
+            return;
+        }
+
         log.info("{} : Creating Pravega reader with ID '{}' for controller URI: {}",
                 getRuntimeContext().getTaskNameWithSubtasks(), readerId, this.clientConfig.getControllerURI());
 
-        try (EventStreamReader<T> pravegaReader = createEventStreamReader(readerId)) {
+        if (isAsyncDeserializationEnabled()) {
+            try (EventStreamReader<ByteBuffer> pravegaReader = createRawEventStreamReader(readerId);
+                 AsyncDeserializationPipeline<T> pipeline = createDeserializationPipeline()) {
+
+                log.info("Starting Pravega reader '{}' for controller URI {} with {} deserialization threads", readerId,
+                        this.clientConfig.getControllerURI(), this.deserializationParallelism);
+                triggerHandoffCheckpoint();
+
+                EventEmitter emitter = createEventEmitter(pravegaReader, ctx, readerId);
+                try {
+                    runWithAsyncDeserialization(pravegaReader, pipeline, emitter, readerId);
+                } finally {
+                    emitter.close();
+                }
+            }
+        } else {
+            try (EventStreamReader<T> pravegaReader = createEventStreamReader(readerId)) {
+
+                log.info("Starting Pravega reader '{}' for controller URI {}", readerId, this.clientConfig.getControllerURI());
+                triggerHandoffCheckpoint();
+
+                EventEmitter emitter = createEventEmitter(pravegaReader, ctx, readerId);
+                try {
+                    runWithBatchedEmission(pravegaReader, emitter, readerId);
+                } finally {
+                    emitter.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The catch-up loop which reads the segment ranges assigned to this source with the batch client, before the source
+     * joins the reader group. Meanwhile, the checkpoints are delivered by the catch-up reader group, which has no event
+     * to read, and the segment ranges left to read are stored in the operator state.
+     *
+     * <p>Once the segment ranges are read, the source waits for the next checkpoint, and joins the reader group before
+     * triggering it. The later checkpoints are then delivered by the reader group, see {@link #leaveCatchUpReaderGroup}.
+     *
+     * @return true to proceed with the reader group, false if the source was cancelled or reached the end of stream.
+     */
+    private boolean runCatchUp(SourceContext<T> ctx, String readerId) throws Exception {
+        log.info("Starting the catch-up phase of reader '{}' with {} segment ranges", readerId, catchUpSplits.size());
+        catchUpCheckpointReader = createCatchUpCheckpointReader(readerId);
+
+        if (!readCatchUpSplits(ctx, readerId)) {
+            return false;
+        }
+        log.info("Completed the catch-up phase of reader '{}'", readerId);
 
-            log.info("Starting Pravega reader '{}' for controller URI {}", readerId, this.clientConfig.getControllerURI());
+        if (!((StreamingRuntimeContext) getRuntimeContext()).isCheckpointingEnabled()) {
+            // no checkpoint will ever be delivered
+            closeCatchUpCheckpointReader();
+            return true;
+        }
 
-            long previousTimestamp = Long.MIN_VALUE;
-            AssignerWithTimeWindows<T> assigner = null;
-            // If it is event time, register a watermark emitter
-            if (isEventTimeMode()) {
-                assigner = assignerWithTimeWindows.deserializeValue(getRuntimeContext().getUserCodeClassLoader());
-                PeriodicWatermarkEmitter periodicEmitter = new PeriodicWatermarkEmitter(
-                        pravegaReader,
-                        ctx,
-                        getRuntimeContext().getUserCodeClassLoader(),
-                        ((StreamingRuntimeContext) getRuntimeContext()).getProcessingTimeService());
+        while (this.running) {
+            EventRead<ByteBuffer> eventRead = catchUpCheckpointReader.readNextEvent(eventReadTimeout.toMilliseconds());
+            if (eventRead.isCheckpoint()) {
+                handoffCheckpointName = eventRead.getCheckpointName();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the segment ranges of the catch-up phase, polling the catch-up reader group for checkpoints in between.
+     *
+     * @return true once all the segment ranges are read, false if the source was cancelled or reached the end of stream.
+     */
+    private boolean readCatchUpSplits(SourceContext<T> ctx, String readerId) throws Exception {
+        long nextPollTime = 0L;
+        while (this.running && catchUpSplitReader.hasNext()) {
+            throttle();
+            final T event = catchUpSplitReader.next();
+            recordEvent(catchUpSplitReader.getReadLength());
+            if (this.deserializationSchema.isEndOfStream(event)) {
+                // Found stream end marker.
+                log.info("Reached end of stream for reader: {}", readerId);
+                return false;
+            }
+            synchronized (ctx.getCheckpointLock()) {
+                ctx.collect(event);
+                // the reader only advances past whole event batches, so their other events are emitted along
+                while (catchUpSplitReader.hasBatchedNext()) {
+                    final T batchedEvent = catchUpSplitReader.next();
+                    if (this.deserializationSchema.isEndOfStream(batchedEvent)) {
+                        log.info("Reached end of stream for reader: {}", readerId);
+                        return false;
+                    }
+                    ctx.collect(batchedEvent);
+                    readerMetrics.recordEvent(0);
+                }
+                catchUpSplitReader.commit();
+            }
 
-                log.info("Periodic Watermark Emitter for Reader ID: {} has started with an interval of {}", readerId,
-                        autoWatermarkInterval());
-                periodicEmitter.start();
+            final long now = System.currentTimeMillis();
+            if (now >= nextPollTime) {
+                EventRead<ByteBuffer> eventRead = catchUpCheckpointReader.readNextEvent(0L);
+                if (eventRead.isCheckpoint()) {
+                    triggerCheckpoint(parseCheckpointId(eventRead.getCheckpointName()));
+                }
+                nextPollTime = now + CATCH_UP_CHECKPOINT_POLL_INTERVAL_MILLIS;
             }
+        }
+        if (this.running) {
+            // no segment range is left to read
+            synchronized (ctx.getCheckpointLock()) {
+                catchUpSplitReader.commit();
+            }
+        }
+        return this.running;
+    }
 
-            // main work loop, which this task is running
-            while (this.running) {
-                EventRead<T> eventRead;
+    /**
+     * The main work loop which deserializes the events on the source thread and emits them in batches.
+     */
+    private void runWithBatchedEmission(EventStreamReader<T> pravegaReader, EventEmitter emitter, String readerId) throws Exception {
+        final boolean batchMode = maxEventsPerBatch > 1;
+        final long readTimeout = eventReadTimeout.toMilliseconds();
+        final List<T> batch = new ArrayList<>(Math.min(maxEventsPerBatch, MAX_INITIAL_BATCH_CAPACITY));
+        int emptyReads = 0;
+        while (this.running) {
+            // read a single event at a time while pausing for the watermark alignment
+            final int batchLimit = emitter.pauseIfAhead() ? 1 : maxEventsPerBatch;
+
+            // drain events into the batch until an idle read, a checkpoint, the end of stream or a batch limit
+            final long batchStartTime = batchMode ? System.currentTimeMillis() : 0L;
+            long timeout = readTimeout;
+            boolean endOfStream = false;
+            EventRead<T> eventRead = null;
+            while (this.running && batch.size() < batchLimit) {
+                throttle();
                 try {
-                    eventRead = pravegaReader.readNextEvent(eventReadTimeout.toMilliseconds());
+                    final long readStartTime = readerMetrics.startRead();
+                    eventRead = pravegaReader.readNextEvent(timeout);
+                    readerMetrics.endRead(readStartTime);
                 } catch (TruncatedDataException e) {
                     // Data is truncated, Force the reader going forward to the next available event
+                    eventRead = null;
                     continue;
                 }
                 final T event = eventRead.getEvent();
+                if (event == null) {
+                    // either no event was available within the timeout or the read marks a checkpoint
+                    if (!eventRead.isCheckpoint()) {
+                        readerMetrics.recordEmptyRead();
+                    }
+                    break;
+                }
 
-                // emit the event, if one was carried
-                if (event != null) {
-                    if (this.deserializationSchema.isEndOfStream(event)) {
-                        // Found stream end marker.
-                        // TODO: Handle scenario when reading from multiple segments. This will be cleaned up as part of:
-                        //       https://github.com/pravega/pravega/issues/551.
-                        log.info("Reached end of stream for reader: {}", readerId);
-                        return;
+                if (this.deserializationSchema.isEndOfStream(event)) {
+                    endOfStream = true;
+                    break;
+                }
+                batch.add(event);
+                recordEvent(eventRead.getEventPointer().asImpl().getEventLength());
+
+                // the other events of an event batch, whose bytes are recorded along with the first one
+                while (eventBatchDeserializer != null && eventBatchDeserializer.hasNext()) {
+                    final T batchedEvent = eventBatchDeserializer.next();
+                    if (this.deserializationSchema.isEndOfStream(batchedEvent)) {
+                        eventBatchDeserializer.clear();
+                        endOfStream = true;
+                        break;
                     }
+                    batch.add(batchedEvent);
+                    readerMetrics.recordEvent(0);
+                }
+                if (endOfStream) {
+                    break;
+                }
 
-                    synchronized (ctx.getCheckpointLock()) {
-                        if (isEventTimeMode()) {
-                            long currentTimestamp = assigner.extractTimestamp(event, previousTimestamp);
-                            ctx.collectWithTimestamp(event, currentTimestamp);
-                            previousTimestamp = currentTimestamp;
-                        } else {
-                            ctx.collect(event);
-                        }
+                if (batchMode) {
+                    long remaining = maxBatchTime.toMilliseconds() - (System.currentTimeMillis() - batchStartTime);
+                    if (remaining <= 0) {
+                        break;
                     }
+                    timeout = Math.min(readTimeout, remaining);
                 }
+            }
 
-                // if the read marks a checkpoint, trigger the checkpoint
-                if (eventRead.isCheckpoint()) {
-                    triggerCheckpoint(eventRead.getCheckpointName());
+            // emit the drained events, if any, under a single acquisition of the checkpoint lock
+            if (!batch.isEmpty()) {
+                synchronized (emitter.ctx.getCheckpointLock()) {
+                    for (T event : batch) {
+                        emitter.emit(event);
+                    }
+                }
+                batch.clear();
+                emitter.markActive();
+                emptyReads = 0;
+            } else if (eventRead != null && !eventRead.isCheckpoint() && !endOfStream) {
+                // no event was available within the timeout
+                emitter.checkIdle();
+                if (isBoundedReadCompleted(++emptyReads)) {
+                    log.info("Reached the end stream cuts for reader: {}", readerId);
+                    return;
+                }
+            }
+
+            if (endOfStream) {
+                // Found stream end marker.
+                log.info("Reached end of stream for reader: {}", readerId);
+                return;
+            }
+
+            // if the read marks a checkpoint, trigger the checkpoint
+            if (eventRead != null && eventRead.isCheckpoint()) {
+                triggerCheckpoint(eventRead.getCheckpointName());
+            }
+        }
+    }
+
+    /**
+     * The main work loop which hands the raw events over to the deserialization pipeline and emits
+     * the deserialized events in the order in which they were read.
+     */
+    private void runWithAsyncDeserialization(EventStreamReader<ByteBuffer> pravegaReader,
+                                             AsyncDeserializationPipeline<T> pipeline,
+                                             EventEmitter emitter, String readerId) throws Exception {
+        final long readTimeout = eventReadTimeout.toMilliseconds();
+        int emptyReads = 0;
+        while (this.running) {
+            // stop reading while the in-flight limits are reached
+            if (pipeline.isFull()) {
+                pipeline.awaitNext();
+                if (!emitDeserialized(pipeline, emitter, readerId)) {
+                    return;
+                }
+                continue;
+            }
+
+            // read a single event at a time while pausing for the watermark alignment
+            emitter.pauseIfAhead();
+            throttle();
+
+            EventRead<ByteBuffer> eventRead;
+            try {
+                // do not wait for new events while deserialized events are waiting to be emitted
+                final long readStartTime = readerMetrics.startRead();
+                eventRead = pravegaReader.readNextEvent(pipeline.isEmpty() ? readTimeout : 0L);
+                readerMetrics.endRead(readStartTime);
+            } catch (TruncatedDataException e) {
+                // Data is truncated, Force the reader going forward to the next available event
+                continue;
+            }
+
+            if (eventRead.getEvent() != null) {
+                recordEvent(eventRead.getEvent().remaining());
+                // the events are decompressed on the source thread, and the events of a batch deserialized independently
+                for (ByteBuffer event : EventBatch.unpack(compression.decompress(eventRead.getEvent()))) {
+                    pipeline.submit(event);
+                }
+                emitter.markActive();
+                emptyReads = 0;
+            } else if (eventRead.isCheckpoint()) {
+                // the events read before the checkpoint must be emitted before the checkpoint is triggered
+                pipeline.awaitAll();
+            } else if (pipeline.isEmpty()) {
+                // no event was available within the timeout
+                readerMetrics.recordEmptyRead();
+                emitter.checkIdle();
+                if (isBoundedReadCompleted(++emptyReads)) {
+                    log.info("Reached the end stream cuts for reader: {}", readerId);
+                    return;
+                }
+            } else {
+                readerMetrics.recordEmptyRead();
+                pipeline.awaitNext();
+            }
+
+            if (!emitDeserialized(pipeline, emitter, readerId)) {
+                return;
+            }
+
+            // if the read marks a checkpoint, trigger the checkpoint
+            if (eventRead.isCheckpoint()) {
+                triggerCheckpoint(eventRead.getCheckpointName());
+            }
+        }
+    }
+
+    /**
+     * Blocks until the events read so far are within the read rate limit, if any.
+     */
+    private void throttle() {
+        if (readRateLimiter != null) {
+            readRateLimiter.throttle();
+        }
+    }
+
+    /**
+     * Records an event read, for the metrics and the read rate limit.
+     */
+    private void recordEvent(int bytes) {
+        readerMetrics.recordEvent(bytes);
+        if (readRateLimiter != null) {
+            readRateLimiter.record(bytes);
+        }
+    }
+
+    /**
+     * Emits the deserialized events at the head of the pipeline under a single acquisition of the checkpoint lock.
+     *
+     * @return false if the end of stream has been reached, true otherwise.
+     */
+    private boolean emitDeserialized(AsyncDeserializationPipeline<T> pipeline, EventEmitter emitter, String readerId) throws Exception {
+        if (!pipeline.isNextDone()) {
+            return true;
+        }
+        synchronized (emitter.ctx.getCheckpointLock()) {
+            while (pipeline.isNextDone()) {
+                final T event = pipeline.takeNext();
+                if (this.deserializationSchema.isEndOfStream(event)) {
+                    // Found stream end marker.
+                    log.info("Reached end of stream for reader: {}", readerId);
+                    return false;
                 }
+                emitter.emit(event);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the emitter of the events read by the given reader. If it is event time, registers a watermark emitter as well.
+     */
+    private EventEmitter createEventEmitter(EventStreamReader<?> pravegaReader, SourceContext<T> ctx, String readerId) throws Exception {
+        AssignerWithTimeWindows<T> assigner = null;
+        if (isEventTimeMode()) {
+            assigner = assignerWithTimeWindows.deserializeValue(getRuntimeContext().getUserCodeClassLoader());
+            PeriodicWatermarkEmitter periodicEmitter = new PeriodicWatermarkEmitter(
+                    pravegaReader,
+                    ctx,
+                    getRuntimeContext().getUserCodeClassLoader(),
+                    ((StreamingRuntimeContext) getRuntimeContext()).getProcessingTimeService());
+
+            log.info("Periodic Watermark Emitter for Reader ID: {} has started with an interval of {}", readerId,
+                    autoWatermarkInterval());
+            periodicEmitter.start();
+        }
+        return new EventEmitter(ctx, assigner, isWatermarkAlignmentEnabled() ? createWatermarkAligner() : null);
+    }
+
+    /**
+     * Emits events to the source context, assigning their timestamps in the event-time mode.
+     * The caller must hold the checkpoint lock.
+     *
+     * <p>The emitter also marks the source as temporarily idle when no event is read within the idle timeout.
+     * The source resumes as soon as an event is emitted.
+     */
+    private final class EventEmitter {
+
+        private final SourceContext<T> ctx;
+        private final AssignerWithTimeWindows<T> assigner;
+        private final WatermarkAligner aligner;
+        private final long idleTimeoutMillis;
+        private long previousTimestamp = Long.MIN_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long lastActiveTime;
+
+        private EventEmitter(SourceContext<T> ctx, AssignerWithTimeWindows<T> assigner, WatermarkAligner aligner) {
+            this.ctx = ctx;
+            this.assigner = assigner;
+            this.aligner = aligner;
+            this.idleTimeoutMillis = idleTimeout.toMilliseconds();
+            this.lastActiveTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Notes that events were read.
+         */
+        private void markActive() {
+            if (idleTimeoutMillis > 0) {
+                lastActiveTime = System.currentTimeMillis();
+                if (markedIdle) {
+                    // the source context resumes the source when the events are emitted
+                    markedIdle = false;
+                    log.info("{} resumes from idleness", getRuntimeContext().getTaskNameWithSubtasks());
+                }
+            }
+        }
+
+        /**
+         * Notes that no event was read, and marks the source as temporarily idle once the idle timeout elapsed.
+         */
+        private void checkIdle() {
+            if (idleTimeoutMillis > 0 && !markedIdle && System.currentTimeMillis() - lastActiveTime >= idleTimeoutMillis) {
+                synchronized (ctx.getCheckpointLock()) {
+                    markedIdle = true;
+                    ctx.markAsTemporarilyIdle();
+                }
+                log.info("{} is marked as temporarily idle after no event was read for {} ms",
+                        getRuntimeContext().getTaskNameWithSubtasks(), idleTimeoutMillis);
+            }
+        }
+
+        private void emit(T event) {
+            if (assigner != null) {
+                long currentTimestamp = assigner.extractTimestamp(event, previousTimestamp);
+                ctx.collectWithTimestamp(event, currentTimestamp);
+                readerMetrics.recordTimestamp(currentTimestamp);
+                previousTimestamp = currentTimestamp;
+                if (currentTimestamp > maxTimestamp) {
+                    maxTimestamp = currentTimestamp;
+                }
+            } else {
+                ctx.collect(event);
+            }
+        }
+
+        /**
+         * Pauses if the source is too far ahead of the other sources, see {@link WatermarkAligner}.
+         *
+         * @return true if the source paused and should read a single event before calling this method again.
+         */
+        private boolean pauseIfAhead() throws IOException, InterruptedException {
+            return aligner != null && aligner.pauseIfAhead(maxTimestamp, markedIdle);
+        }
+
+        private void close() {
+            if (aligner != null) {
+                aligner.close();
             }
         }
     }
@@ -319,9 +972,17 @@ public class FlinkPravegaReader<T>
     @Override
     public void open(Configuration parameters) throws Exception {
         createReaderGroup();
+        readerMetrics = new ReaderMetrics(HISTOGRAM_WINDOW_SIZE);
+        compression = new PayloadCompression(null, compressionCodecs);
         if (enableMetrics) {
             registerMetrics();
         }
+        if (isCatchUpEnabled()) {
+            openCatchUp();
+        }
+        if (readRateLimitProvider != null) {
+            readRateLimiter = createReadRateLimiter();
+        }
         if (isEventTimeMode()) {
             Preconditions.checkArgument(autoWatermarkInterval() > 0,
                     "Periodic watermark interval should be positive, " +
@@ -331,9 +992,40 @@ public class FlinkPravegaReader<T>
 
     @Override
     public void close() throws Exception {
+        if (readerGroupMetricsCache != null) {
+            readerGroupMetricsCache.close();
+        }
+        closeCatchUpCheckpointReader();
+        if (catchUpSplitReader != null) {
+            catchUpSplitReader.close();
+        }
+        if (batchClientFactory != null) {
+            batchClientFactory.close();
+        }
         if (readerGroup != null) {
             readerGroup.close();
         }
+        if (compression != null) {
+            compression.close();
+        }
+    }
+
+    /**
+     * Opens the catch-up phase. Unless restored, every parallel instance of the source enumerates the same
+     * segment ranges, and keeps its share of them.
+     */
+    private void openCatchUp() {
+        batchClientFactory = createBatchClientFactory();
+        if (catchUpSplits == null) {
+            catchUpSplits = SegmentRangeReader.assignSplits(
+                    SegmentRangeReader.createSplits(batchClientFactory, clientConfig.getControllerURI(), catchUpStreams),
+                    getRuntimeContext().getIndexOfThisSubtask(),
+                    getRuntimeContext().getNumberOfParallelSubtasks());
+        }
+        if (!catchUpSplits.isEmpty()) {
+            catchUpSplitReader = new SegmentRangeReader<>(batchClientFactory, createDeserializer(deserializationSchema), catchUpSplits,
+                    compression);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -342,33 +1034,117 @@ public class FlinkPravegaReader<T>
 
     @Override
     public MasterTriggerRestoreHook<Checkpoint> createMasterTriggerRestoreHook() {
+        if (isCatchUpEnabled()) {
+            return new ReaderCheckpointHook(this.hookUid, createReaderGroup(), this.checkpointInitiateTimeout, this.readerGroupConfig,
+                    createCatchUpReaderGroup(), createCatchUpReaderGroupConfig());
+        }
         return new ReaderCheckpointHook(this.hookUid, createReaderGroup(), this.checkpointInitiateTimeout, this.readerGroupConfig);
     }
 
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        if (isCatchUpEnabled()) {
+            catchUpState = context.getOperatorStateStore().getListState(
+                    new ListStateDescriptor<>(CATCH_UP_STATE_NAME, PravegaInputSplit.class));
+            if (context.isRestored()) {
+                catchUpSplits = new ArrayList<>();
+                catchUpState.get().forEach(catchUpSplits::add);
+                log.info("{} restored {} segment ranges left to read in the catch-up phase",
+                        getRuntimeContext().getTaskNameWithSubtasks(), catchUpSplits.size());
+            }
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        if (catchUpState != null) {
+            catchUpState.update(catchUpSplitReader != null ? catchUpSplitReader.snapshot() : Collections.emptyList());
+        }
+    }
+
     @Override
     public void setCheckpointTrigger(CheckpointTrigger checkpointTrigger) {
         this.checkpointTrigger = checkpointTrigger;
     }
 
     /**
-     * Triggers the checkpoint in the Flink source operator.
+     * Triggers the checkpoint delivered by the reader group in the Flink source operator.
      *
      * <p>This method assumes that the {@code checkpointIdentifier} is a string of the form
      */
-    private void triggerCheckpoint(String checkpointIdentifier) throws FlinkException {
-        Preconditions.checkState(checkpointTrigger != null, "checkpoint trigger not set");
-
+    private void triggerCheckpoint(String checkpointIdentifier) throws Exception {
         log.debug("{} received checkpoint event for {}",
                 getRuntimeContext().getTaskNameWithSubtasks(), checkpointIdentifier);
 
-        final long checkpointId;
+        final long checkpointId = parseCheckpointId(checkpointIdentifier);
+        if (catchUpCheckpointReader != null) {
+            leaveCatchUpReaderGroup(checkpointId);
+        }
+        triggerCheckpoint(checkpointId);
+    }
+
+    /**
+     * Triggers the checkpoint in the Flink source operator, unless it was triggered already.
+     * A checkpoint initiated when this source joins the reader group is delivered by both the catch-up reader group and the reader group.
+     */
+    private void triggerCheckpoint(long checkpointId) throws FlinkException {
+        Preconditions.checkState(checkpointTrigger != null, "checkpoint trigger not set");
+        if (checkpointId <= lastCheckpointId) {
+            log.debug("{} skips checkpoint {} which is already triggered", getRuntimeContext().getTaskNameWithSubtasks(), checkpointId);
+            return;
+        }
+        lastCheckpointId = checkpointId;
+        checkpointTrigger.triggerCheckpoint(checkpointId);
+    }
+
+    private static long parseCheckpointId(String checkpointIdentifier) throws FlinkException {
         try {
-            checkpointId = ReaderCheckpointHook.parseCheckpointId(checkpointIdentifier);
+            return ReaderCheckpointHook.parseCheckpointId(checkpointIdentifier);
         } catch (IllegalArgumentException e) {
             throw new FlinkException("Cannot trigger checkpoint due to invalid Pravega checkpoint name", e.getCause());
         }
+    }
 
-        checkpointTrigger.triggerCheckpoint(checkpointId);
+    /**
+     * Triggers the checkpoint at which this source completed its catch-up phase, once it has joined the reader group.
+     * The state of this checkpoint has no segment range left, and nothing is read from the reader group yet.
+     */
+    private void triggerHandoffCheckpoint() throws FlinkException {
+        if (handoffCheckpointName != null) {
+            triggerCheckpoint(parseCheckpointId(handoffCheckpointName));
+            handoffCheckpointName = null;
+        }
+    }
+
+    /**
+     * Leaves the catch-up reader group once the reader group delivers its first checkpoint to this source.
+     *
+     * <p>The checkpoints initiated before this source joined the reader group are only delivered by the catch-up
+     * reader group. As the checkpoints are delivered in order, they all precede the given checkpoint, which was
+     * initiated on both reader groups; so the catch-up reader group is read until it delivers the given checkpoint,
+     * or until the checkpoint initiation timeout elapses.
+     */
+    private void leaveCatchUpReaderGroup(long checkpointId) throws Exception {
+        final long deadline = System.currentTimeMillis() + checkpointInitiateTimeout.toMilliseconds();
+        long deliveredCheckpointId = lastCheckpointId;
+        while (this.running && deliveredCheckpointId < checkpointId && System.currentTimeMillis() < deadline) {
+            EventRead<ByteBuffer> eventRead = catchUpCheckpointReader.readNextEvent(eventReadTimeout.toMilliseconds());
+            if (eventRead.isCheckpoint()) {
+                deliveredCheckpointId = parseCheckpointId(eventRead.getCheckpointName());
+                if (deliveredCheckpointId < checkpointId) {
+                    triggerCheckpoint(deliveredCheckpointId);
+                }
+            }
+        }
+        closeCatchUpCheckpointReader();
+    }
+
+    private void closeCatchUpCheckpointReader() {
+        if (catchUpCheckpointReader != null) {
+            log.info("{} leaves the catch-up reader group", getRuntimeContext().getTaskNameWithSubtasks());
+            catchUpCheckpointReader.close();
+            catchUpCheckpointReader = null;
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -380,15 +1156,15 @@ public class FlinkPravegaReader<T>
      */
     private static class UnreadBytesGauge implements Gauge<Long> {
 
-        private final ReaderGroup readerGroup;
+        private final ReaderGroupMetricsCache metricsCache;
 
-        public UnreadBytesGauge(ReaderGroup readerGroup) {
-            this.readerGroup = readerGroup;
+        public UnreadBytesGauge(ReaderGroupMetricsCache metricsCache) {
+            this.metricsCache = metricsCache;
         }
 
         @Override
         public Long getValue() {
-            return readerGroup.getMetrics().unreadBytes();
+            return metricsCache.getUnreadBytes();
         }
     }
 
@@ -431,66 +1207,32 @@ public class FlinkPravegaReader<T>
      */
     private static class OnlineReadersGauge implements Gauge<String> {
 
-        private final ReaderGroup readerGroup;
+        private final ReaderGroupMetricsCache metricsCache;
 
-        public OnlineReadersGauge(ReaderGroup readerGroup) {
-            this.readerGroup = readerGroup;
+        public OnlineReadersGauge(ReaderGroupMetricsCache metricsCache) {
+            this.metricsCache = metricsCache;
         }
 
         @Override
         public String getValue() {
-            return readerGroup.getOnlineReaders().stream().collect(Collectors.joining(SEPARATOR));
+            return metricsCache.getOnlineReaders().stream().collect(Collectors.joining(SEPARATOR));
         }
     }
 
     /**
-     * Gauge for getting stream name information from reader group.
+     * Gauge for getting stream name information from reader group. The streams of a reader group do not change.
      */
     private static class StreamNamesGauge implements Gauge<String> {
 
-        private final ReaderGroup readerGroup;
+        private final String streamNames;
 
-        public StreamNamesGauge(ReaderGroup readerGroup) {
-            this.readerGroup = readerGroup;
+        public StreamNamesGauge(Set<String> streamNames) {
+            this.streamNames = streamNames.stream().collect(Collectors.joining(","));
         }
 
         @Override
         public String getValue() {
-            return readerGroup.getStreamNames().stream().collect(Collectors.joining(","));
-        }
-    }
-
-    /**
-     * Gauge for getting position information of each segment of a stream from reader group.
-     */
-    private static class SegmentPositionsGauge implements Gauge<String> {
-
-        private final ReaderGroup readerGroup;
-        private final String scope;
-        private final String stream;
-
-        public SegmentPositionsGauge(ReaderGroup readerGroup, String scope, String stream) {
-            this.readerGroup = readerGroup;
-            this.scope = scope;
-            this.stream = stream;
-        }
-
-        @Override
-        public String getValue() {
-            StringBuilder builder = new StringBuilder();
-            builder.append("scope=").append(scope).append(", ");
-            builder.append("stream=").append(stream).append(", segments={");
-            Map<Stream, StreamCut> streamCuts = readerGroup.getStreamCuts();
-            Optional<Map.Entry<Stream, StreamCut>> optionalStreamCutEntry =
-                    streamCuts.entrySet().stream()
-                            .filter(e -> e.getKey().getStreamName().equals(stream) &&
-                                    e.getKey().getScope().equals(scope))
-                            .findFirst();
-            if (optionalStreamCutEntry.isPresent()) {
-                builder.append(optionalStreamCutEntry.get().getValue().toString());
-            }
-            builder.append("}");
-            return builder.toString();
+            return streamNames;
         }
     }
 
@@ -502,23 +1244,73 @@ public class FlinkPravegaReader<T>
         Preconditions.checkState(readerGroup != null, "Reader Group is not created");
         MetricGroup pravegaReaderMetricGroup = getRuntimeContext().getMetricGroup().addGroup(PRAVEGA_READER_METRICS_GROUP);
         MetricGroup readerGroupMetricGroup = pravegaReaderMetricGroup.addGroup(READER_GROUP_METRICS_GROUP);
-        readerGroupMetricGroup.gauge(UNREAD_BYTES_METRICS_GAUGE, new UnreadBytesGauge(readerGroup));
+        Set<String> streamNames = readerGroupConfig.getStartingStreamCuts().keySet().stream()
+                .map(Stream::getScopedName)
+                .collect(Collectors.toSet());
         readerGroupMetricGroup.gauge(READER_GROUP_NAME_METRICS_GAUGE, new ReaderGroupNameGauge(readerGroup));
         readerGroupMetricGroup.gauge(SCOPE_NAME_METRICS_GAUGE, new ScopeNameGauge(readerGroup));
-        readerGroupMetricGroup.gauge(ONLINE_READERS_METRICS_GAUGE, new OnlineReadersGauge(readerGroup));
-        readerGroupMetricGroup.gauge(STREAM_NAMES_METRICS_GAUGE, new StreamNamesGauge(readerGroup));
+        readerGroupMetricGroup.gauge(STREAM_NAMES_METRICS_GAUGE, new StreamNamesGauge(streamNames));
+
+        // the metrics of the whole reader group are fetched from Pravega, so they are reported by the first subtask only
+        if (getRuntimeContext().getIndexOfThisSubtask() == 0) {
+            Map<Stream, MetricGroup> streamMetricGroups = new HashMap<>();
+            for (String scopedStream: streamNames) {
+                String[] streamInfo = scopedStream.split("/", 2);
+                Preconditions.checkArgument(streamInfo.length == 2, "not a fully qualified stream expected: scopeName/streamName");
+                streamMetricGroups.put(Stream.of(streamInfo[0], streamInfo[1]), readerGroupMetricGroup
+                        .addGroup(STREAM_METRICS_GROUP + "." + streamInfo[0]+ "_"+ streamInfo[1]));
+            }
+            readerGroupMetricsCache = new ReaderGroupMetricsCache(readerGroup, createStreamManager(),
+                    new SegmentLagMetrics(streamMetricGroups), READER_GROUP_METRICS_TTL_MILLIS,
+                    Executors.newSingleThreadExecutor());
+            readerGroupMetricGroup.gauge(UNREAD_BYTES_METRICS_GAUGE, new UnreadBytesGauge(readerGroupMetricsCache));
+            readerGroupMetricGroup.gauge(ONLINE_READERS_METRICS_GAUGE, new OnlineReadersGauge(readerGroupMetricsCache));
+            readerGroupMetricsCache.refreshIfStale();
+        }
 
-        Set<String> streamNames = readerGroup.getStreamNames();
-        for (String scopedStream: streamNames) {
-            String[] streamInfo = scopedStream.split("/", 2);
-            Preconditions.checkArgument(streamInfo.length == 2, "not a fully qualified stream expected: scopeName/streamName");
-            MetricGroup streamMetricGroup = readerGroupMetricGroup
-                    .addGroup(STREAM_METRICS_GROUP + "." + streamInfo[0]+ "_"+ streamInfo[1]);
-            streamMetricGroup.gauge(SEGMENT_POSITIONS_METRICS_GAUGE,
-                    new SegmentPositionsGauge(readerGroup, streamInfo[0], streamInfo[1]));
+        pravegaReaderMetricGroup.counter(EVENTS_READ_METRICS_COUNTER, readerMetrics.eventsRead);
+        pravegaReaderMetricGroup.meter(EVENTS_READ_RATE_METRICS_METER, new MeterView(readerMetrics.eventsRead, METER_TIME_SPAN_SECONDS));
+        pravegaReaderMetricGroup.counter(BYTES_READ_METRICS_COUNTER, readerMetrics.bytesRead);
+        pravegaReaderMetricGroup.meter(BYTES_READ_RATE_METRICS_METER, new MeterView(readerMetrics.bytesRead, METER_TIME_SPAN_SECONDS));
+        pravegaReaderMetricGroup.counter(EMPTY_READS_METRICS_COUNTER, readerMetrics.emptyReads);
+        pravegaReaderMetricGroup.histogram(READ_WAIT_TIME_METRICS_HISTOGRAM, readerMetrics.readWaitTime);
+        pravegaReaderMetricGroup.histogram(DESERIALIZATION_TIME_METRICS_HISTOGRAM, readerMetrics.deserializationTime);
+        pravegaReaderMetricGroup.gauge(COMPRESSION_RATIO_METRICS_GAUGE, (Gauge<Double>) compression::getCompressionRatio);
+        pravegaReaderMetricGroup.counter(DECOMPRESSION_TIME_METRICS_COUNTER, compression.codecTimeNanos);
+        if (isEventTimeMode()) {
+            pravegaReaderMetricGroup.histogram(EVENT_TIME_LAG_METRICS_HISTOGRAM, readerMetrics.eventTimeLag);
         }
     }
 
+    /**
+     * register the watermark lag of each stream, i.e. the difference between the current time and the
+     * latest watermark of the stream, or -1 if the stream has no watermark yet.
+     *
+     */
+    private void registerWatermarkMetrics(List<StreamWatermark> streamWatermarks) {
+        MetricGroup readerGroupMetricGroup = getRuntimeContext().getMetricGroup()
+                .addGroup(PRAVEGA_READER_METRICS_GROUP)
+                .addGroup(READER_GROUP_METRICS_GROUP);
+        for (StreamWatermark streamWatermark : streamWatermarks) {
+            MetricGroup streamMetricGroup = readerGroupMetricGroup.addGroup(STREAM_METRICS_GROUP + "."
+                    + streamWatermark.stream.getScope() + "_" + streamWatermark.stream.getStreamName());
+            streamMetricGroup.gauge(WATERMARK_LAG_METRICS_GAUGE, (Gauge<Long>) () -> {
+                long watermark = streamWatermark.timestamp;
+                return watermark == Long.MIN_VALUE ? -1L : System.currentTimeMillis() - watermark;
+            });
+        }
+    }
+
+    /**
+     * register the metrics of the asynchronous deserialization
+     *
+     */
+    private void registerDeserializationMetrics(AsyncDeserializationPipeline<T> pipeline) {
+        MetricGroup pravegaReaderMetricGroup = getRuntimeContext().getMetricGroup().addGroup(PRAVEGA_READER_METRICS_GROUP);
+        pravegaReaderMetricGroup.gauge(DESERIALIZATION_QUEUE_DEPTH_METRICS_GAUGE, (Gauge<Integer>) pipeline::getQueueDepth);
+        pravegaReaderMetricGroup.gauge(DESERIALIZATION_IN_FLIGHT_BYTES_METRICS_GAUGE, (Gauge<Long>) pipeline::getInFlightBytes);
+    }
+
     // ------------------------------------------------------------------------
     //  utility
     // ------------------------------------------------------------------------
@@ -533,6 +1325,29 @@ public class FlinkPravegaReader<T>
         return readerGroup;
     }
 
+    /**
+     * Create the catch-up {@link ReaderGroup}, which delivers the checkpoints to the sources in the catch-up phase.
+     */
+    private ReaderGroup createCatchUpReaderGroup() {
+        final String catchUpReaderGroupName = this.readerGroupName + CATCH_UP_READER_GROUP_SUFFIX;
+        ReaderGroupManager readerGroupManager = createReaderGroupManager();
+        readerGroupManager.createReaderGroup(catchUpReaderGroupName, createCatchUpReaderGroupConfig());
+        return readerGroupManager.getReaderGroup(catchUpReaderGroupName);
+    }
+
+    /**
+     * Create the configuration of the catch-up reader group, which reads every stream from the end of its catch-up
+     * range up to the same stream cut, i.e. has no event to read, so that its readers only receive the checkpoints.
+     */
+    private ReaderGroupConfig createCatchUpReaderGroupConfig() {
+        ReaderGroupConfig.ReaderGroupConfigBuilder builder = ReaderGroupConfig.builder()
+                .maxOutstandingCheckpointRequest(this.readerGroupConfig.getMaxOutstandingCheckpointRequest())
+                .groupRefreshTimeMillis(this.readerGroupConfig.getGroupRefreshTimeMillis())
+                .disableAutomaticCheckpoints();
+        catchUpStreams.forEach(s -> builder.stream(s.getStream(), s.getTo(), s.getTo()));
+        return builder.build();
+    }
+
     /**
      * Create the {@link ReaderGroupManager} for the current configuration.
      */
@@ -545,15 +1360,131 @@ public class FlinkPravegaReader<T>
      * @param readerId the readerID to use.
      */
     protected EventStreamReader<T> createEventStreamReader(String readerId) {
+        this.eventBatchDeserializer = new EventBatchDeserializer<>(createDeserializer(this.deserializationSchema), compression);
+        return createEventStreamReader(readerId, readerMetrics.timed(this.eventBatchDeserializer));
+    }
+
+    /**
+     * Create the {@link EventStreamReader} which reads the events with the given deserializer.
+     * @param readerId the readerID to use.
+     * @param deserializer the deserializer, which also unpacks the event batches.
+     */
+    protected EventStreamReader<T> createEventStreamReader(String readerId, Serializer<T> deserializer) {
         return createPravegaReader(
                 this.clientConfig,
                 readerId,
                 this.readerGroupScope,
                 this.readerGroupName,
-                this.deserializationSchema,
+                deserializer,
                 ReaderConfig.builder().build());
     }
 
+    /**
+     * Create the {@link EventStreamReader} which reads the raw events, for the asynchronous deserialization.
+     * @param readerId the readerID to use.
+     */
+    protected EventStreamReader<ByteBuffer> createRawEventStreamReader(String readerId) {
+        return createPravegaReader(
+                this.clientConfig,
+                readerId,
+                this.readerGroupScope,
+                this.readerGroupName,
+                new ByteBufferSerializer(),
+                ReaderConfig.builder().build());
+    }
+
+    /**
+     * Create the {@link EventStreamReader} of the catch-up reader group, which only delivers the checkpoints.
+     * @param readerId the readerID to use.
+     */
+    protected EventStreamReader<ByteBuffer> createCatchUpCheckpointReader(String readerId) {
+        return createPravegaReader(
+                this.clientConfig,
+                readerId,
+                this.readerGroupScope,
+                this.readerGroupName + CATCH_UP_READER_GROUP_SUFFIX,
+                new ByteBufferSerializer(),
+                ReaderConfig.builder().build());
+    }
+
+    /**
+     * Create the {@link StreamManager} which fetches the tails of the streams for the segment lag metrics.
+     */
+    protected StreamManager createStreamManager() {
+        return StreamManager.create(this.clientConfig);
+    }
+
+    /**
+     * Create the {@link BatchClientFactory} which reads the segment ranges in the catch-up phase.
+     */
+    protected BatchClientFactory createBatchClientFactory() {
+        return BatchClientFactory.withScope(this.readerGroupScope, this.clientConfig);
+    }
+
+    /**
+     * Get the {@link GlobalAggregateManager} through which the parallel instances align their watermarks.
+     */
+    protected GlobalAggregateManager getGlobalAggregateManager() {
+        return ((StreamingRuntimeContext) getRuntimeContext()).getGlobalAggregateManager();
+    }
+
+    /**
+     * Create the {@link AsyncDeserializationPipeline} for the current configuration.
+     * Each deserialization thread uses its own copy of the deserialization schema. The copies record into the
+     * shared deserialization time histogram, which is sampled to limit contention.
+     */
+    private AsyncDeserializationPipeline<T> createDeserializationPipeline() {
+        final ClassLoader userCodeClassLoader = getRuntimeContext().getUserCodeClassLoader();
+        AsyncDeserializationPipeline<T> pipeline = new AsyncDeserializationPipeline<>(
+                () -> readerMetrics.timed(createDeserializer(copyDeserializationSchema(userCodeClassLoader))),
+                this.deserializationParallelism,
+                this.maxInFlightDeserializationBytes,
+                this.deserializationParallelism * MAX_PENDING_EVENTS_PER_DESERIALIZATION_THREAD);
+        if (enableMetrics) {
+            registerDeserializationMetrics(pipeline);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Create the {@link WatermarkAligner} shared by the parallel instances of this source.
+     */
+    private WatermarkAligner createWatermarkAligner() {
+        final Counter pausedTimeMillis = new SimpleCounter();
+        if (enableMetrics) {
+            getRuntimeContext().getMetricGroup().addGroup(PRAVEGA_READER_METRICS_GROUP)
+                    .counter(ALIGNMENT_PAUSED_TIME_METRICS_COUNTER, pausedTimeMillis);
+        }
+        return new WatermarkAligner(
+                getGlobalAggregateManager(),
+                WATERMARK_ALIGNMENT_AGGREGATE_PREFIX + this.readerGroupScope + "/" + this.readerGroupName,
+                getRuntimeContext().getIndexOfThisSubtask(),
+                this.maxWatermarkDrift.toMilliseconds(),
+                WATERMARK_ALIGNMENT_UPDATE_INTERVAL_MILLIS,
+                pausedTimeMillis);
+    }
+
+    /**
+     * Create the {@link ReadRateLimiter} of this source, which takes its share of the read rate limit of the reader group.
+     */
+    protected ReadRateLimiter createReadRateLimiter() {
+        final Counter throttledTimeMillis = new SimpleCounter();
+        if (enableMetrics) {
+            getRuntimeContext().getMetricGroup().addGroup(PRAVEGA_READER_METRICS_GROUP)
+                    .counter(READ_THROTTLED_TIME_METRICS_COUNTER, throttledTimeMillis);
+        }
+        return new ReadRateLimiter(readRateLimitProvider, getRuntimeContext().getNumberOfParallelSubtasks(),
+                READ_RATE_LIMIT_UPDATE_INTERVAL_MILLIS, throttledTimeMillis);
+    }
+
+    private DeserializationSchema<T> copyDeserializationSchema(ClassLoader userCodeClassLoader) {
+        try {
+            return InstantiationUtil.clone(this.deserializationSchema, userCodeClassLoader);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to copy the deserialization schema", e);
+        }
+    }
+
     // ------------------------------------------------------------------------
     //  configuration
     // ------------------------------------------------------------------------
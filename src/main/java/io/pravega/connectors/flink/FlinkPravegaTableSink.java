@@ -208,7 +208,10 @@ public abstract class FlinkPravegaTableSink implements AppendStreamTableSink<Row
                             getPravegaConfig().getClientConfig(),
                             resolveStream(),
                             serializationSchema,
-                            eventRouter
+                            eventRouter,
+                            getMaxEventBatchSize(),
+                            getEventBatchLingerMillis(),
+                            getCompressionCodec()
                     );
         }
 
@@ -12,6 +12,7 @@ package io.pravega.connectors.flink;
 
 import io.pravega.client.ClientConfig;
 import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import org.apache.flink.api.common.io.statistics.BaseStatistics;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.flink.api.java.DataSet;
@@ -21,9 +22,17 @@ import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.table.api.TableSchema;
 import org.apache.flink.table.api.ValidationException;
+import org.apache.flink.table.expressions.CallExpression;
+import org.apache.flink.table.expressions.Expression;
+import org.apache.flink.table.expressions.FieldReferenceExpression;
+import org.apache.flink.table.expressions.ValueLiteralExpression;
+import org.apache.flink.table.functions.BuiltInFunctionDefinitions;
+import org.apache.flink.table.functions.FunctionDefinition;
+import org.apache.flink.table.plan.stats.TableStats;
 import org.apache.flink.table.sources.BatchTableSource;
 import org.apache.flink.table.sources.DefinedProctimeAttribute;
 import org.apache.flink.table.sources.DefinedRowtimeAttributes;
+import org.apache.flink.table.sources.FilterableTableSource;
 import org.apache.flink.table.sources.RowtimeAttributeDescriptor;
 import org.apache.flink.table.sources.StreamTableSource;
 import org.apache.flink.table.sources.TableSource;
@@ -32,6 +41,8 @@ import org.apache.flink.table.sources.wmstrategies.WatermarkStrategy;
 import org.apache.flink.types.Row;
 import org.apache.flink.util.Preconditions;
 
+import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -42,10 +53,14 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
 /**
  * A {@link TableSource} to read Pravega streams using the Flink Table API.
  *
- * Supports both stream and batch environments.
+ * Supports both stream and batch environments. In a batch environment, the comparisons of the columns with
+ * literals in the filters of a query are pushed down to skip the segment ranges which cannot match them, according to
+ * the zone maps of the streams whose fields are named after the columns. The rows are still filtered by the query.
+ * The zone maps only summarize the events of the sink which maintains them, so a stream written by other writers
+ * while that sink ran must not be queried with such filters, since their events may be skipped.
  */
 public abstract class FlinkPravegaTableSource implements StreamTableSource<Row>, BatchTableSource<Row>,
-        DefinedProctimeAttribute, DefinedRowtimeAttributes {
+        DefinedProctimeAttribute, DefinedRowtimeAttributes, FilterableTableSource<Row> {
 
     private final Supplier<FlinkPravegaReader<Row>> sourceFunctionFactory;
 
@@ -101,6 +116,24 @@ public abstract class FlinkPravegaTableSource implements StreamTableSource<Row>,
         return env.createInput(inputFormat, returnType);
     }
 
+    /**
+     * Gets the statistics of the table in a batch environment, e.g. to register them in a catalog.
+     * The number of rows is estimated from the size of the streams and the average size of a sample of their events.
+     *
+     * @return the statistics of the table, or {@link TableStats#UNKNOWN} if they cannot be computed.
+     */
+    public TableStats getTableStats() {
+        BaseStatistics statistics;
+        try {
+            statistics = inputFormatFactory.get().getStatistics(null);
+        } catch (IOException e) {
+            statistics = null;
+        }
+        return statistics == null || statistics.getNumberOfRecords() == BaseStatistics.NUM_RECORDS_UNKNOWN
+                ? TableStats.UNKNOWN
+                : new TableStats(statistics.getNumberOfRecords());
+    }
+
     @Override
     public TypeInformation<Row> getReturnType() {
         return returnType;
@@ -121,6 +154,26 @@ public abstract class FlinkPravegaTableSource implements StreamTableSource<Row>,
         return rowtimeAttributeDescriptors;
     }
 
+    /**
+     * Derives the filter of the zone maps from the given predicates, which are left for the query to evaluate.
+     *
+     * @param predicates The conjunctive predicates of the query.
+     * @return a copy of this table source which skips the segment ranges which cannot match the predicates.
+     */
+    @Override
+    public TableSource<Row> applyPredicate(List<Expression> predicates) {
+        ZoneMapFilter filter = ZoneMapFilter.all();
+        for (Expression predicate : predicates) {
+            filter = toZoneMapFilter(filter, predicate);
+        }
+        return new FilteredTableSource(this, filter);
+    }
+
+    @Override
+    public boolean isFilterPushedDown() {
+        return false;
+    }
+
     /**
      * Declares a field of the schema to be the processing time attribute.
      *
@@ -158,6 +211,111 @@ public abstract class FlinkPravegaTableSource implements StreamTableSource<Row>,
         this.rowtimeAttributeDescriptors = rowtimeAttributeDescriptors;
     }
 
+    // narrows the filter with a comparison of a column with a literal, or a conjunction of such comparisons
+    private static ZoneMapFilter toZoneMapFilter(ZoneMapFilter filter, Expression predicate) {
+        if (!(predicate instanceof CallExpression)) {
+            return filter;
+        }
+        CallExpression call = (CallExpression) predicate;
+        FunctionDefinition function = call.getFunctionDefinition();
+        List<Expression> operands = call.getChildren();
+        ZoneMapFilter result = filter;
+        if (function == BuiltInFunctionDefinitions.AND) {
+            for (Expression operand : operands) {
+                result = toZoneMapFilter(result, operand);
+            }
+        } else if (operands.size() == 2) {
+            Expression left = operands.get(0);
+            Expression right = operands.get(1);
+            if (left instanceof FieldReferenceExpression && right instanceof ValueLiteralExpression) {
+                result = narrow(filter, function, ((FieldReferenceExpression) left).getName(), (ValueLiteralExpression) right);
+            } else if (right instanceof FieldReferenceExpression && left instanceof ValueLiteralExpression) {
+                result = narrow(filter, reverse(function), ((FieldReferenceExpression) right).getName(), (ValueLiteralExpression) left);
+            }
+        }
+        return result;
+    }
+
+    private static ZoneMapFilter narrow(ZoneMapFilter filter, FunctionDefinition comparison, String field, ValueLiteralExpression literal) {
+        Optional<Long> value = toLong(literal);
+        if (!value.isPresent()) {
+            return filter;
+        }
+        long v = value.get();
+        ZoneMapFilter result = filter;
+        if (comparison == BuiltInFunctionDefinitions.EQUALS) {
+            result = filter.and(field, v, v);
+        } else if (comparison == BuiltInFunctionDefinitions.GREATER_THAN && v < Long.MAX_VALUE) {
+            result = filter.and(field, v + 1, Long.MAX_VALUE);
+        } else if (comparison == BuiltInFunctionDefinitions.GREATER_THAN_OR_EQUAL) {
+            result = filter.and(field, v, Long.MAX_VALUE);
+        } else if (comparison == BuiltInFunctionDefinitions.LESS_THAN && v > Long.MIN_VALUE) {
+            result = filter.and(field, Long.MIN_VALUE, v - 1);
+        } else if (comparison == BuiltInFunctionDefinitions.LESS_THAN_OR_EQUAL) {
+            result = filter.and(field, Long.MIN_VALUE, v);
+        }
+        return result;
+    }
+
+    // the comparison with the operands swapped
+    private static FunctionDefinition reverse(FunctionDefinition comparison) {
+        FunctionDefinition reversed = comparison;
+        if (comparison == BuiltInFunctionDefinitions.GREATER_THAN) {
+            reversed = BuiltInFunctionDefinitions.LESS_THAN;
+        } else if (comparison == BuiltInFunctionDefinitions.GREATER_THAN_OR_EQUAL) {
+            reversed = BuiltInFunctionDefinitions.LESS_THAN_OR_EQUAL;
+        } else if (comparison == BuiltInFunctionDefinitions.LESS_THAN) {
+            reversed = BuiltInFunctionDefinitions.GREATER_THAN;
+        } else if (comparison == BuiltInFunctionDefinitions.LESS_THAN_OR_EQUAL) {
+            reversed = BuiltInFunctionDefinitions.GREATER_THAN_OR_EQUAL;
+        }
+        return reversed;
+    }
+
+    // the values of the zone maps are longs, e.g. the milliseconds of the timestamps
+    private static Optional<Long> toLong(ValueLiteralExpression literal) {
+        Optional<Timestamp> timestamp = literal.getValueAs(Timestamp.class);
+        if (timestamp.isPresent()) {
+            return Optional.of(timestamp.get().getTime());
+        }
+        return literal.getValueAs(Number.class)
+                .filter(n -> n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte)
+                .map(Number::longValue);
+    }
+
+    /**
+     * A copy of a table source which skips the segment ranges which cannot match a filter in a batch environment.
+     */
+    private static final class FilteredTableSource extends FlinkPravegaTableSource {
+
+        private final FlinkPravegaTableSource source;
+
+        private final ZoneMapFilter filter;
+
+        FilteredTableSource(FlinkPravegaTableSource source, ZoneMapFilter filter) {
+            super(source.sourceFunctionFactory,
+                    () -> source.inputFormatFactory.get().withZoneMapFilter(filter),
+                    source.schema,
+                    source.returnType);
+            this.source = source;
+            this.filter = filter;
+            setProctimeAttribute(source.getProctimeAttribute());
+            if (source.getRowtimeAttributeDescriptors() != null) {
+                setRowtimeAttributeDescriptors(source.getRowtimeAttributeDescriptors());
+            }
+        }
+
+        @Override
+        public boolean isFilterPushedDown() {
+            return true;
+        }
+
+        @Override
+        public String explainSource() {
+            return source.explainSource() + " with " + filter;
+        }
+    }
+
     /**
      * A base builder for {@link FlinkPravegaTableSource} to read Pravega streams using the Flink Table API.
      *
@@ -265,7 +423,8 @@ public abstract class FlinkPravegaTableSource implements StreamTableSource<Row>,
             final ClientConfig clientConfig = getPravegaConfig().getClientConfig();
             final DeserializationSchema<Row> deserializationSchema = getDeserializationSchema();
 
-            return new FlinkPravegaInputFormat<>(clientConfig, streams, deserializationSchema);
+            return new FlinkPravegaInputFormat<>(clientConfig, streams, deserializationSchema, ZoneMapFilter.all(),
+                    FlinkPravegaInputFormat.NO_TARGET_SPLIT_SIZE, FlinkPravegaInputFormat.NO_PREFETCH, getCompressionCodecs());
         }
     }
 }
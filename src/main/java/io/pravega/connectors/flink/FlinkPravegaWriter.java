@@ -12,6 +12,7 @@ package io.pravega.connectors.flink;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.pravega.client.ClientConfig;
 import io.pravega.client.EventStreamClientFactory;
+import io.pravega.client.admin.StreamManager;
 import io.pravega.client.stream.EventStreamWriter;
 import io.pravega.client.stream.TransactionalEventStreamWriter;
 import io.pravega.client.stream.EventWriterConfig;
@@ -19,17 +20,24 @@ import io.pravega.client.stream.Serializer;
 import io.pravega.client.stream.Stream;
 import io.pravega.client.stream.Transaction;
 import io.pravega.common.Exceptions;
+import io.pravega.connectors.flink.serialization.ByteBufferSerializationSchema;
+import io.pravega.connectors.flink.util.SlidingWindowHistogram;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
 import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Histogram;
 import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
 import org.apache.flink.runtime.state.CheckpointListener;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
 import org.apache.flink.streaming.api.checkpoint.ListCheckpointed;
 import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
 import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
 import org.apache.flink.api.common.serialization.SerializationSchema;
 import org.apache.flink.util.ExceptionUtils;
 import org.apache.flink.util.Preconditions;
@@ -39,13 +47,17 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -61,6 +73,11 @@ public class FlinkPravegaWriter<T>
         extends RichSinkFunction<T>
         implements ListCheckpointed<FlinkPravegaWriter.PendingTransaction>, CheckpointListener {
 
+    // the writes in flight are not bounded by default
+    static final int UNBOUNDED_IN_FLIGHT_EVENTS = Integer.MAX_VALUE;
+
+    static final long UNBOUNDED_IN_FLIGHT_BYTES = Long.MAX_VALUE;
+
     private static final long serialVersionUID = 1L;
 
     // ----- metrics field constants -----
@@ -69,6 +86,25 @@ public class FlinkPravegaWriter<T>
 
     private static final String SCOPED_STREAM_METRICS_GAUGE = "stream";
 
+    private static final String IN_FLIGHT_EVENTS_METRICS_GAUGE = "inFlightEvents";
+
+    private static final String IN_FLIGHT_BYTES_METRICS_GAUGE = "inFlightBytes";
+
+    private static final String WRITE_BLOCKED_TIME_METRICS_COUNTER = "writeBlockedTimeMillis";
+
+    private static final String COMPRESSION_RATIO_METRICS_GAUGE = "compressionRatio";
+
+    private static final String COMPRESSION_TIME_METRICS_COUNTER = "compressionTimeNanos";
+
+    private static final String SNAPSHOT_FLUSH_TIME_METRICS_HISTOGRAM = "snapshotFlushTimeNanos";
+
+    private static final String SNAPSHOT_TXN_SWITCH_TIME_METRICS_HISTOGRAM = "snapshotTxnSwitchTimeNanos";
+
+    // the number of recent checkpoints kept by the histogram metrics
+    private static final int HISTOGRAM_WINDOW_SIZE = 128;
+
+    private static final String TIME_INDEX_AGGREGATE_PREFIX = "pravega-time-index-";
+
     // flag to enable/disable metrics
     final boolean enableMetrics;
 
@@ -100,6 +136,42 @@ public class FlinkPravegaWriter<T>
     // flag to enable/disable watermark
     private boolean enableWatermark;
 
+    // flag to enable/disable the time index of the stream
+    private boolean enableTimeIndex;
+
+    // the writer of the time index, on every subtask if enabled, or null
+    private transient TimeIndexWriter timeIndexWriter;
+
+    // the current watermark of the writer, tracked for the time index
+    private transient long currentWatermark;
+
+    // the extractors of the fields summarized by the zone maps of the stream, by field name
+    private final LinkedHashMap<String, ZoneMapFieldExtractor<T>> zoneMapFields;
+
+    // the writer of the zone maps, if any field is summarized, or null
+    private transient ZoneMapWriter<T> zoneMapWriter;
+
+    // the maximum number of events written but not yet acknowledged, in the non-transactional writer modes
+    private final int maxInFlightEvents;
+
+    // the maximum number of bytes of the events written but not yet acknowledged, in the non-transactional writer modes
+    private final long maxInFlightBytes;
+
+    // the maximum size of the event batches in bytes, or EventBatcher.NO_BATCHING if the events are not batched
+    private final int maxEventBatchSize;
+
+    // the maximum time an event waits in an open batch, in milliseconds
+    private final long eventBatchLingerMillis;
+
+    // the codec of the written events, or null if they are not compressed
+    private final PayloadCodec compressionCodec;
+
+    // the clock of the event batches and of their linger timer, if the events are batched
+    private transient ProcessingTimeService eventBatchTimeService;
+
+    // the timer which writes the expired event batches while no event arrives, if the events are batched
+    private transient ScheduledFuture<?> eventBatchLingerTimer;
+
     // Client factory for PravegaWriter instances
     private transient EventStreamClientFactory clientFactory = null;
 
@@ -109,14 +181,21 @@ public class FlinkPravegaWriter<T>
     /**
      * The flink pravega writer instance which can be added as a sink to a Flink job.
      *
-     * @param clientConfig          The Pravega client configuration.
-     * @param stream                The destination stream.
-     * @param serializationSchema   The implementation for serializing every event into pravega's storage format.
-     * @param eventRouter           The implementation to extract the partition key from the event.
-     * @param writerMode            The Pravega writer mode.
-     * @param txnLeaseRenewalPeriod Transaction lease renewal period in milliseconds.
-     * @param enableWatermark       Flag to indicate whether Pravega watermark needs to be enabled or not.
-     * @param enableMetrics         Flag to indicate whether metrics needs to be enabled or not.
+     * @param clientConfig           The Pravega client configuration.
+     * @param stream                 The destination stream.
+     * @param serializationSchema    The implementation for serializing every event into pravega's storage format.
+     * @param eventRouter            The implementation to extract the partition key from the event.
+     * @param writerMode             The Pravega writer mode.
+     * @param txnLeaseRenewalPeriod  Transaction lease renewal period in milliseconds.
+     * @param enableWatermark        Flag to indicate whether Pravega watermark needs to be enabled or not.
+     * @param enableMetrics          Flag to indicate whether metrics needs to be enabled or not.
+     * @param enableTimeIndex        Flag to indicate whether the time index of the stream needs to be maintained or not.
+     * @param zoneMapFields          The extractors of the fields summarized by the zone maps of the stream, by field name.
+     * @param maxInFlightEvents      The maximum number of events written but not yet acknowledged.
+     * @param maxInFlightBytes       The maximum number of bytes of the events written but not yet acknowledged.
+     * @param maxEventBatchSize      The maximum size of the event batches in bytes, or 0 to not batch the events.
+     * @param eventBatchLingerMillis The maximum time an event waits in a batch, in milliseconds.
+     * @param compressionCodec       The codec of the written events, or null to not compress them.
      */
     protected FlinkPravegaWriter(
             final ClientConfig clientConfig,
@@ -126,7 +205,14 @@ public class FlinkPravegaWriter<T>
             final PravegaWriterMode writerMode,
             final long txnLeaseRenewalPeriod,
             final boolean enableWatermark,
-            final boolean enableMetrics) {
+            final boolean enableMetrics,
+            final boolean enableTimeIndex,
+            final Map<String, ZoneMapFieldExtractor<T>> zoneMapFields,
+            final int maxInFlightEvents,
+            final long maxInFlightBytes,
+            final int maxEventBatchSize,
+            final long eventBatchLingerMillis,
+            final PayloadCodec compressionCodec) {
 
         this.clientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig");
         this.stream = Preconditions.checkNotNull(stream, "stream");
@@ -137,6 +223,26 @@ public class FlinkPravegaWriter<T>
         this.txnLeaseRenewalPeriod = txnLeaseRenewalPeriod;
         this.enableWatermark = enableWatermark;
         this.enableMetrics = enableMetrics;
+        this.enableTimeIndex = enableTimeIndex;
+        this.zoneMapFields = new LinkedHashMap<>(Preconditions.checkNotNull(zoneMapFields, "zoneMapFields"));
+        // the transactions are committed asynchronously, so their events cannot be located by the zone maps
+        Preconditions.checkArgument(this.zoneMapFields.isEmpty() || writerMode != PravegaWriterMode.EXACTLY_ONCE,
+                "The zone maps are not supported by the exactly-once writer mode");
+        Preconditions.checkArgument(maxInFlightEvents > 0, "maxInFlightEvents must be > 0");
+        Preconditions.checkArgument(maxInFlightBytes > 0, "maxInFlightBytes must be > 0");
+        // the events of a transaction are acknowledged on flush, at checkpoints
+        Preconditions.checkArgument(writerMode != PravegaWriterMode.EXACTLY_ONCE
+                        || (maxInFlightEvents == UNBOUNDED_IN_FLIGHT_EVENTS && maxInFlightBytes == UNBOUNDED_IN_FLIGHT_BYTES),
+                "The limits of the writes in flight are not supported by the exactly-once writer mode");
+        this.maxInFlightEvents = maxInFlightEvents;
+        this.maxInFlightBytes = maxInFlightBytes;
+        Preconditions.checkArgument(maxEventBatchSize == EventBatcher.NO_BATCHING || maxEventBatchSize > EventBatch.HEADER_SIZE,
+                "maxEventBatchSize must be > %s", EventBatch.HEADER_SIZE);
+        Preconditions.checkArgument(maxEventBatchSize == EventBatcher.NO_BATCHING || eventBatchLingerMillis > 0,
+                "eventBatchLingerMillis must be > 0");
+        this.maxEventBatchSize = maxEventBatchSize;
+        this.eventBatchLingerMillis = eventBatchLingerMillis;
+        this.compressionCodec = compressionCodec;
         this.writerIdPrefix = UUID.randomUUID().toString();
     }
 
@@ -168,6 +274,26 @@ public class FlinkPravegaWriter<T>
         initializeInternalWriter();
         writer.open();
         log.info("Initialized Pravega writer {} for stream: {} with controller URI: {}", writerId(), stream, clientConfig.getControllerURI());
+        currentWatermark = Long.MIN_VALUE;
+        if (enableTimeIndex) {
+            // the parallel instances coordinate the samples of the time index through a global aggregate
+            timeIndexWriter = new TimeIndexWriter(stream, createStreamManager(), createExecutorService(),
+                    getGlobalAggregateManager(),
+                    TIME_INDEX_AGGREGATE_PREFIX + stream.getScopedName() + "/" + getRuntimeContext().getTaskName(),
+                    getRuntimeContext().getIndexOfThisSubtask(), getRuntimeContext().getNumberOfParallelSubtasks());
+            timeIndexWriter.open(clientFactory);
+        }
+        if (!zoneMapFields.isEmpty()) {
+            zoneMapWriter = new ZoneMapWriter<>(stream, createStreamManager(), createExecutorService(), writerIdPrefix,
+                    getRuntimeContext().getIndexOfThisSubtask(), getRuntimeContext().getNumberOfParallelSubtasks(), zoneMapFields);
+            zoneMapWriter.open(clientFactory);
+        }
+        if (maxEventBatchSize != EventBatcher.NO_BATCHING) {
+            // the timer callbacks hold the checkpoint lock, like the invocations of the sink
+            eventBatchTimeService = ((StreamingRuntimeContext) getRuntimeContext()).getProcessingTimeService();
+            eventBatchLingerTimer = eventBatchTimeService.scheduleAtFixedRate(
+                    timestamp -> writer.writeExpiredBatches(timestamp), eventBatchLingerMillis, eventBatchLingerMillis);
+        }
         if (enableMetrics) {
             registerMetrics();
         }
@@ -176,12 +302,25 @@ public class FlinkPravegaWriter<T>
     @Override
     public void invoke(T event, Context context) throws Exception {
         writer.write(event, context, enableWatermark);
+        if (zoneMapWriter != null) {
+            zoneMapWriter.add(event);
+        }
+        if (timeIndexWriter != null) {
+            currentWatermark = context.currentWatermark();
+            if (context.timestamp() != null) {
+                timeIndexWriter.record(context.timestamp());
+            }
+        }
     }
 
     @Override
     public void close() throws Exception {
         Exception exception = null;
 
+        if (eventBatchLingerTimer != null) {
+            eventBatchLingerTimer.cancel(false);
+        }
+
         if (writer != null) {
             try {
                 writer.close();
@@ -190,6 +329,30 @@ public class FlinkPravegaWriter<T>
             }
         }
 
+        if (timeIndexWriter != null) {
+            try {
+                timeIndexWriter.close();
+            } catch (Exception e) {
+                exception = ExceptionUtils.firstOrSuppressed(e, exception);
+            }
+        }
+
+        if (zoneMapWriter != null) {
+            try {
+                if (writer != null && exception == null) {
+                    // the remaining events were flushed by the internal writer
+                    zoneMapWriter.snapshot();
+                }
+            } catch (Exception e) {
+                exception = ExceptionUtils.firstOrSuppressed(e, exception);
+            }
+            try {
+                zoneMapWriter.close();
+            } catch (Exception e) {
+                exception = ExceptionUtils.firstOrSuppressed(e, exception);
+            }
+        }
+
         if (clientFactory != null) {
             try {
                 clientFactory.close();
@@ -227,13 +390,36 @@ public class FlinkPravegaWriter<T>
     private void registerMetrics() {
         MetricGroup pravegaWriterMetricGroup = getRuntimeContext().getMetricGroup().addGroup(PRAVEGA_WRITER_METRICS_GROUP);
         pravegaWriterMetricGroup.gauge(SCOPED_STREAM_METRICS_GAUGE, new StreamNameGauge(stream.getScopedName()));
+        if (writer instanceof NonTransactionalWriter) {
+            PendingWrites pendingWrites = ((NonTransactionalWriter) writer).pendingWrites;
+            pravegaWriterMetricGroup.gauge(IN_FLIGHT_EVENTS_METRICS_GAUGE, (Gauge<Integer>) pendingWrites::count);
+            pravegaWriterMetricGroup.gauge(IN_FLIGHT_BYTES_METRICS_GAUGE, (Gauge<Long>) pendingWrites::bytes);
+            pravegaWriterMetricGroup.counter(WRITE_BLOCKED_TIME_METRICS_COUNTER, ((NonTransactionalWriter) writer).blockedTimeMillis);
+        }
+        if (writer instanceof TransactionalWriter) {
+            pravegaWriterMetricGroup.histogram(SNAPSHOT_FLUSH_TIME_METRICS_HISTOGRAM, ((TransactionalWriter) writer).snapshotFlushTime);
+            pravegaWriterMetricGroup.histogram(SNAPSHOT_TXN_SWITCH_TIME_METRICS_HISTOGRAM, ((TransactionalWriter) writer).snapshotTxnSwitchTime);
+        }
+        PayloadCompression compression = writer.getEventSerializer().getCompression();
+        if (compression != null) {
+            pravegaWriterMetricGroup.gauge(COMPRESSION_RATIO_METRICS_GAUGE, (Gauge<Double>) compression::getCompressionRatio);
+            pravegaWriterMetricGroup.counter(COMPRESSION_TIME_METRICS_COUNTER, compression.codecTimeNanos);
+        }
     }
 
     // ------------------------------------------------------------------------
 
     @Override
     public List<PendingTransaction> snapshotState(long checkpointId, long checkpointTime) throws Exception {
-        return writer.snapshotState(checkpointId, checkpointTime, enableWatermark);
+        if (timeIndexWriter != null) {
+            timeIndexWriter.snapshot(checkpointId, currentWatermark);
+        }
+        List<PendingTransaction> pendingTransactions = writer.snapshotState(checkpointId, checkpointTime, enableWatermark);
+        if (zoneMapWriter != null) {
+            // the events are flushed, so they lie before the tail of the stream
+            zoneMapWriter.snapshot();
+        }
+        return pendingTransactions;
     }
 
     /**
@@ -261,6 +447,9 @@ public class FlinkPravegaWriter<T>
     @Override
     public void notifyCheckpointComplete(long checkpointId) throws Exception {
         writer.notifyCheckpointComplete(checkpointId);
+        if (timeIndexWriter != null) {
+            timeIndexWriter.checkpointComplete(checkpointId);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -278,8 +467,7 @@ public class FlinkPravegaWriter<T>
         if (this.writerMode == PravegaWriterMode.EXACTLY_ONCE) {
             return new TransactionalWriter(this.clientFactory);
         } else {
-            ExecutorService executorService = createExecutorService();
-            return new NonTransactionalWriter(this.clientFactory, executorService);
+            return new NonTransactionalWriter(this.clientFactory);
         }
     }
 
@@ -288,6 +476,16 @@ public class FlinkPravegaWriter<T>
         return Executors.newSingleThreadExecutor();
     }
 
+    @VisibleForTesting
+    protected StreamManager createStreamManager() {
+        return StreamManager.create(clientConfig);
+    }
+
+    @VisibleForTesting
+    protected GlobalAggregateManager getGlobalAggregateManager() {
+        return ((StreamingRuntimeContext) getRuntimeContext()).getGlobalAggregateManager();
+    }
+
     private void initializeInternalWriter() {
         if (this.writer != null) {
             return;
@@ -323,13 +521,47 @@ public class FlinkPravegaWriter<T>
 
         private final SerializationSchema<T> serializationSchema;
 
+        // set if the schema serializes directly into a buffer
+        private final ByteBufferSerializationSchema<T> byteBufferSerializationSchema;
+
+        // the compression of the serialized events, or null if they are not compressed
+        private final PayloadCompression compression;
+
         FlinkSerializer(SerializationSchema<T> serializationSchema) {
+            this(serializationSchema, null);
+        }
+
+        @SuppressWarnings("unchecked")
+        FlinkSerializer(SerializationSchema<T> serializationSchema, PayloadCompression compression) {
             this.serializationSchema = serializationSchema;
+            this.compression = compression;
+            this.byteBufferSerializationSchema = serializationSchema instanceof ByteBufferSerializationSchema
+                    ? (ByteBufferSerializationSchema<T>) serializationSchema
+                    : null;
         }
 
         @Override
         public ByteBuffer serialize(T value) {
-            return ByteBuffer.wrap(serializationSchema.serialize(value));
+            ByteBuffer serialized = byteBufferSerializationSchema != null
+                    ? byteBufferSerializationSchema.serializeToByteBuffer(value)
+                    : ByteBuffer.wrap(serializationSchema.serialize(value));
+            return compress(serialized);
+        }
+
+        // compresses a serialized event, or a batch of events, if the events are compressed
+        ByteBuffer compress(ByteBuffer serialized) {
+            return compression != null ? compression.compress(serialized) : serialized;
+        }
+
+        PayloadCompression getCompression() {
+            return compression;
+        }
+
+        // releases the resources of the compression codec, if any
+        void close() {
+            if (compression != null) {
+                compression.close();
+            }
         }
 
         @Override
@@ -338,6 +570,23 @@ public class FlinkPravegaWriter<T>
         }
     }
 
+    /**
+     * Passes the events serialized by the writer through the Pravega writers, so that the events and the batches of
+     * events are written through the same Pravega writer.
+     */
+    static final class SerializedEventSerializer implements Serializer<ByteBuffer> {
+
+        @Override
+        public ByteBuffer serialize(ByteBuffer value) {
+            return value;
+        }
+
+        @Override
+        public ByteBuffer deserialize(ByteBuffer serializedValue) {
+            return serializedValue;
+        }
+    }
+
     // ------------------------------------------------------------------------
     //  utilities
     // ------------------------------------------------------------------------
@@ -385,26 +634,39 @@ public class FlinkPravegaWriter<T>
     @VisibleForTesting
     abstract class AbstractInternalWriter {
 
+        // the Pravega writers write the events serialized by the eventSerializer, or the batches of events
         @Getter
-        private EventStreamWriter<T> pravegaWriter;
+        private EventStreamWriter<ByteBuffer> pravegaWriter;
 
         @Getter
-        private TransactionalEventStreamWriter<T> pravegaTxnWriter;
+        private TransactionalEventStreamWriter<ByteBuffer> pravegaTxnWriter;
 
         @Getter
         @Setter
         private transient long watermark;
 
+        @Getter
+        private final FlinkSerializer<T> eventSerializer;
+
+        // the batcher of the events, if the events are batched, or null
+        private final EventBatcher<T> eventBatcher;
+
         AbstractInternalWriter(EventStreamClientFactory clientFactory, boolean txnWriter) {
-            Serializer<T> eventSerializer = new FlinkSerializer<>(serializationSchema);
+            eventSerializer = new FlinkSerializer<>(serializationSchema,
+                    compressionCodec != null ? new PayloadCompression(compressionCodec, Collections.emptyList()) : null);
+            eventBatcher = maxEventBatchSize != EventBatcher.NO_BATCHING
+                    ? new EventBatcher<>(new FlinkSerializer<>(serializationSchema), maxEventBatchSize, eventBatchLingerMillis)
+                    : null;
             EventWriterConfig writerConfig = EventWriterConfig.builder()
                     .transactionTimeoutTime(txnLeaseRenewalPeriod)
                     .build();
             watermark = Long.MIN_VALUE;
             if (txnWriter) {
-                pravegaTxnWriter = clientFactory.createTransactionalEventWriter(writerId(), stream.getStreamName(), eventSerializer, writerConfig);
+                pravegaTxnWriter = clientFactory.createTransactionalEventWriter(writerId(), stream.getStreamName(),
+                        new SerializedEventSerializer(), writerConfig);
             } else {
-                pravegaWriter = clientFactory.createEventWriter(writerId(), stream.getStreamName(), eventSerializer, writerConfig);
+                pravegaWriter = clientFactory.createEventWriter(writerId(), stream.getStreamName(),
+                        new SerializedEventSerializer(), writerConfig);
             }
         }
 
@@ -417,12 +679,59 @@ public class FlinkPravegaWriter<T>
 
         abstract void write(T event, Context context, boolean enableWatermark) throws Exception;
 
-        void close() throws Exception {
-            if (pravegaWriter != null) {
-                pravegaWriter.close();
+        // writes a single serialized Pravega event, which may be a batch of events
+        abstract void writeEvent(String routingKey, ByteBuffer event) throws Exception;
+
+        // writes the event, or adds it to the open batch of its routing key if the events are batched
+        void writeOrBatch(T event) throws Exception {
+            final String routingKey = eventRouter.getRoutingKey(event);
+            if (eventBatcher == null) {
+                writeEvent(routingKey, eventSerializer.serialize(event));
+                return;
+            }
+            // the batches are timed by the clock of the linger timer
+            final long now = eventBatchTimeService.getCurrentProcessingTime();
+            EventBatch closed = eventBatcher.add(routingKey, event, now);
+            if (closed != null) {
+                writeBatch(closed);
+            }
+            writeExpiredBatches(now);
+        }
+
+        // writes the batches whose first event waited for the linger time
+        void writeExpiredBatches(long now) throws Exception {
+            if (eventBatcher != null) {
+                for (EventBatch batch : eventBatcher.pollExpired(now)) {
+                    writeBatch(batch);
+                }
             }
-            if (pravegaTxnWriter != null) {
-                pravegaTxnWriter.close();
+        }
+
+        // writes all the open batches, before a flush or a watermark
+        void writeOpenBatches() throws Exception {
+            if (eventBatcher != null) {
+                for (EventBatch batch : eventBatcher.drain()) {
+                    writeBatch(batch);
+                }
+            }
+        }
+
+        private void writeBatch(EventBatch batch) throws Exception {
+            // the batched events are compressed together
+            writeEvent(batch.getRoutingKey(), eventSerializer.compress(batch.toByteBuffer()));
+        }
+
+        void close() throws Exception {
+            try {
+                if (pravegaWriter != null) {
+                    pravegaWriter.close();
+                }
+                if (pravegaTxnWriter != null) {
+                    pravegaTxnWriter.close();
+                }
+            } finally {
+                // no event is left to compress
+                eventSerializer.close();
             }
         }
 
@@ -444,14 +753,29 @@ public class FlinkPravegaWriter<T>
          * The currently running transaction to which we write
          */
         @VisibleForTesting
-        Transaction<T> currentTxn;
+        Transaction<ByteBuffer> currentTxn;
 
         /**
          * The transactions that are complete from Flink's view (their checkpoint was triggered),
          * but not fully committed, because their corresponding checkpoint is not yet confirmed
          */
         @VisibleForTesting
-        final ArrayDeque<TransactionAndCheckpoint<T>> txnsPendingCommit;
+        final ArrayDeque<TransactionAndCheckpoint<ByteBuffer>> txnsPendingCommit;
+
+        /**
+         * The transaction begun ahead for what comes after the next checkpoint, so that the checkpoint
+         * switches to it without a round trip to the controller
+         */
+        @VisibleForTesting
+        CompletableFuture<Transaction<ByteBuffer>> nextTxn;
+
+        // the time spent flushing the current transaction, and switching to the next one, by the snapshots
+        final Histogram snapshotFlushTime = new SlidingWindowHistogram(HISTOGRAM_WINDOW_SIZE);
+
+        final Histogram snapshotTxnSwitchTime = new SlidingWindowHistogram(HISTOGRAM_WINDOW_SIZE);
+
+        // the executor which begins the next transactions
+        private ExecutorService txnExecutor;
 
         TransactionalWriter(EventStreamClientFactory clientFactory) {
             super(clientFactory, true);
@@ -460,19 +784,45 @@ public class FlinkPravegaWriter<T>
 
         @Override
         public void open() throws Exception {
+            this.txnExecutor = createExecutorService();
+
             // start the transaction that will hold the elements till the first checkpoint
             this.currentTxn = this.getPravegaTxnWriter().beginTxn();
             log.debug("{} - started first transaction '{}'", writerId(), this.currentTxn.getTxnId());
+
+            beginNextTxn();
+        }
+
+        // begins the transaction for what comes after the next checkpoint, in the background
+        private void beginNextTxn() {
+            this.nextTxn = CompletableFuture.supplyAsync(() -> this.getPravegaTxnWriter().beginTxn(), txnExecutor);
+        }
+
+        // takes the transaction begun ahead, or begins one if that failed
+        private Transaction<ByteBuffer> takeNextTxn() throws Exception {
+            CompletableFuture<Transaction<ByteBuffer>> next = this.nextTxn;
+            this.nextTxn = null;
+            try {
+                return next.get();
+            } catch (ExecutionException e) {
+                log.warn("{} - failed to begin the next transaction ahead, beginning it now", writerId(), e.getCause());
+                return this.getPravegaTxnWriter().beginTxn();
+            }
         }
 
         @Override
         public void write(T event, Context context, boolean enableWatermark) throws Exception {
-            this.currentTxn.writeEvent(eventRouter.getRoutingKey(event), event);
+            writeOrBatch(event);
             if (enableWatermark) {
                 this.setWatermark(context.currentWatermark());
             }
         }
 
+        @Override
+        void writeEvent(String routingKey, ByteBuffer event) throws Exception {
+            this.currentTxn.writeEvent(routingKey, event);
+        }
+
         @Override
         public void close() throws Exception {
             Exception exception = null;
@@ -486,6 +836,23 @@ public class FlinkPravegaWriter<T>
                 }
             }
 
+            // the transaction begun ahead holds no events
+            CompletableFuture<Transaction<ByteBuffer>> next = this.nextTxn;
+            if (next != null) {
+                try {
+                    Transaction<ByteBuffer> unusedTxn = next.get();
+                    Exceptions.handleInterrupted(unusedTxn::abort);
+                } catch (ExecutionException e) {
+                    log.debug("{} - the next transaction was not begun", writerId(), e.getCause());
+                } catch (Exception e) {
+                    exception = ExceptionUtils.firstOrSuppressed(e, exception);
+                }
+            }
+
+            if (txnExecutor != null) {
+                txnExecutor.shutdown();
+            }
+
             try {
                 super.close();
             } catch (Exception e) {
@@ -502,13 +869,16 @@ public class FlinkPravegaWriter<T>
             // this is like the pre-commit of a 2-phase-commit transaction
             // we are ready to commit and remember the transaction
 
-            final Transaction<T> txn = this.currentTxn;
+            final Transaction<ByteBuffer> txn = this.currentTxn;
             Preconditions.checkState(txn != null, "bug: no transaction object when performing state snapshot");
 
             log.debug("{} - checkpoint {} triggered, flushing transaction '{}'", writerId(), checkpointId, txn.getTxnId());
 
             // make sure all events go out
+            final long flushStart = System.nanoTime();
+            writeOpenBatches();
             txn.flush();
+            snapshotFlushTime.update(System.nanoTime() - flushStart);
 
             // remember the transaction to be committed when the checkpoint is confirmed
             if (enableWatermark) {
@@ -517,10 +887,13 @@ public class FlinkPravegaWriter<T>
                 this.txnsPendingCommit.addLast(new TransactionAndCheckpoint<>(txn, checkpointId));
             }
 
-            // start the next transaction for what comes after this checkpoint
-            this.currentTxn = this.getPravegaTxnWriter().beginTxn();
+            // switch to the transaction begun ahead for what comes after this checkpoint, and begin the one after it
+            final long switchStart = System.nanoTime();
+            this.currentTxn = takeNextTxn();
+            snapshotTxnSwitchTime.update(System.nanoTime() - switchStart);
+            beginNextTxn();
 
-            log.debug("{} - started new transaction '{}'", writerId(), this.currentTxn.getTxnId());
+            log.debug("{} - switched to transaction '{}'", writerId(), this.currentTxn.getTxnId());
             log.debug("{} - storing pending transactions {}", writerId(), txnsPendingCommit);
 
             // store all pending transactions in the checkpoint state
@@ -566,7 +939,7 @@ public class FlinkPravegaWriter<T>
 
             Preconditions.checkState(!txnsPendingCommit.isEmpty(), "checkpoint completed, but no transaction pending");
 
-            TransactionAndCheckpoint<T> txn;
+            TransactionAndCheckpoint<ByteBuffer> txn;
             while ((txn = txnsPendingCommit.peekFirst()) != null && txn.checkpointId() <= checkpointId) {
                 txnsPendingCommit.removeFirst();
 
@@ -624,17 +997,16 @@ public class FlinkPravegaWriter<T>
                 String scope = streamId.getScope();
                 String stream = streamId.getStreamName();
 
-                Serializer<T> eventSerializer = new FlinkSerializer<>(serializationSchema);
                 EventWriterConfig writerConfig = EventWriterConfig.builder()
                         .transactionTimeoutTime(txnLeaseRenewalPeriod)
                         .build();
 
                 try (
                         EventStreamClientFactory restoreClientFactory = createClientFactory(scope, clientConfig);
-                        TransactionalEventStreamWriter<T> restorePravegaWriter =
+                        TransactionalEventStreamWriter<ByteBuffer> restorePravegaWriter =
                                 restoreClientFactory.createTransactionalEventWriter(writerId(),
                                         stream,
-                                        eventSerializer,
+                                        new SerializedEventSerializer(),
                                         writerConfig);
                     ) {
 
@@ -692,18 +1064,18 @@ public class FlinkPravegaWriter<T>
         @VisibleForTesting
         final AtomicReference<Throwable> writeError;
 
-        // Used to track confirmation from all writes to ensure guaranteed writes.
+        // Used to track confirmation from all writes to ensure guaranteed writes, and to bound the writes in flight.
         @VisibleForTesting
-        final AtomicInteger pendingWritesCount;
+        final PendingWrites pendingWrites;
 
-        // Thread pool for handling callbacks from write events.
-        private final ExecutorService executorService;
+        // The time spent waiting for the writes in flight to fall within the limits.
+        final Counter blockedTimeMillis;
 
-        NonTransactionalWriter(EventStreamClientFactory clientFactory, ExecutorService executorService) {
+        NonTransactionalWriter(EventStreamClientFactory clientFactory) {
             super(clientFactory, false);
             this.writeError = new AtomicReference<>(null);
-            this.pendingWritesCount = new AtomicInteger(0);
-            this.executorService = executorService;
+            this.pendingWrites = new PendingWrites(maxInFlightEvents, maxInFlightBytes);
+            this.blockedTimeMillis = new SimpleCounter();
         }
 
         @Override
@@ -715,13 +1087,22 @@ public class FlinkPravegaWriter<T>
 
             checkWriteError();
 
-            this.pendingWritesCount.incrementAndGet();
-            final CompletableFuture<Void> future = this.getPravegaWriter().writeEvent(eventRouter.getRoutingKey(event), event);
+            writeOrBatch(event);
             if (enableWatermark && shouldEmitWatermark(context)) {
+                // the batched events precede the watermark
+                writeOpenBatches();
                 this.getPravegaWriter().noteTime(context.currentWatermark());
                 setWatermark(context.currentWatermark());
             }
-            future.whenCompleteAsync(
+        }
+
+        @Override
+        void writeEvent(String routingKey, ByteBuffer event) throws Exception {
+            final int size = event.remaining();
+            final CompletableFuture<Void> future = this.getPravegaWriter().writeEvent(routingKey, event);
+            this.pendingWrites.register(size);
+            // the callback runs on the thread completing the write, since it does not block
+            future.whenComplete(
                     (result, e) -> {
                         if (e != null) {
                             log.warn("Detected a write failure: {}", e);
@@ -730,13 +1111,15 @@ public class FlinkPravegaWriter<T>
                             // finding the root cause. Storing all errors will not be feasible.
                             writeError.compareAndSet(null, e);
                         }
-                        synchronized (this) {
-                            pendingWritesCount.decrementAndGet();
-                            this.notify();
-                        }
-                    },
-                    executorService
+                        pendingWrites.complete(size);
+                    }
             );
+
+            // apply backpressure while too many writes are in flight, e.g. while a segment store is unavailable
+            long blockedNanos = this.pendingWrites.awaitCapacity();
+            if (blockedNanos > 0) {
+                blockedTimeMillis.inc(TimeUnit.NANOSECONDS.toMillis(blockedNanos));
+            }
         }
 
         @Override
@@ -755,12 +1138,6 @@ public class FlinkPravegaWriter<T>
                 exception = ExceptionUtils.firstOrSuppressed(e, exception);
             }
 
-            try {
-                this.executorService.shutdown();
-            } catch (Exception e) {
-                exception = ExceptionUtils.firstOrSuppressed(e, exception);
-            }
-
             if (exception != null) {
                 throw exception;
             }
@@ -786,14 +1163,11 @@ public class FlinkPravegaWriter<T>
         // Wait until all pending writes are completed and throw any errors detected.
         @VisibleForTesting
         void flushAndVerify() throws Exception {
+            writeOpenBatches();
             this.getPravegaWriter().flush();
 
             // Wait until all errors, if any, have been recorded.
-            synchronized (this) {
-                while (this.pendingWritesCount.get() > 0) {
-                    this.wait();
-                }
-            }
+            this.pendingWrites.awaitCompletion();
 
             // Verify that no events have been lost so far.
             checkWriteError();
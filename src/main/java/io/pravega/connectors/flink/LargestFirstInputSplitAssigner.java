@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.core.io.InputSplit;
+import org.apache.flink.core.io.InputSplitAssigner;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Assigns the {@link PravegaInputSplit}s to the parallel instances of an input format by decreasing length, so that
+ * the largest splits are read first and the smallest ones fill in the gaps at the end of the job, rather than a large
+ * split being read last while the other instances are idle.
+ *
+ * <p>The splits have no locality, since the segments are read from the segment stores, so the host is ignored.
+ */
+@Slf4j
+final class LargestFirstInputSplitAssigner implements InputSplitAssigner {
+
+    // the splits left to assign, the largest first, in order of split number otherwise
+    private final PriorityQueue<PravegaInputSplit> splits = new PriorityQueue<>(
+            Comparator.comparingLong(PravegaInputSplit::getLength).reversed()
+                    .thenComparingInt(PravegaInputSplit::getSplitNumber));
+
+    /**
+     * Creates a new assigner of the given splits.
+     *
+     * @param splits The splits to assign.
+     */
+    LargestFirstInputSplitAssigner(PravegaInputSplit[] splits) {
+        for (PravegaInputSplit split : Preconditions.checkNotNull(splits, "splits")) {
+            this.splits.add(split);
+        }
+    }
+
+    @Override
+    public InputSplit getNextInputSplit(String host, int taskId) {
+        PravegaInputSplit split;
+        synchronized (splits) {
+            split = splits.poll();
+        }
+        log.debug("Assigning split {} to task {}", split, taskId);
+        return split;
+    }
+
+    @Override
+    public void returnInputSplit(List<InputSplit> returnedSplits, int taskId) {
+        synchronized (splits) {
+            for (InputSplit split : returnedSplits) {
+                splits.add((PravegaInputSplit) split);
+            }
+        }
+    }
+}
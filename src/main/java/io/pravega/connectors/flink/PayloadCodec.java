@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * A codec which compresses the serialized events written to Pravega, see {@code withCompression} on the writer
+ * builders. The compressed events carry the identifier of their codec, so the readers decompress them with the codec
+ * of the same identifier, see {@code withCompressionCodec} on the reader builders. The {@link DeflateCodec} is known
+ * to all the readers.
+ *
+ * <p>A codec may be used by several threads at once.
+ */
+public interface PayloadCodec extends Serializable {
+
+    /**
+     * Gets the identifier of the codec, which is written along with the compressed events. The identifiers up to 15
+     * are reserved for the codecs of the connector.
+     */
+    byte getId();
+
+    /**
+     * Compresses a serialized event.
+     *
+     * @param payload The serialized event, which is left untouched.
+     * @return the compressed event.
+     */
+    ByteBuffer compress(ByteBuffer payload);
+
+    /**
+     * Decompresses a serialized event.
+     *
+     * @param compressed       The compressed event, which is left untouched.
+     * @param uncompressedSize The size of the serialized event, in bytes.
+     * @return the serialized event.
+     * @throws IllegalArgumentException if the compressed event is invalid.
+     */
+    ByteBuffer decompress(ByteBuffer compressed, int uncompressedSize);
+
+    /**
+     * Releases the resources held by the codec, once the writer or the reader which uses it is closed. The codec may
+     * still be used afterwards, and then holds its resources again. Does nothing by default.
+     */
+    default void close() {
+    }
+}
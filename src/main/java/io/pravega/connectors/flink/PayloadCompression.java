@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.SimpleCounter;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compresses the serialized events written by a writer, and decompresses the events read by a reader.
+ *
+ * <p>A compressed event starts with a header made of a magic number, which tells the compressed events from the plain
+ * ones, the identifier of its codec and the size of the uncompressed event. An event which does not shrink is written
+ * plain. The readers decompress the events of the {@link DeflateCodec} and of the given codecs, so that a stream may
+ * hold both compressed and plain events.
+ *
+ * <p>The metrics are only updated by the thread which compresses or decompresses, and are cheap enough to be left on.
+ * The writer or the reader which creates an instance closes it, which releases the resources of its codecs.
+ */
+final class PayloadCompression implements AutoCloseable {
+
+    // the magic number of the compressed events, whose last byte is the version of the format
+    static final int MAGIC = 0x8F5A4301;
+
+    static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+
+    // the codec of the written events, or null if they are only decompressed
+    private final PayloadCodec codec;
+
+    // the codecs of the read events, by identifier
+    private final Map<Byte, PayloadCodec> codecs = new HashMap<>();
+
+    // the number of bytes of the events before compression, or after decompression
+    final Counter uncompressedBytes = new SimpleCounter();
+
+    // the number of bytes of the compressed events, including the plain events which did not shrink
+    final Counter compressedBytes = new SimpleCounter();
+
+    // the time spent in the codecs
+    final Counter codecTimeNanos = new SimpleCounter();
+
+    /**
+     * Creates an instance which decompresses the events of the built-in codecs only.
+     */
+    PayloadCompression() {
+        this(null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param codec  The codec of the written events, or null if they are not compressed.
+     * @param codecs The codecs of the read events, in addition to the built-in ones.
+     */
+    PayloadCompression(PayloadCodec codec, Collection<PayloadCodec> codecs) {
+        this.codec = codec;
+        addCodec(new DeflateCodec());
+        for (PayloadCodec readCodec : codecs) {
+            addCodec(readCodec);
+        }
+        if (codec != null) {
+            addCodec(codec);
+        }
+    }
+
+    private void addCodec(PayloadCodec codec) {
+        PayloadCodec previous = codecs.putIfAbsent(codec.getId(), codec);
+        Preconditions.checkArgument(previous == null || previous.getClass() == codec.getClass(),
+                "The codecs %s and %s have the same identifier %s", previous, codec, codec.getId());
+    }
+
+    /**
+     * Compresses a serialized event with the codec of the written events.
+     *
+     * @param payload The serialized event.
+     * @return the compressed event, or the given event if it does not shrink.
+     */
+    ByteBuffer compress(ByteBuffer payload) {
+        Preconditions.checkState(codec != null, "No codec to compress the events with");
+        final long start = System.nanoTime();
+        ByteBuffer compressed = codec.compress(payload.duplicate());
+        codecTimeNanos.inc(System.nanoTime() - start);
+        uncompressedBytes.inc(payload.remaining());
+        if (HEADER_SIZE + compressed.remaining() >= payload.remaining()) {
+            compressedBytes.inc(payload.remaining());
+            return payload;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + compressed.remaining());
+        buffer.putInt(MAGIC);
+        buffer.put(codec.getId());
+        buffer.putInt(payload.remaining());
+        buffer.put(compressed);
+        buffer.flip();
+        compressedBytes.inc(buffer.remaining());
+        return buffer;
+    }
+
+    /**
+     * Decompresses a serialized event, if it is compressed.
+     *
+     * @param payload The serialized event.
+     * @return the decompressed event, or the given event if it is not compressed.
+     * @throws IllegalStateException if the codec of the event is unknown.
+     */
+    ByteBuffer decompress(ByteBuffer payload) {
+        if (!isCompressed(payload)) {
+            return payload;
+        }
+        final int position = payload.position();
+        final byte id = payload.get(position + Integer.BYTES);
+        final int uncompressedSize = payload.getInt(position + Integer.BYTES + Byte.BYTES);
+        PayloadCodec readCodec = codecs.get(id);
+        Preconditions.checkState(readCodec != null,
+                "Unknown compression codec %s, which must be added to the reader with withCompressionCodec", id);
+        Preconditions.checkArgument(uncompressedSize >= 0, "Invalid compressed event of %s bytes", uncompressedSize);
+
+        ByteBuffer compressed = payload.duplicate();
+        compressed.position(position + HEADER_SIZE);
+        final long start = System.nanoTime();
+        ByteBuffer decompressed = readCodec.decompress(compressed.slice(), uncompressedSize);
+        codecTimeNanos.inc(System.nanoTime() - start);
+        uncompressedBytes.inc(uncompressedSize);
+        compressedBytes.inc(payload.remaining());
+        return decompressed;
+    }
+
+    /**
+     * Gets the ratio of the size of the events before compression to their compressed size, or 1 if no event was
+     * compressed yet.
+     */
+    double getCompressionRatio() {
+        final long compressed = compressedBytes.getCount();
+        return compressed == 0 ? 1.0 : (double) uncompressedBytes.getCount() / compressed;
+    }
+
+    /**
+     * Closes the codecs of the written and the read events.
+     */
+    @Override
+    public void close() {
+        codecs.values().forEach(PayloadCodec::close);
+        if (codec != null && codecs.get(codec.getId()) != codec) {
+            // a codec of the same class as a built-in one is not among the codecs of the read events
+            codec.close();
+        }
+    }
+
+    /**
+     * Returns true if the given serialized event is compressed.
+     *
+     * @param payload The serialized event.
+     */
+    static boolean isCompressed(ByteBuffer payload) {
+        return payload.remaining() >= HEADER_SIZE && payload.getInt(payload.position()) == MAGIC;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracks the writes which are not yet acknowledged, so that a writer waits for all of them on flush, and bounds them
+ * in number and in bytes, so that a writer waits for some of them before writing more.
+ *
+ * <p>The writes are registered by the task thread and completed by the threads of the Pravega client, directly in
+ * the callbacks of their futures: neither takes a lock, and a completion only wakes up the thread waiting in
+ * {@link #awaitCompletion()} or {@link #awaitCapacity()}, if any, once the awaited condition is met.
+ *
+ * <p>It is serializable, as part of the configuration of the output format, with no pending writes.
+ */
+final class PendingWrites implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxCount;
+
+    private final long maxBytes;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    // the thread waiting for the pending writes to complete, if any
+    private transient volatile Thread waiter;
+
+    // whether the waiter only waits for the pending writes to fall within the limits
+    private transient volatile boolean awaitingCapacity;
+
+    /**
+     * Creates a new tracker of unbounded pending writes.
+     */
+    PendingWrites() {
+        this(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new tracker of bounded pending writes.
+     *
+     * @param maxCount The maximum number of pending writes.
+     * @param maxBytes The maximum number of bytes of the pending writes.
+     */
+    PendingWrites(int maxCount, long maxBytes) {
+        Preconditions.checkArgument(maxCount > 0, "maxCount must be > 0");
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be > 0");
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Registers a write of unknown size.
+     */
+    void register() {
+        register(0L);
+    }
+
+    /**
+     * Registers a write.
+     *
+     * @param size The size of the event, in bytes.
+     */
+    void register(long size) {
+        bytes.addAndGet(size);
+        count.incrementAndGet();
+    }
+
+    /**
+     * Completes a registered write of unknown size, successful or not.
+     */
+    void complete() {
+        complete(0L);
+    }
+
+    /**
+     * Completes a registered write, successful or not.
+     *
+     * @param size The size of the event, in bytes, as registered.
+     */
+    void complete(long size) {
+        bytes.addAndGet(-size);
+        boolean done = count.decrementAndGet() == 0;
+        Thread thread = waiter;
+        if (thread != null && (done || (awaitingCapacity && !isOverLimits()))) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of pending writes.
+     */
+    int count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the number of bytes of the pending writes.
+     */
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Waits until all the registered writes are completed. A single thread may wait at a time.
+     *
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    void awaitCompletion() throws InterruptedIOException {
+        await(false);
+    }
+
+    /**
+     * Waits until the pending writes are within the limits. A single thread may wait at a time.
+     *
+     * <p>A write larger than the maximum number of bytes is thus waited for.
+     *
+     * @return the time spent waiting, in nanoseconds.
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    long awaitCapacity() throws InterruptedIOException {
+        if (!isOverLimits()) {
+            return 0L;
+        }
+        long start = System.nanoTime();
+        await(true);
+        return System.nanoTime() - start;
+    }
+
+    private boolean isOverLimits() {
+        return count.get() > maxCount || bytes.get() > maxBytes;
+    }
+
+    private void await(boolean capacity) throws InterruptedIOException {
+        // the waiter is published before the count is read, so that the completions see it
+        awaitingCapacity = capacity;
+        waiter = Thread.currentThread();
+        try {
+            while (capacity ? isOverLimits() : count.get() > 0) {
+                LockSupport.park(this);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for " + count.get() + " pending writes");
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+}
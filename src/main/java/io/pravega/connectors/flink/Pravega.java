@@ -309,7 +309,8 @@ public class Pravega extends ConnectorDescriptor {
             Preconditions.checkState(deserializationSchema != null, "The deserializationSchema must be provided.");
             final List<StreamWithBoundaries> streams = resolveStreams();
             final ClientConfig clientConfig = getPravegaConfig().getClientConfig();
-            return new FlinkPravegaInputFormat<>(clientConfig, streams, deserializationSchema);
+            return new FlinkPravegaInputFormat<>(clientConfig, streams, deserializationSchema, ZoneMapFilter.all(),
+                    FlinkPravegaInputFormat.NO_TARGET_SPLIT_SIZE, FlinkPravegaInputFormat.NO_PREFETCH, getCompressionCodecs());
         }
     }
 
@@ -371,7 +372,10 @@ public class Pravega extends ConnectorDescriptor {
                     getPravegaConfig().getClientConfig(),
                     resolveStream(),
                     serializationSchema,
-                    eventRouter
+                    eventRouter,
+                    getMaxEventBatchSize(),
+                    getEventBatchLingerMillis(),
+                    getCompressionCodec()
             );
         }
 
@@ -14,8 +14,13 @@ import com.google.common.base.Preconditions;
 import io.pravega.client.batch.SegmentRange;
 import org.apache.flink.core.io.InputSplit;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * A {@link PravegaInputSplit} corresponds to a Pravega {@link SegmentRange}.
+ * A {@link PravegaInputSplit} corresponds to a Pravega {@link SegmentRange}, or to a sequence of small segment ranges
+ * which are read one after the other.
  */
 public class PravegaInputSplit implements InputSplit {
 
@@ -23,11 +28,21 @@ public class PravegaInputSplit implements InputSplit {
 
     private final SegmentRange segmentRange;
 
+    // all the segment ranges of the split, starting with the first one
+    private final List<SegmentRange> segmentRanges;
+
     public PravegaInputSplit(int splitId, SegmentRange segmentRange) {
+        this(splitId, Collections.singletonList(Preconditions.checkNotNull(segmentRange, "segmentRange")));
+    }
+
+    public PravegaInputSplit(int splitId, List<SegmentRange> segmentRanges) {
         Preconditions.checkArgument(splitId >= 0, "The splitId is not recognizable.");
-        Preconditions.checkNotNull(segmentRange, "segmentRange");
+        Preconditions.checkArgument(!segmentRanges.isEmpty(), "segmentRanges must not be empty");
         this.splitId = splitId;
-        this.segmentRange = segmentRange;
+        this.segmentRange = Preconditions.checkNotNull(segmentRanges.get(0), "segmentRange");
+        this.segmentRanges = segmentRanges.size() == 1
+                ? Collections.singletonList(this.segmentRange)
+                : Collections.unmodifiableList(new ArrayList<>(segmentRanges));
     }
 
     @Override
@@ -35,10 +50,31 @@ public class PravegaInputSplit implements InputSplit {
         return splitId;
     }
 
+    /**
+     * Gets the segment range of this split, or the first one if the split combines several segment ranges.
+     */
     public SegmentRange getSegmentRange() {
         return segmentRange;
     }
 
+    /**
+     * Gets the segment ranges of this split, in the order in which they are read.
+     */
+    public List<SegmentRange> getSegmentRanges() {
+        return segmentRanges;
+    }
+
+    /**
+     * Gets the number of bytes of the segment ranges of this split.
+     */
+    public long getLength() {
+        long length = 0;
+        for (SegmentRange range : segmentRanges) {
+            length += range.getEndOffset() - range.getStartOffset();
+        }
+        return length;
+    }
+
     // --------------------------------------------------------------------
     // constructor guards segment range from being null
     @Override
@@ -54,7 +90,7 @@ public class PravegaInputSplit implements InputSplit {
 
         PravegaInputSplit that = (PravegaInputSplit) o;
 
-        if (!(this.getSegmentRange().equals(that.getSegmentRange()))) {
+        if (!(this.getSegmentRanges().equals(that.getSegmentRanges()))) {
                 return false;
         }
 
@@ -69,15 +105,17 @@ public class PravegaInputSplit implements InputSplit {
         int result = 1;
 
         result = result * prime + splitId;
-        result = result * prime + Long.hashCode(getSegmentRange().getSegmentId());
-        result = result * prime + Long.hashCode(getSegmentRange().getStartOffset());
-        result = result * prime + Long.hashCode(getSegmentRange().getEndOffset());
+        for (SegmentRange range : segmentRanges) {
+            result = result * prime + Long.hashCode(range.getSegmentId());
+            result = result * prime + Long.hashCode(range.getStartOffset());
+            result = result * prime + Long.hashCode(range.getEndOffset());
 
-        String scope = getSegmentRange().getScope();
-        String stream = getSegmentRange().getStreamName();
+            String scope = range.getScope();
+            String stream = range.getStreamName();
 
-        result = result * prime + (scope == null ? 43 : scope.hashCode());
-        result = result * prime + (stream == null ? 43 : stream.hashCode());
+            result = result * prime + (scope == null ? 43 : scope.hashCode());
+            result = result * prime + (stream == null ? 43 : stream.hashCode());
+        }
 
         return result;
     }
@@ -86,6 +124,6 @@ public class PravegaInputSplit implements InputSplit {
     public String toString() {
         return "PravegaInputSplit {" +
                 "splitId = " + splitId +
-                ", segmentRange = " + segmentRange.toString() + "}";
+                (segmentRanges.size() == 1 ? ", segmentRange = " + segmentRange : ", segmentRanges = " + segmentRanges) + "}";
     }
 }
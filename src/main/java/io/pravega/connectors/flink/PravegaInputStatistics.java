@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.stream.impl.ByteBufferSerializer;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import lombok.Data;
+import org.apache.flink.api.common.io.statistics.BaseStatistics;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The statistics of the streams read by a {@link FlinkPravegaInputFormat}, between their start and end stream cuts.
+ *
+ * <p>The total size is the sum of the lengths of the segment ranges, which is known from the controller. The number
+ * of events is estimated from the average size of the first events of the largest segment range, which are read. The events of an
+ * {@link EventBatch} are counted one by one, after their decompression.
+ */
+@Data
+final class PravegaInputStatistics implements BaseStatistics {
+
+    // the number of events read to estimate their average size
+    static final int SAMPLE_SIZE = 100;
+
+    private final long totalInputSize;
+
+    private final long numberOfRecords;
+
+    private final float averageRecordWidth;
+
+    /**
+     * Computes the statistics of the given streams, whose events are decompressed with the built-in codecs.
+     *
+     * @param batchClientFactory The batch client factory which enumerates and samples the segment ranges.
+     * @param streams            The streams, with their boundaries.
+     * @return the statistics.
+     */
+    static PravegaInputStatistics compute(BatchClientFactory batchClientFactory, List<StreamWithBoundaries> streams) {
+        try (PayloadCompression compression = new PayloadCompression()) {
+            return compute(batchClientFactory, streams, compression);
+        }
+    }
+
+    /**
+     * Computes the statistics of the given streams.
+     *
+     * @param batchClientFactory The batch client factory which enumerates and samples the segment ranges.
+     * @param streams            The streams, with their boundaries.
+     * @param compression        The decompression of the sampled events.
+     * @return the statistics.
+     */
+    static PravegaInputStatistics compute(BatchClientFactory batchClientFactory, List<StreamWithBoundaries> streams,
+                                          PayloadCompression compression) {
+        long totalSize = 0;
+        SegmentRange largest = null;
+        for (StreamWithBoundaries stream : streams) {
+            Iterator<SegmentRange> segmentRanges =
+                    batchClientFactory.getSegments(stream.getStream(), stream.getFrom(), stream.getTo()).getIterator();
+            while (segmentRanges.hasNext()) {
+                SegmentRange segmentRange = segmentRanges.next();
+                totalSize += length(segmentRange);
+                if (largest == null || length(segmentRange) > length(largest)) {
+                    largest = segmentRange;
+                }
+            }
+        }
+        if (largest == null || length(largest) == 0) {
+            return new PravegaInputStatistics(totalSize, totalSize == 0 ? 0 : NUM_RECORDS_UNKNOWN, AVG_RECORD_BYTES_UNKNOWN);
+        }
+
+        // the offsets include the headers of the events, unlike their payloads
+        int count = 0;
+        long recordCount = 0;
+        long payloadSize = 0;
+        long offset = largest.getStartOffset();
+        try (SegmentIterator<ByteBuffer> iterator = batchClientFactory.readSegment(largest, new ByteBufferSerializer())) {
+            while (count < SAMPLE_SIZE && iterator.hasNext()) {
+                for (ByteBuffer record : EventBatch.unpack(compression.decompress(iterator.next()))) {
+                    payloadSize += record.remaining();
+                    recordCount++;
+                }
+                offset = iterator.getOffset();
+                count++;
+            }
+        }
+        if (recordCount == 0) {
+            return new PravegaInputStatistics(totalSize, NUM_RECORDS_UNKNOWN, AVG_RECORD_BYTES_UNKNOWN);
+        }
+        double averageRecordSize = (double) (offset - largest.getStartOffset()) / recordCount;
+        return new PravegaInputStatistics(totalSize, Math.round(totalSize / averageRecordSize), (float) payloadSize / recordCount);
+    }
+
+    private static long length(SegmentRange segmentRange) {
+        return segmentRange.getEndOffset() - segmentRange.getStartOffset();
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.impl.ByteBufferSerializer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the events of a sequence of segment ranges ahead of their consumption, on a background thread.
+ *
+ * <p>The serialized events are buffered up to the given number of bytes, so that the round-trips to the segment
+ * stores overlap with the processing of the events, and deserialized by the consumer. Each segment range is opened
+ * as soon as the previous one is read, while the events of the previous one are still being consumed. A buffer holds
+ * at least one event, however large. The compressed events are decompressed and the {@link EventBatch}es unpacked
+ * on the background thread.
+ *
+ * @param <T> The type of the event.
+ */
+@Slf4j
+class PrefetchingSegmentReader<T> implements AutoCloseable {
+
+    // the maximum time to wait for the background reading to stop on close
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+    private final BatchClientFactory batchClientFactory;
+
+    private final List<SegmentRange> segmentRanges;
+
+    private final Serializer<T> deserializer;
+
+    private final long maxBufferedBytes;
+
+    private final PayloadCompression compression;
+
+    // ----- buffer, guarded by the lock -----
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<ByteBuffer> buffer = new ArrayDeque<>();
+
+    private long bufferedBytes;
+
+    // set once all the events are buffered, or reading failed
+    private boolean done;
+
+    private Throwable error;
+
+    private boolean closed;
+
+    // set while the background reading runs, which may use the compression
+    private boolean running;
+
+    // the background reading
+    private Future<?> reading;
+
+    /**
+     * Creates a new reader.
+     *
+     * @param batchClientFactory The batch client factory which reads the segment ranges.
+     * @param segmentRanges      The segment ranges to read, in order.
+     * @param deserializer       The deserializer of the events.
+     * @param maxBufferedBytes   The maximum number of bytes of the events read ahead.
+     */
+    PrefetchingSegmentReader(BatchClientFactory batchClientFactory, List<SegmentRange> segmentRanges,
+                             Serializer<T> deserializer, long maxBufferedBytes) {
+        this(batchClientFactory, segmentRanges, deserializer, maxBufferedBytes, new PayloadCompression());
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param batchClientFactory The batch client factory which reads the segment ranges.
+     * @param segmentRanges      The segment ranges to read, in order.
+     * @param deserializer       The deserializer of the events.
+     * @param maxBufferedBytes   The maximum number of bytes of the events read ahead.
+     * @param compression        The decompression of the events, which runs on the background thread.
+     */
+    PrefetchingSegmentReader(BatchClientFactory batchClientFactory, List<SegmentRange> segmentRanges,
+                             Serializer<T> deserializer, long maxBufferedBytes, PayloadCompression compression) {
+        Preconditions.checkArgument(maxBufferedBytes > 0, "maxBufferedBytes must be > 0");
+        this.batchClientFactory = Preconditions.checkNotNull(batchClientFactory, "batchClientFactory");
+        this.segmentRanges = new ArrayList<>(Preconditions.checkNotNull(segmentRanges, "segmentRanges"));
+        this.deserializer = Preconditions.checkNotNull(deserializer, "deserializer");
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.compression = Preconditions.checkNotNull(compression, "compression");
+    }
+
+    /**
+     * Starts reading ahead.
+     *
+     * @param executor The executor which reads the segment ranges.
+     */
+    void start(ExecutorService executor) {
+        reading = executor.submit(this::readAll);
+    }
+
+    /**
+     * Returns true if there is an event left to read, waiting for it to be read ahead as needed.
+     *
+     * @throws IOException if reading ahead failed.
+     */
+    boolean hasNext() throws IOException {
+        synchronized (lock) {
+            while (buffer.isEmpty() && !done) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the next event");
+                }
+            }
+            if (buffer.isEmpty() && error != null) {
+                throw new IOException("Failed to read the segment ranges " + segmentRanges, error);
+            }
+            return !buffer.isEmpty();
+        }
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return the next event.
+     * @throws IOException if reading ahead failed.
+     */
+    T next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ByteBuffer event;
+        synchronized (lock) {
+            event = buffer.poll();
+            bufferedBytes -= event.remaining();
+            lock.notifyAll();
+        }
+        return deserializer.deserialize(event);
+    }
+
+    private void readAll() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            running = true;
+        }
+        try {
+            for (SegmentRange segmentRange : segmentRanges) {
+                try (SegmentIterator<ByteBuffer> iterator = batchClientFactory.readSegment(segmentRange, new ByteBufferSerializer())) {
+                    while (iterator.hasNext()) {
+                        // the events of an event batch are buffered and deserialized independently
+                        for (ByteBuffer event : EventBatch.unpack(compression.decompress(iterator.next()))) {
+                            if (!offer(event)) {
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+            finish(null);
+        } catch (InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                // keeps the interrupt status for the executor which runs the read-ahead
+                Thread.currentThread().interrupt();
+            }
+            finish(e);
+        } finally {
+            synchronized (lock) {
+                running = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // buffers an event once there is room for it, unless closed
+    private boolean offer(ByteBuffer event) throws InterruptedException {
+        synchronized (lock) {
+            while (!closed && bufferedBytes > 0 && bufferedBytes + event.remaining() > maxBufferedBytes) {
+                lock.wait();
+            }
+            if (!closed) {
+                buffer.add(event);
+                bufferedBytes += event.remaining();
+                lock.notifyAll();
+            }
+            return !closed;
+        }
+    }
+
+    private void finish(Throwable e) {
+        synchronized (lock) {
+            if (e != null && !closed) {
+                log.warn("Failed to read ahead the segment ranges {}", segmentRanges, e);
+            }
+            done = true;
+            error = e;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops reading ahead, and waits for the background reading to stop, so that the compression can be closed
+     * once this method returns. The future of the reading cannot be waited for, since it completes as soon as it
+     * is cancelled, while its task may still be running.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            buffer.clear();
+            bufferedBytes = 0;
+            lock.notifyAll();
+        }
+        if (reading != null) {
+            reading.cancel(true);
+        }
+        synchronized (lock) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+            long remainingNanos = deadline - System.nanoTime();
+            while (running && remainingNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remainingNanos = deadline - System.nanoTime();
+            }
+            if (running) {
+                log.warn("Closed before the read-ahead of the segment ranges {} stopped", segmentRanges);
+            }
+        }
+    }
+}
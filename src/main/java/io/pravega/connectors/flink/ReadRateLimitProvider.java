@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import java.io.Serializable;
+
+/**
+ * Provides the read rate limit of a {@link FlinkPravegaReader}, which may change while the job is running.
+ *
+ * <p>The limits apply to the reader as a whole, and are divided evenly across its parallel instances.
+ * Each parallel instance polls the provider about once per second on its reading thread, so an implementation
+ * which looks up the limits remotely, e.g. from a configuration store or a control endpoint, should cache them
+ * rather than block.
+ */
+public interface ReadRateLimitProvider extends Serializable {
+
+    /**
+     * Gets the maximum number of events read per second.
+     *
+     * @return the maximum rate, or {@code Double.POSITIVE_INFINITY} for no limit.
+     */
+    double getMaxEventsPerSecond();
+
+    /**
+     * Gets the maximum number of bytes read per second.
+     *
+     * @return the maximum rate, or {@code Double.POSITIVE_INFINITY} for no limit.
+     */
+    double getMaxBytesPerSecond();
+}
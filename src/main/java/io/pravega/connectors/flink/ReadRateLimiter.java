@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.metrics.Counter;
+
+/**
+ * Limits the read rate of a parallel reader with a token bucket for the events and another one for the bytes.
+ *
+ * <p>The size of an event is only known once it is read, so the reader records the events it has read with
+ * {@link #record}, and pays for them in {@link #throttle} before its next read. The rates given by the
+ * {@link ReadRateLimitProvider} are divided evenly across the parallel readers, and refreshed periodically.
+ */
+@Slf4j
+class ReadRateLimiter {
+
+    private final ReadRateLimitProvider provider;
+
+    private final int numSubtasks;
+
+    private final long updateIntervalMillis;
+
+    private final Counter throttledTimeMillis;
+
+    private final RateLimiter eventRateLimiter = RateLimiter.create(Double.POSITIVE_INFINITY);
+
+    private final RateLimiter byteRateLimiter = RateLimiter.create(Double.POSITIVE_INFINITY);
+
+    private double maxEventsPerSecond = Double.POSITIVE_INFINITY;
+
+    private double maxBytesPerSecond = Double.POSITIVE_INFINITY;
+
+    private long nextUpdateTime = 0L;
+
+    // the events and bytes read since the last call to throttle
+    private int pendingEvents;
+    private long pendingBytes;
+
+    /**
+     * Creates a new rate limiter.
+     *
+     * @param provider             The provider of the read rate limit of all the parallel readers.
+     * @param numSubtasks          The number of parallel readers.
+     * @param updateIntervalMillis The interval between the polls of the provider.
+     * @param throttledTimeMillis  The counter of the time spent throttled.
+     */
+    ReadRateLimiter(ReadRateLimitProvider provider, int numSubtasks, long updateIntervalMillis, Counter throttledTimeMillis) {
+        Preconditions.checkArgument(numSubtasks > 0, "numSubtasks must be > 0");
+        Preconditions.checkArgument(updateIntervalMillis > 0, "updateIntervalMillis must be > 0");
+        this.provider = Preconditions.checkNotNull(provider, "provider");
+        this.numSubtasks = numSubtasks;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.throttledTimeMillis = Preconditions.checkNotNull(throttledTimeMillis, "throttledTimeMillis");
+    }
+
+    /**
+     * Records an event read by this reader.
+     *
+     * @param bytes The size of the event.
+     */
+    void record(int bytes) {
+        pendingEvents++;
+        pendingBytes += bytes;
+    }
+
+    /**
+     * Blocks until the events read since the last call are within the rate limit, refreshing the limit if due.
+     */
+    void throttle() {
+        final long now = System.currentTimeMillis();
+        if (now >= nextUpdateTime) {
+            update();
+            nextUpdateTime = now + updateIntervalMillis;
+        }
+
+        double throttledSeconds = 0.0;
+        if (pendingEvents > 0 && !Double.isInfinite(maxEventsPerSecond)) {
+            throttledSeconds += eventRateLimiter.acquire(pendingEvents);
+        }
+        if (pendingBytes > 0 && !Double.isInfinite(maxBytesPerSecond)) {
+            throttledSeconds += byteRateLimiter.acquire((int) Math.min(pendingBytes, Integer.MAX_VALUE));
+        }
+        pendingEvents = 0;
+        pendingBytes = 0L;
+
+        if (throttledSeconds > 0.0) {
+            throttledTimeMillis.inc((long) (throttledSeconds * 1000.0));
+        }
+    }
+
+    private void update() {
+        final double events = perSubtask(provider.getMaxEventsPerSecond());
+        final double bytes = perSubtask(provider.getMaxBytesPerSecond());
+        if (events != maxEventsPerSecond || bytes != maxBytesPerSecond) {
+            log.info("Setting the read rate limit to {} events/s and {} bytes/s", events, bytes);
+            maxEventsPerSecond = events;
+            maxBytesPerSecond = bytes;
+            eventRateLimiter.setRate(events);
+            byteRateLimiter.setRate(bytes);
+        }
+    }
+
+    private double perSubtask(double rate) {
+        Preconditions.checkState(rate > 0.0, "the read rate limit must be > 0");
+        return rate / numSubtasks;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * A read rate limit which does not change.
+     */
+    static class FixedReadRateLimitProvider implements ReadRateLimitProvider {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double maxEventsPerSecond;
+
+        private final double maxBytesPerSecond;
+
+        FixedReadRateLimitProvider(double maxEventsPerSecond, double maxBytesPerSecond) {
+            Preconditions.checkArgument(maxEventsPerSecond > 0.0, "maxEventsPerSecond must be > 0");
+            Preconditions.checkArgument(maxBytesPerSecond > 0.0, "maxBytesPerSecond must be > 0");
+            this.maxEventsPerSecond = maxEventsPerSecond;
+            this.maxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        @Override
+        public double getMaxEventsPerSecond() {
+            return maxEventsPerSecond;
+        }
+
+        @Override
+        public double getMaxBytesPerSecond() {
+            return maxBytesPerSecond;
+        }
+    }
+}
@@ -59,6 +59,12 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
     // The Pravega reader group config.
     private final ReaderGroupConfig readerGroupConfig;
 
+    /** The reader group which delivers the checkpoints to the readers in the catch-up phase, or null */
+    private final ReaderGroup catchUpReaderGroup;
+
+    // The Pravega config of the catch-up reader group.
+    private final ReaderGroupConfig catchUpReaderGroupConfig;
+
     private final Object scheduledExecutorLock = new Object();
 
     // A long-lived thread pool for scheduling all checkpoint tasks
@@ -66,11 +72,23 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
     private ScheduledExecutorService scheduledExecutorService;
 
     ReaderCheckpointHook(String hookUid, ReaderGroup readerGroup, Time triggerTimeout, ReaderGroupConfig readerGroupConfig) {
+        this(hookUid, readerGroup, triggerTimeout, readerGroupConfig, null, null);
+    }
+
+    /**
+     * Creates a hook which also triggers the checkpoints on the catch-up reader group, whose readers are the sources
+     * in the catch-up phase. The catch-up reader group has no event to read, and so no state to checkpoint.
+     */
+    ReaderCheckpointHook(String hookUid, ReaderGroup readerGroup, Time triggerTimeout, ReaderGroupConfig readerGroupConfig,
+                         ReaderGroup catchUpReaderGroup, ReaderGroupConfig catchUpReaderGroupConfig) {
 
         this.hookUid = checkNotNull(hookUid);
         this.readerGroup = checkNotNull(readerGroup);
         this.triggerTimeout = triggerTimeout;
         this.readerGroupConfig = readerGroupConfig;
+        this.catchUpReaderGroup = catchUpReaderGroup;
+        this.catchUpReaderGroupConfig = catchUpReaderGroupConfig;
+        checkArgument(catchUpReaderGroup == null || catchUpReaderGroupConfig != null, "catchUpReaderGroupConfig");
         this.checkpointSerializer = new CheckpointSerializer();
     }
 
@@ -95,7 +113,16 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
         // Add a timeout to the future, to prevent long blocking calls
         scheduledExecutorService.schedule(() -> checkpointResult.cancel(false), triggerTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
 
-        return checkpointResult;
+        if (catchUpReaderGroup == null) {
+            return checkpointResult;
+        }
+
+        // the sources in the catch-up phase receive the checkpoint from the catch-up reader group
+        final CompletableFuture<Checkpoint> catchUpResult =
+                this.catchUpReaderGroup.initiateCheckpoint(checkpointName, scheduledExecutorService);
+        scheduledExecutorService.schedule(() -> catchUpResult.cancel(false), triggerTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+
+        return checkpointResult.thenCombine(catchUpResult, (checkpoint, catchUpCheckpoint) -> checkpoint);
     }
 
     @Override
@@ -111,6 +138,7 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
                     .startFromCheckpoint(checkpoint)
                     .build());
         }
+        resetCatchUpReaderGroup();
     }
 
     @Override
@@ -119,6 +147,7 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
         // This can happen when the job recovery happens after a failure but no checkpoint has been taken.
         log.info("resetting the reader group to initial state using the RG config {}", this.readerGroupConfig);
         this.readerGroup.resetReaderGroup(this.readerGroupConfig);
+        resetCatchUpReaderGroup();
     }
 
     @Override
@@ -126,6 +155,9 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
         // close the reader group properly
         log.info("closing the reader group");
         this.readerGroup.close();
+        if (this.catchUpReaderGroup != null) {
+            this.catchUpReaderGroup.close();
+        }
 
         synchronized (scheduledExecutorLock) {
             if (scheduledExecutorService != null ) {
@@ -145,6 +177,13 @@ class ReaderCheckpointHook implements MasterTriggerRestoreHook<Checkpoint> {
     //  utils
     // ------------------------------------------------------------------------
 
+    private void resetCatchUpReaderGroup() {
+        // the catch-up reader group has no position to restore, but the readers of the failed sources must be removed
+        if (this.catchUpReaderGroup != null) {
+            this.catchUpReaderGroup.resetReaderGroup(this.catchUpReaderGroupConfig);
+        }
+    }
+
     private void ensureScheduledExecutorExists() {
         synchronized (scheduledExecutorLock) {
             if (scheduledExecutorService == null) {
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.ReaderGroup;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches the metrics of a reader group, which are fetched from the state synchronizer and the controller,
+ * and updates the {@link SegmentLagMetrics} of its segments.
+ *
+ * <p>The getters never block: they return the cached values, and start an asynchronous refresh on the given
+ * executor once the cached values are older than the time-to-live. So the metrics reporter, which reads the
+ * gauges periodically, neither waits for Pravega nor calls it more than once per time-to-live.
+ */
+@Slf4j
+class ReaderGroupMetricsCache implements AutoCloseable {
+
+    private final ReaderGroup readerGroup;
+
+    private final StreamManager streamManager;
+
+    private final SegmentLagMetrics segmentLagMetrics;
+
+    private final long ttlMillis;
+
+    private final ExecutorService executor;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // the time of the last refresh, or 0 if never refreshed
+    private volatile long lastRefreshTime;
+
+    // the number of bytes left to read, or -1 until refreshed
+    private volatile long unreadBytes = -1L;
+
+    private volatile Set<String> onlineReaders = Collections.emptySet();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param readerGroup       The reader group.
+     * @param streamManager     The stream manager which fetches the tails of the streams, owned by the cache.
+     * @param segmentLagMetrics The lag metrics of the segments, updated on each refresh.
+     * @param ttlMillis         The time after which the cached values are refreshed.
+     * @param executor          The executor which refreshes the cached values, owned by the cache.
+     */
+    ReaderGroupMetricsCache(ReaderGroup readerGroup, StreamManager streamManager, SegmentLagMetrics segmentLagMetrics,
+                            long ttlMillis, ExecutorService executor) {
+        Preconditions.checkArgument(ttlMillis > 0, "ttlMillis must be > 0");
+        this.readerGroup = Preconditions.checkNotNull(readerGroup, "readerGroup");
+        this.streamManager = Preconditions.checkNotNull(streamManager, "streamManager");
+        this.segmentLagMetrics = Preconditions.checkNotNull(segmentLagMetrics, "segmentLagMetrics");
+        this.ttlMillis = ttlMillis;
+        this.executor = Preconditions.checkNotNull(executor, "executor");
+    }
+
+    /**
+     * Gets the number of bytes left to read by the reader group.
+     *
+     * @return the cached value, or -1 until refreshed.
+     */
+    long getUnreadBytes() {
+        refreshIfStale();
+        return unreadBytes;
+    }
+
+    /**
+     * Gets the readers of the reader group which are online.
+     */
+    Set<String> getOnlineReaders() {
+        refreshIfStale();
+        return onlineReaders;
+    }
+
+    /**
+     * Starts an asynchronous refresh of the cached values if they are stale and no refresh is in progress.
+     */
+    void refreshIfStale() {
+        if (System.currentTimeMillis() - lastRefreshTime >= ttlMillis && refreshing.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::refresh);
+            } catch (RejectedExecutionException e) {
+                // the cache is closed
+                refreshing.set(false);
+            }
+        }
+    }
+
+    private void refresh() {
+        try {
+            unreadBytes = readerGroup.getMetrics().unreadBytes();
+            onlineReaders = readerGroup.getOnlineReaders();
+            Map<Stream, StreamCut> streamCuts = readerGroup.getStreamCuts();
+            Map<Stream, StreamCut> tailStreamCuts = new HashMap<>();
+            for (Stream stream : streamCuts.keySet()) {
+                tailStreamCuts.put(stream, streamManager.getStreamInfo(stream.getScope(), stream.getStreamName()).getTailStreamCut());
+            }
+            segmentLagMetrics.update(streamCuts, tailStreamCuts, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh the metrics of reader group {}", readerGroup.getGroupName(), e);
+        } finally {
+            lastRefreshTime = System.currentTimeMillis();
+            refreshing.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        streamManager.close();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.stream.Serializer;
+import io.pravega.connectors.flink.util.SlidingWindowHistogram;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.SimpleCounter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The metrics of the hot path of a parallel reader: the events and bytes read, the empty reads, the time spent
+ * waiting for {@code readNextEvent}, the deserialization time and the event-time lag.
+ *
+ * <p>The metrics are cheap enough to be left on at full load. The counters are only updated by the reading thread,
+ * so they need no synchronization. The histograms are sampled: only one out of {@link #SAMPLE_INTERVAL} reads,
+ * deserializations or timestamps is recorded, which keeps the clock reads and the histogram updates off the
+ * other ones.
+ */
+class ReaderMetrics {
+
+    // the interval between the samples of the histograms, a power of two
+    static final int SAMPLE_INTERVAL = 16;
+
+    // the value of a start time which is not sampled
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    final Counter eventsRead = new SimpleCounter();
+
+    final Counter bytesRead = new SimpleCounter();
+
+    final Counter emptyReads = new SimpleCounter();
+
+    // the time spent in readNextEvent, in nanoseconds
+    final Histogram readWaitTime;
+
+    // the time spent deserializing an event, in nanoseconds
+    final Histogram deserializationTime;
+
+    // the difference between the processing time and the assigned timestamp of an event, in milliseconds
+    final Histogram eventTimeLag;
+
+    private int readCount;
+
+    private int timestampCount;
+
+    /**
+     * Creates the metrics.
+     *
+     * @param histogramWindowSize The number of samples over which the histograms compute their statistics.
+     */
+    ReaderMetrics(int histogramWindowSize) {
+        this.readWaitTime = new SlidingWindowHistogram(histogramWindowSize);
+        this.deserializationTime = new SlidingWindowHistogram(histogramWindowSize);
+        this.eventTimeLag = new SlidingWindowHistogram(histogramWindowSize);
+    }
+
+    /**
+     * Notes the start of a read.
+     *
+     * @return the start time of the read if it is sampled, {@link #NOT_SAMPLED} otherwise.
+     */
+    long startRead() {
+        return isSample(++readCount) ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    /**
+     * Notes the end of a read.
+     *
+     * @param startTime The value returned by {@link #startRead()}.
+     */
+    void endRead(long startTime) {
+        if (startTime != NOT_SAMPLED) {
+            readWaitTime.update(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Records an event read.
+     *
+     * @param bytes The size of the event.
+     */
+    void recordEvent(int bytes) {
+        eventsRead.inc();
+        bytesRead.inc(bytes);
+    }
+
+    /**
+     * Records a read which returned neither an event nor a checkpoint.
+     */
+    void recordEmptyRead() {
+        emptyReads.inc();
+    }
+
+    /**
+     * Records the timestamp assigned to an event emitted in event-time mode.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    void recordTimestamp(long timestamp) {
+        if (isSample(++timestampCount)) {
+            eventTimeLag.update(System.currentTimeMillis() - timestamp);
+        }
+    }
+
+    /**
+     * Wraps the given deserializer to sample its deserialization time. The wrapper counts its own samples, so each
+     * one must be called by a single thread, e.g. the reading thread or a deserialization thread.
+     *
+     * @param deserializer The deserializer.
+     * @param <T> The type of the event.
+     * @return the timed deserializer.
+     */
+    <T> Serializer<T> timed(Serializer<T> deserializer) {
+        return new TimedDeserializer<>(deserializer);
+    }
+
+    private static boolean isSample(int count) {
+        return (count & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    /**
+     * A deserializer which samples the deserialization time of the deserializer it wraps.
+     */
+    private final class TimedDeserializer<T> implements Serializer<T> {
+
+        private final Serializer<T> deserializer;
+
+        private int count;
+
+        private TimedDeserializer(Serializer<T> deserializer) {
+            this.deserializer = deserializer;
+        }
+
+        @Override
+        public ByteBuffer serialize(T value) {
+            return deserializer.serialize(value);
+        }
+
+        @Override
+        public T deserialize(ByteBuffer serializedValue) {
+            if (!isSample(++count)) {
+                return deserializer.deserialize(serializedValue);
+            }
+            final long start = System.nanoTime();
+            final T event = deserializer.deserialize(serializedValue);
+            deserializationTime.update(System.nanoTime() - start);
+            return event;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The numeric lag metrics of the segments read by a reader group, and their rollup per stream.
+ *
+ * <p>For each segment which the reader group has positions for, the metrics report the offset read so far, the
+ * number of bytes between that offset and the tail of the segment, and an estimate of the time the reader group
+ * needs to catch up, based on the read rate of the segment between the last two updates. The gauges of a segment
+ * are registered the first time the segment shows up, as the streams scale. Flink cannot unregister the metrics of
+ * a group, so once a segment is no longer read its gauges report that nothing is left to read.
+ *
+ * <p>The metrics are updated by a single thread, with the positions and the tails fetched by the
+ * {@link ReaderGroupMetricsCache}, and read by the metrics reporters.
+ */
+class SegmentLagMetrics {
+
+    static final String SEGMENT_METRICS_GROUP = "segment";
+
+    static final String READ_OFFSET_METRICS_GAUGE = "readOffset";
+
+    static final String BYTES_BEHIND_METRICS_GAUGE = "bytesBehind";
+
+    static final String TIME_BEHIND_METRICS_GAUGE = "timeBehindMillis";
+
+    static final String MAX_TIME_BEHIND_METRICS_GAUGE = "maxTimeBehindMillis";
+
+    static final String SEGMENT_COUNT_METRICS_GAUGE = "segmentCount";
+
+    // the value of a metric which is not known yet
+    static final long UNKNOWN = -1L;
+
+    // the metric group of each stream
+    private final Map<Stream, MetricGroup> streamMetricGroups;
+
+    // the lag of each segment ever read, registered in the metric group of its stream
+    private final Map<Segment, SegmentLag> segmentLags = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the metrics, and registers the rollup of each stream.
+     *
+     * @param streamMetricGroups The metric group of each stream read by the reader group.
+     */
+    SegmentLagMetrics(Map<Stream, MetricGroup> streamMetricGroups) {
+        this.streamMetricGroups = new HashMap<>(Preconditions.checkNotNull(streamMetricGroups, "streamMetricGroups"));
+        this.streamMetricGroups.forEach((stream, group) -> {
+            group.gauge(BYTES_BEHIND_METRICS_GAUGE, (Gauge<Long>) () -> rollup(stream).bytesBehind);
+            group.gauge(MAX_TIME_BEHIND_METRICS_GAUGE, (Gauge<Long>) () -> rollup(stream).maxTimeBehindMillis);
+            group.gauge(SEGMENT_COUNT_METRICS_GAUGE, (Gauge<Integer>) () -> rollup(stream).segmentCount);
+        });
+    }
+
+    /**
+     * Updates the lag of the segments.
+     *
+     * @param readStreamCuts The positions of the reader group in each stream.
+     * @param tailStreamCuts The tail of each stream, i.e. the write offsets of its active segments.
+     * @param now            The current time, in milliseconds.
+     */
+    void update(Map<Stream, StreamCut> readStreamCuts, Map<Stream, StreamCut> tailStreamCuts, long now) {
+        Map<Segment, Long> readOffsets = positions(readStreamCuts);
+        Map<Segment, Long> tailOffsets = positions(tailStreamCuts);
+
+        readOffsets.forEach((segment, readOffset) -> {
+            SegmentLag lag = segmentLags.get(segment);
+            if (lag == null) {
+                MetricGroup streamMetricGroup = streamMetricGroups.get(Stream.of(segment.getScope(), segment.getStreamName()));
+                if (streamMetricGroup == null) {
+                    return;
+                }
+                lag = new SegmentLag();
+                register(streamMetricGroup.addGroup(SEGMENT_METRICS_GROUP + "." + segment.getSegmentId()), lag);
+                segmentLags.put(segment, lag);
+            }
+            lag.update(readOffset, tailOffsets.get(segment), now);
+        });
+
+        // the segments which are no longer read are completed
+        segmentLags.forEach((segment, lag) -> {
+            if (!readOffsets.containsKey(segment)) {
+                lag.complete();
+            }
+        });
+    }
+
+    /**
+     * Gets the lag of the given segment, or null if the segment was never read.
+     */
+    SegmentLag getSegmentLag(Segment segment) {
+        return segmentLags.get(segment);
+    }
+
+    /**
+     * Computes the rollup of the lag of the segments of the given stream which are being read.
+     */
+    Rollup rollup(Stream stream) {
+        Rollup rollup = new Rollup();
+        segmentLags.forEach((segment, lag) -> {
+            if (lag.active && segment.getScope().equals(stream.getScope()) && segment.getStreamName().equals(stream.getStreamName())) {
+                rollup.segmentCount++;
+                rollup.bytesBehind += Math.max(lag.bytesBehind, 0L);
+                rollup.maxTimeBehindMillis = Math.max(rollup.maxTimeBehindMillis, lag.timeBehindMillis);
+            }
+        });
+        return rollup;
+    }
+
+    private static void register(MetricGroup segmentMetricGroup, SegmentLag lag) {
+        segmentMetricGroup.gauge(READ_OFFSET_METRICS_GAUGE, (Gauge<Long>) () -> lag.readOffset);
+        segmentMetricGroup.gauge(BYTES_BEHIND_METRICS_GAUGE, (Gauge<Long>) () -> lag.bytesBehind);
+        segmentMetricGroup.gauge(TIME_BEHIND_METRICS_GAUGE, (Gauge<Long>) () -> lag.timeBehindMillis);
+    }
+
+    private static Map<Segment, Long> positions(Map<Stream, StreamCut> streamCuts) {
+        Map<Segment, Long> positions = new HashMap<>();
+        streamCuts.values().stream()
+                .filter(streamCut -> streamCut != StreamCut.UNBOUNDED)
+                .forEach(streamCut -> positions.putAll(streamCut.asImpl().getPositions()));
+        return positions.isEmpty() ? Collections.emptyMap() : positions;
+    }
+
+    /**
+     * The lag of a segment.
+     */
+    static final class SegmentLag {
+
+        // whether the segment is being read
+        volatile boolean active = true;
+
+        volatile long readOffset = UNKNOWN;
+
+        // the number of bytes left to read, or UNKNOWN if the tail of the segment is unknown, e.g. once sealed
+        volatile long bytesBehind = UNKNOWN;
+
+        // the estimated time to read the bytes left, or UNKNOWN until the read rate is known
+        volatile long timeBehindMillis = UNKNOWN;
+
+        // the time of the last update, and the time at which the read offset last advanced
+        private long updateTime;
+        private long progressTime;
+
+        private SegmentLag() {
+        }
+
+        private void update(long newReadOffset, Long tailOffset, long now) {
+            final long bytesRead = newReadOffset - readOffset;
+            final boolean first = readOffset == UNKNOWN;
+            final long newBytesBehind = tailOffset == null ? UNKNOWN : Math.max(tailOffset - newReadOffset, 0L);
+
+            if (newBytesBehind == 0L) {
+                timeBehindMillis = 0L;
+            } else if (first) {
+                timeBehindMillis = UNKNOWN;
+            } else if (bytesRead > 0L) {
+                // the time to read the bytes left at the read rate since the last update
+                timeBehindMillis = newBytesBehind == UNKNOWN ? UNKNOWN : newBytesBehind * (now - updateTime) / bytesRead;
+            } else {
+                // the reader group did not advance, so it is behind by at least the time it has been stalled
+                timeBehindMillis = now - progressTime;
+            }
+
+            if (first || bytesRead > 0L) {
+                progressTime = now;
+            }
+            updateTime = now;
+            readOffset = newReadOffset;
+            bytesBehind = newBytesBehind;
+            active = true;
+        }
+
+        private void complete() {
+            active = false;
+            bytesBehind = 0L;
+            timeBehindMillis = 0L;
+        }
+    }
+
+    /**
+     * The lag of the segments of a stream.
+     */
+    static final class Rollup {
+
+        int segmentCount;
+
+        long bytesBehind;
+
+        long maxTimeBehindMillis = UNKNOWN;
+    }
+}
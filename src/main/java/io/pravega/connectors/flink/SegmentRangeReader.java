@@ -0,0 +1,509 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import io.pravega.connectors.flink.util.ZoneMapIndex;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the events of a sequence of segment ranges with the batch client, one range after the other,
+ * and keeps track of the position of the last emitted event, so that the reading resumes from a checkpoint.
+ *
+ * <p>The events are read with {@link #next()} without holding the checkpoint lock. Once an event is emitted,
+ * {@link #commit()} must be called under the checkpoint lock, so that {@link #snapshot()}, which is called
+ * under the checkpoint lock as well, never includes an event which was read but not emitted.
+ *
+ * <p>The {@link EventBatch}es are unpacked. The position of the reader only advances past a batch once all its events
+ * are read, so all the events of a batch must be emitted before {@link #commit()}, see {@link #hasBatchedNext()}.
+ *
+ * @param <T> The type of the event.
+ */
+@Slf4j
+class SegmentRangeReader<T> implements AutoCloseable {
+
+    private static final int SEGMENT_RANGE_CACHE_SIZE = 1000;
+
+    // the segment ranges of the streams bounded at both ends, which do not change, by cluster, stream and boundaries
+    private static final Cache<SegmentRangeKey, List<SegmentRange>> SEGMENT_RANGE_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(SEGMENT_RANGE_CACHE_SIZE)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    private final BatchClientFactory batchClientFactory;
+
+    private final EventBatchDeserializer<T> deserializer;
+
+    private final List<PravegaInputSplit> splits;
+
+    // ----- read position, only accessed by the reading thread -----
+
+    // the index of the split being read
+    private int readIndex;
+
+    // the offset following the last event read from the split being read
+    private long readOffset;
+
+    // the iterator of the split being read, or null if it is not opened yet
+    private SegmentIterator<T> iterator;
+
+    // the number of bytes read from the segment by the last call to next()
+    private int readLength;
+
+    // ----- committed position, only accessed under the checkpoint lock -----
+
+    // the index of the split of the last emitted event
+    private int committedIndex;
+
+    // the offset following the last emitted event in its split
+    private long committedOffset;
+
+    /**
+     * Creates a new reader.
+     *
+     * @param batchClientFactory The batch client factory which reads the segment ranges.
+     * @param deserializer       The deserializer of the events.
+     * @param splits             The splits to read, in order, each of a single segment range.
+     */
+    SegmentRangeReader(BatchClientFactory batchClientFactory, Serializer<T> deserializer, Collection<PravegaInputSplit> splits) {
+        this(batchClientFactory, deserializer, splits, new PayloadCompression());
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param batchClientFactory The batch client factory which reads the segment ranges.
+     * @param deserializer       The deserializer of the events.
+     * @param splits             The splits to read, in order, each of a single segment range.
+     * @param compression        The decompression of the events.
+     */
+    SegmentRangeReader(BatchClientFactory batchClientFactory, Serializer<T> deserializer, Collection<PravegaInputSplit> splits,
+                       PayloadCompression compression) {
+        this.batchClientFactory = Preconditions.checkNotNull(batchClientFactory, "batchClientFactory");
+        this.deserializer = new EventBatchDeserializer<>(Preconditions.checkNotNull(deserializer, "deserializer"), compression);
+        this.splits = new ArrayList<>(Preconditions.checkNotNull(splits, "splits"));
+        // the read position is tracked within a single segment range per split, as enumerated by createSplits
+        for (PravegaInputSplit split : this.splits) {
+            Preconditions.checkArgument(split.getSegmentRanges().size() == 1,
+                    "The split %s combines several segment ranges", split.getSplitNumber());
+        }
+    }
+
+    /**
+     * Returns true if there is an event left to read, opening the next segment ranges as needed.
+     */
+    boolean hasNext() {
+        if (deserializer.hasNext()) {
+            return true;
+        }
+        while (readIndex < splits.size()) {
+            if (iterator == null) {
+                SegmentRange segmentRange = splits.get(readIndex).getSegmentRange();
+                iterator = batchClientFactory.readSegment(segmentRange, deserializer);
+                readOffset = segmentRange.getStartOffset();
+            }
+            if (iterator.hasNext()) {
+                return true;
+            }
+            iterator.close();
+            iterator = null;
+            readIndex++;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return the next event.
+     */
+    T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (deserializer.hasNext()) {
+            readLength = 0;
+            return deserializer.next();
+        }
+        T event = iterator.next();
+        long offset = iterator.getOffset();
+        readLength = (int) (offset - readOffset);
+        readOffset = offset;
+        return event;
+    }
+
+    /**
+     * Gets the number of bytes read from the segment by the last call to {@link #next()}, including the event header.
+     * The other events of an {@link EventBatch} are read along with the first one, so their length is zero.
+     *
+     * @return the length of the event read last.
+     */
+    int getReadLength() {
+        return readLength;
+    }
+
+    /**
+     * Returns true if the next event belongs to the same {@link EventBatch} as the event read last, so that it must
+     * be emitted before {@link #commit()}.
+     */
+    boolean hasBatchedNext() {
+        return deserializer.hasNext();
+    }
+
+    /**
+     * Marks the events read so far as emitted. The caller must hold the checkpoint lock.
+     */
+    void commit() {
+        committedIndex = readIndex;
+        committedOffset = readOffset;
+    }
+
+    /**
+     * Gets the segment ranges left to read after the last emitted event. The caller must hold the checkpoint lock.
+     *
+     * @return the remaining splits, in order, the first one starting after the last emitted event.
+     */
+    List<PravegaInputSplit> snapshot() {
+        List<PravegaInputSplit> remaining = new ArrayList<>(Math.max(0, splits.size() - committedIndex));
+        for (int i = committedIndex; i < splits.size(); i++) {
+            PravegaInputSplit split = splits.get(i);
+            SegmentRange segmentRange = split.getSegmentRange();
+            if (i == committedIndex && committedOffset > segmentRange.getStartOffset()) {
+                split = withStartOffset(split, committedOffset);
+                segmentRange = split.getSegmentRange();
+            }
+            if (segmentRange.getStartOffset() < segmentRange.getEndOffset()) {
+                remaining.add(split);
+            }
+        }
+        return remaining;
+    }
+
+    @Override
+    public void close() {
+        deserializer.clear();
+        if (iterator != null) {
+            iterator.close();
+            iterator = null;
+        }
+    }
+
+    private static PravegaInputSplit withStartOffset(PravegaInputSplit split, long startOffset) {
+        SegmentRange segmentRange = split.getSegmentRange();
+        return new PravegaInputSplit(split.getSplitNumber(), subRange(segmentRange, startOffset, segmentRange.getEndOffset()));
+    }
+
+    private static SegmentRange subRange(SegmentRange segmentRange, long startOffset, long endOffset) {
+        return SegmentRangeImpl.builder()
+                .segment(segmentRange.asImpl().getSegment())
+                .startOffset(startOffset)
+                .endOffset(endOffset)
+                .build();
+    }
+
+    // ------------------------------------------------------------------------
+    //  split enumeration
+    // ------------------------------------------------------------------------
+
+    /**
+     * Enumerates the segment ranges of the given streams between their start and end stream cuts.
+     *
+     * <p>The segment ranges are sorted by stream, segment and offset, so that the parallel instances of a source
+     * which enumerate the same streams independently agree on the splits and their numbers. The segment ranges of
+     * the streams bounded at both ends do not change, so they are cached, and enumerated again only once evicted.
+     * The cache is shared by the parallel instances in the same JVM, and a stream is enumerated by one of them
+     * while the others wait, so that such a stream is enumerated once per TaskManager rather than once per instance.
+     * The segment ranges are cached by controller, since the same stream may exist in several Pravega clusters.
+     *
+     * @param batchClientFactory The batch client factory.
+     * @param controllerURI      The URI of the controller of the streams, as configured on the batch client factory.
+     * @param streams            The streams, with their boundaries.
+     * @return the splits, numbered in order.
+     */
+    static List<PravegaInputSplit> createSplits(BatchClientFactory batchClientFactory, URI controllerURI,
+                                                List<StreamWithBoundaries> streams) {
+        List<SegmentRange> segmentRanges = new ArrayList<>();
+        for (StreamWithBoundaries stream : streams) {
+            segmentRanges.addAll(getSegmentRanges(batchClientFactory, controllerURI, stream));
+        }
+        return toSplits(segmentRanges);
+    }
+
+    /**
+     * Enumerates the segment ranges of the given streams between their start and end stream cuts, concurrently.
+     *
+     * <p>The enumerations still running when this method fails are not interrupted, since cancelling a
+     * {@link CompletableFuture} does not interrupt its task; the caller should stop them with
+     * {@link ExecutorService#shutdownNow()}.
+     *
+     * @param batchClientFactory The batch client factory.
+     * @param controllerURI      The URI of the controller of the streams, as configured on the batch client factory.
+     * @param streams            The streams, with their boundaries.
+     * @param executor           The executor which enumerates the segment ranges of each stream.
+     * @param timeoutMillis      The maximum time to wait for the segment ranges of all the streams, in milliseconds.
+     * @return the splits, numbered in order, as with {@link #createSplits(BatchClientFactory, URI, List)}.
+     * @throws IOException if the segment ranges of a stream cannot be enumerated in time.
+     */
+    static List<PravegaInputSplit> createSplits(BatchClientFactory batchClientFactory, URI controllerURI,
+                                                List<StreamWithBoundaries> streams, ExecutorService executor,
+                                                long timeoutMillis) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<CompletableFuture<List<SegmentRange>>> futures = new ArrayList<>(streams.size());
+        for (StreamWithBoundaries stream : streams) {
+            futures.add(CompletableFuture.supplyAsync(() -> getSegmentRanges(batchClientFactory, controllerURI, stream), executor));
+        }
+
+        List<SegmentRange> segmentRanges = new ArrayList<>();
+        StreamWithBoundaries stream = null;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                stream = streams.get(i);
+                // the streams share a single deadline, rather than waiting up to the timeout for each of them in turn
+                long remainingNanos = Math.max(0L, deadline - System.nanoTime());
+                segmentRanges.addAll(futures.get(i).get(remainingNanos, TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out enumerating the segments of stream " + stream.getStream(), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to enumerate the segments of stream " + stream.getStream(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while enumerating the segments of stream " + stream.getStream());
+        } finally {
+            // keeps the enumerations which have not started yet from running
+            futures.forEach(future -> future.cancel(false));
+        }
+        return toSplits(segmentRanges);
+    }
+
+    // the segment ranges of a stream, cached if the stream is bounded at both ends
+    private static List<SegmentRange> getSegmentRanges(BatchClientFactory batchClientFactory, URI controllerURI,
+                                                       StreamWithBoundaries stream) {
+        if (stream.getFrom() == StreamCut.UNBOUNDED || stream.getTo() == StreamCut.UNBOUNDED) {
+            return enumerateSegmentRanges(batchClientFactory, stream);
+        }
+        try {
+            // the concurrent enumerations of the same stream wait for the first one
+            return SEGMENT_RANGE_CACHE.get(new SegmentRangeKey(controllerURI, stream), () -> enumerateSegmentRanges(batchClientFactory, stream));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Failed to enumerate the segments of stream " + stream.getStream(), e.getCause());
+        }
+    }
+
+    private static List<SegmentRange> enumerateSegmentRanges(BatchClientFactory batchClientFactory, StreamWithBoundaries stream) {
+        List<SegmentRange> enumerated = new ArrayList<>();
+        batchClientFactory.getSegments(stream.getStream(), stream.getFrom(), stream.getTo())
+                .getIterator().forEachRemaining(enumerated::add);
+        return Collections.unmodifiableList(enumerated);
+    }
+
+    private static List<PravegaInputSplit> toSplits(List<SegmentRange> segmentRanges) {
+        segmentRanges.sort(Comparator.comparing(SegmentRange::getScope)
+                .thenComparing(SegmentRange::getStreamName)
+                .thenComparingLong(SegmentRange::getSegmentId)
+                .thenComparingLong(SegmentRange::getStartOffset));
+
+        List<PravegaInputSplit> splits = new ArrayList<>(segmentRanges.size());
+        for (SegmentRange segmentRange : segmentRanges) {
+            splits.add(new PravegaInputSplit(splits.size(), segmentRange));
+        }
+        return splits;
+    }
+
+    /**
+     * Splits the segment ranges larger than the given size into smaller ones, which are read independently.
+     *
+     * <p>The events are framed in the segments, so a segment range must start and end at event boundaries. The only
+     * offsets known to be event boundaries without reading the segment are those of the stream cuts, so the segment
+     * ranges are split at the offsets of the stream cuts recorded by the time index and the zone maps of their
+     * stream, if any: each split spans at least the given size, unless it is the last one of its segment range.
+     *
+     * @param batchClientFactory The batch client factory which reads the indexes.
+     * @param splits             The splits, as enumerated by {@link #createSplits}.
+     * @param targetSplitSize    The target size of the splits, in bytes.
+     * @return the splits to read, numbered in order.
+     */
+    static List<PravegaInputSplit> subdivideSplits(BatchClientFactory batchClientFactory, List<PravegaInputSplit> splits, long targetSplitSize) {
+        Map<Stream, Map<Segment, NavigableSet<Long>>> boundaries = new HashMap<>();
+        List<PravegaInputSplit> subdivided = new ArrayList<>(splits.size());
+        for (PravegaInputSplit split : splits) {
+            SegmentRange segmentRange = split.getSegmentRange();
+            long startOffset = segmentRange.getStartOffset();
+            if (segmentRange.getEndOffset() - startOffset > targetSplitSize) {
+                NavigableSet<Long> offsets = boundaries.computeIfAbsent(
+                        Stream.of(segmentRange.getScope(), segmentRange.getStreamName()),
+                        stream -> readEventBoundaries(batchClientFactory, stream))
+                        .getOrDefault(segmentRange.asImpl().getSegment(), Collections.emptyNavigableSet());
+                for (long offset : offsets.subSet(startOffset, false, segmentRange.getEndOffset(), false)) {
+                    if (offset - startOffset >= targetSplitSize) {
+                        subdivided.add(new PravegaInputSplit(subdivided.size(), subRange(segmentRange, startOffset, offset)));
+                        startOffset = offset;
+                    }
+                }
+            }
+            subdivided.add(new PravegaInputSplit(subdivided.size(), startOffset == segmentRange.getStartOffset()
+                    ? segmentRange
+                    : subRange(segmentRange, startOffset, segmentRange.getEndOffset())));
+        }
+        return subdivided;
+    }
+
+    // the offsets of the stream cuts recorded by the indexes of the stream, by segment
+    private static Map<Segment, NavigableSet<Long>> readEventBoundaries(BatchClientFactory batchClientFactory, Stream stream) {
+        List<StreamCut> streamCuts = new ArrayList<>();
+        try {
+            StreamTimeIndex.read(batchClientFactory, stream).forEach(entry -> streamCuts.add(entry.getStreamCut()));
+        } catch (RuntimeException e) {
+            log.debug("No time index for stream {}", stream, e);
+        }
+        try {
+            ZoneMapIndex.read(batchClientFactory, stream).forEach(entry -> {
+                streamCuts.add(entry.getFrom());
+                streamCuts.add(entry.getTo());
+            });
+        } catch (RuntimeException e) {
+            log.debug("No zone maps for stream {}", stream, e);
+        }
+
+        Map<Segment, NavigableSet<Long>> boundaries = new HashMap<>();
+        for (StreamCut streamCut : streamCuts) {
+            if (streamCut != StreamCut.UNBOUNDED) {
+                streamCut.asImpl().getPositions().forEach(
+                        (segment, offset) -> boundaries.computeIfAbsent(segment, s -> new TreeSet<>()).add(offset));
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Removes the splits which cannot hold an event matching the given filter, according to the zone maps of their
+     * streams, and numbers the remaining splits in order.
+     *
+     * @param batchClientFactory The batch client factory which reads the zone maps.
+     * @param splits             The splits, as enumerated by {@link #createSplits}.
+     * @param filter             The filter of the events.
+     * @return the splits to read, numbered in order.
+     */
+    static List<PravegaInputSplit> pruneSplits(BatchClientFactory batchClientFactory, List<PravegaInputSplit> splits, ZoneMapFilter filter) {
+        Map<Stream, List<ZoneMapIndex.Entry>> entries = new HashMap<>();
+        List<PravegaInputSplit> pruned = new ArrayList<>(splits.size());
+        for (PravegaInputSplit split : splits) {
+            SegmentRange segmentRange = split.getSegmentRange();
+            List<ZoneMapIndex.Entry> streamEntries = entries.computeIfAbsent(
+                    Stream.of(segmentRange.getScope(), segmentRange.getStreamName()),
+                    stream -> readZoneMaps(batchClientFactory, stream));
+            if (ZoneMapIndex.mayMatch(streamEntries, segmentRange, filter::test)) {
+                pruned.add(new PravegaInputSplit(pruned.size(), segmentRange));
+            }
+        }
+        return pruned;
+    }
+
+    private static List<ZoneMapIndex.Entry> readZoneMaps(BatchClientFactory batchClientFactory, Stream stream) {
+        try {
+            return ZoneMapIndex.read(batchClientFactory, stream);
+        } catch (RuntimeException e) {
+            // e.g. the stream has no zone maps, in which case all its splits are read
+            log.warn("Failed to read the zone maps of stream {}", stream, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Combines the splits smaller than the given size, in order, into splits of at least that size, except the last
+     * one, so that many small segment ranges do not cost one split each.
+     *
+     * @param splits          The splits, each of a single segment range.
+     * @param targetSplitSize The target size of the splits, in bytes.
+     * @return the splits to read, numbered in order.
+     */
+    static List<PravegaInputSplit> coalesceSplits(List<PravegaInputSplit> splits, long targetSplitSize) {
+        List<PravegaInputSplit> coalesced = new ArrayList<>(splits.size());
+        List<SegmentRange> smallRanges = new ArrayList<>();
+        long smallLength = 0;
+        for (PravegaInputSplit split : splits) {
+            if (split.getLength() >= targetSplitSize) {
+                coalesced.add(new PravegaInputSplit(coalesced.size(), split.getSegmentRanges()));
+                continue;
+            }
+            smallRanges.addAll(split.getSegmentRanges());
+            smallLength += split.getLength();
+            if (smallLength >= targetSplitSize) {
+                coalesced.add(new PravegaInputSplit(coalesced.size(), smallRanges));
+                smallRanges.clear();
+                smallLength = 0;
+            }
+        }
+        if (!smallRanges.isEmpty()) {
+            coalesced.add(new PravegaInputSplit(coalesced.size(), smallRanges));
+        }
+        return coalesced;
+    }
+
+    /**
+     * Assigns the splits to the parallel instances of a source in a round-robin fashion.
+     *
+     * @param splits       The splits, as enumerated by {@link #createSplits}.
+     * @param subtaskIndex The index of the parallel instance.
+     * @param numSubtasks  The number of parallel instances.
+     * @return the splits assigned to the parallel instance, in order.
+     */
+    static List<PravegaInputSplit> assignSplits(List<PravegaInputSplit> splits, int subtaskIndex, int numSubtasks) {
+        Preconditions.checkArgument(subtaskIndex >= 0 && subtaskIndex < numSubtasks, "invalid subtaskIndex");
+        return splits.stream()
+                .filter(split -> split.getSplitNumber() % numSubtasks == subtaskIndex)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The key of the cached segment ranges of a stream bounded at both ends, in the cluster of the given controller.
+     */
+    @Data
+    private static class SegmentRangeKey {
+        private final URI controllerURI;
+        private final StreamWithBoundaries stream;
+    }
+}
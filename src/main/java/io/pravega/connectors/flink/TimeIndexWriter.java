@@ -0,0 +1,432 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.EventStreamClientFactory;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.EventStreamWriter;
+import io.pravega.client.stream.EventWriterConfig;
+import io.pravega.client.stream.ScalingPolicy;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamConfiguration;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the samples of the {@link StreamTimeIndex} of a stream, on behalf of the parallel instances of a
+ * {@link FlinkPravegaWriter}.
+ *
+ * <p>Each parallel instance notes the watermark of each checkpoint when the checkpoint is taken, and the highest
+ * timestamp of the events it writes. Once a checkpoint is complete, i.e. its events are committed, the instance
+ * reports both to a global aggregate in the job manager, which coordinates the samples:
+ * <ol>
+ *     <li>Once every instance has committed a checkpoint, the instance which reports last fetches the tail of the
+ *     stream from the controller, so that the tail follows the events of all the instances up to the checkpoint.</li>
+ *     <li>The sample is then held until every instance reports its highest timestamp read after the tail was
+ *     fetched, so that it covers all its events before the tail: the instance which fetched the tail reports it
+ *     along with the tail, and the other instances when they report again after learning that the tail was
+ *     fetched.</li>
+ *     <li>The instance which reports last appends the sample, with the lowest watermark reported before the tail was
+ *     fetched and the highest timestamp reported after.</li>
+ * </ol>
+ * A sample is thus appended a couple of checkpoints after the checkpoint it samples. The reports and the appends run
+ * on the given executor so that the task thread is not blocked. The index is best effort: a sample which cannot be
+ * written is skipped, and only the samples whose watermark advanced are written.
+ *
+ * <p>The highest timestamps are kept by the global aggregate, which lives as long as the job. The events written by
+ * a previous job, e.g. before the job was restarted from a savepoint, after the last sample of that job are not
+ * accounted for by the samples of the new job.
+ */
+@Slf4j
+class TimeIndexWriter implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+    // no checkpoint id
+    private static final long NONE = -1L;
+
+    private final Stream stream;
+
+    private final StreamManager streamManager;
+
+    private final ExecutorService executor;
+
+    private final GlobalAggregateManager aggregateManager;
+
+    private final String aggregateName;
+
+    private final int subtaskIndex;
+
+    private final int numSubtasks;
+
+    private final SampleAggregateFunction aggregateFunction = new SampleAggregateFunction();
+
+    // the watermarks of the checkpoints taken but not completed yet, by checkpoint id
+    private final TreeMap<Long, Long> pendingWatermarks = new TreeMap<>();
+
+    private EventStreamWriter<StreamTimeIndex.Entry> indexWriter;
+
+    // the highest timestamp of the events written, updated by the task thread and reported by the executor
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    // the latest checkpoint whose tail is known to be fetched, accessed by the executor only
+    private long sampledCheckpointId = NONE;
+
+    /**
+     * Creates a new time index writer.
+     *
+     * @param stream           The indexed stream.
+     * @param streamManager    The stream manager which creates the index stream and fetches the tails, owned by the writer.
+     * @param executor         The executor which reports the checkpoints and appends the samples, owned by the writer.
+     * @param aggregateManager The manager of the global aggregates of the job.
+     * @param aggregateName    The name of the global aggregate, which must be the same for all the parallel instances.
+     * @param subtaskIndex     The index of this parallel instance.
+     * @param numSubtasks      The number of parallel instances.
+     */
+    TimeIndexWriter(Stream stream, StreamManager streamManager, ExecutorService executor,
+                    GlobalAggregateManager aggregateManager, String aggregateName, int subtaskIndex, int numSubtasks) {
+        Preconditions.checkArgument(subtaskIndex >= 0 && subtaskIndex < numSubtasks, "subtaskIndex must be in [0, numSubtasks)");
+        this.stream = Preconditions.checkNotNull(stream, "stream");
+        this.streamManager = Preconditions.checkNotNull(streamManager, "streamManager");
+        this.executor = Preconditions.checkNotNull(executor, "executor");
+        this.aggregateManager = Preconditions.checkNotNull(aggregateManager, "aggregateManager");
+        this.aggregateName = Preconditions.checkNotNull(aggregateName, "aggregateName");
+        this.subtaskIndex = subtaskIndex;
+        this.numSubtasks = numSubtasks;
+    }
+
+    /**
+     * Creates the index stream, with a single segment to keep the samples in order, unless it exists.
+     *
+     * @param clientFactory The client factory of the scope of the indexed stream.
+     */
+    void open(EventStreamClientFactory clientFactory) {
+        Stream indexStream = StreamTimeIndex.indexStreamOf(stream);
+        streamManager.createStream(indexStream.getScope(), indexStream.getStreamName(),
+                StreamConfiguration.builder().scalingPolicy(ScalingPolicy.fixed(1)).build());
+        indexWriter = clientFactory.createEventWriter(indexStream.getStreamName(),
+                new StreamTimeIndex.EntrySerializer(), EventWriterConfig.builder().build());
+    }
+
+    /**
+     * Notes the timestamp of an event being written.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    void record(long timestamp) {
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Notes the watermark of a checkpoint being taken.
+     *
+     * @param checkpointId The id of the checkpoint.
+     * @param watermark    The current watermark of the writer.
+     */
+    void snapshot(long checkpointId, long watermark) {
+        pendingWatermarks.put(checkpointId, watermark);
+    }
+
+    /**
+     * Reports the latest completed checkpoint, whose events are committed, and appends a sample if due.
+     *
+     * @param checkpointId The id of the completed checkpoint.
+     */
+    void checkpointComplete(long checkpointId) {
+        Map.Entry<Long, Long> checkpoint = pendingWatermarks.floorEntry(checkpointId);
+        pendingWatermarks.headMap(checkpointId, true).clear();
+        if (checkpoint == null) {
+            return;
+        }
+        final long committedCheckpointId = checkpoint.getKey();
+        final long watermark = checkpoint.getValue();
+        try {
+            executor.execute(() -> report(committedCheckpointId, watermark));
+        } catch (RejectedExecutionException e) {
+            log.warn("Skipped the time index report of stream {} at checkpoint {}", stream, committedCheckpointId);
+        }
+    }
+
+    private void report(long checkpointId, long watermark) {
+        try {
+            // the highest timestamp is read after learning that the tail was fetched, if it was
+            SampleOutcome outcome = aggregateManager.updateGlobalAggregate(aggregateName,
+                    SampleUpdate.report(subtaskIndex, numSubtasks, checkpointId, watermark, maxTimestamp, sampledCheckpointId),
+                    aggregateFunction);
+            appendSample(outcome);
+            if (outcome.fetchCheckpointId != NONE) {
+                // the highest timestamp is read once the tail is fetched
+                byte[] tail = fetchTail();
+                outcome = aggregateManager.updateGlobalAggregate(aggregateName,
+                        SampleUpdate.tail(subtaskIndex, outcome.fetchCheckpointId, tail, maxTimestamp), aggregateFunction);
+                appendSample(outcome);
+            }
+            sampledCheckpointId = outcome.sampledCheckpointId;
+        } catch (IOException e) {
+            log.warn("Failed to report checkpoint {} to the time index of stream {}", checkpointId, stream, e);
+        }
+    }
+
+    // the serialized tail of the stream, or null if it cannot be fetched
+    private byte[] fetchTail() {
+        try {
+            ByteBuffer tail = streamManager.getStreamInfo(stream.getScope(), stream.getStreamName()).getTailStreamCut().toBytes();
+            byte[] bytes = new byte[tail.remaining()];
+            tail.get(bytes);
+            return bytes;
+        } catch (RuntimeException e) {
+            log.warn("Failed to fetch the tail of stream {} for its time index", stream, e);
+            return null;
+        }
+    }
+
+    private void appendSample(SampleOutcome outcome) {
+        if (outcome.sampleTail != null) {
+            append(new StreamTimeIndex.Entry(outcome.sampleWatermark, outcome.sampleMaxTimestamp,
+                    StreamCut.fromBytes(ByteBuffer.wrap(outcome.sampleTail))));
+        }
+    }
+
+    private void append(StreamTimeIndex.Entry entry) {
+        try {
+            indexWriter.writeEvent(entry).join();
+        } catch (RuntimeException e) {
+            log.warn("Failed to append the time index sample of stream {} at watermark {}", stream, entry.getTimestamp(), e);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // let the sample being appended complete before closing the index writer
+        executor.shutdown();
+        executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (indexWriter != null) {
+            indexWriter.close();
+        }
+        streamManager.close();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * An update of the global aggregate: either the report of a completed checkpoint by a parallel instance,
+     * or the tail fetched by a parallel instance on request, null if it could not be fetched, along with the highest
+     * timestamp of the instance read after fetching it.
+     */
+    static class SampleUpdate implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean report;
+        private final int subtaskIndex;
+        private final int numSubtasks;
+        private final long checkpointId;
+        private final long watermark;
+        private final long maxTimestamp;
+        private final long sampledCheckpointId;
+        private final byte[] tail;
+
+        private SampleUpdate(boolean report, int subtaskIndex, int numSubtasks, long checkpointId, long watermark,
+                             long maxTimestamp, long sampledCheckpointId, byte[] tail) {
+            this.report = report;
+            this.subtaskIndex = subtaskIndex;
+            this.numSubtasks = numSubtasks;
+            this.checkpointId = checkpointId;
+            this.watermark = watermark;
+            this.maxTimestamp = maxTimestamp;
+            this.sampledCheckpointId = sampledCheckpointId;
+            this.tail = tail;
+        }
+
+        static SampleUpdate report(int subtaskIndex, int numSubtasks, long checkpointId, long watermark,
+                                   long maxTimestamp, long sampledCheckpointId) {
+            return new SampleUpdate(true, subtaskIndex, numSubtasks, checkpointId, watermark, maxTimestamp, sampledCheckpointId, null);
+        }
+
+        static SampleUpdate tail(int subtaskIndex, long checkpointId, byte[] tail, long maxTimestamp) {
+            return new SampleUpdate(false, subtaskIndex, 0, checkpointId, Long.MIN_VALUE, maxTimestamp, NONE, tail);
+        }
+    }
+
+    /**
+     * The outcome of an update for the parallel instance which made it: the checkpoint whose tail it must fetch,
+     * the sample it must append, and the latest checkpoint whose tail is fetched.
+     */
+    static class SampleOutcome implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long sampledCheckpointId;
+        private long fetchCheckpointId = NONE;
+        private byte[] sampleTail;
+        private long sampleWatermark;
+        private long sampleMaxTimestamp;
+
+        SampleOutcome(long sampledCheckpointId) {
+            this.sampledCheckpointId = sampledCheckpointId;
+        }
+
+        long getFetchCheckpointId() {
+            return fetchCheckpointId;
+        }
+
+        long getSampleMaxTimestamp() {
+            return sampleMaxTimestamp;
+        }
+    }
+
+    /**
+     * The state of the global aggregate: the latest report of each parallel instance, the tail being fetched,
+     * and the sample held until every parallel instance has reported its highest timestamp since its tail was fetched.
+     */
+    static class SampleState implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HashMap<Integer, Long> committedCheckpointIds = new HashMap<>();
+        private final HashMap<Integer, Long> watermarks = new HashMap<>();
+        private final HashMap<Integer, Long> maxTimestamps = new HashMap<>();
+        private int numSubtasks;
+
+        // the checkpoint whose tail is being fetched, by which parallel instance, and the watermark of its sample
+        private long fetchCheckpointId = NONE;
+        private int fetchSubtaskIndex;
+        private long fetchWatermark;
+
+        // the latest checkpoint whose tail is fetched, and its sample until it is appended
+        private long sampledCheckpointId = NONE;
+        private byte[] sampleTail;
+        private long sampleWatermark;
+        private long sampleMaxTimestamp;
+        private final HashSet<Integer> sampleReported = new HashSet<>();
+
+        // the watermark of the latest sample appended
+        private long lastWatermark = Long.MIN_VALUE;
+
+        // the outcome of the latest update
+        private SampleOutcome outcome;
+    }
+
+    /**
+     * Coordinates the samples of the time index from the updates of the parallel instances.
+     */
+    static class SampleAggregateFunction implements AggregateFunction<SampleUpdate, SampleState, SampleOutcome> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public SampleState createAccumulator() {
+            return new SampleState();
+        }
+
+        @Override
+        public SampleState add(SampleUpdate update, SampleState state) {
+            if (update.report) {
+                addReport(update, state);
+            } else {
+                addTail(update, state);
+            }
+            return state;
+        }
+
+        private static void addReport(SampleUpdate update, SampleState state) {
+            state.numSubtasks = update.numSubtasks;
+            state.committedCheckpointIds.put(update.subtaskIndex, update.checkpointId);
+            state.watermarks.put(update.subtaskIndex, update.watermark);
+            state.maxTimestamps.merge(update.subtaskIndex, update.maxTimestamp, Math::max);
+            if (state.fetchCheckpointId != NONE && state.fetchSubtaskIndex == update.subtaskIndex) {
+                // the parallel instance reports again without having fetched the tail, e.g. after a failover
+                state.fetchCheckpointId = NONE;
+            }
+            state.outcome = new SampleOutcome(state.sampledCheckpointId);
+
+            // the highest timestamp of a parallel instance which knows that the tail was fetched covers its events before the tail
+            if (state.sampleTail != null && update.sampledCheckpointId >= state.sampledCheckpointId) {
+                addSampleReport(update.subtaskIndex, state);
+            }
+
+            // the tail is fetched once every parallel instance has committed a checkpoint since the latest sample
+            if (state.sampleTail == null && state.fetchCheckpointId == NONE
+                    && state.committedCheckpointIds.size() >= state.numSubtasks) {
+                long checkpointId = Collections.min(state.committedCheckpointIds.values());
+                long watermark = Collections.min(state.watermarks.values());
+                if (checkpointId > state.sampledCheckpointId && watermark > state.lastWatermark && watermark < Long.MAX_VALUE) {
+                    state.fetchCheckpointId = checkpointId;
+                    state.fetchSubtaskIndex = update.subtaskIndex;
+                    state.fetchWatermark = watermark;
+                    state.outcome.fetchCheckpointId = checkpointId;
+                }
+            }
+        }
+
+        private static void addTail(SampleUpdate update, SampleState state) {
+            state.outcome = new SampleOutcome(state.sampledCheckpointId);
+            if (state.fetchCheckpointId == update.checkpointId && state.fetchSubtaskIndex == update.subtaskIndex) {
+                state.fetchCheckpointId = NONE;
+                if (update.tail != null) {
+                    state.sampledCheckpointId = update.checkpointId;
+                    state.sampleTail = update.tail;
+                    state.sampleWatermark = state.fetchWatermark;
+                    state.sampleMaxTimestamp = Long.MIN_VALUE;
+                    state.sampleReported.clear();
+                    state.outcome = new SampleOutcome(state.sampledCheckpointId);
+
+                    // the highest timestamp of the parallel instance which fetched the tail was read after fetching it
+                    state.maxTimestamps.merge(update.subtaskIndex, update.maxTimestamp, Math::max);
+                    addSampleReport(update.subtaskIndex, state);
+                }
+            }
+        }
+
+        // counts the highest timestamp of a parallel instance towards the sample, and completes it once all have reported
+        private static void addSampleReport(int subtaskIndex, SampleState state) {
+            if (!state.sampleReported.add(subtaskIndex)) {
+                return;
+            }
+            state.sampleMaxTimestamp = Math.max(state.sampleMaxTimestamp, state.maxTimestamps.get(subtaskIndex));
+            if (state.sampleReported.size() >= state.numSubtasks) {
+                state.outcome.sampleTail = state.sampleTail;
+                state.outcome.sampleWatermark = state.sampleWatermark;
+                state.outcome.sampleMaxTimestamp = state.sampleMaxTimestamp;
+                state.lastWatermark = state.sampleWatermark;
+                state.sampleTail = null;
+            }
+        }
+
+        @Override
+        public SampleOutcome getResult(SampleState state) {
+            return state.outcome;
+        }
+
+        @Override
+        public SampleState merge(SampleState a, SampleState b) {
+            // the updates of a global aggregate are applied one at a time, so there is nothing to merge
+            return a;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Aligns the event time of the parallel readers of a reader group.
+ *
+ * <p>Each reader periodically publishes its local event time, i.e. the highest timestamp it has emitted, to a
+ * global aggregate in the job manager, and receives the minimum event time of all the readers in return.
+ * A reader whose local event time is ahead of the global minimum by more than the maximum drift pauses,
+ * so that the downstream operators do not have to buffer the gap between the fastest and the slowest readers.
+ *
+ * <p>A reader which has not emitted any event yet holds back the other readers, as does a reader which stops
+ * publishing, e.g. because it is backpressured, until it publishes again. Only the idle and the finished readers
+ * do not hold back the other readers.
+ *
+ * <p>The pause is taken in bounded slices, and the reader reads a single event between the slices.
+ * The reader must keep calling {@code readNextEvent} for the checkpoint events to be delivered, and this
+ * bounds the progress of a paused reader to a few events per second.
+ */
+@Slf4j
+class WatermarkAligner {
+
+    // the maximum time spent pausing before reading the next event, so that checkpoint events are still read
+    static final long MAX_PAUSE_SLICE_MILLIS = 100L;
+
+    private final GlobalAggregateManager aggregateManager;
+
+    private final String aggregateName;
+
+    private final int subtaskIndex;
+
+    private final long maxDriftMillis;
+
+    private final long updateIntervalMillis;
+
+    private final Counter pausedTimeMillis;
+
+    private final MinEventTimeAggregateFunction aggregateFunction;
+
+    // the minimum event time of all the readers, or Long.MAX_VALUE if unknown
+    private long globalEventTime = Long.MAX_VALUE;
+
+    // the event time last published by this reader
+    private long publishedEventTime = Long.MIN_VALUE;
+
+    private long nextUpdateTime = 0L;
+
+    /**
+     * Creates a new aligner.
+     *
+     * @param aggregateManager     The manager of the global aggregates of the job.
+     * @param aggregateName        The name of the global aggregate, which must be the same for all the readers of a reader group.
+     * @param subtaskIndex         The index of this reader.
+     * @param maxDriftMillis       The maximum drift between the local event time and the global minimum event time.
+     * @param updateIntervalMillis The interval between the updates of the global aggregate.
+     * @param pausedTimeMillis     The counter of the time spent pausing.
+     */
+    WatermarkAligner(GlobalAggregateManager aggregateManager, String aggregateName, int subtaskIndex,
+                     long maxDriftMillis, long updateIntervalMillis, Counter pausedTimeMillis) {
+        Preconditions.checkArgument(maxDriftMillis > 0, "maxDriftMillis must be > 0");
+        Preconditions.checkArgument(updateIntervalMillis > 0, "updateIntervalMillis must be > 0");
+        this.aggregateManager = Preconditions.checkNotNull(aggregateManager, "aggregateManager");
+        this.aggregateName = Preconditions.checkNotNull(aggregateName, "aggregateName");
+        this.subtaskIndex = subtaskIndex;
+        this.maxDriftMillis = maxDriftMillis;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.pausedTimeMillis = Preconditions.checkNotNull(pausedTimeMillis, "pausedTimeMillis");
+        this.aggregateFunction = new MinEventTimeAggregateFunction();
+    }
+
+    /**
+     * Publishes the local event time if due, and pauses for a slice if the local event time is too far ahead.
+     * The local event time is also published as soon as the first event is emitted.
+     *
+     * @param localEventTime The highest timestamp emitted by this reader, or Long.MIN_VALUE if none.
+     * @param idle           Whether this reader is marked as idle, in which case it does not hold back the other readers.
+     * @return true if this reader paused and should read a single event before calling this method again.
+     */
+    boolean pauseIfAhead(long localEventTime, boolean idle) throws IOException, InterruptedException {
+        final long now = System.currentTimeMillis();
+        final long published = idle ? Long.MAX_VALUE : localEventTime;
+        if (now >= nextUpdateTime || (publishedEventTime == Long.MIN_VALUE && published != Long.MIN_VALUE)) {
+            globalEventTime = aggregateManager.updateGlobalAggregate(
+                    aggregateName, new SubtaskEventTime(subtaskIndex, published), aggregateFunction);
+            publishedEventTime = published;
+            nextUpdateTime = now + updateIntervalMillis;
+        }
+
+        if (!isAhead(localEventTime)) {
+            return false;
+        }
+
+        final long pause = Math.max(1L, Math.min(MAX_PAUSE_SLICE_MILLIS, nextUpdateTime - now));
+        log.debug("Pausing for {} ms, the local event time {} is ahead of the global event time {}",
+                pause, localEventTime, globalEventTime);
+        Thread.sleep(pause);
+        pausedTimeMillis.inc(pause);
+        return true;
+    }
+
+    /**
+     * Withdraws the event time of this reader, so that it does not hold back the other readers once finished.
+     */
+    void close() {
+        try {
+            aggregateManager.updateGlobalAggregate(
+                    aggregateName, new SubtaskEventTime(subtaskIndex, Long.MAX_VALUE), aggregateFunction);
+        } catch (IOException e) {
+            log.warn("Failed to withdraw the event time of subtask {} from the global aggregate {}", subtaskIndex, aggregateName, e);
+        }
+    }
+
+    private boolean isAhead(long localEventTime) {
+        return localEventTime != Long.MIN_VALUE
+                && globalEventTime != Long.MAX_VALUE
+                && (globalEventTime == Long.MIN_VALUE || localEventTime - globalEventTime > maxDriftMillis);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * The event time published by a reader: Long.MIN_VALUE if it has not emitted any event yet,
+     * Long.MAX_VALUE if it is idle or finished.
+     */
+    static class SubtaskEventTime implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int subtaskIndex;
+        private final long eventTime;
+
+        SubtaskEventTime(int subtaskIndex, long eventTime) {
+            this.subtaskIndex = subtaskIndex;
+            this.eventTime = eventTime;
+        }
+    }
+
+    /**
+     * Aggregates the event times published by the readers into their minimum. The accumulator maps each reader
+     * to the event time it published last, which never expires: a stalled reader keeps holding back the others.
+     */
+    static class MinEventTimeAggregateFunction
+            implements AggregateFunction<SubtaskEventTime, HashMap<Integer, Long>, Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public HashMap<Integer, Long> createAccumulator() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public HashMap<Integer, Long> add(SubtaskEventTime value, HashMap<Integer, Long> accumulator) {
+            accumulator.put(value.subtaskIndex, value.eventTime);
+            return accumulator;
+        }
+
+        @Override
+        public Long getResult(HashMap<Integer, Long> accumulator) {
+            long min = Long.MAX_VALUE;
+            for (long eventTime : accumulator.values()) {
+                min = Math.min(min, eventTime);
+            }
+            return min;
+        }
+
+        @Override
+        public HashMap<Integer, Long> merge(HashMap<Integer, Long> a, HashMap<Integer, Long> b) {
+            a.putAll(b);
+            return a;
+        }
+    }
+}
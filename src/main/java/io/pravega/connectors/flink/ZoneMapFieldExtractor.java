@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import java.io.Serializable;
+
+/**
+ * Extracts the value of a field summarized by the zone maps of a stream from an event.
+ *
+ * <p>The values are compared as longs, e.g. the milliseconds of a timestamp or a numeric key.
+ *
+ * @param <T> The type of the event.
+ */
+public interface ZoneMapFieldExtractor<T> extends Serializable {
+
+    /**
+     * Extracts the value of the field from the given event.
+     *
+     * @param event The event.
+     * @return the value of the field.
+     */
+    long extract(T event);
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.connectors.flink.util.ZoneMapIndex;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A filter on the values of the fields summarized by the zone maps of a stream, i.e. a conjunction of value ranges,
+ * bounds included. The segment ranges whose zone maps do not intersect the filter are not read.
+ *
+ * <p>The filter only prunes segment ranges; it does not filter the events of the segment ranges which are read,
+ * so the job must still filter the events. The fields which are not summarized by the zone maps are ignored.
+ */
+public final class ZoneMapFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ZoneMapFilter ALL = new ZoneMapFilter(Collections.emptyMap());
+
+    private final Map<String, ZoneMapIndex.Range> ranges;
+
+    private ZoneMapFilter(Map<String, ZoneMapIndex.Range> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Gets a filter which matches all the values.
+     */
+    public static ZoneMapFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Gets a filter which matches the values of the given field between the given bounds.
+     *
+     * @param field The name of the summarized field.
+     * @param min   The minimum value, inclusive.
+     * @param max   The maximum value, inclusive.
+     */
+    public static ZoneMapFilter of(String field, long min, long max) {
+        return ALL.and(field, min, max);
+    }
+
+    /**
+     * Gets a filter which also restricts the values of the given field to the given bounds.
+     *
+     * @param field The name of the summarized field.
+     * @param min   The minimum value, inclusive.
+     * @param max   The maximum value, inclusive.
+     * @return the new filter.
+     */
+    public ZoneMapFilter and(String field, long min, long max) {
+        Preconditions.checkNotNull(field, "field");
+        ZoneMapIndex.Range range = ranges.get(field);
+        long newMin = range == null ? min : Math.max(min, range.getMin());
+        long newMax = range == null ? max : Math.min(max, range.getMax());
+        Map<String, ZoneMapIndex.Range> newRanges = new LinkedHashMap<>(ranges);
+        newRanges.put(field, new ZoneMapIndex.Range(newMin, newMax));
+        return new ZoneMapFilter(newRanges);
+    }
+
+    /**
+     * Checks whether events whose fields lie within the given value ranges may match this filter.
+     *
+     * @param zone The value ranges of the summarized fields.
+     */
+    public boolean test(Map<String, ZoneMapIndex.Range> zone) {
+        for (Map.Entry<String, ZoneMapIndex.Range> range : ranges.entrySet()) {
+            ZoneMapIndex.Range values = zone.get(range.getKey());
+            if (values != null && !range.getValue().intersects(values)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ZoneMapFilter && ranges.equals(((ZoneMapFilter) o).ranges));
+    }
+
+    @Override
+    public int hashCode() {
+        return ranges.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneMapFilter" + ranges;
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.base.Preconditions;
+import io.pravega.client.EventStreamClientFactory;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.EventStreamWriter;
+import io.pravega.client.stream.EventWriterConfig;
+import io.pravega.client.stream.ScalingPolicy;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamConfiguration;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.ZoneMapIndex;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Appends the entries of the {@link ZoneMapIndex} of a stream, on behalf of a parallel instance of a
+ * {@link FlinkPravegaWriter}.
+ *
+ * <p>The minimum and maximum value of each summarized field are tracked over the events written since the previous
+ * checkpoint. When a checkpoint is taken, once the events are flushed, the tail of the stream is fetched from the
+ * controller and an entry covering the events, from the previous tail to this one, is appended to the index stream
+ * on the given executor. An entry is appended even if no event was written, since the readers only skip the events
+ * enclosed by the entries of every parallel instance. Unlike the time index, an entry which cannot be written fails
+ * the writer.
+ *
+ * <p>The tails of the stream also enclose the events of the other writers of the stream, which the entries do not
+ * summarize, so the writer must be the only one of the stream, see {@link ZoneMapIndex}.
+ *
+ * @param <T> The type of the event.
+ */
+@Slf4j
+class ZoneMapWriter<T> implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+    private final Stream stream;
+
+    private final StreamManager streamManager;
+
+    private final ExecutorService executor;
+
+    private final String writerId;
+
+    private final int writerIndex;
+
+    private final int numWriters;
+
+    private final List<String> fields;
+
+    private final List<ZoneMapFieldExtractor<T>> extractors;
+
+    // the minimum and maximum value of each field over the events written since the previous entry
+    private final long[] mins;
+    private final long[] maxs;
+
+    // Error which will be detected asynchronously and reported to Flink.
+    private final AtomicReference<Throwable> writeError = new AtomicReference<>(null);
+
+    private EventStreamWriter<ZoneMapIndex.Entry> indexWriter;
+
+    // the tail of the stream before the events written since the previous entry
+    private StreamCut lowerBound;
+
+    private long count;
+
+    /**
+     * Creates a new zone map writer.
+     *
+     * @param stream        The summarized stream.
+     * @param streamManager The stream manager which creates the index stream and fetches the tails, owned by the writer.
+     * @param executor      The executor which appends the entries, owned by the writer.
+     * @param writerId      The id of the writer, shared by its parallel instances.
+     * @param writerIndex   The index of this parallel instance.
+     * @param numWriters    The number of parallel instances.
+     * @param extractors    The extractors of the summarized fields, by field name.
+     */
+    ZoneMapWriter(Stream stream, StreamManager streamManager, ExecutorService executor,
+                  String writerId, int writerIndex, int numWriters, Map<String, ZoneMapFieldExtractor<T>> extractors) {
+        Preconditions.checkArgument(!extractors.isEmpty(), "at least one field must be summarized");
+        Preconditions.checkArgument(writerIndex >= 0 && writerIndex < numWriters, "writerIndex must be in [0, numWriters)");
+        this.stream = Preconditions.checkNotNull(stream, "stream");
+        this.streamManager = Preconditions.checkNotNull(streamManager, "streamManager");
+        this.executor = Preconditions.checkNotNull(executor, "executor");
+        this.writerId = Preconditions.checkNotNull(writerId, "writerId");
+        this.writerIndex = writerIndex;
+        this.numWriters = numWriters;
+        this.fields = new ArrayList<>(extractors.keySet());
+        this.extractors = new ArrayList<>(extractors.values());
+        this.mins = new long[this.fields.size()];
+        this.maxs = new long[this.fields.size()];
+        reset();
+    }
+
+    /**
+     * Creates the index stream, with a single segment, unless it exists, and notes the tail of the stream before
+     * any event is written.
+     *
+     * @param clientFactory The client factory of the scope of the summarized stream.
+     */
+    void open(EventStreamClientFactory clientFactory) {
+        Stream indexStream = ZoneMapIndex.indexStreamOf(stream);
+        streamManager.createStream(indexStream.getScope(), indexStream.getStreamName(),
+                StreamConfiguration.builder().scalingPolicy(ScalingPolicy.fixed(1)).build());
+        indexWriter = clientFactory.createEventWriter(indexStream.getStreamName(),
+                new ZoneMapIndex.EntrySerializer(), EventWriterConfig.builder().build());
+        lowerBound = fetchTail();
+    }
+
+    /**
+     * Notes the values of the fields of an event being written.
+     *
+     * @param event The event.
+     */
+    void add(T event) {
+        for (int i = 0; i < mins.length; i++) {
+            long value = extractors.get(i).extract(event);
+            mins[i] = Math.min(mins[i], value);
+            maxs[i] = Math.max(maxs[i], value);
+        }
+        count++;
+    }
+
+    /**
+     * Appends the entry of the events written since the previous checkpoint, which must be flushed. Without events,
+     * the value ranges of the entry are empty, and match no filter.
+     *
+     * @throws IOException if a previous entry could not be written.
+     */
+    void snapshot() throws IOException {
+        checkWriteError();
+        Map<String, ZoneMapIndex.Range> ranges = new LinkedHashMap<>();
+        for (int i = 0; i < mins.length; i++) {
+            ranges.put(fields.get(i), new ZoneMapIndex.Range(mins[i], maxs[i]));
+        }
+        StreamCut upperBound = fetchTail();
+        final ZoneMapIndex.Entry entry = new ZoneMapIndex.Entry(writerId, writerIndex, numWriters, lowerBound, upperBound, ranges);
+        log.debug("Appending the zone map entry of {} events of stream {}: {}", count, stream, ranges);
+        executor.execute(() -> append(entry));
+        lowerBound = upperBound;
+        reset();
+    }
+
+    private void append(ZoneMapIndex.Entry entry) {
+        try {
+            indexWriter.writeEvent(entry).join();
+        } catch (RuntimeException e) {
+            log.warn("Failed to append the zone map entry of stream {}", stream, e);
+            writeError.compareAndSet(null, e);
+        }
+    }
+
+    private StreamCut fetchTail() {
+        return streamManager.getStreamInfo(stream.getScope(), stream.getStreamName()).getTailStreamCut();
+    }
+
+    private void reset() {
+        Arrays.fill(mins, Long.MAX_VALUE);
+        Arrays.fill(maxs, Long.MIN_VALUE);
+        count = 0;
+    }
+
+    private void checkWriteError() throws IOException {
+        Throwable error = writeError.getAndSet(null);
+        if (error != null) {
+            throw new IOException("Write failure", error);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // let the entries being appended complete before closing the index writer
+        executor.shutdown();
+        executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (indexWriter != null) {
+            indexWriter.close();
+        }
+        streamManager.close();
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.serialization;
+
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DeserializationSchema} which deserializes the events directly from the buffers returned by Pravega.
+ *
+ * <p>The Pravega readers of this connector detect this interface and call {@link #deserialize(ByteBuffer)},
+ * saving the copy of the buffer into an intermediate <code>byte[]</code>.
+ */
+public interface ByteBufferDeserializationSchema<T> extends DeserializationSchema<T> {
+
+    /**
+     * Deserializes the event in the remaining bytes of the given buffer.
+     *
+     * <p>The buffer may be a slice of a larger buffer, may be read-only and may not be backed by an array.
+     *
+     * @param message The serialized event.
+     * @return The deserialized event, or null if the event cannot be deserialized.
+     * @throws IOException if the deserialization fails.
+     */
+    T deserialize(ByteBuffer message) throws IOException;
+
+    @Override
+    default T deserialize(byte[] message) throws IOException {
+        return deserialize(ByteBuffer.wrap(message));
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.serialization;
+
+import org.apache.flink.api.common.serialization.SerializationSchema;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link SerializationSchema} which serializes the events directly into the buffers handed to Pravega.
+ *
+ * <p>The Pravega writers of this connector detect this interface and call {@link #serializeToByteBuffer(Object)},
+ * saving the copy of the buffer into an intermediate <code>byte[]</code>.
+ */
+public interface ByteBufferSerializationSchema<T> extends SerializationSchema<T> {
+
+    /**
+     * Serializes the given event into the remaining bytes of a buffer.
+     *
+     * @param element The event to serialize.
+     * @return The serialized event.
+     */
+    ByteBuffer serializeToByteBuffer(T element);
+
+    @Override
+    default byte[] serialize(T element) {
+        ByteBuffer buf = serializeToByteBuffer(element);
+
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0 && buf.limit() == buf.capacity()) {
+            return buf.array();
+        } else {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -12,19 +12,20 @@ package io.pravega.connectors.flink.serialization;
 
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.typeutils.RowTypeInfo;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.types.Row;
 import org.apache.flink.util.Preconditions;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Deserialization schema from JSON to {@link Row}.
  *
- * <p>Deserializes the <code>byte[]</code> messages as a JSON object and reads
+ * <p>Deserializes the messages as a JSON object and reads
  * the specified fields.
  *
  * <p>Failure during deserialization are forwarded as wrapped IOExceptions.
@@ -32,7 +33,7 @@ import java.io.IOException;
  * @deprecated Please use {@link org.apache.flink.formats.json.JsonRowDeserializationSchema} from flink-json module
  */
 @Deprecated
-public class JsonRowDeserializationSchema implements DeserializationSchema<Row> {
+public class JsonRowDeserializationSchema implements ByteBufferDeserializationSchema<Row> {
 
     /** Type information describing the result type. */
     private final TypeInformation<Row> typeInfo;
@@ -64,9 +65,12 @@ public class JsonRowDeserializationSchema implements DeserializationSchema<Row>
     }
 
     @Override
-    public Row deserialize(byte[] message) throws IOException {
+    public Row deserialize(ByteBuffer message) throws IOException {
         try {
-            JsonNode root = objectMapper.readTree(message);
+            // parse straight from the backing array, if any
+            JsonNode root = message.hasArray()
+                    ? objectMapper.readTree(message.array(), message.arrayOffset() + message.position(), message.remaining())
+                    : objectMapper.readTree(new ByteBufferBackedInputStream(message));
 
             Row row = new Row(fieldNames.length);
             for (int i = 0; i < fieldNames.length; i++) {
@@ -18,7 +18,6 @@ import java.nio.ByteBuffer;
 import org.apache.flink.api.common.functions.InvalidTypesException;
 import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
 
 import static org.apache.flink.util.Preconditions.checkArgument;
 import static org.apache.flink.util.Preconditions.checkNotNull;
@@ -31,7 +30,7 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
  * serialization and persistence stack.
  */
 public class PravegaDeserializationSchema<T> 
-        implements DeserializationSchema<T>, WrappingSerializer<T> {
+        implements ByteBufferDeserializationSchema<T>, WrappingSerializer<T> {
 
     // The TypeInformation of the produced type
     private final TypeInformation<T> typeInfo;
@@ -106,9 +105,8 @@ public class PravegaDeserializationSchema<T>
     // ------------------------------------------------------------------------
 
     @Override
-    public T deserialize(byte[] message) throws IOException {
-        ByteBuffer msg = ByteBuffer.wrap(message);
-        return serializer.deserialize(msg);
+    public T deserialize(ByteBuffer message) throws IOException {
+        return serializer.deserialize(message);
     }
 
     @Override
@@ -11,13 +11,12 @@ package io.pravega.connectors.flink.serialization;
 
 import io.pravega.client.stream.Serializer;
 import java.nio.ByteBuffer;
-import org.apache.flink.api.common.serialization.SerializationSchema;
 
 /**
  * A serialization schema adapter for a Pravega serializer.
  */
 public class PravegaSerializationSchema<T> 
-        implements SerializationSchema<T>, WrappingSerializer<T> {
+        implements ByteBufferSerializationSchema<T>, WrappingSerializer<T> {
 
     // the Pravega serializer
     private final Serializer<T> serializer;
@@ -27,16 +26,8 @@ public class PravegaSerializationSchema<T>
     }
 
     @Override
-    public byte[] serialize(T element) {
-        ByteBuffer buf = serializer.serialize(element);
-        
-        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0 && buf.limit() == buf.capacity()) {
-            return buf.array();
-        } else {
-            byte[] bytes = new byte[buf.remaining()];
-            buf.get(bytes);
-            return bytes;
-        }
+    public ByteBuffer serializeToByteBuffer(T element) {
+        return serializer.serialize(element);
     }
 
     @Override
@@ -16,6 +16,7 @@ import io.pravega.client.stream.ReaderConfig;
 import io.pravega.client.stream.Serializer;
 import io.pravega.connectors.flink.EventTimeOrderingOperator;
 import io.pravega.connectors.flink.FlinkPravegaWriter;
+import io.pravega.connectors.flink.serialization.ByteBufferDeserializationSchema;
 import io.pravega.connectors.flink.serialization.WrappingSerializer;
 import lombok.SneakyThrows;
 
@@ -99,17 +100,47 @@ public class FlinkPravegaUtils {
             String readerGroupName,
             DeserializationSchema<T> deserializationSchema,
             ReaderConfig readerConfig) {
+        return createPravegaReader(clientConfig, readerId, readerGroupScopeName, readerGroupName,
+                createDeserializer(deserializationSchema), readerConfig);
+    }
 
-        // create the adapter between Pravega's serializers and Flink's serializers
-        @SuppressWarnings("unchecked")
-        final Serializer<T> deserializer = deserializationSchema instanceof WrappingSerializer
-                ? ((WrappingSerializer<T>) deserializationSchema).getWrappedSerializer()
-                : new FlinkDeserializer<>(deserializationSchema);
-
+    /**
+     * Creates a Pravga {@link EventStreamReader} with the given Pravega {@link Serializer}.
+     *
+     * @param clientConfig The Pravega client configuration.
+     * @param readerId The id of the Pravega reader.
+     * @param readerGroupScopeName The reader group scope name.
+     * @param readerGroupName The reader group name.
+     * @param deserializer The serializer to deserialize events from pravega streams.
+     * @param readerConfig The reader configuration.
+     * @param <T> The type of the event.
+     * @return the create Pravega reader.
+     */
+    public static <T> EventStreamReader<T> createPravegaReader(
+            ClientConfig clientConfig,
+            String readerId,
+            String readerGroupScopeName,
+            String readerGroupName,
+            Serializer<T> deserializer,
+            ReaderConfig readerConfig) {
         return EventStreamClientFactory.withScope(readerGroupScopeName, clientConfig)
                 .createReader(readerId, readerGroupName, deserializer, readerConfig);
     }
 
+    /**
+     * Creates the adapter between Pravega's serializers and Flink's serializers.
+     *
+     * @param deserializationSchema The implementation to deserialize events from pravega streams.
+     * @param <T> The type of the event.
+     * @return the Pravega serializer which deserializes events with the given schema.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Serializer<T> createDeserializer(DeserializationSchema<T> deserializationSchema) {
+        return deserializationSchema instanceof WrappingSerializer
+                ? ((WrappingSerializer<T>) deserializationSchema).getWrappedSerializer()
+                : new FlinkDeserializer<>(deserializationSchema);
+    }
+
     /**
      * A Pravega {@link Serializer} that wraps around a Flink {@link DeserializationSchema}.
      *
@@ -119,8 +150,14 @@ public class FlinkPravegaUtils {
 
         private final DeserializationSchema<T> deserializationSchema;
 
+        // set if the schema deserializes directly from the buffer
+        private final ByteBufferDeserializationSchema<T> byteBufferDeserializationSchema;
+
         public FlinkDeserializer(DeserializationSchema<T> deserializationSchema) {
             this.deserializationSchema = deserializationSchema;
+            this.byteBufferDeserializationSchema = deserializationSchema instanceof ByteBufferDeserializationSchema
+                    ? (ByteBufferDeserializationSchema<T>) deserializationSchema
+                    : null;
         }
 
         @Override
@@ -131,6 +168,10 @@ public class FlinkPravegaUtils {
         @Override
         @SneakyThrows
         public T deserialize(ByteBuffer buffer) {
+            if (byteBufferDeserializationSchema != null) {
+                return byteBufferDeserializationSchema.deserialize(buffer);
+            }
+
             byte[] array;
             if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
                 array = buffer.array();
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.util;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.HistogramStatistics;
+import org.apache.flink.util.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Histogram} which computes its statistics over the most recent samples.
+ *
+ * <p>The samples are kept in a fixed-size ring buffer, so updates are cheap enough to be made
+ * on the hot path. The histogram may be updated concurrently from several threads.
+ */
+@Internal
+public class SlidingWindowHistogram implements Histogram {
+
+    private final long[] window;
+
+    private long count;
+
+    public SlidingWindowHistogram(int windowSize) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be > 0");
+        this.window = new long[windowSize];
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        window[(int) (count % window.length)] = value;
+        count++;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public HistogramStatistics getStatistics() {
+        final long[] values;
+        synchronized (this) {
+            values = Arrays.copyOf(window, (int) Math.min(count, window.length));
+        }
+        return new SnapshotStatistics(values);
+    }
+
+    /**
+     * The statistics of a snapshot of the samples.
+     */
+    private static class SnapshotStatistics extends HistogramStatistics {
+
+        private final long[] values;
+
+        SnapshotStatistics(long[] values) {
+            Arrays.sort(values);
+            this.values = values;
+        }
+
+        @Override
+        public double getQuantile(double quantile) {
+            Preconditions.checkArgument(quantile >= 0.0 && quantile <= 1.0, "quantile must be in [0, 1]");
+            if (values.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(quantile * values.length) - 1;
+            return values[Math.max(0, Math.min(index, values.length - 1))];
+        }
+
+        @Override
+        public long[] getValues() {
+            return Arrays.copyOf(values, values.length);
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public double getMean() {
+            if (values.length == 0) {
+                return 0.0;
+            }
+            double sum = 0.0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum / values.length;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (values.length < 2) {
+                return 0.0;
+            }
+            final double mean = getMean();
+            double sum = 0.0;
+            for (long value : values) {
+                sum += (value - mean) * (value - mean);
+            }
+            return Math.sqrt(sum / (values.length - 1));
+        }
+
+        @Override
+        public long getMax() {
+            return values.length == 0 ? 0L : values[values.length - 1];
+        }
+
+        @Override
+        public long getMin() {
+            return values.length == 0 ? 0L : values[0];
+        }
+    }
+}
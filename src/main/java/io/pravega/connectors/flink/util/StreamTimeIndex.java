@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.util;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import lombok.Data;
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The time index of a Pravega stream, which maps event times to stream cuts.
+ *
+ * <p>The index is a companion stream, named after the indexed stream with the {@link #INDEX_STREAM_SUFFIX} suffix,
+ * in which the {@code FlinkPravegaWriter} appends a sample for some of its completed checkpoints: the tail of the
+ * indexed stream once every parallel writer has committed the checkpoint, the lowest watermark of the parallel
+ * writers, and the highest timestamp of the events written before the tail. The events written before the stream
+ * cut of a sample have timestamps at or before its highest timestamp, and, assuming that no event is late, the
+ * events written after it have timestamps at or after its watermark. The index is read once, and searched by binary
+ * search, to seek the indexed stream by time at the granularity of the checkpoints.
+ */
+@Internal
+public final class StreamTimeIndex {
+
+    /**
+     * The suffix of the name of the index stream.
+     */
+    public static final String INDEX_STREAM_SUFFIX = "-timeindex";
+
+    private StreamTimeIndex() {
+    }
+
+    /**
+     * Gets the index stream of the given stream.
+     *
+     * @param stream The indexed stream.
+     * @return the index stream, in the scope of the indexed stream.
+     */
+    public static Stream indexStreamOf(Stream stream) {
+        return Stream.of(stream.getScope(), stream.getStreamName() + INDEX_STREAM_SUFFIX);
+    }
+
+    /**
+     * Reads the time index of the given stream, in the order of the timestamps. The highest timestamp of each sample
+     * is raised to the highest timestamp of the samples before it, e.g. those of a previous job, so that both
+     * timestamps increase along the samples.
+     *
+     * @param batchClientFactory The batch client factory which reads the index stream.
+     * @param stream             The indexed stream.
+     * @return the samples of the index.
+     */
+    public static List<Entry> read(BatchClientFactory batchClientFactory, Stream stream) {
+        List<Entry> entries = new ArrayList<>();
+        Iterator<SegmentRange> segmentRanges = batchClientFactory
+                .getSegments(indexStreamOf(stream), StreamCut.UNBOUNDED, StreamCut.UNBOUNDED).getIterator();
+        while (segmentRanges.hasNext()) {
+            try (SegmentIterator<Entry> iterator = batchClientFactory.readSegment(segmentRanges.next(), new EntrySerializer())) {
+                iterator.forEachRemaining(entries::add);
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getTimestamp).thenComparingLong(Entry::getMaxTimestamp));
+        long maxTimestamp = Long.MIN_VALUE;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.getMaxTimestamp() < maxTimestamp) {
+                entries.set(i, new Entry(entry.getTimestamp(), maxTimestamp, entry.getStreamCut()));
+            }
+            maxTimestamp = Math.max(maxTimestamp, entry.getMaxTimestamp());
+        }
+        return entries;
+    }
+
+    /**
+     * Resolves the stream cuts of the given stream between two timestamps.
+     *
+     * @param batchClientFactory The batch client factory which reads the index stream.
+     * @param stream             The indexed stream.
+     * @param startTime          The start timestamp, or {@code Long.MIN_VALUE} to read from the head of the stream.
+     * @param endTime            The end timestamp, or {@code Long.MAX_VALUE} to leave the stream unbounded.
+     * @return the stream with its boundaries.
+     */
+    public static StreamWithBoundaries resolve(BatchClientFactory batchClientFactory, Stream stream, long startTime, long endTime) {
+        Preconditions.checkArgument(startTime <= endTime, "The start timestamp must not be after the end timestamp.");
+        if (startTime == Long.MIN_VALUE && endTime == Long.MAX_VALUE) {
+            return StreamWithBoundaries.of(stream, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED);
+        }
+        List<Entry> entries = read(batchClientFactory, stream);
+        // the samples cross when no event lies between the timestamps, e.g. when the watermark advances without events
+        int end = endIndex(entries, endTime);
+        int start = Math.min(startIndex(entries, startTime), end);
+        return StreamWithBoundaries.of(stream, streamCutAt(entries, start), streamCutAt(entries, end));
+    }
+
+    /**
+     * Finds the stream cut from which the events at or after the given timestamp are read: the stream cut of the
+     * latest sample whose highest timestamp is before the timestamp, so that no event before the stream cut is at
+     * or after the timestamp.
+     *
+     * @param entries   The samples of the index, in the order of the timestamps, with increasing highest timestamps.
+     * @param timestamp The timestamp.
+     * @return the stream cut, or {@link StreamCut#UNBOUNDED} (the head of the stream) if no sample precedes the timestamp.
+     */
+    public static StreamCut findStartStreamCut(List<Entry> entries, long timestamp) {
+        return streamCutAt(entries, startIndex(entries, timestamp));
+    }
+
+    /**
+     * Finds the stream cut up to which the events at or before the given timestamp are read: the stream cut of the
+     * earliest sample whose watermark is after the timestamp.
+     *
+     * @param entries   The samples of the index, in the order of the timestamps.
+     * @param timestamp The timestamp.
+     * @return the stream cut, or {@link StreamCut#UNBOUNDED} if no sample follows the timestamp.
+     */
+    public static StreamCut findEndStreamCut(List<Entry> entries, long timestamp) {
+        return streamCutAt(entries, endIndex(entries, timestamp));
+    }
+
+    /**
+     * Finds the index of the latest sample whose highest timestamp is before the given timestamp, or -1 if none.
+     */
+    private static int startIndex(List<Entry> entries, long timestamp) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).getMaxTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Finds the index of the earliest sample whose watermark is after the given timestamp, or the number of samples if none.
+     */
+    private static int endIndex(List<Entry> entries, long timestamp) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).getTimestamp() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // the stream cut of the sample at the given index, unbounded outside of the samples
+    private static StreamCut streamCutAt(List<Entry> entries, int index) {
+        return index >= 0 && index < entries.size() ? entries.get(index).getStreamCut() : StreamCut.UNBOUNDED;
+    }
+
+    /**
+     * A sample of the time index.
+     */
+    @Data
+    public static final class Entry {
+
+        // the lowest watermark of the parallel writers at the checkpoint
+        private final long timestamp;
+
+        // the highest timestamp of the events written before the stream cut
+        private final long maxTimestamp;
+
+        // the tail of the indexed stream once every parallel writer has committed the checkpoint
+        private final StreamCut streamCut;
+    }
+
+    /**
+     * The serializer of the samples, which writes the timestamps followed by the serialized stream cut.
+     */
+    public static final class EntrySerializer implements Serializer<Entry> {
+
+        @Override
+        public ByteBuffer serialize(Entry entry) {
+            ByteBuffer streamCut = entry.getStreamCut().toBytes();
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES + streamCut.remaining());
+            buffer.putLong(entry.getTimestamp());
+            buffer.putLong(entry.getMaxTimestamp());
+            buffer.put(streamCut);
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public Entry deserialize(ByteBuffer serializedValue) {
+            ByteBuffer buffer = serializedValue.duplicate();
+            long timestamp = buffer.getLong();
+            long maxTimestamp = buffer.getLong();
+            return new Entry(timestamp, maxTimestamp, StreamCut.fromBytes(buffer.slice()));
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.util;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import lombok.Data;
+import org.apache.flink.annotation.Internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The zone maps of a Pravega stream, which summarize the values of some fields of the events between stream cuts.
+ *
+ * <p>The zone maps are stored in a companion stream, named after the stream with the {@link #INDEX_STREAM_SUFFIX}
+ * suffix, in which each parallel instance of the {@code FlinkPravegaWriter} appends an entry per checkpoint: the
+ * minimum and maximum value of each summarized field over the events it wrote since the previous checkpoint, and
+ * the stream cuts between which these events lie. The stream cuts also enclose the events of the other parallel
+ * instances, so an entry only summarizes the events of its own instance. A part of a segment range is covered once
+ * every parallel instance of a writer has an entry which encloses it, and a segment range whose parts are all
+ * covered by entries which cannot match a filter holds no event which matches the filter, so it need not be read.
+ * The events which are not covered, e.g. written before the zone maps were enabled, or by a parallel instance which
+ * failed before its entry was appended, are always read.
+ *
+ * <p>The stream cuts of the entries are tails of the whole stream, so they also enclose the events of any other
+ * writer of the stream, which the entries do not summarize. The zone maps therefore require the summarizing sink to
+ * be the only writer of the stream while it runs: the events appended meanwhile by a plain writer, or by another job,
+ * cannot be told apart and may be skipped. The entries of two summarizing writers which enclose the same offsets show
+ * such a concurrent write, so the segment ranges holding these offsets are always read.
+ */
+@Internal
+public final class ZoneMapIndex {
+
+    /**
+     * The suffix of the name of the index stream.
+     */
+    public static final String INDEX_STREAM_SUFFIX = "-zonemap";
+
+    private ZoneMapIndex() {
+    }
+
+    /**
+     * Gets the index stream of the given stream.
+     *
+     * @param stream The summarized stream.
+     * @return the index stream, in the scope of the summarized stream.
+     */
+    public static Stream indexStreamOf(Stream stream) {
+        return Stream.of(stream.getScope(), stream.getStreamName() + INDEX_STREAM_SUFFIX);
+    }
+
+    /**
+     * Reads the zone maps of the given stream.
+     *
+     * @param batchClientFactory The batch client factory which reads the index stream.
+     * @param stream             The summarized stream.
+     * @return the entries of the zone maps.
+     */
+    public static List<Entry> read(BatchClientFactory batchClientFactory, Stream stream) {
+        List<Entry> entries = new ArrayList<>();
+        Iterator<SegmentRange> segmentRanges = batchClientFactory
+                .getSegments(indexStreamOf(stream), StreamCut.UNBOUNDED, StreamCut.UNBOUNDED).getIterator();
+        while (segmentRanges.hasNext()) {
+            try (SegmentIterator<Entry> iterator = batchClientFactory.readSegment(segmentRanges.next(), new EntrySerializer())) {
+                iterator.forEachRemaining(entries::add);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Checks whether the given segment range may hold an event which matches the given filter, i.e. whether a part
+     * of the segment range is not covered by the entries, or is covered by an entry which matches the filter. The
+     * segment range is also read if the entries of several writers enclose the same offsets of it.
+     *
+     * @param entries      The entries of the zone maps of the stream of the segment range.
+     * @param segmentRange The segment range.
+     * @param filter       The filter of the value ranges of the fields of an entry.
+     * @return false if the segment range need not be read.
+     */
+    public static boolean mayMatch(List<Entry> entries, SegmentRange segmentRange, Predicate<Map<String, Range>> filter) {
+        final Segment segment = new Segment(segmentRange.getScope(), segmentRange.getStreamName(), segmentRange.getSegmentId());
+        // the offsets enclosed by the entries which cannot match, by writer and parallel instance
+        Map<String, Map<Integer, List<long[]>>> enclosed = new HashMap<>();
+        Map<String, Integer> numWriters = new HashMap<>();
+        for (Entry entry : entries) {
+            long[] offsets = entry.offsetsOf(segment);
+            if (offsets != null && offsets[0] < segmentRange.getEndOffset() && offsets[1] > segmentRange.getStartOffset()) {
+                if (filter.test(entry.getRanges())) {
+                    return true;
+                }
+                String writer = entry.getWriterId() + "/" + entry.getNumWriters();
+                enclosed.computeIfAbsent(writer, w -> new HashMap<>())
+                        .computeIfAbsent(entry.getWriterIndex(), i -> new ArrayList<>()).add(offsets);
+                numWriters.put(writer, entry.getNumWriters());
+            }
+        }
+
+        if (haveConcurrentWriters(enclosed.values())) {
+            return true;
+        }
+
+        // the offsets covered by a writer are those enclosed by the entries of each of its parallel instances
+        List<long[]> covered = new ArrayList<>();
+        for (Map.Entry<String, Map<Integer, List<long[]>>> writer : enclosed.entrySet()) {
+            List<long[]> writerCovered = null;
+            for (int i = 0; i < numWriters.get(writer.getKey()); i++) {
+                List<long[]> instanceEnclosed = writer.getValue().get(i);
+                if (instanceEnclosed == null) {
+                    writerCovered = Collections.emptyList();
+                    break;
+                }
+                writerCovered = writerCovered == null ? union(instanceEnclosed) : intersection(writerCovered, union(instanceEnclosed));
+            }
+            covered.addAll(writerCovered);
+        }
+
+        // the segment range is skipped only if the covered offsets span all of it
+        List<long[]> merged = union(covered);
+        long offset = segmentRange.getStartOffset();
+        for (long[] offsets : merged) {
+            if (offsets[0] > offset) {
+                break;
+            }
+            offset = Math.max(offset, offsets[1]);
+        }
+        return offset < segmentRange.getEndOffset();
+    }
+
+    // whether the offsets enclosed by the entries of a writer overlap those enclosed by the entries of another one
+    private static boolean haveConcurrentWriters(Collection<Map<Integer, List<long[]>>> writers) {
+        if (writers.size() < 2) {
+            return false;
+        }
+        // the intervals spanned by each writer are disjoint, so an interval which starts before the end of an
+        // earlier one overlaps an interval of another writer
+        List<long[]> spans = new ArrayList<>();
+        for (Map<Integer, List<long[]>> writer : writers) {
+            List<long[]> enclosed = new ArrayList<>();
+            writer.values().forEach(enclosed::addAll);
+            spans.addAll(union(enclosed));
+        }
+        spans.sort((a, b) -> Long.compare(a[0], b[0]));
+        long end = Long.MIN_VALUE;
+        for (long[] span : spans) {
+            if (span[0] < end) {
+                return true;
+            }
+            end = Math.max(end, span[1]);
+        }
+        return false;
+    }
+
+    // the disjoint intervals spanned by the given intervals, in order
+    private static List<long[]> union(List<long[]> intervals) {
+        List<long[]> sorted = new ArrayList<>(intervals);
+        sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> union = new ArrayList<>();
+        for (long[] interval : sorted) {
+            long[] last = union.isEmpty() ? null : union.get(union.size() - 1);
+            if (last != null && interval[0] <= last[1]) {
+                last[1] = Math.max(last[1], interval[1]);
+            } else {
+                union.add(new long[] {interval[0], interval[1]});
+            }
+        }
+        return union;
+    }
+
+    // the intersection of two lists of disjoint intervals in order
+    private static List<long[]> intersection(List<long[]> a, List<long[]> b) {
+        List<long[]> intersection = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            long start = Math.max(a.get(i)[0], b.get(j)[0]);
+            long end = Math.min(a.get(i)[1], b.get(j)[1]);
+            if (start < end) {
+                intersection.add(new long[] {start, end});
+            }
+            if (a.get(i)[1] < b.get(j)[1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * The minimum and maximum value of a field.
+     */
+    @Data
+    public static final class Range implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long min;
+        private final long max;
+
+        /**
+         * Checks whether this range intersects the given one, bounds included.
+         *
+         * @param other The other range.
+         */
+        public boolean intersects(Range other) {
+            return min <= other.max && other.min <= max;
+        }
+    }
+
+    /**
+     * An entry of the zone maps: the value ranges of the fields of the events written between two stream cuts by
+     * a parallel instance of the writer.
+     */
+    @Data
+    public static final class Entry {
+
+        // the id of the writer, shared by its parallel instances
+        private final String writerId;
+
+        // the index of the parallel instance which wrote the events
+        private final int writerIndex;
+
+        // the number of parallel instances of the writer
+        private final int numWriters;
+
+        // the tail of the stream before the events were written
+        private final StreamCut from;
+
+        // the tail of the stream once the events were written
+        private final StreamCut to;
+
+        private final Map<String, Range> ranges;
+
+        /**
+         * Gets the offsets of the given segment between which the events of this entry lie, or null if the events
+         * cannot lie in the segment.
+         */
+        long[] offsetsOf(Segment segment) {
+            Map<Segment, Long> fromPositions = positions(from);
+            Map<Segment, Long> toPositions = positions(to);
+            Long fromOffset = fromPositions.get(segment);
+            if (fromOffset == null) {
+                // the segment was either created after the first stream cut, or sealed before it
+                boolean created = fromPositions.keySet().stream().allMatch(s -> s.getSegmentId() < segment.getSegmentId());
+                if (!created) {
+                    return null;
+                }
+                fromOffset = 0L;
+            }
+            // the segment is sealed unless part of the second stream cut
+            Long toOffset = toPositions.getOrDefault(segment, Long.MAX_VALUE);
+            return new long[] {fromOffset, toOffset};
+        }
+
+        private static Map<Segment, Long> positions(StreamCut streamCut) {
+            return streamCut == StreamCut.UNBOUNDED ? Collections.emptyMap() : streamCut.asImpl().getPositions();
+        }
+    }
+
+    /**
+     * The serializer of the entries.
+     */
+    public static final class EntrySerializer implements Serializer<Entry> {
+
+        @Override
+        public ByteBuffer serialize(Entry entry) {
+            try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                 DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeUTF(entry.getWriterId());
+                out.writeInt(entry.getWriterIndex());
+                out.writeInt(entry.getNumWriters());
+                writeStreamCut(out, entry.getFrom());
+                writeStreamCut(out, entry.getTo());
+                out.writeInt(entry.getRanges().size());
+                for (Map.Entry<String, Range> range : entry.getRanges().entrySet()) {
+                    out.writeUTF(range.getKey());
+                    out.writeLong(range.getValue().getMin());
+                    out.writeLong(range.getValue().getMax());
+                }
+                out.flush();
+                return ByteBuffer.wrap(bytes.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Entry deserialize(ByteBuffer serializedValue) {
+            ByteBuffer buffer = serializedValue.duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                String writerId = in.readUTF();
+                int writerIndex = in.readInt();
+                int numWriters = in.readInt();
+                StreamCut from = readStreamCut(in);
+                StreamCut to = readStreamCut(in);
+                int count = in.readInt();
+                Map<String, Range> ranges = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    ranges.put(in.readUTF(), new Range(in.readLong(), in.readLong()));
+                }
+                return new Entry(writerId, writerIndex, numWriters, from, to, ranges);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void writeStreamCut(DataOutputStream out, StreamCut streamCut) throws IOException {
+            ByteBuffer buffer = streamCut.toBytes();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static StreamCut readStreamCut(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return StreamCut.fromBytes(ByteBuffer.wrap(bytes));
+        }
+    }
+}
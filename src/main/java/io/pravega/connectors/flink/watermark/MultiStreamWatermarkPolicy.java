@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink.watermark;
+
+import org.apache.flink.streaming.api.watermark.Watermark;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The policy which combines the watermarks of the streams read by a reader into the watermark of the reader.
+ *
+ * <p>The watermark of a stream is the watermark given by the {@link AssignerWithTimeWindows} for the
+ * {@code TimeWindow} of the stream, which is null if the assigner does not provide one, e.g. near the head
+ * of the stream.
+ */
+public enum MultiStreamWatermarkPolicy {
+
+    /**
+     * The minimum of the watermarks of all the streams. No watermark is emitted while any stream has no watermark.
+     */
+    MIN {
+        @Override
+        public Watermark combine(List<Watermark> watermarks) {
+            Watermark min = null;
+            for (Watermark watermark : watermarks) {
+                if (watermark == null) {
+                    return null;
+                }
+                if (min == null || watermark.getTimestamp() < min.getTimestamp()) {
+                    min = watermark;
+                }
+            }
+            return min;
+        }
+    },
+
+    /**
+     * The minimum of the watermarks of the streams which have one. The streams without a watermark are ignored,
+     * so an idle stream does not hold back the watermark, at the risk of late events once the stream resumes.
+     */
+    IGNORE_IDLE {
+        @Override
+        public Watermark combine(List<Watermark> watermarks) {
+            Watermark min = null;
+            for (Watermark watermark : watermarks) {
+                if (watermark != null && (min == null || watermark.getTimestamp() < min.getTimestamp())) {
+                    min = watermark;
+                }
+            }
+            return min;
+        }
+    };
+
+    /**
+     * Combines the watermarks of the streams.
+     *
+     * @param watermarks the watermark of each stream, null for the streams without a watermark.
+     * @return the combined watermark, or null if there is none.
+     */
+    @Nullable
+    public abstract Watermark combine(List<Watermark> watermarks);
+}
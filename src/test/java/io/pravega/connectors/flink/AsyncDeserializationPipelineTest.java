@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.stream.Serializer;
+import org.apache.flink.util.FlinkException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDeserializationPipelineTest {
+
+    /**
+     * Tests that the events are taken out of the pipeline in the order in which they were submitted,
+     * even when a later event is deserialized first.
+     */
+    @Test
+    public void testOrdering() throws Exception {
+        try (AsyncDeserializationPipeline<Integer> pipeline = new AsyncDeserializationPipeline<>(
+                SlowIntegerSerializer::new, 4, 1024L, 1024)) {
+            for (int i = 10; i > 0; i--) {
+                pipeline.submit(serialize(i));
+            }
+            pipeline.awaitAll();
+            for (int i = 10; i > 0; i--) {
+                assertTrue(pipeline.isNextDone());
+                assertEquals(Integer.valueOf(i), pipeline.takeNext());
+            }
+            assertTrue(pipeline.isEmpty());
+            assertEquals(0, pipeline.getQueueDepth());
+            assertEquals(0L, pipeline.getInFlightBytes());
+        }
+    }
+
+    /**
+     * Tests the in-flight limits of the pipeline.
+     */
+    @Test
+    public void testInFlightLimits() throws Exception {
+        try (AsyncDeserializationPipeline<Integer> pipeline = new AsyncDeserializationPipeline<>(
+                SlowIntegerSerializer::new, 2, 3 * Integer.BYTES, 1024)) {
+            pipeline.submit(serialize(1));
+            pipeline.submit(serialize(2));
+            assertFalse(pipeline.isFull());
+            assertEquals(2 * Integer.BYTES, pipeline.getInFlightBytes());
+
+            pipeline.submit(serialize(3));
+            assertTrue(pipeline.isFull());
+            assertEquals(3, pipeline.getQueueDepth());
+
+            pipeline.awaitNext();
+            assertEquals(Integer.valueOf(1), pipeline.takeNext());
+            assertFalse(pipeline.isFull());
+
+            pipeline.awaitAll();
+        }
+    }
+
+    /**
+     * Tests that the deserializers of the worker threads sample their deserialization time.
+     */
+    @Test
+    public void testSampledDeserializationTime() throws Exception {
+        ReaderMetrics metrics = new ReaderMetrics(16);
+        try (AsyncDeserializationPipeline<Integer> pipeline = new AsyncDeserializationPipeline<>(
+                () -> metrics.timed(new SlowIntegerSerializer()), 1, 1024L, 1024)) {
+            for (int i = 0; i < 2 * ReaderMetrics.SAMPLE_INTERVAL; i++) {
+                pipeline.submit(serialize(0));
+            }
+            pipeline.awaitAll();
+            assertEquals(2, metrics.deserializationTime.getCount());
+        }
+    }
+
+    /**
+     * Tests that a deserialization failure is surfaced when the event is taken out of the pipeline.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        try (AsyncDeserializationPipeline<Integer> pipeline = new AsyncDeserializationPipeline<>(
+                SlowIntegerSerializer::new, 1, 1024L, 1024)) {
+            pipeline.submit(ByteBuffer.allocate(1));
+            pipeline.awaitAll();
+            try {
+                pipeline.takeNext();
+                fail("expected an exception");
+            } catch (FlinkException e) {
+                // expected
+            }
+        }
+    }
+
+    private static ByteBuffer serialize(int value) {
+        return (ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(value).flip();
+    }
+
+    /**
+     * An integer serializer whose deserialization time grows with the value.
+     */
+    private static class SlowIntegerSerializer implements Serializer<Integer> {
+
+        @Override
+        public ByteBuffer serialize(Integer value) {
+            return AsyncDeserializationPipelineTest.serialize(value);
+        }
+
+        @Override
+        public Integer deserialize(ByteBuffer serializedValue) {
+            int value = serializedValue.getInt();
+            try {
+                Thread.sleep(value);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return value;
+        }
+    }
+}
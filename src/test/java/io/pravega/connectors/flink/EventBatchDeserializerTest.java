@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.stream.Serializer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatchDeserializerTest {
+
+    /**
+     * Tests that the events of a batch are returned in order, and the plain events as usual.
+     */
+    @Test
+    public void testDeserialize() {
+        EventBatchDeserializer<String> deserializer = new EventBatchDeserializer<>(new NullOnEmptyDeserializer());
+        assertEquals("plain", deserializer.deserialize(toBuffer("plain")));
+        assertFalse(deserializer.hasNext());
+
+        EventBatch batch = new EventBatch("key", 0L);
+        batch.add(toBuffer("a"));
+        batch.add(toBuffer(""));
+        batch.add(toBuffer("b"));
+        batch.add(toBuffer("c"));
+        assertEquals("a", deserializer.deserialize(batch.toByteBuffer()));
+
+        // the events deserialized to null are skipped
+        assertTrue(deserializer.hasNext());
+        assertEquals("b", deserializer.next());
+        assertEquals("c", deserializer.next());
+        assertFalse(deserializer.hasNext());
+
+        deserializer.deserialize(batch.toByteBuffer());
+        deserializer.clear();
+        assertFalse(deserializer.hasNext());
+    }
+
+    /**
+     * Tests that a compressed batch is decompressed before it is unpacked.
+     */
+    @Test
+    public void testDeserializeCompressedBatch() {
+        EventBatch batch = new EventBatch("key", 0L);
+        for (int i = 0; i < 100; i++) {
+            batch.add(toBuffer("event"));
+        }
+        PayloadCompression compression = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+        ByteBuffer compressed = compression.compress(batch.toByteBuffer());
+        assertTrue(PayloadCompression.isCompressed(compressed));
+
+        EventBatchDeserializer<String> deserializer = new EventBatchDeserializer<>(new NullOnEmptyDeserializer());
+        assertEquals("event", deserializer.deserialize(compressed));
+        int count = 1;
+        while (deserializer.hasNext()) {
+            assertEquals("event", deserializer.next());
+            count++;
+        }
+        assertEquals(100, count);
+    }
+
+    private static ByteBuffer toBuffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class NullOnEmptyDeserializer implements Serializer<String> {
+        @Override
+        public ByteBuffer serialize(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String deserialize(ByteBuffer serializedValue) {
+            return serializedValue.hasRemaining() ? StandardCharsets.UTF_8.decode(serializedValue).toString() : null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatchTest {
+
+    /**
+     * Tests that the events of a batch are unpacked in order.
+     */
+    @Test
+    public void testPackAndUnpack() {
+        EventBatch batch = new EventBatch("key", 0L);
+        batch.add(toBuffer("a"));
+        batch.add(toBuffer(""));
+        batch.add(toBuffer("ccc"));
+        assertEquals(3, batch.count());
+        assertEquals(EventBatch.HEADER_SIZE + 3 * Integer.BYTES + 4, batch.size());
+
+        ByteBuffer serialized = batch.toByteBuffer();
+        assertEquals(batch.size(), serialized.remaining());
+        assertTrue(EventBatch.isBatch(serialized));
+
+        List<ByteBuffer> events = EventBatch.unpack(serialized);
+        assertEquals(3, events.size());
+        assertEquals("a", toString(events.get(0)));
+        assertEquals("", toString(events.get(1)));
+        assertEquals("ccc", toString(events.get(2)));
+
+        // the serialized batch is left untouched
+        assertEquals(batch.size(), serialized.remaining());
+    }
+
+    /**
+     * Tests that a plain event is passed through.
+     */
+    @Test
+    public void testUnpackPlainEvent() {
+        ByteBuffer event = toBuffer("a plain event");
+        assertFalse(EventBatch.isBatch(event));
+        List<ByteBuffer> events = EventBatch.unpack(event);
+        assertEquals(1, events.size());
+        assertSame(event, events.get(0));
+
+        ByteBuffer small = toBuffer("abc");
+        assertFalse(EventBatch.isBatch(small));
+        assertSame(small, EventBatch.unpack(small).get(0));
+    }
+
+    /**
+     * Tests that a batch is unpacked from the position of its buffer.
+     */
+    @Test
+    public void testUnpackAtPosition() {
+        EventBatch batch = new EventBatch("key", 0L);
+        batch.add(toBuffer("event"));
+        ByteBuffer serialized = batch.toByteBuffer();
+        ByteBuffer buffer = ByteBuffer.allocate(serialized.remaining() + 2);
+        buffer.put((byte) 1).put(serialized).flip();
+        buffer.position(1);
+
+        List<ByteBuffer> events = EventBatch.unpack(buffer);
+        assertEquals(1, events.size());
+        assertEquals("event", toString(events.get(0)));
+    }
+
+    /**
+     * Tests that a truncated batch is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnpackTruncatedBatch() {
+        EventBatch batch = new EventBatch("key", 0L);
+        batch.add(toBuffer("event"));
+        ByteBuffer serialized = batch.toByteBuffer();
+        serialized.limit(serialized.limit() - 1);
+        EventBatch.unpack(serialized);
+    }
+
+    private static ByteBuffer toBuffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.stream.Serializer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatcherTest {
+
+    // the size of a batch holding a single event of one byte
+    private static final int ONE_EVENT_BATCH_SIZE = EventBatch.HEADER_SIZE + Integer.BYTES + 1;
+
+    /**
+     * Tests that the events are batched per routing key.
+     */
+    @Test
+    public void testBatchPerRoutingKey() {
+        EventBatcher<String> batcher = new EventBatcher<>(new StringSerializer(), 1024, 100L);
+        assertNull(batcher.add("k1", "a", 0L));
+        assertNull(batcher.add("k2", "b", 0L));
+        assertNull(batcher.add("k1", "c", 0L));
+
+        List<EventBatch> batches = batcher.drain();
+        assertTrue(batcher.isEmpty());
+        assertEquals(2, batches.size());
+        assertEquals("k1", batches.get(0).getRoutingKey());
+        assertEquals(Arrays.asList("a", "c"), unpack(batches.get(0)));
+        assertEquals("k2", batches.get(1).getRoutingKey());
+        assertEquals(Arrays.asList("b"), unpack(batches.get(1)));
+    }
+
+    /**
+     * Tests that a batch is closed once the next event does not fit in it.
+     */
+    @Test
+    public void testMaxBatchSize() {
+        EventBatcher<String> batcher = new EventBatcher<>(new StringSerializer(), ONE_EVENT_BATCH_SIZE + Integer.BYTES + 1, 100L);
+        assertNull(batcher.add("k", "a", 0L));
+        assertNull(batcher.add("k", "b", 0L));
+        EventBatch closed = batcher.add("k", "c", 0L);
+        assertEquals(Arrays.asList("a", "b"), unpack(closed));
+
+        // an event larger than a batch is written alone
+        closed = batcher.add("k", "a larger event", 0L);
+        assertEquals(Arrays.asList("c"), unpack(closed));
+        closed = batcher.add("k", "d", 0L);
+        assertEquals(Arrays.asList("a larger event"), unpack(closed));
+        assertEquals(Arrays.asList("d"), unpack(batcher.drain().get(0)));
+    }
+
+    /**
+     * Tests that the batches are closed once their first event waited for the linger time, the oldest first.
+     */
+    @Test
+    public void testLinger() {
+        EventBatcher<String> batcher = new EventBatcher<>(new StringSerializer(), 1024, 100L);
+        batcher.add("k1", "a", 0L);
+        batcher.add("k2", "b", 50L);
+        batcher.add("k1", "c", 60L);
+        assertTrue(batcher.pollExpired(99L).isEmpty());
+
+        List<EventBatch> expired = batcher.pollExpired(100L);
+        assertEquals(1, expired.size());
+        assertEquals(Arrays.asList("a", "c"), unpack(expired.get(0)));
+
+        batcher.add("k1", "d", 120L);
+        expired = batcher.pollExpired(250L);
+        assertEquals(2, expired.size());
+        assertEquals(Arrays.asList("b"), unpack(expired.get(0)));
+        assertEquals(Arrays.asList("d"), unpack(expired.get(1)));
+        assertTrue(batcher.isEmpty());
+    }
+
+    private static List<String> unpack(EventBatch batch) {
+        List<String> events = new ArrayList<>();
+        for (ByteBuffer event : EventBatch.unpack(batch.toByteBuffer())) {
+            events.add(StandardCharsets.UTF_8.decode(event).toString());
+        }
+        return events;
+    }
+
+    private static class StringSerializer implements Serializer<String> {
+        @Override
+        public ByteBuffer serialize(String value) {
+            return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String deserialize(ByteBuffer serializedValue) {
+            return StandardCharsets.UTF_8.decode(serializedValue).toString();
+        }
+    }
+}
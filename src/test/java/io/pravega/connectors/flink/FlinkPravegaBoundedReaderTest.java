@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.ClientConfig;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import io.pravega.connectors.flink.utils.IntegerDeserializationSchema;
+import io.pravega.connectors.flink.utils.StreamSourceOperatorTestHarness;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.runtime.checkpoint.OperatorSubtaskState;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.TestHarnessUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link FlinkPravegaBoundedReader} and its builder.
+ */
+public class FlinkPravegaBoundedReaderTest {
+
+    private static final String SAMPLE_SCOPE = "scope";
+    private static final Stream SAMPLE_STREAM = Stream.of(SAMPLE_SCOPE, "stream");
+    private static final Segment SAMPLE_SEGMENT = new Segment(SAMPLE_SCOPE, SAMPLE_STREAM.getStreamName(), 1);
+    private static final StreamCut SAMPLE_CUT = new StreamCutImpl(SAMPLE_STREAM, Collections.singletonMap(SAMPLE_SEGMENT, 42L));
+    private static final SegmentRange SAMPLE_RANGE =
+            SegmentRangeImpl.builder().segment(SAMPLE_SEGMENT).startOffset(0L).endOffset(42L).build();
+
+    private static final DeserializationSchema<Integer> DESERIALIZATION_SCHEMA = new TestDeserializationSchema();
+
+    /**
+     * Tests that {@code run()} reads the segment ranges and returns once they are all read.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRun() throws Exception {
+        TestableFlinkPravegaBoundedReader<Integer> reader = createReader();
+        SegmentIterator<Integer> segmentIterator = iterator(Arrays.asList(1, 2), 20L, 42L);
+        when(reader.batchClientFactory.readSegment(eq(SAMPLE_RANGE), anyObject())).thenReturn((SegmentIterator) segmentIterator);
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaBoundedReader<Integer>> testHarness =
+                     new StreamSourceOperatorTestHarness<>(reader, 1, 1, 0)) {
+            testHarness.open();
+            testHarness.run();
+
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(new StreamRecord<>(1));
+            expected.add(new StreamRecord<>(2));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+            verify(segmentIterator).close();
+        }
+    }
+
+    /**
+     * Tests that a restored source resumes reading after the last event emitted before the snapshot.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRestore() throws Exception {
+        final OperatorSubtaskState snapshot;
+        TestableFlinkPravegaBoundedReader<Integer> reader = createReader();
+        SegmentIterator<Integer> segmentIterator = iterator(Arrays.asList(1, TestDeserializationSchema.END_OF_STREAM), 20L, 30L);
+        when(reader.batchClientFactory.readSegment(eq(SAMPLE_RANGE), anyObject())).thenReturn((SegmentIterator) segmentIterator);
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaBoundedReader<Integer>> testHarness =
+                     new StreamSourceOperatorTestHarness<>(reader, 1, 1, 0)) {
+            testHarness.open();
+            testHarness.run();
+            snapshot = testHarness.snapshot(1L, 1L);
+        }
+
+        TestableFlinkPravegaBoundedReader<Integer> restored = createReader();
+        SegmentRange remaining = SegmentRangeImpl.builder().segment(SAMPLE_SEGMENT).startOffset(20L).endOffset(42L).build();
+        SegmentIterator<Integer> restoredIterator = iterator(Collections.singletonList(2), 42L);
+        when(restored.batchClientFactory.readSegment(eq(remaining), anyObject())).thenReturn((SegmentIterator) restoredIterator);
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaBoundedReader<Integer>> testHarness =
+                     new StreamSourceOperatorTestHarness<>(restored, 1, 1, 0)) {
+            testHarness.initializeState(snapshot);
+            testHarness.open();
+            testHarness.run();
+
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(new StreamRecord<>(2));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+        }
+    }
+
+    /**
+     * Tests that the events of an event batch are all emitted before a snapshot, which resumes after the batch.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRestoreWithEventBatches() throws Exception {
+        final OperatorSubtaskState snapshot;
+        TestableFlinkPravegaBoundedReader<Integer> reader = createReader();
+        EventBatch batch = new EventBatch("key", 0L);
+        batch.add(serialize(1));
+        batch.add(serialize(2));
+        List<ByteBuffer> events = Arrays.asList(batch.toByteBuffer(), serialize(TestDeserializationSchema.END_OF_STREAM));
+        when(reader.batchClientFactory.readSegment(eq(SAMPLE_RANGE), anyObject())).thenAnswer(i -> {
+            // the events are deserialized by the reader's deserializer, which unpacks the batch
+            Serializer<Integer> deserializer = i.getArgumentAt(1, Serializer.class);
+            Iterator<ByteBuffer> iterator = events.iterator();
+            SegmentIterator<Integer> segmentIterator = mock(SegmentIterator.class);
+            when(segmentIterator.hasNext()).thenAnswer(j -> iterator.hasNext());
+            when(segmentIterator.next()).thenAnswer(j -> deserializer.deserialize(iterator.next()));
+            when(segmentIterator.getOffset()).thenReturn(20L, 30L);
+            return segmentIterator;
+        });
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaBoundedReader<Integer>> testHarness =
+                     new StreamSourceOperatorTestHarness<>(reader, 1, 1, 0)) {
+            testHarness.open();
+            testHarness.run();
+            snapshot = testHarness.snapshot(1L, 1L);
+
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(new StreamRecord<>(1));
+            expected.add(new StreamRecord<>(2));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+        }
+
+        TestableFlinkPravegaBoundedReader<Integer> restored = createReader();
+        SegmentRange remaining = SegmentRangeImpl.builder().segment(SAMPLE_SEGMENT).startOffset(20L).endOffset(42L).build();
+        SegmentIterator<Integer> restoredIterator = iterator(Collections.singletonList(3), 42L);
+        when(restored.batchClientFactory.readSegment(eq(remaining), anyObject())).thenReturn((SegmentIterator) restoredIterator);
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaBoundedReader<Integer>> testHarness =
+                     new StreamSourceOperatorTestHarness<>(restored, 1, 1, 0)) {
+            testHarness.initializeState(snapshot);
+            testHarness.open();
+            testHarness.run();
+
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(new StreamRecord<>(3));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+        }
+    }
+
+    /**
+     * Tests the builder.
+     */
+    @Test
+    public void testBuilder() {
+        FlinkPravegaBoundedReader<Integer> reader = FlinkPravegaBoundedReader.<Integer>builder()
+                .withPravegaConfig(PravegaConfig.fromDefaults())
+                .forStream(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)
+                .withDeserializationSchema(DESERIALIZATION_SCHEMA)
+                .build();
+        assertEquals(Collections.singletonList(StreamWithBoundaries.of(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)), reader.streams);
+
+        try {
+            FlinkPravegaBoundedReader.<Integer>builder()
+                    .withPravegaConfig(PravegaConfig.fromDefaults())
+                    .forStream(SAMPLE_STREAM)
+                    .withDeserializationSchema(DESERIALIZATION_SCHEMA)
+                    .build();
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected: the stream has no end stream cut
+        }
+    }
+
+    private static TestableFlinkPravegaBoundedReader<Integer> createReader() {
+        TestableFlinkPravegaBoundedReader<Integer> reader = new TestableFlinkPravegaBoundedReader<>(
+                ClientConfig.builder().build(),
+                Collections.singletonList(StreamWithBoundaries.of(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)),
+                DESERIALIZATION_SCHEMA,
+                Collections.emptyList());
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Collections.singletonList(SAMPLE_RANGE).iterator());
+        when(reader.batchClientFactory.getSegments(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)).thenReturn(segments);
+        return reader;
+    }
+
+    private static ByteBuffer serialize(int value) {
+        return (ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(value).flip();
+    }
+
+    /**
+     * Creates a segment iterator over the given events, each followed by the given offset.
+     */
+    @SuppressWarnings("unchecked")
+    private static SegmentIterator<Integer> iterator(List<Integer> events, Long firstOffset, Long... offsets) {
+        Iterator<Integer> iterator = events.iterator();
+        SegmentIterator<Integer> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> iterator.next());
+        when(segmentIterator.getOffset()).thenReturn(firstOffset, offsets);
+        return segmentIterator;
+    }
+
+    /**
+     * A deserialization schema for test purposes.
+     */
+    private static class TestDeserializationSchema extends IntegerDeserializationSchema {
+        public static final int END_OF_STREAM = -1;
+        @Override
+        public boolean isEndOfStream(Integer nextElement) {
+            return nextElement.equals(END_OF_STREAM);
+        }
+    }
+
+    /**
+     * A bounded reader subclass for test purposes.
+     */
+    private static class TestableFlinkPravegaBoundedReader<T> extends FlinkPravegaBoundedReader<T> {
+
+        final BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+
+        protected TestableFlinkPravegaBoundedReader(ClientConfig clientConfig, List<StreamWithBoundaries> streams,
+                                                    DeserializationSchema<T> deserializationSchema, List<PayloadCodec> compressionCodecs) {
+            super(clientConfig, streams, deserializationSchema, compressionCodecs);
+        }
+
+        @Override
+        protected BatchClientFactory createBatchClientFactory() {
+            return batchClientFactory;
+        }
+    }
+}
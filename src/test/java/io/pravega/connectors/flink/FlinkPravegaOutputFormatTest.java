@@ -13,16 +13,17 @@ import io.pravega.client.ClientConfig;
 import io.pravega.client.EventStreamClientFactory;
 import io.pravega.client.stream.EventStreamWriter;
 import io.pravega.client.stream.Stream;
-import io.pravega.connectors.flink.utils.DirectExecutorService;
 import org.apache.flink.api.common.serialization.SerializationSchema;
+import org.apache.flink.api.common.serialization.SimpleStringSchema;
 import org.apache.flink.api.common.io.OutputFormat;
+import org.apache.flink.api.common.time.Time;
 import org.junit.Assert;
 import org.junit.Test;
-import org.mockito.Mockito;
+import org.mockito.InOrder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -30,9 +31,12 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -41,7 +45,9 @@ import static org.mockito.Mockito.when;
  */
 public class FlinkPravegaOutputFormatTest {
 
-    private final SerializationSchema<String> serializationSchema = mock(SerializationSchema.class);
+    private static final long LINGER_MILLIS = 100L;
+
+    private final SerializationSchema<String> serializationSchema = new SimpleStringSchema();
 
     private final PravegaConfig pravegaConfig = mock(PravegaConfig.class);
 
@@ -117,7 +123,7 @@ public class FlinkPravegaOutputFormatTest {
         when(pravegaConfig.getClientConfig()).thenReturn(clientConfig);
         when(pravegaConfig.resolve(anyString())).thenReturn(stream);
 
-        EventStreamWriter<String> pravegaWriter = mockEventStreamWriter();
+        EventStreamWriter<ByteBuffer> pravegaWriter = mockEventStreamWriter();
         EventStreamClientFactory clientFactory = mockClientFactory(pravegaWriter);
         FlinkPravegaOutputFormat<String> spyFlinkPravegaOutputFormat = spyFlinkPravegaOutputFormat(clientFactory);
 
@@ -128,12 +134,10 @@ public class FlinkPravegaOutputFormatTest {
         CompletableFuture<Void> writeFuture = new CompletableFuture<>();
         when(pravegaWriter.writeEvent(anyString(), anyObject())).thenReturn(writeFuture);
 
-        ExecutorService executorService = spy(new DirectExecutorService());
-        Mockito.doReturn(executorService).when(spyFlinkPravegaOutputFormat).createExecutorService();
-
         // test writeRecord success
         spyFlinkPravegaOutputFormat.writeRecord("test-1");
-        assertEquals(1, spyFlinkPravegaOutputFormat.getPendingWritesCount().get());
+        assertEquals(1, spyFlinkPravegaOutputFormat.getPendingWritesCount());
+        verify(pravegaWriter).writeEvent("fixed", ByteBuffer.wrap(serializationSchema.serialize("test-1")));
         writeFuture.complete(null);
 
         // test writeRecord induce failure
@@ -147,7 +151,7 @@ public class FlinkPravegaOutputFormatTest {
             Assert.assertTrue(e instanceof IOException);
             assertTrue(spyFlinkPravegaOutputFormat.isErrorOccurred());
             assertEquals("test simulated", e.getCause().getMessage());
-            assertEquals(0, spyFlinkPravegaOutputFormat.getPendingWritesCount().get());
+            assertEquals(0, spyFlinkPravegaOutputFormat.getPendingWritesCount());
         }
 
         // test close error
@@ -164,6 +168,53 @@ public class FlinkPravegaOutputFormatTest {
         verify(clientFactory).close();
     }
 
+    /**
+     * Tests that the batched records are written once their batch lingered, and on close.
+     */
+    @Test
+    public void testEventBatching() throws Exception {
+        when(pravegaConfig.getClientConfig()).thenReturn(clientConfig);
+        when(pravegaConfig.resolve(anyString())).thenReturn(stream);
+
+        EventStreamWriter<ByteBuffer> pravegaWriter = mockEventStreamWriter();
+        when(pravegaWriter.writeEvent(anyString(), anyObject())).thenReturn(CompletableFuture.completedFuture(null));
+        EventStreamClientFactory clientFactory = mockClientFactory(pravegaWriter);
+        FlinkPravegaOutputFormat<String> outputFormat = FlinkPravegaOutputFormat.<String>builder()
+                .withEventRouter(eventRouter)
+                .withSerializationSchema(serializationSchema)
+                .withPravegaConfig(pravegaConfig)
+                .forStream(stream)
+                .withEventBatching(1024, Time.milliseconds(LINGER_MILLIS))
+                .build();
+        FlinkPravegaOutputFormat<String> spyFlinkPravegaOutputFormat = spy(outputFormat);
+        doReturn(clientFactory).when(spyFlinkPravegaOutputFormat).createClientFactory(anyString(), any());
+
+        spyFlinkPravegaOutputFormat.open(0, 1);
+        spyFlinkPravegaOutputFormat.writeRecord("test-1");
+        verify(pravegaWriter, never()).writeEvent(anyString(), anyObject());
+
+        // the batch lingered by the next record is written with it
+        Thread.sleep(LINGER_MILLIS);
+        spyFlinkPravegaOutputFormat.writeRecord("test-2");
+        verify(pravegaWriter).writeEvent("fixed", serializedBatch("test-1", "test-2"));
+
+        // the open batch is written and flushed on close
+        spyFlinkPravegaOutputFormat.writeRecord("test-3");
+        spyFlinkPravegaOutputFormat.close();
+        InOrder order = inOrder(pravegaWriter);
+        order.verify(pravegaWriter).writeEvent("fixed", serializedBatch("test-3"));
+        order.verify(pravegaWriter).flush();
+        verify(pravegaWriter, times(2)).writeEvent(anyString(), anyObject());
+    }
+
+    private ByteBuffer serializedBatch(String... records) {
+        EventBatch batch = new EventBatch("fixed", 0L);
+        for (String record : records) {
+            batch.add(ByteBuffer.wrap(serializationSchema.serialize(record)));
+        }
+        return batch.toByteBuffer();
+    }
+
     private static class FixedEventRouter<T> implements PravegaEventRouter<T> {
         @Override
         public String getRoutingKey(T event) {
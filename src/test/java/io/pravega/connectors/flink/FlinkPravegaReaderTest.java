@@ -9,8 +9,14 @@
  */
 package io.pravega.connectors.flink;
 
+import io.pravega.client.BatchClientFactory;
 import io.pravega.client.ClientConfig;
 import io.pravega.client.admin.ReaderGroupManager;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
 import io.pravega.client.segment.impl.Segment;
 import io.pravega.client.stream.EventPointer;
 import io.pravega.client.stream.EventRead;
@@ -18,16 +24,20 @@ import io.pravega.client.stream.EventStreamReader;
 import io.pravega.client.stream.Position;
 import io.pravega.client.stream.ReaderGroup;
 import io.pravega.client.stream.ReaderGroupConfig;
+import io.pravega.client.stream.ReaderGroupMetrics;
+import io.pravega.client.stream.Serializer;
 import io.pravega.client.stream.Stream;
 import io.pravega.client.stream.StreamCut;
 import io.pravega.client.stream.TimeWindow;
 import io.pravega.client.stream.TruncatedDataException;
 import io.pravega.client.stream.impl.EventReadImpl;
 import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
 import io.pravega.connectors.flink.utils.IntegerDeserializationSchema;
 import io.pravega.connectors.flink.utils.StreamSourceOperatorTestHarness;
 import io.pravega.connectors.flink.watermark.AssignerWithTimeWindows;
 import io.pravega.connectors.flink.watermark.LowerBoundAssigner;
+import io.pravega.connectors.flink.watermark.MultiStreamWatermarkPolicy;
 import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.time.Time;
@@ -35,6 +45,7 @@ import org.apache.flink.api.java.ClosureCleaner;
 import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.runtime.metrics.scope.ScopeFormat;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
 import org.apache.flink.streaming.api.TimeCharacteristic;
 import org.apache.flink.streaming.api.functions.source.SourceFunction;
 import org.apache.flink.streaming.api.watermark.Watermark;
@@ -46,12 +57,15 @@ import org.junit.Test;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
 
 import static io.pravega.connectors.flink.FlinkPravegaReader.ONLINE_READERS_METRICS_GAUGE;
 import static io.pravega.connectors.flink.FlinkPravegaReader.PRAVEGA_READER_METRICS_GROUP;
@@ -62,9 +76,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -80,8 +96,8 @@ public class FlinkPravegaReaderTest {
 
     private static final String SAMPLE_SCOPE = "scope";
     private static final String SAMPLE_STREAM_NAME = "stream";
-    private static final String SAMPLE_COMPLETE_STREAM_NAME = SAMPLE_SCOPE + '/' + SAMPLE_STREAM_NAME;
     private static final Stream SAMPLE_STREAM = Stream.of(SAMPLE_SCOPE, SAMPLE_STREAM_NAME);
+    private static final Stream SAMPLE_STREAM2 = Stream.of(SAMPLE_SCOPE, SAMPLE_STREAM_NAME + "2");
     private static final Segment SAMPLE_SEGMENT = new Segment(SAMPLE_SCOPE, SAMPLE_STREAM.getStreamName(), 1);
     private static final StreamCut SAMPLE_CUT = new StreamCutImpl(SAMPLE_STREAM, Collections.singletonMap(SAMPLE_SEGMENT, 42L));
     private static final StreamCut SAMPLE_CUT2 = new StreamCutImpl(SAMPLE_STREAM, Collections.singletonMap(SAMPLE_SEGMENT, 1024L));
@@ -159,6 +175,285 @@ public class FlinkPravegaReaderTest {
         }
     }
 
+    /**
+     * Tests the behavior of {@code run()} with batched emission.
+     */
+    @Test
+    public void testRunWithBatchedEmission() throws Exception {
+        TestableFlinkPravegaReader<Integer> reader = createReader(10, Time.minutes(1));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            // prepare a sequence of events, where the checkpoint must cut the first batch short
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer(i -> {
+                        assertEquals(0, testHarness.getTriggeredCheckpoints().size());
+                        return evts.event(1);
+                    })
+                    .thenReturn(evts.event(2))
+                    .thenReturn(evts.checkpoint(42L))
+                    .thenAnswer(i -> {
+                        // the events read before the checkpoint were emitted before the checkpoint was triggered
+                        assertEquals(2, testHarness.getOutput().size());
+                        assertEquals(1, testHarness.getTriggeredCheckpoints().size());
+                        return evts.event(3);
+                    })
+                    .thenReturn(evts.event(4))
+                    .thenReturn(evts.event(TestDeserializationSchema.END_OF_STREAM));
+
+            // run the source
+            testHarness.run();
+
+            verify(reader.eventStreamReader, times(6)).readNextEvent(anyLong());
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1));
+            expected.add(record(2));
+            expected.add(record(3));
+            expected.add(record(4));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+
+            Queue<Long> expectedChkpts = new ConcurrentLinkedQueue<>();
+            expectedChkpts.add(42L);
+            TestHarnessUtil.assertOutputEquals("Unexpected checkpoints", expectedChkpts, testHarness.getTriggeredCheckpoints());
+        }
+    }
+
+    /**
+     * Tests that the events of an event batch are all emitted before the next checkpoint is triggered.
+     */
+    @Test
+    public void testRunWithEventBatches() throws Exception {
+        TestableFlinkPravegaReader<Integer> reader = createReader(1, Time.milliseconds(0));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            // prepare a batch of events followed by a checkpoint, deserialized by the reader's deserializer
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            EventBatch batch = new EventBatch("key", 0L);
+            batch.add(serialize(1));
+            batch.add(serialize(2));
+            batch.add(serialize(3));
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer(i -> evts.event(reader.deserializer.deserialize(batch.toByteBuffer())))
+                    .thenReturn(evts.checkpoint(42L))
+                    .thenAnswer(i -> {
+                        // the whole batch was emitted before the checkpoint was triggered
+                        assertEquals(3, testHarness.getOutput().size());
+                        assertEquals(1, testHarness.getTriggeredCheckpoints().size());
+                        return evts.event(TestDeserializationSchema.END_OF_STREAM);
+                    });
+
+            // run the source
+            testHarness.run();
+
+            verify(reader.eventStreamReader, times(3)).readNextEvent(anyLong());
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1));
+            expected.add(record(2));
+            expected.add(record(3));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+
+            Queue<Long> expectedChkpts = new ConcurrentLinkedQueue<>();
+            expectedChkpts.add(42L);
+            TestHarnessUtil.assertOutputEquals("Unexpected checkpoints", expectedChkpts, testHarness.getTriggeredCheckpoints());
+        }
+    }
+
+    /**
+     * Tests that the compressed events are decompressed before their batches are unpacked.
+     */
+    @Test
+    public void testRunWithCompressedEvents() throws Exception {
+        TestableFlinkPravegaReader<Integer> reader = createReader(1, Time.milliseconds(0));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            // prepare a compressed batch of events, and a plain event
+            EventBatch batch = new EventBatch("key", 0L);
+            for (int i = 1; i <= 20; i++) {
+                batch.add(serialize(i));
+            }
+            PayloadCompression compression = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+            ByteBuffer compressed = compression.compress(batch.toByteBuffer());
+            assertTrue(PayloadCompression.isCompressed(compressed));
+
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer(i -> evts.event(reader.deserializer.deserialize(compressed)))
+                    .thenAnswer(i -> evts.event(reader.deserializer.deserialize(serialize(21))))
+                    .thenReturn(evts.event(TestDeserializationSchema.END_OF_STREAM));
+
+            // run the source
+            testHarness.run();
+
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            for (int i = 1; i <= 21; i++) {
+                expected.add(record(i));
+            }
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, testHarness.getOutput());
+        }
+    }
+
+    /**
+     * Tests that {@code run()} returns once a bounded reader group has read all the streams up to their end stream cuts.
+     */
+    @Test
+    public void testRunWithEndStreamCut() throws Exception {
+        ClientConfig clientConfig = ClientConfig.builder().build();
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM, SAMPLE_CUT, SAMPLE_CUT2).build();
+        TestableFlinkPravegaReader<Integer> reader = new TestableFlinkPravegaReader<>(
+                "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
+                null, READER_TIMEOUT, CHKPT_TIMEOUT, true, 1, Time.milliseconds(0),
+                0, Long.MAX_VALUE, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0),
+                Time.milliseconds(0), Collections.emptyList(), null, Collections.emptyList());
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            // the reader group has no unread bytes left after the second event
+            ReaderGroupMetrics readerGroupMetrics = mock(ReaderGroupMetrics.class);
+            when(readerGroupMetrics.unreadBytes()).thenReturn(0L);
+            when(reader.readerGroup.getMetrics()).thenReturn(readerGroupMetrics);
+
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenReturn(evts.event(1))
+                    .thenReturn(evts.idle())
+                    .thenReturn(evts.event(2))
+                    .thenReturn(evts.idle())
+                    .thenReturn(evts.idle());
+
+            // run the source, which returns without an end of stream marker
+            testHarness.run();
+
+            // the reader group is only queried after consecutive empty reads
+            verify(reader.eventStreamReader, times(5)).readNextEvent(anyLong());
+            verify(readerGroupMetrics, times(1)).unreadBytes();
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1));
+            expected.add(record(2));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+        }
+    }
+
+    /**
+     * Tests that {@code run()} reads the segment ranges of the catch-up phase before the reader group, within the read
+     * rate limit, and triggers the checkpoints delivered by the catch-up reader group meanwhile.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRunWithCatchUp() throws Exception {
+        TestableFlinkPravegaReader<Integer> reader = createReaderWithCatchUp(
+                Collections.singletonList(StreamWithBoundaries.of(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)));
+
+        // the catch-up phase has a single segment range, with two events
+        SegmentRange segmentRange = SegmentRangeImpl.builder().segment(SAMPLE_SEGMENT).startOffset(0L).endOffset(42L).build();
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Collections.singletonList(segmentRange).iterator());
+        when(reader.batchClientFactory.getSegments(SAMPLE_STREAM, StreamCut.UNBOUNDED, SAMPLE_CUT)).thenReturn(segments);
+        Iterator<Integer> events = Arrays.asList(1, 2).iterator();
+        SegmentIterator<Integer> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> events.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> events.next());
+        when(segmentIterator.getOffset()).thenReturn(20L, 42L);
+        when(reader.batchClientFactory.readSegment(anyObject(), anyObject())).thenReturn((SegmentIterator) segmentIterator);
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            TestEventGenerator<ByteBuffer> checkpoints = new TestEventGenerator<>();
+            when(reader.catchUpCheckpointReader.readNextEvent(anyLong()))
+                    .thenReturn(checkpoints.checkpoint(41L))
+                    .thenReturn(checkpoints.idle());
+
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer(i -> {
+                        // the catch-up phase is completed before the reader group is read
+                        assertEquals(2, testHarness.getOutput().size());
+                        return evts.event(3);
+                    })
+                    .thenReturn(evts.event(TestDeserializationSchema.END_OF_STREAM));
+
+            // run the source
+            testHarness.run();
+
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1));
+            expected.add(record(2));
+            expected.add(record(3));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+
+            Queue<Long> expectedChkpts = new ConcurrentLinkedQueue<>();
+            expectedChkpts.add(41L);
+            TestHarnessUtil.assertOutputEquals("Unexpected checkpoints", expectedChkpts, testHarness.getTriggeredCheckpoints());
+
+            verify(segmentIterator).close();
+            verify(reader.catchUpCheckpointReader).close();
+
+            // the events of the catch-up phase are throttled and recorded, each with its length in the segment range
+            verify(reader.readRateLimiter, times(4)).throttle();
+            verify(reader.readRateLimiter).record(20);
+            verify(reader.readRateLimiter).record(22);
+        }
+    }
+
+    /**
+     * Tests the behavior of {@code run()} with the asynchronous deserialization.
+     */
+    @Test
+    public void testRunWithAsyncDeserialization() throws Exception {
+        TestableFlinkPravegaReader<Integer> reader = createReaderWithAsyncDeserialization(4, 1024L);
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.ProcessingTime)) {
+            testHarness.open();
+
+            // prepare a sequence of raw events, where the checkpoint must wait for the preceding events
+            TestEventGenerator<ByteBuffer> evts = new TestEventGenerator<>();
+            when(reader.rawEventStreamReader.readNextEvent(anyLong()))
+                    .thenReturn(evts.event(serialize(1)))
+                    .thenReturn(evts.event(serialize(2)))
+                    .thenReturn(evts.checkpoint(42L))
+                    .thenAnswer(i -> {
+                        // the events read before the checkpoint were emitted before the checkpoint was triggered
+                        assertEquals(2, testHarness.getOutput().size());
+                        assertEquals(1, testHarness.getTriggeredCheckpoints().size());
+                        return evts.event(serialize(3));
+                    })
+                    .thenReturn(evts.idle())
+                    .thenReturn(evts.event(serialize(4)))
+                    .thenAnswer(i -> evts.event(serialize(TestDeserializationSchema.END_OF_STREAM)));
+
+            // run the source
+            testHarness.run();
+
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1));
+            expected.add(record(2));
+            expected.add(record(3));
+            expected.add(record(4));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+
+            Queue<Long> expectedChkpts = new ConcurrentLinkedQueue<>();
+            expectedChkpts.add(42L);
+            TestHarnessUtil.assertOutputEquals("Unexpected checkpoints", expectedChkpts, testHarness.getTriggeredCheckpoints());
+        }
+    }
+
     /**
      * Tests the behavior of {@code run()} with TruncatedDataException.
      */
@@ -250,6 +545,185 @@ public class FlinkPravegaReaderTest {
         }
     }
 
+    /**
+     * Tests the behavior of {@code run()} with the idleness detection.
+     */
+    @Test
+    public void testRunWithIdleTimeout() throws Exception {
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).build();
+        TestableFlinkPravegaReader<Integer> reader = createReaderWithWatermark(new LowerBoundAssigner<Integer>() {
+            @Override
+            public long extractTimestamp(Integer element, long previousElementTimestamp) {
+                return element;
+            }
+        }, rgConfig, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(1));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.EventTime)) {
+            testHarness.getExecutionConfig().setAutoWatermarkInterval(50);
+            testHarness.open();
+
+            // prepare a sequence of events, where the source is idle when the first watermark is due
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(1);
+                        return evts.event(1);
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        Thread.sleep(10);
+                        return evts.idle();
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(51);
+                        return evts.event(2);
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(101);
+                        return evts.event(TestDeserializationSchema.END_OF_STREAM);
+                    });
+            when(reader.eventStreamReader.getCurrentTimeWindow(anyObject()))
+                    .thenReturn(new TimeWindow(2L, 3L));
+
+            // run the source
+            testHarness.run();
+
+            // no watermark was queried while idle
+            verify(reader.eventStreamReader, times(1)).getCurrentTimeWindow(anyObject());
+
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1, 1));
+            expected.add(record(2, 2));
+            // emit watermark (2 - 1 = 1) after resuming from idleness
+            expected.add(watermark(1));
+            // automatic watermark at the end of stream
+            expected.add(watermark(Long.MAX_VALUE));
+
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+        }
+    }
+
+    /**
+     * Tests the behavior of {@code run()} with the watermark alignment, while another reader has not emitted any event yet.
+     */
+    @Test
+    public void testRunWithWatermarkAlignment() throws Exception {
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).build();
+        TestableFlinkPravegaReader<Integer> reader = createReaderWithWatermark(new LowerBoundAssigner<Integer>() {
+            @Override
+            public long extractTimestamp(Integer element, long previousElementTimestamp) {
+                return element;
+            }
+        }, rgConfig, MultiStreamWatermarkPolicy.MIN, Time.seconds(60), Time.milliseconds(100));
+
+        // the other reader has started, but has not emitted any event yet
+        reader.globalAggregateManager = new WatermarkAlignerTest.TestGlobalAggregateManager(
+                new WatermarkAligner.SubtaskEventTime(1, Long.MIN_VALUE));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 2, 2, 0, TimeCharacteristic.EventTime)) {
+            testHarness.open();
+
+            // the reader pauses before each read once it has emitted an event
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            final long[] readTimes = new long[2];
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        readTimes[0] = System.currentTimeMillis();
+                        return evts.event(1000);
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        readTimes[1] = System.currentTimeMillis();
+                        return evts.event(1001);
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> evts.event(TestDeserializationSchema.END_OF_STREAM));
+            when(reader.eventStreamReader.getCurrentTimeWindow(anyObject()))
+                    .thenReturn(new TimeWindow(1000L, 1001L));
+
+            // run the source
+            testHarness.run();
+
+            verify(reader.eventStreamReader, times(3)).readNextEvent(anyLong());
+            Assert.assertTrue(readTimes[1] - readTimes[0] >= WatermarkAligner.MAX_PAUSE_SLICE_MILLIS);
+
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1000, 1000));
+            expected.add(record(1001, 1001));
+            expected.add(watermark(Long.MAX_VALUE));
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+        }
+    }
+
+    /**
+     * Tests the behavior of {@code run()} with watermarks combined from multiple streams.
+     */
+    @Test
+    public void testRunWithMultiStreamWatermark() throws Exception {
+        runWithMultiStreamWatermark(MultiStreamWatermarkPolicy.MIN, 0L);
+        runWithMultiStreamWatermark(MultiStreamWatermarkPolicy.IGNORE_IDLE, 9L);
+    }
+
+    private void runWithMultiStreamWatermark(MultiStreamWatermarkPolicy policy, long expectedWatermark) throws Exception {
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).stream(SAMPLE_STREAM2).build();
+        TestableFlinkPravegaReader<Integer> reader = createReaderWithWatermark(new LowerBoundAssigner<Integer>() {
+            @Override
+            public long extractTimestamp(Integer element, long previousElementTimestamp) {
+                return element;
+            }
+        }, rgConfig, policy, Time.milliseconds(0));
+
+        try (StreamSourceOperatorTestHarness<Integer, TestableFlinkPravegaReader<Integer>> testHarness =
+                     createTestHarness(reader, 1, 1, 0, TimeCharacteristic.EventTime)) {
+            testHarness.getExecutionConfig().setAutoWatermarkInterval(50);
+            testHarness.open();
+
+            // the first stream is behind the second one, which then reaches the head of the stream
+            when(reader.eventStreamReader.getCurrentTimeWindow(SAMPLE_STREAM))
+                    .thenReturn(new TimeWindow(1L, 2L))
+                    .thenReturn(new TimeWindow(10L, 11L));
+            when(reader.eventStreamReader.getCurrentTimeWindow(SAMPLE_STREAM2))
+                    .thenReturn(new TimeWindow(5L, 6L))
+                    .thenReturn(new TimeWindow(null, null));
+
+            TestEventGenerator<Integer> evts = new TestEventGenerator<>();
+            when(reader.eventStreamReader.readNextEvent(anyLong()))
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(1);
+                        return evts.event(1);
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(51);
+                        return evts.idle();
+                    })
+                    .thenAnswer((Answer<EventRead<Integer>>) invocation -> {
+                        testHarness.setProcessingTime(101);
+                        return evts.event(TestDeserializationSchema.END_OF_STREAM);
+                    });
+
+            // run the source
+            testHarness.run();
+
+            verify(reader.eventStreamReader, times(2)).getCurrentTimeWindow(SAMPLE_STREAM);
+            verify(reader.eventStreamReader, times(2)).getCurrentTimeWindow(SAMPLE_STREAM2);
+
+            Queue<Object> actual = testHarness.getOutput();
+            Queue<Object> expected = new ConcurrentLinkedQueue<>();
+            expected.add(record(1, 1));
+            // the minimum of (1 - 1 = 0) and (5 - 1 = 4)
+            expected.add(watermark(0));
+            if (expectedWatermark > 0) {
+                // the second stream is near the head of the stream and is ignored
+                expected.add(watermark(expectedWatermark));
+            }
+            // automatic watermark at the end of stream
+            expected.add(watermark(Long.MAX_VALUE));
+
+            TestHarnessUtil.assertOutputEquals("Unexpected output", expected, actual);
+        }
+    }
+
 
     /**
      * helper method to validate the metrics
@@ -293,15 +767,84 @@ public class FlinkPravegaReaderTest {
         boolean enableMetrics = true;
         return new TestableFlinkPravegaReader<>(
                 "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
-                null, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics);
+                null, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics, 1, Time.milliseconds(0),
+                0, Long.MAX_VALUE, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0),
+                Time.milliseconds(0), Collections.emptyList(), null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a {@link TestableFlinkPravegaReader} with batched emission.
+     */
+    private static TestableFlinkPravegaReader<Integer> createReader(int maxEventsPerBatch, Time maxBatchTime) {
+        ClientConfig clientConfig = ClientConfig.builder().build();
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).build();
+        boolean enableMetrics = true;
+        return new TestableFlinkPravegaReader<>(
+                "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
+                null, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics, maxEventsPerBatch, maxBatchTime,
+                0, Long.MAX_VALUE, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0),
+                Time.milliseconds(0), Collections.emptyList(), null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a {@link TestableFlinkPravegaReader} with the asynchronous deserialization.
+     */
+    private static TestableFlinkPravegaReader<Integer> createReaderWithAsyncDeserialization(int parallelism, long maxInFlightBytes) {
+        ClientConfig clientConfig = ClientConfig.builder().build();
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).build();
+        boolean enableMetrics = true;
+        return new TestableFlinkPravegaReader<>(
+                "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
+                null, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics, 1, Time.milliseconds(0),
+                parallelism, maxInFlightBytes, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0),
+                Time.milliseconds(0), Collections.emptyList(), null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a {@link TestableFlinkPravegaReader} with the catch-up phase for the given streams.
+     */
+    private static TestableFlinkPravegaReader<Integer> createReaderWithCatchUp(List<StreamWithBoundaries> catchUpStreams) {
+        ClientConfig clientConfig = ClientConfig.builder().build();
+        ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM, SAMPLE_CUT).build();
+        boolean enableMetrics = true;
+        return new TestableFlinkPravegaReader<>(
+                "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
+                null, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics, 1, Time.milliseconds(0),
+                0, Long.MAX_VALUE, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0),
+                Time.milliseconds(0), catchUpStreams, mock(ReadRateLimitProvider.class), Collections.emptyList());
+    }
+
+    private static ByteBuffer serialize(int value) {
+        return (ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(value).flip();
     }
 
     /**
      * Creates a {@link TestableFlinkPravegaReader} with event time and watermarking.
      */
     private static TestableFlinkPravegaReader<Integer> createReaderWithWatermark(AssignerWithTimeWindows<Integer> assignerWithTimeWindows) {
-        ClientConfig clientConfig = ClientConfig.builder().build();
         ReaderGroupConfig rgConfig = ReaderGroupConfig.builder().stream(SAMPLE_STREAM).build();
+        return createReaderWithWatermark(assignerWithTimeWindows, rgConfig, MultiStreamWatermarkPolicy.MIN, Time.milliseconds(0));
+    }
+
+    /**
+     * Creates a {@link TestableFlinkPravegaReader} with event time and watermarking for the given streams.
+     */
+    private static TestableFlinkPravegaReader<Integer> createReaderWithWatermark(AssignerWithTimeWindows<Integer> assignerWithTimeWindows,
+                                                                                 ReaderGroupConfig rgConfig,
+                                                                                 MultiStreamWatermarkPolicy watermarkPolicy,
+                                                                                 Time idleTimeout) {
+        return createReaderWithWatermark(assignerWithTimeWindows, rgConfig, watermarkPolicy, idleTimeout, Time.milliseconds(0));
+    }
+
+    /**
+     * Creates a {@link TestableFlinkPravegaReader} with event time, watermarking and watermark alignment for the given streams.
+     */
+    private static TestableFlinkPravegaReader<Integer> createReaderWithWatermark(AssignerWithTimeWindows<Integer> assignerWithTimeWindows,
+                                                                                 ReaderGroupConfig rgConfig,
+                                                                                 MultiStreamWatermarkPolicy watermarkPolicy,
+                                                                                 Time idleTimeout,
+                                                                                 Time maxWatermarkDrift) {
+        ClientConfig clientConfig = ClientConfig.builder().build();
         boolean enableMetrics = true;
 
         try {
@@ -310,7 +853,8 @@ public class FlinkPravegaReaderTest {
                     new SerializedValue<>(assignerWithTimeWindows);
             return new TestableFlinkPravegaReader<>(
                     "hookUid", clientConfig, rgConfig, SAMPLE_SCOPE, GROUP_NAME, DESERIALIZATION_SCHEMA,
-                    serializedAssigner, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics);
+                    serializedAssigner, READER_TIMEOUT, CHKPT_TIMEOUT, enableMetrics, 1, Time.milliseconds(0),
+                    0, Long.MAX_VALUE, watermarkPolicy, idleTimeout, maxWatermarkDrift, Collections.emptyList(), null, Collections.emptyList());
         } catch (IOException e) {
             throw new IllegalArgumentException("The given assigner is not serializable", e);
         }
@@ -430,6 +974,21 @@ public class FlinkPravegaReaderTest {
         assertEquals(uid1, uid2);
         assertNotEquals(uid1, uid3);
         assertNotEquals(uid1, uid4);
+
+        // the streams sought by time are identified by their timestamps, without reading their time indexes
+        TestableStreamingReaderBuilder builder5 = new TestableStreamingReaderBuilder()
+                .withReaderGroupScope(SAMPLE_SCOPE)
+                .forStream(SAMPLE_STREAM, 1000L, 2000L);
+        String uid5 = builder5.generateUid();
+
+        TestableStreamingReaderBuilder builder6 = new TestableStreamingReaderBuilder()
+                .withReaderGroupScope(SAMPLE_SCOPE)
+                .forStream(SAMPLE_STREAM, 1000L, 3000L);
+        String uid6 = builder6.generateUid();
+
+        assertEquals(uid5, builder5.generateUid());
+        assertNotEquals(uid1, uid5);
+        assertNotEquals(uid5, uid6);
     }
 
     // endregion
@@ -441,7 +1000,8 @@ public class FlinkPravegaReaderTest {
      */
     private static class TestEventGenerator<T> {
         public EventRead<T> event(T evt) {
-            return new EventReadImpl<>(evt, mock(Position.class), mock(EventPointer.class), null);
+            // the event pointer also provides the length of the event
+            return new EventReadImpl<>(evt, mock(Position.class), mock(EventPointer.class, RETURNS_DEEP_STUBS), null);
         }
 
         public EventRead<T> idle() {
@@ -480,29 +1040,86 @@ public class FlinkPravegaReaderTest {
         @SuppressWarnings("unchecked")
         final EventStreamReader<T> eventStreamReader = mock(EventStreamReader.class);
 
+        @SuppressWarnings("unchecked")
+        final EventStreamReader<ByteBuffer> rawEventStreamReader = mock(EventStreamReader.class);
+
+        @SuppressWarnings("unchecked")
+        final EventStreamReader<ByteBuffer> catchUpCheckpointReader = mock(EventStreamReader.class);
+
+        final BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+
+        final StreamManager streamManager = mock(StreamManager.class, RETURNS_DEEP_STUBS);
+
+        final ReadRateLimiter readRateLimiter = mock(ReadRateLimiter.class);
+
+        GlobalAggregateManager globalAggregateManager = new WatermarkAlignerTest.TestGlobalAggregateManager();
+
+        // the deserializer of the event stream reader, which unpacks the event batches
+        Serializer<T> deserializer;
+
         protected TestableFlinkPravegaReader(String hookUid, ClientConfig clientConfig,
                                              ReaderGroupConfig readerGroupConfig, String readerGroupScope,
                                              String readerGroupName, DeserializationSchema<T> deserializationSchema,
                                              SerializedValue<AssignerWithTimeWindows<T>> assignerWithTimeWindows,
                                              Time eventReadTimeout, Time checkpointInitiateTimeout,
-                                             boolean enableMetrics) {
+                                             boolean enableMetrics, int maxEventsPerBatch, Time maxBatchTime,
+                                             int deserializationParallelism, long maxInFlightDeserializationBytes,
+                                             MultiStreamWatermarkPolicy watermarkPolicy, Time idleTimeout,
+                                             Time maxWatermarkDrift, List<StreamWithBoundaries> catchUpStreams,
+                                             ReadRateLimitProvider readRateLimitProvider, List<PayloadCodec> compressionCodecs) {
             super(hookUid, clientConfig, readerGroupConfig, readerGroupScope, readerGroupName, deserializationSchema,
-                    assignerWithTimeWindows, eventReadTimeout, checkpointInitiateTimeout, enableMetrics);
+                    assignerWithTimeWindows, eventReadTimeout, checkpointInitiateTimeout, enableMetrics,
+                    maxEventsPerBatch, maxBatchTime, deserializationParallelism, maxInFlightDeserializationBytes,
+                    watermarkPolicy, idleTimeout, maxWatermarkDrift, catchUpStreams, readRateLimitProvider,
+                    compressionCodecs);
         }
 
         @Override
         protected ReaderGroupManager createReaderGroupManager() {
             doNothing().when(readerGroupManager).createReaderGroup(readerGroupName, readerGroupConfig);
-            doReturn(new HashSet<>(Arrays.asList(SAMPLE_COMPLETE_STREAM_NAME))).when(readerGroup).getStreamNames();
+            doReturn(readerGroupConfig.getStartingStreamCuts().keySet().stream()
+                    .map(Stream::getScopedName)
+                    .collect(Collectors.toSet())).when(readerGroup).getStreamNames();
             doReturn(readerGroup).when(readerGroupManager).getReaderGroup(readerGroupName);
             return readerGroupManager;
         }
 
         @Override
-        protected EventStreamReader<T> createEventStreamReader(String readerId) {
+        protected EventStreamReader<T> createEventStreamReader(String readerId, Serializer<T> deserializer) {
+            this.deserializer = deserializer;
             return eventStreamReader;
         }
 
+        @Override
+        protected EventStreamReader<ByteBuffer> createRawEventStreamReader(String readerId) {
+            return rawEventStreamReader;
+        }
+
+        @Override
+        protected EventStreamReader<ByteBuffer> createCatchUpCheckpointReader(String readerId) {
+            return catchUpCheckpointReader;
+        }
+
+        @Override
+        protected BatchClientFactory createBatchClientFactory() {
+            return batchClientFactory;
+        }
+
+        @Override
+        protected StreamManager createStreamManager() {
+            return streamManager;
+        }
+
+        @Override
+        protected ReadRateLimiter createReadRateLimiter() {
+            return readRateLimiter;
+        }
+
+        @Override
+        protected GlobalAggregateManager getGlobalAggregateManager() {
+            return globalAggregateManager;
+        }
+
     }
 
     /**
@@ -17,18 +17,26 @@ import io.pravega.client.stream.Transaction;
 import io.pravega.client.stream.TransactionalEventStreamWriter;
 import io.pravega.common.function.RunnableWithException;
 import io.pravega.connectors.flink.utils.DirectExecutorService;
+import io.pravega.connectors.flink.serialization.ByteBufferSerializationSchema;
 import io.pravega.connectors.flink.utils.IntegerSerializationSchema;
 import io.pravega.connectors.flink.utils.StreamSinkOperatorTestHarness;
+import org.apache.flink.api.common.functions.RuntimeContext;
 import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -37,12 +45,15 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.function.Function;
 
 import static io.pravega.connectors.flink.AbstractStreamingWriterBuilder.DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -61,6 +72,8 @@ public class FlinkPravegaWriterTest {
     private static final String MOCK_SCOPE_NAME = "scope";
     private static final String MOCK_STREAM_NAME = "stream";
     private static final String ROUTING_KEY = "fixed";
+    private static final int MAX_EVENT_BATCH_SIZE = 1024;
+    private static final long EVENT_BATCH_LINGER_MILLIS = 100L;
 
     private static final String MOCK_SCOPE_NAME_1 = "scope1";
     private static final String MOCK_SCOPE_NAME_2 = "scope2";
@@ -79,7 +92,7 @@ public class FlinkPravegaWriterTest {
      */
     @Test
     public void testConstructor() {
-        EventStreamWriter<Integer> pravegaWriter = mockEventStreamWriter();
+        EventStreamWriter<ByteBuffer> pravegaWriter = mockEventStreamWriter();
         PravegaEventRouter<Integer> eventRouter = new FixedEventRouter<>();
         PravegaWriterMode writerMode = PravegaWriterMode.ATLEAST_ONCE;
         FlinkPravegaWriter<Integer> sinkFunction = spySinkFunction(mockClientFactory(pravegaWriter), eventRouter, true, writerMode);
@@ -129,20 +142,24 @@ public class FlinkPravegaWriterTest {
      * A test context suitable for testing implementations of {@link FlinkPravegaWriter.AbstractInternalWriter}.
      */
     class AbstractInternalWriterTestContext implements AutoCloseable {
-        final EventStreamWriter<Integer> pravegaWriter;
-        final TransactionalEventStreamWriter<Integer> pravegaTxnWriter;
+        final EventStreamWriter<ByteBuffer> pravegaWriter;
+        final TransactionalEventStreamWriter<ByteBuffer> pravegaTxnWriter;
         final PravegaEventRouter<Integer> eventRouter;
         final ExecutorService executorService;
         final FlinkPravegaWriter<Integer> sinkFunction;
         final FlinkPravegaWriter<Integer> txnSinkFunction;
 
         AbstractInternalWriterTestContext(boolean enableWatermark, PravegaWriterMode writerMode) {
+            this(enableWatermark, writerMode, EventBatcher.NO_BATCHING);
+        }
+
+        AbstractInternalWriterTestContext(boolean enableWatermark, PravegaWriterMode writerMode, int maxEventBatchSize) {
             pravegaWriter = mockEventStreamWriter();
             pravegaTxnWriter = mockTxnEventStreamWriter();
             eventRouter = new FixedEventRouter<>();
 
-            sinkFunction = spySinkFunction(mockClientFactory(pravegaWriter), eventRouter, enableWatermark, writerMode);
-            txnSinkFunction = spySinkFunction(mockTxnClientFactory(pravegaTxnWriter), eventRouter, enableWatermark, writerMode);
+            sinkFunction = spySinkFunction(mockClientFactory(pravegaWriter), eventRouter, enableWatermark, writerMode, maxEventBatchSize);
+            txnSinkFunction = spySinkFunction(mockTxnClientFactory(pravegaTxnWriter), eventRouter, enableWatermark, writerMode, maxEventBatchSize);
 
             // inject an instrumented, direct executor
             executorService = spy(new DirectExecutorService());
@@ -176,6 +193,18 @@ public class FlinkPravegaWriterTest {
         }
     }
 
+    /**
+     * Tests that the internal serializer calls a {@link ByteBufferSerializationSchema} directly.
+     */
+    @Test
+    public void testFlinkSerializerWithByteBufferSerializationSchema() {
+        final ByteBuffer serialized = ByteBuffer.allocate(Integer.BYTES).putInt(42);
+        serialized.flip();
+        ByteBufferSerializationSchema<Integer> schema = element -> serialized;
+        FlinkPravegaWriter.FlinkSerializer<Integer> serializer = new FlinkPravegaWriter.FlinkSerializer<>(schema);
+        Assert.assertSame(serialized, serializer.serialize(42));
+    }
+
     // endregion
 
     // region NonTransactionalWriter
@@ -188,6 +217,10 @@ public class FlinkPravegaWriterTest {
             super(enableWatermark, writerMode);
         }
 
+        NonTransactionalWriterTestContext(boolean enableWatermark, PravegaWriterMode writerMode, int maxEventBatchSize) {
+            super(enableWatermark, writerMode, maxEventBatchSize);
+        }
+
         CompletableFuture<Void> prepareWrite() {
             CompletableFuture<Void> writeFuture = new CompletableFuture<>();
             when(pravegaWriter.writeEvent(anyString(), anyObject())).thenReturn(writeFuture);
@@ -207,7 +240,7 @@ public class FlinkPravegaWriterTest {
                 CompletableFuture<Void> e1Future = context.prepareWrite();
                 StreamRecord<Integer> e1 = new StreamRecord<>(1, 1L);
                 testHarness.processElement(e1);
-                verify(context.pravegaWriter).writeEvent(ROUTING_KEY, e1.getValue());
+                verify(context.pravegaWriter).writeEvent(ROUTING_KEY, serialized(e1.getValue()));
                 e1Future.complete(null);
             }
         }
@@ -226,22 +259,22 @@ public class FlinkPravegaWriterTest {
                 CompletableFuture<Void> e1Future = context.prepareWrite();
                 StreamRecord<Integer> e1 = new StreamRecord<>(1, 1L);
                 testHarness.processElement(e1);
-                Assert.assertEquals(1, internalWriter.pendingWritesCount.get());
+                Assert.assertEquals(1, internalWriter.pendingWrites.count());
 
                 CompletableFuture<Void> e2Future = context.prepareWrite();
                 StreamRecord<Integer> e2 = new StreamRecord<>(2, 2L);
                 testHarness.processElement(e2);
-                Assert.assertEquals(2, internalWriter.pendingWritesCount.get());
+                Assert.assertEquals(2, internalWriter.pendingWrites.count());
 
                 CompletableFuture<Void> e3Future = context.prepareWrite();
                 StreamRecord<Integer> e3 = new StreamRecord<>(3, 3L);
                 testHarness.processElement(e3);
-                Assert.assertEquals(3, internalWriter.pendingWritesCount.get());
+                Assert.assertEquals(3, internalWriter.pendingWrites.count());
 
                 e1Future.complete(null);
                 e2Future.completeExceptionally(new IntentionalRuntimeException());
                 e3Future.complete(null);
-                Assert.assertEquals(0, internalWriter.pendingWritesCount.get());
+                Assert.assertEquals(0, internalWriter.pendingWrites.count());
 
                 // clear the error for test simplicity
                 internalWriter.writeError.set(null);
@@ -290,16 +323,13 @@ public class FlinkPravegaWriterTest {
                 FlinkPravegaWriter.NonTransactionalWriter internalWriter = (FlinkPravegaWriter.NonTransactionalWriter) context.sinkFunction.writer;
 
                 // invoke a flush, expecting it to block on pending writes
-                internalWriter.pendingWritesCount.incrementAndGet();
+                internalWriter.pendingWrites.register();
                 Future<Void> flushFuture = runAsync(internalWriter::flushAndVerify);
                 Thread.sleep(1000);
                 Assert.assertFalse(flushFuture.isDone());
 
                 // allow the flush to complete
-                synchronized (internalWriter) {
-                    internalWriter.pendingWritesCount.decrementAndGet();
-                    internalWriter.notify();
-                }
+                internalWriter.pendingWrites.complete();
                 flushFuture.get();
 
                 // invoke another flush following a write error, expecting failure
@@ -330,13 +360,11 @@ public class FlinkPravegaWriterTest {
                     // prepare a worst-case situation that exercises the exception handling aspect of close
                     internalWriter.writeError.set(new IntentionalRuntimeException());
                     Mockito.doThrow(new IntentionalRuntimeException()).when(context.pravegaWriter).close();
-                    Mockito.doThrow(new IntentionalRuntimeException()).when(context.executorService).shutdown();
                 }
                 Assert.fail("expected an exception");
             } catch (IOException e) {
-                Assert.assertEquals(2, e.getSuppressed().length);
+                Assert.assertEquals(1, e.getSuppressed().length);
                 Assert.assertTrue(e.getSuppressed()[0] instanceof IntentionalRuntimeException);
-                Assert.assertTrue(e.getSuppressed()[1] instanceof IntentionalRuntimeException);
             }
         }
     }
@@ -373,6 +401,199 @@ public class FlinkPravegaWriterTest {
         }
     }
 
+    /**
+     * Tests that the batched events are written once their batch lingered, even though no event arrives.
+     */
+    @Test
+    public void testNonTransactionalWriterBatchLinger() throws Exception {
+        try (NonTransactionalWriterTestContext context = new NonTransactionalWriterTestContext(false, PravegaWriterMode.ATLEAST_ONCE, MAX_EVENT_BATCH_SIZE)) {
+            try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.sinkFunction)) {
+                testHarness.open();
+                context.prepareWrite().complete(null);
+                testHarness.processElement(new StreamRecord<>(1, 1L));
+                testHarness.processElement(new StreamRecord<>(2, 2L));
+                verify(context.pravegaWriter, never()).writeEvent(anyString(), anyObject());
+
+                // the linger timer writes the batch
+                testHarness.setProcessingTime(EVENT_BATCH_LINGER_MILLIS);
+                verify(context.pravegaWriter).writeEvent(ROUTING_KEY, serializedBatch(1, 2));
+            }
+        }
+    }
+
+    /**
+     * Tests that the batched events are written before the watermark which follows them.
+     */
+    @Test
+    public void testNonTransactionalWriterBatchDrainOnWatermark() throws Exception {
+        try (NonTransactionalWriterTestContext context = new NonTransactionalWriterTestContext(true, PravegaWriterMode.ATLEAST_ONCE, MAX_EVENT_BATCH_SIZE)) {
+            try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.sinkFunction)) {
+                testHarness.open();
+                context.prepareWrite().complete(null);
+                testHarness.processElement(new StreamRecord<>(1, 1L));
+                verify(context.pravegaWriter, never()).writeEvent(anyString(), anyObject());
+
+                // the event following the watermark emits it, after the open batch
+                testHarness.processWatermark(1L);
+                testHarness.processElement(new StreamRecord<>(2, 2L));
+                InOrder order = Mockito.inOrder(context.pravegaWriter);
+                order.verify(context.pravegaWriter).writeEvent(ROUTING_KEY, serializedBatch(1, 2));
+                order.verify(context.pravegaWriter).noteTime(1L);
+            }
+        }
+    }
+
+    /**
+     * Tests that the batched events are written and flushed on checkpoint.
+     */
+    @Test
+    public void testNonTransactionalWriterBatchDrainOnSnapshot() throws Exception {
+        try (NonTransactionalWriterTestContext context = new NonTransactionalWriterTestContext(false, PravegaWriterMode.ATLEAST_ONCE, MAX_EVENT_BATCH_SIZE)) {
+            try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.sinkFunction)) {
+                testHarness.open();
+                context.prepareWrite().complete(null);
+                testHarness.processElement(new StreamRecord<>(1, 1L));
+                testHarness.processElement(new StreamRecord<>(2, 2L));
+                verify(context.pravegaWriter, never()).writeEvent(anyString(), anyObject());
+
+                testHarness.snapshot(1L, 1L);
+                InOrder order = Mockito.inOrder(context.pravegaWriter);
+                order.verify(context.pravegaWriter).writeEvent(ROUTING_KEY, serializedBatch(1, 2));
+                order.verify(context.pravegaWriter).flush();
+            }
+        }
+    }
+
+    /**
+     * Tests that the event batches are compressed as a whole, and that the codec is closed along with the sink.
+     */
+    @Test
+    public void testNonTransactionalWriterCompression() throws Exception {
+        EventStreamWriter<ByteBuffer> pravegaWriter = mockEventStreamWriter();
+        when(pravegaWriter.writeEvent(anyString(), anyObject())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // a codec which delegates to the Deflate codec
+        DeflateCodec deflateCodec = new DeflateCodec();
+        PayloadCodec codec = mock(PayloadCodec.class);
+        when(codec.getId()).thenReturn((byte) 16);
+        when(codec.compress(anyObject())).thenAnswer(invoke -> deflateCodec.compress(invoke.getArgumentAt(0, ByteBuffer.class)));
+        when(codec.decompress(anyObject(), anyInt())).thenAnswer(invoke ->
+                deflateCodec.decompress(invoke.getArgumentAt(0, ByteBuffer.class), invoke.getArgumentAt(1, Integer.class)));
+
+        FlinkPravegaWriter<Integer> sinkFunction = spy(new FlinkPravegaWriter<>(
+                MOCK_CLIENT_CONFIG, Stream.of(MOCK_SCOPE_NAME, MOCK_STREAM_NAME), new IntegerSerializationSchema(),
+                new FixedEventRouter<>(), PravegaWriterMode.ATLEAST_ONCE, DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS,
+                false, true, false, Collections.emptyMap(), FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_EVENTS,
+                FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_BYTES, MAX_EVENT_BATCH_SIZE, EVENT_BATCH_LINGER_MILLIS, codec));
+        Mockito.doReturn(mockClientFactory(pravegaWriter)).when(sinkFunction).createClientFactory(MOCK_SCOPE_NAME, MOCK_CLIENT_CONFIG);
+        Mockito.doReturn(new DirectExecutorService()).when(sinkFunction).createExecutorService();
+
+        int[] values = new int[50];
+        Arrays.fill(values, 42);
+        try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(sinkFunction)) {
+            testHarness.open();
+            for (int value : values) {
+                testHarness.processElement(new StreamRecord<>(value, 1L));
+            }
+            testHarness.snapshot(1L, 1L);
+
+            ArgumentCaptor<ByteBuffer> written = ArgumentCaptor.forClass(ByteBuffer.class);
+            verify(pravegaWriter).writeEvent(eq(ROUTING_KEY), written.capture());
+            Assert.assertTrue(PayloadCompression.isCompressed(written.getValue()));
+            PayloadCompression reader = new PayloadCompression(null, Collections.singletonList(codec));
+            Assert.assertEquals(serializedBatch(values), reader.decompress(written.getValue()));
+            verify(codec, never()).close();
+        }
+        verify(codec).close();
+    }
+
+    /**
+     * Tests that the writes block while too many events are in flight, and resume once some are acknowledged.
+     */
+    @Test
+    public void testNonTransactionalWriterInFlightEventsLimit() throws Exception {
+        testNonTransactionalWriterInFlightLimits(2, FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * Tests that the writes block while too many bytes are in flight, and resume once some are acknowledged.
+     */
+    @Test
+    public void testNonTransactionalWriterInFlightBytesLimit() throws Exception {
+        testNonTransactionalWriterInFlightLimits(FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_EVENTS, 10L);
+    }
+
+    // writes events of 4 bytes, within limits which admit two of them in flight
+    @SuppressWarnings("unchecked")
+    private void testNonTransactionalWriterInFlightLimits(int maxInFlightEvents, long maxInFlightBytes) throws Exception {
+        // the writes are acknowledged by the test
+        List<CompletableFuture<Void>> writeFutures = new CopyOnWriteArrayList<>();
+        EventStreamWriter<ByteBuffer> pravegaWriter = mockEventStreamWriter();
+        when(pravegaWriter.writeEvent(anyString(), anyObject())).thenAnswer(invoke -> {
+            CompletableFuture<Void> writeFuture = new CompletableFuture<>();
+            writeFutures.add(writeFuture);
+            return writeFuture;
+        });
+        EventStreamClientFactory clientFactory = mockClientFactory(pravegaWriter);
+
+        FlinkPravegaWriter<Integer> sinkFunction = spy(new FlinkPravegaWriter<>(
+                MOCK_CLIENT_CONFIG, Stream.of(MOCK_SCOPE_NAME, MOCK_STREAM_NAME), new IntegerSerializationSchema(),
+                new FixedEventRouter<>(), PravegaWriterMode.ATLEAST_ONCE, DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS,
+                false, true, false, Collections.emptyMap(), maxInFlightEvents, maxInFlightBytes, EventBatcher.NO_BATCHING,
+                0L, null));
+        Mockito.doReturn(clientFactory).when(sinkFunction).createClientFactory(MOCK_SCOPE_NAME, MOCK_CLIENT_CONFIG);
+        Mockito.doReturn(new DirectExecutorService()).when(sinkFunction).createExecutorService();
+
+        // capture the metrics registered by the sink
+        Map<String, Gauge<?>> gauges = new HashMap<>();
+        Map<String, Counter> counters = new HashMap<>();
+        MetricGroup metricGroup = mock(MetricGroup.class);
+        when(metricGroup.addGroup(anyString())).thenReturn(metricGroup);
+        when(metricGroup.gauge(anyString(), any(Gauge.class))).thenAnswer(invoke -> {
+            gauges.put((String) invoke.getArguments()[0], (Gauge<?>) invoke.getArguments()[1]);
+            return invoke.getArguments()[1];
+        });
+        when(metricGroup.counter(anyString(), any(Counter.class))).thenAnswer(invoke -> {
+            counters.put((String) invoke.getArguments()[0], (Counter) invoke.getArguments()[1]);
+            return invoke.getArguments()[1];
+        });
+        Mockito.doAnswer(invoke -> {
+            RuntimeContext runtimeContext = spy((RuntimeContext) invoke.callRealMethod());
+            Mockito.doReturn(metricGroup).when(runtimeContext).getMetricGroup();
+            return runtimeContext;
+        }).when(sinkFunction).getRuntimeContext();
+
+        try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(sinkFunction)) {
+            testHarness.open();
+            Gauge<?> inFlightEvents = gauges.get("inFlightEvents");
+            Gauge<?> inFlightBytes = gauges.get("inFlightBytes");
+            Counter writeBlockedTimeMillis = counters.get("writeBlockedTimeMillis");
+
+            testHarness.processElement(new StreamRecord<>(1, 1L));
+            testHarness.processElement(new StreamRecord<>(2, 2L));
+            Assert.assertEquals(2, inFlightEvents.getValue());
+            Assert.assertEquals(8L, inFlightBytes.getValue());
+            Assert.assertEquals(0L, writeBlockedTimeMillis.getCount());
+
+            // write a third event, expecting it to block until a write is acknowledged
+            Future<Void> writeFuture = runAsync(() -> testHarness.processElement(new StreamRecord<>(3, 3L)));
+            Thread.sleep(1000);
+            Assert.assertFalse(writeFuture.isDone());
+            Assert.assertEquals(3, inFlightEvents.getValue());
+            Assert.assertEquals(12L, inFlightBytes.getValue());
+
+            writeFutures.get(0).complete(null);
+            writeFuture.get();
+            Assert.assertEquals(2, inFlightEvents.getValue());
+            Assert.assertEquals(8L, inFlightBytes.getValue());
+            Assert.assertTrue(writeBlockedTimeMillis.getCount() > 0);
+
+            writeFutures.forEach(future -> future.complete(null));
+            Assert.assertEquals(0, inFlightEvents.getValue());
+            Assert.assertEquals(0L, inFlightBytes.getValue());
+        }
+    }
+
     // endregion
 
     // region TransactionalWriter
@@ -385,8 +606,12 @@ public class FlinkPravegaWriterTest {
             super(enableWatermark, writerMode);
         }
 
-        Transaction<Integer> prepareTransaction() {
-            Transaction<Integer> trans = mockTransaction();
+        TransactionalWriterTestContext(boolean enableWatermark, PravegaWriterMode writerMode, int maxEventBatchSize) {
+            super(enableWatermark, writerMode, maxEventBatchSize);
+        }
+
+        Transaction<ByteBuffer> prepareTransaction() {
+            Transaction<ByteBuffer> trans = mockTransaction();
             UUID txnId = UUID.randomUUID();
             Mockito.doReturn(txnId).when(trans).getTxnId();
             Mockito.doReturn(trans).when(pravegaTxnWriter).beginTxn();
@@ -402,13 +627,16 @@ public class FlinkPravegaWriterTest {
     public void testTransactionalWriterOpen() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
             try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
-                // open the sink, expecting an initial transaction
-                Transaction<Integer> trans = context.prepareTransaction();
+                // open the sink, expecting an initial transaction and the next one begun ahead
+                Transaction<ByteBuffer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans2 = context.prepareTransaction();
+                Mockito.doReturn(trans1).doReturn(trans2).when(context.pravegaTxnWriter).beginTxn();
                 testHarness.open();
                 Assert.assertTrue(context.txnSinkFunction.writer instanceof FlinkPravegaWriter.TransactionalWriter);
                 FlinkPravegaWriter.TransactionalWriter internalWriter = (FlinkPravegaWriter.TransactionalWriter) context.txnSinkFunction.writer;
-                verify(context.pravegaTxnWriter).beginTxn();
-                Assert.assertSame(trans, internalWriter.currentTxn);
+                verify(context.pravegaTxnWriter, times(2)).beginTxn();
+                Assert.assertSame(trans1, internalWriter.currentTxn);
+                Assert.assertSame(trans2, internalWriter.nextTxn.get());
             }
         }
     }
@@ -419,23 +647,28 @@ public class FlinkPravegaWriterTest {
     @Test
     public void testTransactionalWriterClose() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
-            Transaction<Integer> trans = context.prepareTransaction();
+            Transaction<ByteBuffer> trans1 = context.prepareTransaction();
+            Transaction<ByteBuffer> trans2 = context.prepareTransaction();
+            Mockito.doReturn(trans1).doReturn(trans2).when(context.pravegaTxnWriter).beginTxn();
             try {
                 try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
                     testHarness.open();
 
                     // prepare a worst-case situation that exercises the exception handling aspect of close
-                    Mockito.doThrow(new IntentionalRuntimeException()).when(trans).abort();
+                    Mockito.doThrow(new IntentionalRuntimeException()).when(trans1).abort();
+                    Mockito.doThrow(new IntentionalRuntimeException()).when(trans2).abort();
                     Mockito.doThrow(new IntentionalRuntimeException()).when(context.pravegaTxnWriter).close();
                 }
                 Assert.fail("expected an exception");
             } catch (IntentionalRuntimeException e) {
-                Assert.assertEquals(1, e.getSuppressed().length);
+                Assert.assertEquals(2, e.getSuppressed().length);
                 Assert.assertTrue(e.getSuppressed()[0] instanceof IntentionalRuntimeException);
+                Assert.assertTrue(e.getSuppressed()[1] instanceof IntentionalRuntimeException);
             }
 
-            // verify that the transaction was aborted and the writer closed
-            verify(trans).abort();
+            // verify that the current and the next transactions were aborted and the writer closed
+            verify(trans1).abort();
+            verify(trans2).abort();
             verify(context.pravegaTxnWriter).close();
         }
     }
@@ -446,12 +679,42 @@ public class FlinkPravegaWriterTest {
     @Test
     public void testTransactionalWriterProcessElementWrite() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
-            Transaction<Integer> trans = context.prepareTransaction();
+            Transaction<ByteBuffer> trans = context.prepareTransaction();
             try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
                 testHarness.open();
                 StreamRecord<Integer> e1 = new StreamRecord<>(1, 1L);
                 testHarness.processElement(e1);
-                verify(trans).writeEvent(ROUTING_KEY, e1.getValue());
+                verify(trans).writeEvent(ROUTING_KEY, serialized(e1.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Tests that the batched events are written to the transaction of the checkpoint which follows them.
+     */
+    @Test
+    public void testTransactionalWriterBatchDrainOnSnapshot() throws Exception {
+        try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE, MAX_EVENT_BATCH_SIZE)) {
+            try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
+                Transaction<ByteBuffer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans2 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans3 = context.prepareTransaction();
+                Mockito.doReturn(trans1).doReturn(trans2).doReturn(trans3).when(context.pravegaTxnWriter).beginTxn();
+                testHarness.open();
+                testHarness.processElement(new StreamRecord<>(1, 1L));
+                testHarness.processElement(new StreamRecord<>(2, 2L));
+                verify(trans1, never()).writeEvent(anyString(), anyObject());
+
+                testHarness.snapshot(1L, 1L);
+                InOrder order = Mockito.inOrder(trans1);
+                order.verify(trans1).writeEvent(ROUTING_KEY, serializedBatch(1, 2));
+                order.verify(trans1).flush();
+
+                // the events after the checkpoint are batched anew, for the next transaction
+                testHarness.processElement(new StreamRecord<>(3, 3L));
+                testHarness.snapshot(2L, 2L);
+                verify(trans2).writeEvent(ROUTING_KEY, serializedBatch(3));
+                verify(trans1, times(1)).writeEvent(anyString(), anyObject());
             }
         }
     }
@@ -463,21 +726,50 @@ public class FlinkPravegaWriterTest {
     public void testTransactionalWriterSnapshotState() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
             try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
-                Transaction<Integer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans2 = context.prepareTransaction();
+                Mockito.doReturn(trans1).doReturn(trans2).when(context.pravegaTxnWriter).beginTxn();
                 testHarness.open();
                 FlinkPravegaWriter.TransactionalWriter internalWriter = (FlinkPravegaWriter.TransactionalWriter) context.txnSinkFunction.writer;
                 verify(trans1).getTxnId();
 
-                // verify that the transaction is flushed and tracked as pending, and that a new transaction is begun
-                Transaction<Integer> trans2 = context.prepareTransaction();
+                // verify that the transaction is flushed and tracked as pending, that the writer switches to the
+                // transaction begun ahead, and that the one after it is begun
+                Transaction<ByteBuffer> trans3 = context.prepareTransaction();
                 testHarness.snapshot(1L, 1L);
                 verify(trans1).flush();
                 Assert.assertEquals(1, internalWriter.txnsPendingCommit.size());
-                FlinkPravegaWriter.TransactionAndCheckpoint<Integer> pending1 = (FlinkPravegaWriter.TransactionAndCheckpoint<Integer>) internalWriter.txnsPendingCommit.peek();
+                FlinkPravegaWriter.TransactionAndCheckpoint<ByteBuffer> pending1 = (FlinkPravegaWriter.TransactionAndCheckpoint<ByteBuffer>) internalWriter.txnsPendingCommit.peek();
                 Assert.assertEquals(trans1.getTxnId(), pending1.transaction().getTxnId());
                 Assert.assertEquals(1L, pending1.checkpointId());
                 Assert.assertNotNull(pending1.toString());
                 Assert.assertSame(trans2, internalWriter.currentTxn);
+                Assert.assertSame(trans3, internalWriter.nextTxn.get());
+                Assert.assertEquals(1, internalWriter.snapshotFlushTime.getCount());
+                Assert.assertEquals(1, internalWriter.snapshotTxnSwitchTime.getCount());
+            }
+        }
+    }
+
+    /**
+     * Tests the {@code snapshot} method when the next transaction could not be begun ahead.
+     */
+    @Test
+    public void testTransactionalWriterSnapshotStateBeginTxnFailure() throws Exception {
+        try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
+            try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
+                Transaction<ByteBuffer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans2 = context.prepareTransaction();
+                Mockito.doReturn(trans1).doThrow(new IntentionalRuntimeException()).doReturn(trans2).when(context.pravegaTxnWriter).beginTxn();
+                testHarness.open();
+                FlinkPravegaWriter.TransactionalWriter internalWriter = (FlinkPravegaWriter.TransactionalWriter) context.txnSinkFunction.writer;
+                Assert.assertTrue(internalWriter.nextTxn.isCompletedExceptionally());
+
+                // verify that the snapshot begins the next transaction itself
+                testHarness.snapshot(1L, 1L);
+                verify(trans1).flush();
+                Assert.assertSame(trans2, internalWriter.currentTxn);
+                verify(context.pravegaTxnWriter, times(4)).beginTxn();
             }
         }
     }
@@ -489,15 +781,15 @@ public class FlinkPravegaWriterTest {
     public void testTransactionalWriterNotifyCheckpointComplete() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
             try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
-                Transaction<Integer> trans1 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans1 = context.prepareTransaction();
                 testHarness.open();
                 FlinkPravegaWriter.TransactionalWriter internalWriter = (FlinkPravegaWriter.TransactionalWriter) context.txnSinkFunction.writer;
 
                 // initialize the state to contain some pending commits
                 internalWriter.txnsPendingCommit.add(new FlinkPravegaWriter.TransactionAndCheckpoint<>(trans1, 1L));
-                Transaction<Integer> trans2 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans2 = context.prepareTransaction();
                 internalWriter.txnsPendingCommit.add(new FlinkPravegaWriter.TransactionAndCheckpoint<>(trans2, 2L));
-                Transaction<Integer> trans3 = context.prepareTransaction();
+                Transaction<ByteBuffer> trans3 = context.prepareTransaction();
                 internalWriter.txnsPendingCommit.add(new FlinkPravegaWriter.TransactionAndCheckpoint<>(trans3, 3L));
 
                 // verify no matching transactions
@@ -539,11 +831,11 @@ public class FlinkPravegaWriterTest {
             }
 
             // verify the behavior for transactions with various statuses
-            Function<Transaction.Status, Transaction<Integer>> test = status -> {
+            Function<Transaction.Status, Transaction<ByteBuffer>> test = status -> {
                 try {
                     try (StreamSinkOperatorTestHarness<Integer> testHarness = createTestHarness(context.txnSinkFunction)) {
                         testHarness.setup();
-                        Transaction<Integer> trans = context.prepareTransaction();
+                        Transaction<ByteBuffer> trans = context.prepareTransaction();
                         when(trans.checkStatus()).thenReturn(status);
                         context.txnSinkFunction.restoreState(Collections.singletonList(
                                 new FlinkPravegaWriter.PendingTransaction(trans.getTxnId(), MOCK_SCOPE_NAME, MOCK_STREAM_NAME, null)));
@@ -570,10 +862,10 @@ public class FlinkPravegaWriterTest {
     @Test
     public void testTransactionalWriterRestoreStateForMultipleStreams() throws Exception {
         try (TransactionalWriterTestContext context = new TransactionalWriterTestContext(false, PravegaWriterMode.EXACTLY_ONCE)) {
-            List<Transaction<Integer>> pendingTransactions = prepareMockInstancesForRestore(context.txnSinkFunction);
+            List<Transaction<ByteBuffer>> pendingTransactions = prepareMockInstancesForRestore(context.txnSinkFunction);
 
             // verify the behavior by passing multiple transaction instances.
-            Map<Transaction.Status, List<Transaction<Integer>>> txnMap = new HashMap<>();
+            Map<Transaction.Status, List<Transaction<ByteBuffer>>> txnMap = new HashMap<>();
             List<FlinkPravegaWriter.PendingTransaction> pendingTransactionList = new ArrayList<>();
             int count = 5;
 
@@ -581,7 +873,7 @@ public class FlinkPravegaWriterTest {
                 testHarness.setup();
 
                 for (int i = 0; i < count; i++) {
-                    Transaction<Integer> integerTransaction = pendingTransactions.get(i);
+                    Transaction<ByteBuffer> integerTransaction = pendingTransactions.get(i);
                     Transaction.Status status;
 
                     if (i % 2 == 0) {
@@ -624,7 +916,7 @@ public class FlinkPravegaWriterTest {
                     if (txnMap.containsKey(status)) {
                         txnMap.get(status).add(integerTransaction);
                     } else {
-                        List<Transaction<Integer>> txnList = new ArrayList<>();
+                        List<Transaction<ByteBuffer>> txnList = new ArrayList<>();
                         txnList.add(integerTransaction);
                         txnMap.put(status, txnList);
                     }
@@ -633,11 +925,11 @@ public class FlinkPravegaWriterTest {
 
                 for (Transaction.Status status: txnMap.keySet()) {
                     if (status == Transaction.Status.OPEN) {
-                        for (Transaction<Integer> txn: txnMap.get(status)) {
+                        for (Transaction<ByteBuffer> txn: txnMap.get(status)) {
                             verify(txn, times(1)).commit();
                         }
                     } else if (status == Transaction.Status.COMMITTING || status == Transaction.Status.ABORTED) {
-                        for (Transaction<Integer> txn: txnMap.get(status)) {
+                        for (Transaction<ByteBuffer> txn: txnMap.get(status)) {
                             verify(txn, never()).commit();
                         }
                     }
@@ -679,22 +971,28 @@ public class FlinkPravegaWriterTest {
     }
 
     private FlinkPravegaWriter<Integer> spySinkFunction(EventStreamClientFactory clientFactory, PravegaEventRouter<Integer> eventRouter, boolean enableWatermark, PravegaWriterMode writerMode) {
+        return spySinkFunction(clientFactory, eventRouter, enableWatermark, writerMode, EventBatcher.NO_BATCHING);
+    }
+
+    private FlinkPravegaWriter<Integer> spySinkFunction(EventStreamClientFactory clientFactory, PravegaEventRouter<Integer> eventRouter, boolean enableWatermark, PravegaWriterMode writerMode, int maxEventBatchSize) {
         FlinkPravegaWriter<Integer> writer = spy(new FlinkPravegaWriter<>(
                 MOCK_CLIENT_CONFIG, Stream.of(MOCK_SCOPE_NAME, MOCK_STREAM_NAME), new IntegerSerializationSchema(),
-                eventRouter, writerMode, DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS, enableWatermark, true));
+                eventRouter, writerMode, DEFAULT_TXN_LEASE_RENEWAL_PERIOD_MILLIS, enableWatermark, true, false,
+                Collections.emptyMap(), FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_EVENTS, FlinkPravegaWriter.UNBOUNDED_IN_FLIGHT_BYTES,
+                maxEventBatchSize, EVENT_BATCH_LINGER_MILLIS, null));
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME, MOCK_CLIENT_CONFIG);
         return writer;
     }
 
-    private <T> List<Transaction<Integer>> prepareMockInstancesForRestore(FlinkPravegaWriter<Integer> writer) {
+    private <T> List<Transaction<ByteBuffer>> prepareMockInstancesForRestore(FlinkPravegaWriter<Integer> writer) {
 
         EventStreamClientFactory clientFactory = mock(EventStreamClientFactory.class);
-        List<Transaction<Integer>> transactions = new ArrayList<>();
+        List<Transaction<ByteBuffer>> transactions = new ArrayList<>();
 
         TransactionalEventStreamWriter<T> txnEventStreamWriter1 = mockTxnEventStreamWriter();
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME_1, MOCK_CLIENT_CONFIG);
         Mockito.when(clientFactory.<T>createTransactionalEventWriter(anyString(), eq(MOCK_STREAM_NAME_1), anyObject(), anyObject())).thenReturn(txnEventStreamWriter1);
-        Transaction<Integer> trans1 = mockTransaction();
+        Transaction<ByteBuffer> trans1 = mockTransaction();
         UUID txnId1 = UUID.randomUUID();
         Mockito.doReturn(txnId1).when(trans1).getTxnId();
         Mockito.doReturn(trans1).when(txnEventStreamWriter1).beginTxn();
@@ -704,7 +1002,7 @@ public class FlinkPravegaWriterTest {
         TransactionalEventStreamWriter<T> txnEventStreamWriter2 = mockTxnEventStreamWriter();
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME_1, MOCK_CLIENT_CONFIG);
         Mockito.when(clientFactory.<T>createTransactionalEventWriter(anyString(), eq(MOCK_STREAM_NAME_2), anyObject(), anyObject())).thenReturn(txnEventStreamWriter2);
-        Transaction<Integer> trans2 = mockTransaction();
+        Transaction<ByteBuffer> trans2 = mockTransaction();
         UUID txnId2 = UUID.randomUUID();
         Mockito.doReturn(txnId2).when(trans2).getTxnId();
         Mockito.doReturn(trans2).when(txnEventStreamWriter2).beginTxn();
@@ -714,7 +1012,7 @@ public class FlinkPravegaWriterTest {
         TransactionalEventStreamWriter<T> txnEventStreamWriter3 = mockTxnEventStreamWriter();
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME_1, MOCK_CLIENT_CONFIG);
         Mockito.when(clientFactory.<T>createTransactionalEventWriter(anyString(), eq(MOCK_STREAM_NAME_3), anyObject(), anyObject())).thenReturn(txnEventStreamWriter3);
-        Transaction<Integer> trans3 = mockTransaction();
+        Transaction<ByteBuffer> trans3 = mockTransaction();
         UUID txnId3 = UUID.randomUUID();
         Mockito.doReturn(txnId3).when(trans3).getTxnId();
         Mockito.doReturn(trans3).when(txnEventStreamWriter3).beginTxn();
@@ -724,7 +1022,7 @@ public class FlinkPravegaWriterTest {
         TransactionalEventStreamWriter<T> txnEventStreamWriter4 = mockTxnEventStreamWriter();
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME_2, MOCK_CLIENT_CONFIG);
         Mockito.when(clientFactory.<T>createTransactionalEventWriter(anyString(), eq(MOCK_STREAM_NAME_4), anyObject(), anyObject())).thenReturn(txnEventStreamWriter4);
-        Transaction<Integer> trans4 = mockTransaction();
+        Transaction<ByteBuffer> trans4 = mockTransaction();
         UUID txnId4 = UUID.randomUUID();
         Mockito.doReturn(txnId4).when(trans4).getTxnId();
         Mockito.doReturn(trans4).when(txnEventStreamWriter4).beginTxn();
@@ -734,7 +1032,7 @@ public class FlinkPravegaWriterTest {
         TransactionalEventStreamWriter<T> txnEventStreamWriter5 = mockTxnEventStreamWriter();
         Mockito.doReturn(clientFactory).when(writer).createClientFactory(MOCK_SCOPE_NAME_2, MOCK_CLIENT_CONFIG);
         Mockito.when(clientFactory.<T>createTransactionalEventWriter(anyString(), eq(MOCK_STREAM_NAME_5), anyObject(), anyObject())).thenReturn(txnEventStreamWriter5);
-        Transaction<Integer> trans5 = mockTransaction();
+        Transaction<ByteBuffer> trans5 = mockTransaction();
         UUID txnId5 = UUID.randomUUID();
         Mockito.doReturn(txnId5).when(trans5).getTxnId();
         Mockito.doReturn(trans5).when(txnEventStreamWriter5).beginTxn();
@@ -748,6 +1046,18 @@ public class FlinkPravegaWriterTest {
         return spy((FlinkPravegaWriter.AbstractInternalWriter) invoke.callRealMethod());
     }
 
+    private static ByteBuffer serialized(int value) {
+        return ByteBuffer.wrap(new IntegerSerializationSchema().serialize(value));
+    }
+
+    private static ByteBuffer serializedBatch(int... values) {
+        EventBatch batch = new EventBatch(ROUTING_KEY, 0L);
+        for (int value : values) {
+            batch.add(serialized(value));
+        }
+        return batch.toByteBuffer();
+    }
+
     private StreamSinkOperatorTestHarness<Integer> createTestHarness(FlinkPravegaWriter<Integer> sinkFunction) throws Exception {
         return new StreamSinkOperatorTestHarness<>(sinkFunction, IntSerializer.INSTANCE);
     }
@@ -11,6 +11,7 @@ package io.pravega.connectors.flink;
 
 import io.pravega.client.stream.Serializer;
 
+import io.pravega.connectors.flink.serialization.ByteBufferDeserializationSchema;
 import io.pravega.connectors.flink.util.FlinkPravegaUtils;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
@@ -37,8 +38,21 @@ public class FlinkSerializerWrapperTest {
 
     }
 
+    @Test
+    public void testByteBufferDeserializationSchema() throws IOException {
+        for (boolean direct : new boolean[] { false, true} ) {
+            runBufferLargerThanEventTest(new ByteBufferLongDeserializationSchema(), 8, 0, 8, direct);
+            runBufferLargerThanEventTest(new ByteBufferLongDeserializationSchema(), 16, 2, 11, direct);
+            runBufferLargerThanEventTest(new ByteBufferLongDeserializationSchema(), 15, 3, 8, direct);
+        }
+    }
+
     private void runBufferLargerThanEventTest(int capacity, int offset, int size, boolean direct) throws IOException {
-        final DeserializationSchema<Long> flinkDeserializer = new LongDeserializationSchema();
+        runBufferLargerThanEventTest(new LongDeserializationSchema(), capacity, offset, size, direct);
+    }
+
+    private void runBufferLargerThanEventTest(DeserializationSchema<Long> flinkDeserializer,
+                                              int capacity, int offset, int size, boolean direct) throws IOException {
         final Serializer<Long> wrappingSerializer = new FlinkPravegaUtils.FlinkDeserializer<>(flinkDeserializer);
 
         // we create some sliced byte buffers that do not always the first
@@ -70,6 +84,30 @@ public class FlinkSerializerWrapperTest {
 
     // ------------------------------------------------------------------------
 
+    private static class ByteBufferLongDeserializationSchema implements ByteBufferDeserializationSchema<Long> {
+
+        @Override
+        public Long deserialize(ByteBuffer message) throws IOException {
+            return message.getLong();
+        }
+
+        @Override
+        public Long deserialize(byte[] message) throws IOException {
+            throw new AssertionError("the buffer should be deserialized directly");
+        }
+
+        @Override
+        public boolean isEndOfStream(Long nextElement) {
+            return false;
+        }
+
+        @Override
+        public TypeInformation<Long> getProducedType() {
+            // not relevant for this test
+            throw new UnsupportedOperationException("not implemented");
+        }
+    }
+
     private static class LongDeserializationSchema implements DeserializationSchema<Long> {
 
         @Override
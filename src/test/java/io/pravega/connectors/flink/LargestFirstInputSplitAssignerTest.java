@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LargestFirstInputSplitAssignerTest {
+
+    /**
+     * Tests that the splits are assigned by decreasing length, and the returned splits assigned again.
+     */
+    @Test
+    public void testAssignment() {
+        PravegaInputSplit small = new PravegaInputSplit(0, range(1, 10L));
+        PravegaInputSplit large = new PravegaInputSplit(1, range(2, 1000L));
+        PravegaInputSplit combined = new PravegaInputSplit(2, Arrays.asList(range(3, 100L), range(4, 200L)));
+        PravegaInputSplit tie = new PravegaInputSplit(3, range(5, 10L));
+        LargestFirstInputSplitAssigner assigner = new LargestFirstInputSplitAssigner(
+                new PravegaInputSplit[] {small, large, combined, tie});
+
+        assertEquals(large, assigner.getNextInputSplit("host", 0));
+        assertEquals(combined, assigner.getNextInputSplit("host", 1));
+        assigner.returnInputSplit(Collections.singletonList(large), 0);
+        assertEquals(large, assigner.getNextInputSplit("host", 1));
+        assertEquals(small, assigner.getNextInputSplit("host", 0));
+        assertEquals(tie, assigner.getNextInputSplit("host", 0));
+        assertNull(assigner.getNextInputSplit("host", 0));
+    }
+
+    private static SegmentRange range(long segmentId, long length) {
+        return SegmentRangeImpl.builder()
+                .segment(new Segment("scope", "stream", segmentId))
+                .startOffset(0L)
+                .endOffset(length)
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCompressionTest {
+
+    private static final String JSON = "{\"sensorId\": \"sensor-1\", \"temperature\": 21.5, \"humidity\": 40}";
+
+    /**
+     * Tests that the compressed events are decompressed, and the plain events passed through.
+     */
+    @Test
+    public void testCompressAndDecompress() {
+        PayloadCompression writer = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+        ByteBuffer payload = toBuffer(repeat(JSON, 100));
+        ByteBuffer compressed = writer.compress(payload);
+        assertTrue(PayloadCompression.isCompressed(compressed));
+        assertTrue(compressed.remaining() < payload.remaining());
+        assertEquals(payload.remaining(), writer.uncompressedBytes.getCount());
+        assertEquals(compressed.remaining(), writer.compressedBytes.getCount());
+        assertTrue(writer.getCompressionRatio() > 1.0);
+
+        // the readers know the built-in codecs
+        PayloadCompression reader = new PayloadCompression();
+        assertEquals(repeat(JSON, 100), toString(reader.decompress(compressed)));
+        assertEquals(payload.remaining(), reader.uncompressedBytes.getCount());
+
+        ByteBuffer plain = toBuffer(JSON);
+        assertFalse(PayloadCompression.isCompressed(plain));
+        assertSame(plain, reader.decompress(plain));
+    }
+
+    /**
+     * Tests that the events which do not shrink are written plain.
+     */
+    @Test
+    public void testIncompressibleEvent() {
+        PayloadCompression writer = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+        byte[] bytes = new byte[256];
+        new Random(42).nextBytes(bytes);
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        assertSame(payload, writer.compress(payload));
+        assertEquals(1.0, writer.getCompressionRatio(), 0.0);
+    }
+
+    /**
+     * Tests that the events of a custom codec are decompressed by the readers which know it only.
+     */
+    @Test
+    public void testCustomCodec() {
+        PayloadCompression writer = new PayloadCompression(new RepeatedByteCodec(), Collections.emptyList());
+        ByteBuffer compressed = writer.compress(toBuffer(repeat("a", 100)));
+        assertTrue(PayloadCompression.isCompressed(compressed));
+
+        PayloadCompression reader = new PayloadCompression(null, Collections.singletonList(new RepeatedByteCodec()));
+        assertEquals(repeat("a", 100), toString(reader.decompress(compressed)));
+
+        try {
+            new PayloadCompression().decompress(compressed);
+            throw new AssertionError("the unknown codec was not detected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that two codecs cannot have the same identifier.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateCodecId() {
+        new PayloadCompression(null, Collections.singletonList(new RepeatedByteCodec() {
+            @Override
+            public byte getId() {
+                return DeflateCodec.ID;
+            }
+        }));
+    }
+
+    /**
+     * Tests that a corrupted event is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCorruptedEvent() {
+        PayloadCompression writer = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+        ByteBuffer compressed = writer.compress(toBuffer(repeat(JSON, 10)));
+        compressed.limit(compressed.limit() - 4);
+        new PayloadCompression().decompress(compressed);
+    }
+
+    /**
+     * Tests that a closed codec may be used again.
+     */
+    @Test
+    public void testClose() {
+        PayloadCompression writer = new PayloadCompression(new DeflateCodec(), Collections.emptyList());
+        PayloadCompression reader = new PayloadCompression();
+        ByteBuffer compressed = writer.compress(toBuffer(repeat(JSON, 10)));
+        assertEquals(repeat(JSON, 10), toString(reader.decompress(compressed)));
+        writer.close();
+        reader.close();
+
+        compressed = writer.compress(toBuffer(repeat(JSON, 20)));
+        assertEquals(repeat(JSON, 20), toString(reader.decompress(compressed)));
+        writer.close();
+        reader.close();
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static ByteBuffer toBuffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    // a codec of the events made of a single repeated byte, which it keeps only
+    private static class RepeatedByteCodec implements PayloadCodec {
+        @Override
+        public byte getId() {
+            return 16;
+        }
+
+        @Override
+        public ByteBuffer compress(ByteBuffer payload) {
+            return ByteBuffer.wrap(new byte[] {payload.get(payload.position())});
+        }
+
+        @Override
+        public ByteBuffer decompress(ByteBuffer compressed, int uncompressedSize) {
+            byte[] bytes = new byte[uncompressedSize];
+            Arrays.fill(bytes, compressed.get(compressed.position()));
+            return ByteBuffer.wrap(bytes);
+        }
+    }
+}
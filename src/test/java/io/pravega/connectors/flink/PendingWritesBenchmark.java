@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of the tracking of the pending writes of the at-least-once writers: a callback on a
+ * single-thread executor which notifies a monitor, as before, and {@link PendingWrites}.
+ *
+ * <p>The writes are acknowledged by a pool of threads, standing for the connections of the Pravega client, and the
+ * writer flushes every {@code FLUSH_INTERVAL} writes, standing for checkpoints. Run with
+ * {@code java -cp <test classpath> io.pravega.connectors.flink.PendingWritesBenchmark [writes]}.
+ */
+public final class PendingWritesBenchmark {
+
+    private static final int ACK_THREADS = 4;
+
+    private static final int FLUSH_INTERVAL = 100000;
+
+    private static final int ROUNDS = 5;
+
+    private PendingWritesBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        ExecutorService acks = Executors.newFixedThreadPool(ACK_THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long monitor = run(new MonitorTracker(), writes, acks);
+                long lockFree = run(new LockFreeTracker(), writes, acks);
+                System.out.printf("round %d: monitor %,d writes/s, lock-free %,d writes/s%n", round, monitor, lockFree);
+            }
+        } finally {
+            acks.shutdownNow();
+        }
+    }
+
+    // returns the throughput, in writes per second
+    private static long run(Tracker tracker, int writes, ExecutorService acks) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 1; i <= writes; i++) {
+            tracker.track(CompletableFuture.runAsync(() -> { }, acks));
+            if (i % FLUSH_INTERVAL == 0) {
+                tracker.flush();
+            }
+        }
+        tracker.flush();
+        long elapsed = System.nanoTime() - start;
+        tracker.close();
+        return writes * 1_000_000_000L / elapsed;
+    }
+
+    private interface Tracker extends AutoCloseable {
+        void track(CompletableFuture<Void> future);
+
+        void flush() throws Exception;
+
+        @Override
+        void close();
+    }
+
+    // the tracking of the writers before PendingWrites
+    private static final class MonitorTracker implements Tracker {
+        private final AtomicInteger pendingWritesCount = new AtomicInteger();
+        private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        @Override
+        public void track(CompletableFuture<Void> future) {
+            pendingWritesCount.incrementAndGet();
+            future.whenCompleteAsync((result, e) -> {
+                synchronized (this) {
+                    pendingWritesCount.decrementAndGet();
+                    this.notify();
+                }
+            }, executorService);
+        }
+
+        @Override
+        public void flush() throws InterruptedException {
+            synchronized (this) {
+                while (pendingWritesCount.get() > 0) {
+                    this.wait();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            executorService.shutdown();
+        }
+    }
+
+    private static final class LockFreeTracker implements Tracker {
+        private final PendingWrites pendingWrites = new PendingWrites();
+
+        @Override
+        public void track(CompletableFuture<Void> future) {
+            pendingWrites.register();
+            future.whenComplete((result, e) -> pendingWrites.complete());
+        }
+
+        @Override
+        public void flush() throws Exception {
+            pendingWrites.awaitCompletion();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingWritesTest {
+
+    /**
+     * Tests that waiting returns once all the registered writes are completed.
+     */
+    @Test
+    public void testAwaitCompletion() throws Exception {
+        PendingWrites pendingWrites = new PendingWrites();
+        pendingWrites.awaitCompletion();
+
+        pendingWrites.register();
+        pendingWrites.register();
+        assertEquals(2, pendingWrites.count());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> waiting = executor.submit(() -> {
+                pendingWrites.awaitCompletion();
+                return null;
+            });
+            pendingWrites.complete();
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            pendingWrites.complete();
+            waiting.get();
+            assertEquals(0, pendingWrites.count());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the writes completed concurrently by many threads are all accounted for.
+     */
+    @Test
+    public void testConcurrentCompletion() throws Exception {
+        PendingWrites pendingWrites = new PendingWrites();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                pendingWrites.register();
+                CompletableFuture.runAsync(() -> { }, executor).whenComplete((result, e) -> pendingWrites.complete());
+            }
+            pendingWrites.awaitCompletion();
+            assertEquals(0, pendingWrites.count());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that waiting for capacity returns once the pending writes are within the limits, in number and in bytes.
+     */
+    @Test
+    public void testAwaitCapacity() throws Exception {
+        PendingWrites pendingWrites = new PendingWrites(2, 100L);
+        pendingWrites.register(10L);
+        pendingWrites.register(10L);
+        assertEquals(0L, pendingWrites.awaitCapacity());
+        assertEquals(20L, pendingWrites.bytes());
+
+        // too many writes
+        pendingWrites.register(10L);
+        assertCapacityAwaited(pendingWrites, 10L);
+        assertEquals(2, pendingWrites.count());
+
+        // too many bytes
+        pendingWrites.complete(10L);
+        pendingWrites.register(95L);
+        assertCapacityAwaited(pendingWrites, 10L);
+        assertEquals(95L, pendingWrites.bytes());
+
+        // a write larger than the limit, alone
+        pendingWrites.complete(95L);
+        pendingWrites.register(200L);
+        assertCapacityAwaited(pendingWrites, 200L);
+        assertEquals(0, pendingWrites.count());
+        assertEquals(0L, pendingWrites.bytes());
+    }
+
+    // waits for capacity in another thread, which is expected to block until a write of the given size completes
+    private static void assertCapacityAwaited(PendingWrites pendingWrites, long size) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> waiting = executor.submit(pendingWrites::awaitCapacity);
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            pendingWrites.complete(size);
+            assertTrue(waiting.get() > 0L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that waiting is interruptible.
+     */
+    @Test
+    public void testAwaitCompletionInterrupted() throws Exception {
+        PendingWrites pendingWrites = new PendingWrites();
+        pendingWrites.register();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                pendingWrites.awaitCompletion();
+            } catch (InterruptedIOException e) {
+                error.set(e);
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        waiting.interrupt();
+        waiting.join(10000);
+        assertFalse(waiting.isAlive());
+        assertTrue(error.get() instanceof InterruptedIOException);
+        assertEquals(1, pendingWrites.count());
+    }
+}
@@ -11,13 +11,19 @@ package io.pravega.connectors.flink;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 
 import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Arrays;
+
 public class PravegaInputSplitTest {
 
     @Mock
@@ -71,4 +77,27 @@ public class PravegaInputSplitTest {
 
     }
 
+    @Test
+    public void testHashCodeOfCombinedRanges() {
+        SegmentRange first = range(1, 0L, 10L);
+        PravegaInputSplit split1 = new PravegaInputSplit(1, Arrays.asList(first, range(2, 0L, 10L)));
+        PravegaInputSplit split2 = new PravegaInputSplit(1, Arrays.asList(first, range(2, 0L, 10L)));
+        PravegaInputSplit split3 = new PravegaInputSplit(1, Arrays.asList(first, range(3, 0L, 10L)));
+
+        assertEquals(split1.hashCode(), split2.hashCode());
+
+        // the splits differ in their second segment range only
+        assertFalse(split1.equals(split3));
+        assertNotEquals(split1.hashCode(), split3.hashCode());
+        assertNotEquals(new PravegaInputSplit(1, first).hashCode(), split1.hashCode());
+    }
+
+    private static SegmentRange range(long segmentId, long startOffset, long endOffset) {
+        return SegmentRangeImpl.builder()
+                .segment(new Segment("scope", "stream", segmentId))
+                .startOffset(startOffset)
+                .endOffset(endOffset)
+                .build();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import org.apache.flink.api.common.io.statistics.BaseStatistics;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PravegaInputStatisticsTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final List<StreamWithBoundaries> STREAMS =
+            Collections.singletonList(StreamWithBoundaries.of(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED));
+
+    /**
+     * Tests that the number of events is estimated from a sample of the events of the largest segment range.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompute() {
+        SegmentRange small = range(1, 100L);
+        SegmentRange large = range(2, 1000L);
+        BatchClientFactory batchClientFactory = mockSegments(small, large);
+
+        // 3 events of 10 bytes, with their 8 bytes headers
+        Iterator<ByteBuffer> events = Arrays.asList(ByteBuffer.allocate(10), ByteBuffer.allocate(10), ByteBuffer.allocate(10)).iterator();
+        SegmentIterator<ByteBuffer> iterator = mock(SegmentIterator.class);
+        when(iterator.hasNext()).thenAnswer(i -> events.hasNext());
+        when(iterator.next()).thenAnswer(i -> events.next());
+        when(iterator.getOffset()).thenReturn(18L, 36L, 54L);
+        when(batchClientFactory.readSegment(eq(large), anyObject())).thenReturn((SegmentIterator) iterator);
+
+        PravegaInputStatistics statistics = PravegaInputStatistics.compute(batchClientFactory, STREAMS);
+        assertEquals(1100L, statistics.getTotalInputSize());
+        assertEquals(61L, statistics.getNumberOfRecords());
+        assertEquals(10f, statistics.getAverageRecordWidth(), 0f);
+        verify(batchClientFactory, never()).readSegment(eq(small), anyObject());
+        verify(iterator).close();
+    }
+
+    /**
+     * Tests that the events of the event batches are counted one by one.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testComputeWithEventBatches() {
+        SegmentRange small = range(1, 100L);
+        SegmentRange large = range(2, 1000L);
+        BatchClientFactory batchClientFactory = mockSegments(small, large);
+
+        // 2 batches of 5 events of 10 bytes, which take 90 bytes each with their headers
+        Iterator<ByteBuffer> events = Arrays.asList(batch(5, 10), batch(5, 10)).iterator();
+        SegmentIterator<ByteBuffer> iterator = mock(SegmentIterator.class);
+        when(iterator.hasNext()).thenAnswer(i -> events.hasNext());
+        when(iterator.next()).thenAnswer(i -> events.next());
+        when(iterator.getOffset()).thenReturn(90L, 180L);
+        when(batchClientFactory.readSegment(eq(large), anyObject())).thenReturn((SegmentIterator) iterator);
+
+        PravegaInputStatistics statistics = PravegaInputStatistics.compute(batchClientFactory, STREAMS);
+        assertEquals(1100L, statistics.getTotalInputSize());
+        assertEquals(61L, statistics.getNumberOfRecords());
+        assertEquals(10f, statistics.getAverageRecordWidth(), 0f);
+    }
+
+    /**
+     * Tests that empty streams have no events.
+     */
+    @Test
+    public void testComputeEmpty() {
+        BatchClientFactory batchClientFactory = mockSegments(range(1, 0L));
+        PravegaInputStatistics statistics = PravegaInputStatistics.compute(batchClientFactory, STREAMS);
+        assertEquals(0L, statistics.getTotalInputSize());
+        assertEquals(0L, statistics.getNumberOfRecords());
+        assertEquals(BaseStatistics.AVG_RECORD_BYTES_UNKNOWN, statistics.getAverageRecordWidth(), 0f);
+    }
+
+    private static BatchClientFactory mockSegments(SegmentRange... ranges) {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Arrays.asList(ranges).iterator());
+        when(batchClientFactory.getSegments(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)).thenReturn(segments);
+        return batchClientFactory;
+    }
+
+    private static ByteBuffer batch(int count, int eventSize) {
+        EventBatch batch = new EventBatch("key", 0L);
+        for (int i = 0; i < count; i++) {
+            batch.add(ByteBuffer.allocate(eventSize));
+        }
+        return batch.toByteBuffer();
+    }
+
+    private static SegmentRange range(long segmentId, long length) {
+        return SegmentRangeImpl.builder()
+                .segment(new Segment(STREAM.getScope(), STREAM.getStreamName(), segmentId))
+                .startOffset(0L)
+                .endOffset(length)
+                .build();
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.impl.ByteBufferSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrefetchingSegmentReaderTest {
+
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that the events of all the segment ranges are read, in order.
+     */
+    @Test
+    public void testRead() throws IOException {
+        SegmentRange first = range(1);
+        SegmentRange second = range(2);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentIterator<ByteBuffer> firstIterator = mockEvents(batchClientFactory, first, new AtomicInteger(), event(1), event(2));
+        SegmentIterator<ByteBuffer> secondIterator = mockEvents(batchClientFactory, second, new AtomicInteger(), event(3));
+
+        try (PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(first, second), new ByteBufferSerializer(), 100L)) {
+            reader.start(executor);
+            List<Byte> events = new ArrayList<>();
+            while (reader.hasNext()) {
+                events.add(reader.next().get());
+            }
+            assertEquals(Arrays.asList((byte) 1, (byte) 2, (byte) 3), events);
+        }
+        verify(firstIterator).close();
+        verify(secondIterator).close();
+    }
+
+    /**
+     * Tests that the events are read ahead up to the size of the buffer, and at least one event.
+     */
+    @Test
+    public void testBufferSize() throws Exception {
+        SegmentRange range = range(1);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        AtomicInteger read = new AtomicInteger();
+        SegmentIterator<ByteBuffer> iterator = mockEvents(batchClientFactory, range, read,
+                event(1), event(2), event(3), event(4));
+
+        try (PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(range), new ByteBufferSerializer(), 25L)) {
+            reader.start(executor);
+
+            // two events of 10 bytes are buffered, while the third one waits for room
+            waitUntil(read, 3);
+            Thread.sleep(100);
+            assertEquals(3, read.get());
+
+            assertTrue(reader.hasNext());
+            assertEquals(1, reader.next().get());
+            waitUntil(read, 4);
+            assertEquals(2, reader.next().get());
+            assertEquals(3, reader.next().get());
+            assertEquals(4, reader.next().get());
+            assertFalse(reader.hasNext());
+        }
+        verify(iterator, timeout(TIMEOUT_MILLIS)).close();
+
+        // a buffer smaller than an event
+        read.set(0);
+        iterator = mockEvents(batchClientFactory, range, read, event(1), event(2));
+        try (PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(range), new ByteBufferSerializer(), 1L)) {
+            reader.start(executor);
+            assertEquals(1, reader.next().get());
+            assertEquals(2, reader.next().get());
+            assertFalse(reader.hasNext());
+        }
+        verify(iterator, timeout(TIMEOUT_MILLIS)).close();
+    }
+
+    /**
+     * Tests that a read failure is reported once the events read before it are consumed.
+     */
+    @Test
+    public void testReadFailure() throws IOException {
+        SegmentRange range = range(1);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentIterator<ByteBuffer> iterator = mockEvents(batchClientFactory, range, new AtomicInteger(), event(1));
+        when(iterator.next()).thenReturn(event(1)).thenThrow(new IllegalStateException("segment truncated"));
+        when(iterator.hasNext()).thenReturn(true);
+
+        try (PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(range), new ByteBufferSerializer(), 100L)) {
+            reader.start(executor);
+            assertEquals(1, reader.next().get());
+            try {
+                reader.hasNext();
+                fail("Expected an IOException");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        verify(iterator, timeout(TIMEOUT_MILLIS)).close();
+    }
+
+    /**
+     * Tests that closing the reader stops reading ahead.
+     */
+    @Test
+    public void testClose() throws Exception {
+        SegmentRange range = range(1);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        AtomicInteger read = new AtomicInteger();
+        SegmentIterator<ByteBuffer> iterator = mockEvents(batchClientFactory, range, read, event(1), event(2), event(3));
+
+        PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(range), new ByteBufferSerializer(), 1L);
+        reader.start(executor);
+        waitUntil(read, 2);
+        reader.close();
+        verify(iterator).close();
+        assertEquals(2, read.get());
+    }
+
+    /**
+     * Tests that closing the reader waits for the event being decompressed on the background thread, so that the
+     * compression can be closed afterwards.
+     */
+    @Test
+    public void testCloseWaitsForReading() throws Exception {
+        SegmentRange range = range(1);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        AtomicInteger read = new AtomicInteger();
+        mockEvents(batchClientFactory, range, read, compressed(16, 10), compressed(16, 10));
+        CountDownLatch decompressing = new CountDownLatch(1);
+        AtomicBoolean decompressed = new AtomicBoolean();
+        PayloadCodec codec = mock(PayloadCodec.class);
+        when(codec.getId()).thenReturn((byte) 16);
+        when(codec.decompress(anyObject(), anyInt())).thenAnswer(i -> {
+            decompressing.countDown();
+            // the decompression is not interrupted when the reading is cancelled
+            Uninterruptibles.sleepUninterruptibly(200L, TimeUnit.MILLISECONDS);
+            decompressed.set(true);
+            return ByteBuffer.allocate(i.getArgumentAt(1, Integer.class));
+        });
+
+        PayloadCompression compression = new PayloadCompression(null, Collections.singletonList(codec));
+        PrefetchingSegmentReader<ByteBuffer> reader = new PrefetchingSegmentReader<>(batchClientFactory,
+                Arrays.asList(range), new ByteBufferSerializer(), 100L, compression);
+        reader.start(executor);
+        decompressing.await();
+        reader.close();
+        assertTrue(decompressed.get());
+        compression.close();
+        assertEquals(1, read.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SegmentIterator<ByteBuffer> mockEvents(BatchClientFactory batchClientFactory, SegmentRange range,
+                                                          AtomicInteger read, ByteBuffer... events) {
+        Iterator<ByteBuffer> iterator = Arrays.asList(events).iterator();
+        SegmentIterator<ByteBuffer> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> {
+            read.incrementAndGet();
+            return iterator.next();
+        });
+        when(batchClientFactory.readSegment(eq(range), anyObject())).thenReturn((SegmentIterator) segmentIterator);
+        return segmentIterator;
+    }
+
+    private static void waitUntil(AtomicInteger read, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (read.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, read.get());
+    }
+
+    // an event of 10 bytes, starting with the given byte
+    private static ByteBuffer event(int value) {
+        ByteBuffer event = ByteBuffer.allocate(10);
+        event.put(0, (byte) value);
+        return event;
+    }
+
+    // an event compressed by the codec of the given identifier, of the given size once decompressed
+    private static ByteBuffer compressed(int codecId, int uncompressedSize) {
+        ByteBuffer event = ByteBuffer.allocate(PayloadCompression.HEADER_SIZE + 1);
+        event.putInt(PayloadCompression.MAGIC);
+        event.put((byte) codecId);
+        event.putInt(uncompressedSize);
+        event.put((byte) 0);
+        event.flip();
+        return event;
+    }
+
+    private static SegmentRange range(long segmentId) {
+        return SegmentRangeImpl.builder()
+                .segment(new Segment("scope", "stream", segmentId))
+                .startOffset(0L)
+                .endOffset(100L)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.apache.flink.metrics.SimpleCounter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadRateLimiterTest {
+
+    /**
+     * Tests that a reader is throttled to its share of the event rate limit.
+     */
+    @Test
+    public void testEventRateLimit() {
+        SimpleCounter throttledTime = new SimpleCounter();
+        ReadRateLimiter limiter = new ReadRateLimiter(
+                new ReadRateLimiter.FixedReadRateLimitProvider(20.0, Double.POSITIVE_INFINITY), 2, 1000L, throttledTime);
+
+        // the bucket holds a second of events, at 10 events/s for this reader, and the excess is paid by the next read
+        limiter.throttle();
+        for (int i = 0; i < 12; i++) {
+            limiter.record(100);
+        }
+        limiter.throttle();
+        assertEquals(0L, throttledTime.getCount());
+        limiter.record(100);
+        limiter.throttle();
+        assertTrue(throttledTime.getCount() >= 150L);
+    }
+
+    /**
+     * Tests that a reader is throttled to its share of the byte rate limit, and that the limit is refreshed.
+     */
+    @Test
+    public void testByteRateLimitUpdate() throws Exception {
+        TestReadRateLimitProvider provider = new TestReadRateLimitProvider();
+        provider.maxBytesPerSecond = 1000.0;
+        SimpleCounter throttledTime = new SimpleCounter();
+        ReadRateLimiter limiter = new ReadRateLimiter(provider, 1, 1L, throttledTime);
+
+        limiter.throttle();
+        limiter.record(1200);
+        limiter.throttle();
+        limiter.record(100);
+        limiter.throttle();
+        assertTrue(throttledTime.getCount() >= 150L);
+
+        // the reader is no longer throttled once the limit is lifted
+        provider.maxBytesPerSecond = Double.POSITIVE_INFINITY;
+        Thread.sleep(2L);
+        limiter.throttle();
+        long throttled = throttledTime.getCount();
+        for (int i = 0; i < 100; i++) {
+            limiter.record(1000);
+            limiter.throttle();
+        }
+        assertEquals(throttled, throttledTime.getCount());
+    }
+
+    /**
+     * A read rate limit which may be changed by the test.
+     */
+    private static class TestReadRateLimitProvider implements ReadRateLimitProvider {
+
+        private volatile double maxEventsPerSecond = Double.POSITIVE_INFINITY;
+        private volatile double maxBytesPerSecond = Double.POSITIVE_INFINITY;
+
+        @Override
+        public double getMaxEventsPerSecond() {
+            return maxEventsPerSecond;
+        }
+
+        @Override
+        public double getMaxBytesPerSecond() {
+            return maxBytesPerSecond;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -88,6 +89,39 @@ public class ReaderCheckpointHookTest {
         assertTrue(checkpointFuture.isCancelled());
     }
 
+    @Test
+    public void testTriggerCheckpointWithCatchUpReaderGroup() throws Exception {
+        ReaderGroup readerGroup = mock(ReaderGroup.class);
+        ReaderGroup catchUpReaderGroup = mock(ReaderGroup.class);
+        ReaderGroupConfig readerGroupConfig = mock(ReaderGroupConfig.class);
+        ReaderGroupConfig catchUpReaderGroupConfig = mock(ReaderGroupConfig.class);
+        CompletableFuture<Checkpoint> checkpointPromise = new CompletableFuture<>();
+        CompletableFuture<Checkpoint> catchUpCheckpointPromise = new CompletableFuture<>();
+        when(readerGroup.initiateCheckpoint(anyString(), any())).thenReturn(checkpointPromise);
+        when(catchUpReaderGroup.initiateCheckpoint(anyString(), any())).thenReturn(catchUpCheckpointPromise);
+        TestableReaderCheckpointHook hook = new TestableReaderCheckpointHook(HOOK_UID, readerGroup, Time.minutes(1),
+                readerGroupConfig, catchUpReaderGroup, catchUpReaderGroupConfig);
+
+        CompletableFuture<Checkpoint> checkpointFuture = hook.triggerCheckpoint(1L, 1L, Executors.directExecutor());
+        verify(readerGroup).initiateCheckpoint(anyString(), any());
+        verify(catchUpReaderGroup).initiateCheckpoint(anyString(), any());
+
+        // the checkpoint completes once both reader groups have completed it
+        Checkpoint expectedCheckpoint = mock(Checkpoint.class);
+        checkpointPromise.complete(expectedCheckpoint);
+        assertFalse(checkpointFuture.isDone());
+        catchUpCheckpointPromise.complete(mock(Checkpoint.class));
+        assertSame(expectedCheckpoint, checkpointFuture.get());
+
+        // the catch-up reader group is reset along with the reader group
+        hook.reset();
+        verify(readerGroup).resetReaderGroup(readerGroupConfig);
+        verify(catchUpReaderGroup).resetReaderGroup(catchUpReaderGroupConfig);
+
+        hook.close();
+        verify(catchUpReaderGroup).close();
+    }
+
     @Test
     public void testReset() {
         ReaderGroup readerGroup = mock(ReaderGroup.class);
@@ -140,6 +174,11 @@ public class ReaderCheckpointHookTest {
             super(hookUid, readerGroup, triggerTimeout, readerGroupConfig);
         }
 
+        TestableReaderCheckpointHook(String hookUid, ReaderGroup readerGroup, Time triggerTimeout, ReaderGroupConfig readerGroupConfig,
+                                     ReaderGroup catchUpReaderGroup, ReaderGroupConfig catchUpReaderGroupConfig) {
+            super(hookUid, readerGroup, triggerTimeout, readerGroupConfig, catchUpReaderGroup, catchUpReaderGroupConfig);
+        }
+
         @Override
         protected ScheduledExecutorService createScheduledExecutorService() {
             ScheduledExecutorService newScheduledExecutor = mock(ScheduledExecutorService.class);
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.admin.StreamInfo;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.ReaderGroup;
+import io.pravega.client.stream.ReaderGroupMetrics;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.utils.DirectExecutorService;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReaderGroupMetricsCacheTest {
+
+    private static final long TTL_MILLIS = 60 * 60 * 1000L;
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final StreamCut TAIL = mock(StreamCut.class);
+
+    /**
+     * Tests that the reader group is queried once per time-to-live, however often the metrics are read.
+     */
+    @Test
+    public void testCachedMetrics() {
+        ReaderGroup readerGroup = mockReaderGroup();
+        StreamManager streamManager = mockStreamManager();
+        SegmentLagMetrics segmentLagMetrics = mock(SegmentLagMetrics.class);
+        try (ReaderGroupMetricsCache cache = new ReaderGroupMetricsCache(readerGroup, streamManager, segmentLagMetrics,
+                TTL_MILLIS, new DirectExecutorService())) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(42L, cache.getUnreadBytes());
+                assertEquals(Collections.singleton("reader-1"), cache.getOnlineReaders());
+            }
+        }
+        verify(readerGroup, times(1)).getMetrics();
+        verify(readerGroup, times(1)).getOnlineReaders();
+        verify(readerGroup, times(1)).getStreamCuts();
+        verify(streamManager, times(1)).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+        verify(segmentLagMetrics, times(1)).update(eq(Collections.singletonMap(STREAM, StreamCut.UNBOUNDED)),
+                eq(Collections.singletonMap(STREAM, TAIL)), anyLong());
+        verify(streamManager).close();
+    }
+
+    /**
+     * Tests that the metrics are reported as unknown until the first refresh completes, without blocking the caller.
+     */
+    @Test
+    public void testMetricsBeforeRefresh() {
+        ReaderGroup readerGroup = mockReaderGroup();
+        ExecutorService executor = mock(ExecutorService.class);
+        try (ReaderGroupMetricsCache cache = new ReaderGroupMetricsCache(readerGroup, mockStreamManager(),
+                mock(SegmentLagMetrics.class), TTL_MILLIS, executor)) {
+            assertEquals(-1L, cache.getUnreadBytes());
+            assertTrue(cache.getOnlineReaders().isEmpty());
+        }
+        // a single refresh is submitted while the first one is in progress
+        verify(executor, times(1)).execute(any(Runnable.class));
+        verify(executor).shutdownNow();
+        verify(readerGroup, times(0)).getMetrics();
+    }
+
+    private static ReaderGroup mockReaderGroup() {
+        ReaderGroupMetrics metrics = mock(ReaderGroupMetrics.class);
+        when(metrics.unreadBytes()).thenReturn(42L);
+        Map<Stream, StreamCut> streamCuts = Collections.singletonMap(STREAM, StreamCut.UNBOUNDED);
+        ReaderGroup readerGroup = mock(ReaderGroup.class);
+        when(readerGroup.getMetrics()).thenReturn(metrics);
+        when(readerGroup.getOnlineReaders()).thenReturn(Collections.singleton("reader-1"));
+        when(readerGroup.getStreamCuts()).thenReturn(streamCuts);
+        return readerGroup;
+    }
+
+    private static StreamManager mockStreamManager() {
+        StreamInfo streamInfo = mock(StreamInfo.class);
+        when(streamInfo.getTailStreamCut()).thenReturn(TAIL);
+        StreamManager streamManager = mock(StreamManager.class);
+        when(streamManager.getStreamInfo(STREAM.getScope(), STREAM.getStreamName())).thenReturn(streamInfo);
+        return streamManager;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.stream.Serializer;
+import io.pravega.connectors.flink.utils.IntegerSerializer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReaderMetricsTest {
+
+    /**
+     * Tests the counters, which record every event.
+     */
+    @Test
+    public void testCounters() {
+        ReaderMetrics metrics = new ReaderMetrics(16);
+        metrics.recordEvent(10);
+        metrics.recordEvent(20);
+        metrics.recordEmptyRead();
+        assertEquals(2L, metrics.eventsRead.getCount());
+        assertEquals(30L, metrics.bytesRead.getCount());
+        assertEquals(1L, metrics.emptyReads.getCount());
+    }
+
+    /**
+     * Tests that the histograms only record one sample out of {@link ReaderMetrics#SAMPLE_INTERVAL}.
+     */
+    @Test
+    public void testSampledHistograms() {
+        ReaderMetrics metrics = new ReaderMetrics(16);
+        Serializer<Integer> deserializer = metrics.timed(new IntegerSerializer());
+        final long timestamp = System.currentTimeMillis() - 1000L;
+        for (int i = 0; i < 2 * ReaderMetrics.SAMPLE_INTERVAL; i++) {
+            metrics.endRead(metrics.startRead());
+            ByteBuffer serialized = ByteBuffer.allocate(Integer.BYTES).putInt(0, i);
+            assertEquals(Integer.valueOf(i), deserializer.deserialize(serialized));
+            metrics.recordTimestamp(timestamp);
+        }
+        assertEquals(2L, metrics.readWaitTime.getCount());
+        assertEquals(2L, metrics.deserializationTime.getCount());
+        assertEquals(2L, metrics.eventTimeLag.getCount());
+        assertTrue(metrics.eventTimeLag.getStatistics().getMin() >= 1000L);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import com.google.common.collect.ImmutableMap;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static io.pravega.connectors.flink.SegmentLagMetrics.BYTES_BEHIND_METRICS_GAUGE;
+import static io.pravega.connectors.flink.SegmentLagMetrics.MAX_TIME_BEHIND_METRICS_GAUGE;
+import static io.pravega.connectors.flink.SegmentLagMetrics.READ_OFFSET_METRICS_GAUGE;
+import static io.pravega.connectors.flink.SegmentLagMetrics.SEGMENT_COUNT_METRICS_GAUGE;
+import static io.pravega.connectors.flink.SegmentLagMetrics.SEGMENT_METRICS_GROUP;
+import static io.pravega.connectors.flink.SegmentLagMetrics.TIME_BEHIND_METRICS_GAUGE;
+import static io.pravega.connectors.flink.SegmentLagMetrics.UNKNOWN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SegmentLagMetricsTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final Segment SEGMENT0 = new Segment(STREAM.getScope(), STREAM.getStreamName(), 0);
+    private static final Segment SEGMENT1 = new Segment(STREAM.getScope(), STREAM.getStreamName(), 1);
+    private static final Segment SEGMENT2 = new Segment(STREAM.getScope(), STREAM.getStreamName(), 2);
+
+    /**
+     * Tests the lag of the segments as the reader group advances and the stream scales.
+     */
+    @Test
+    public void testUpdate() {
+        MetricGroup streamMetricGroup = mock(MetricGroup.class);
+        MetricGroup segmentMetricGroup = mock(MetricGroup.class);
+        when(streamMetricGroup.addGroup(anyString())).thenReturn(segmentMetricGroup);
+        SegmentLagMetrics metrics = new SegmentLagMetrics(Collections.singletonMap(STREAM, streamMetricGroup));
+        verify(streamMetricGroup).gauge(eq(BYTES_BEHIND_METRICS_GAUGE), any(Gauge.class));
+        verify(streamMetricGroup).gauge(eq(MAX_TIME_BEHIND_METRICS_GAUGE), any(Gauge.class));
+        verify(streamMetricGroup).gauge(eq(SEGMENT_COUNT_METRICS_GAUGE), any(Gauge.class));
+
+        // the read rate is not known yet
+        metrics.update(cut(SEGMENT0, 100L, SEGMENT1, 0L), cut(SEGMENT0, 1100L, SEGMENT1, 0L), 1000L);
+        assertLag(metrics.getSegmentLag(SEGMENT0), 100L, 1000L, UNKNOWN);
+        assertLag(metrics.getSegmentLag(SEGMENT1), 0L, 0L, 0L);
+        assertNull(metrics.getSegmentLag(SEGMENT2));
+
+        // 500 bytes were read in a second, and 500 bytes are left; the second segment is replaced by the third one
+        metrics.update(cut(SEGMENT0, 600L, SEGMENT2, 0L), cut(SEGMENT0, 1100L, SEGMENT2, 50L), 2000L);
+        assertLag(metrics.getSegmentLag(SEGMENT0), 600L, 500L, 1000L);
+        assertLag(metrics.getSegmentLag(SEGMENT1), 0L, 0L, 0L);
+        assertFalse(metrics.getSegmentLag(SEGMENT1).active);
+        assertLag(metrics.getSegmentLag(SEGMENT2), 0L, 50L, UNKNOWN);
+
+        SegmentLagMetrics.Rollup rollup = metrics.rollup(STREAM);
+        assertEquals(2, rollup.segmentCount);
+        assertEquals(550L, rollup.bytesBehind);
+        assertEquals(1000L, rollup.maxTimeBehindMillis);
+
+        // a stalled segment is behind by at least the time since it last advanced
+        metrics.update(cut(SEGMENT0, 600L, SEGMENT2, 0L), cut(SEGMENT0, 1100L, SEGMENT2, 50L), 5000L);
+        assertLag(metrics.getSegmentLag(SEGMENT0), 600L, 500L, 3000L);
+        assertEquals(3000L, metrics.rollup(STREAM).maxTimeBehindMillis);
+
+        verify(streamMetricGroup).addGroup(SEGMENT_METRICS_GROUP + "." + SEGMENT0.getSegmentId());
+        verify(streamMetricGroup).addGroup(SEGMENT_METRICS_GROUP + "." + SEGMENT1.getSegmentId());
+        verify(streamMetricGroup).addGroup(SEGMENT_METRICS_GROUP + "." + SEGMENT2.getSegmentId());
+        verify(segmentMetricGroup, times(3)).gauge(eq(READ_OFFSET_METRICS_GAUGE), any(Gauge.class));
+        verify(segmentMetricGroup, times(3)).gauge(eq(TIME_BEHIND_METRICS_GAUGE), any(Gauge.class));
+    }
+
+    /**
+     * Tests that the bytes behind a segment are unknown once it is sealed, i.e. no longer part of the tail.
+     */
+    @Test
+    public void testSealedSegment() {
+        MetricGroup streamMetricGroup = mock(MetricGroup.class, RETURNS_DEEP_STUBS);
+        SegmentLagMetrics metrics = new SegmentLagMetrics(Collections.singletonMap(STREAM, streamMetricGroup));
+        metrics.update(cut(SEGMENT0, 100L, SEGMENT1, 0L), cut(SEGMENT1, 0L, SEGMENT2, 0L), 1000L);
+        metrics.update(cut(SEGMENT0, 200L, SEGMENT1, 0L), cut(SEGMENT1, 0L, SEGMENT2, 0L), 2000L);
+        assertLag(metrics.getSegmentLag(SEGMENT0), 200L, UNKNOWN, UNKNOWN);
+        assertEquals(0L, metrics.rollup(STREAM).bytesBehind);
+    }
+
+    private static void assertLag(SegmentLagMetrics.SegmentLag lag, long readOffset, long bytesBehind, long timeBehindMillis) {
+        assertEquals(readOffset, lag.readOffset);
+        assertEquals(bytesBehind, lag.bytesBehind);
+        assertEquals(timeBehindMillis, lag.timeBehindMillis);
+    }
+
+    private static Map<Stream, StreamCut> cut(Segment segment1, long offset1, Segment segment2, long offset2) {
+        return Collections.singletonMap(STREAM, new StreamCutImpl(STREAM, ImmutableMap.of(segment1, offset1, segment2, offset2)));
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Serializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.FlinkPravegaUtils;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import io.pravega.connectors.flink.utils.DirectExecutorService;
+import io.pravega.connectors.flink.utils.IntegerDeserializationSchema;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SegmentRangeReaderTest {
+
+    private static final URI CONTROLLER_URI = URI.create("tcp://localhost:9090");
+    private static final String SCOPE = "scope";
+    private static final Stream STREAM = Stream.of(SCOPE, "stream");
+    private static final SegmentRange RANGE1 = range(1, 0L, 20L);
+    private static final SegmentRange RANGE2 = range(2, 0L, 30L);
+
+    /**
+     * Tests that the events of the segment ranges are read in order, and that the snapshot only starts after
+     * the last committed event.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadAndSnapshot() throws Exception {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentIterator<Integer> iterator1 = iterator(Arrays.asList(1, 2), 10L, 20L);
+        SegmentIterator<Integer> iterator2 = iterator(Collections.singletonList(3), 30L);
+        when(batchClientFactory.readSegment(eq(RANGE1), anyObject())).thenReturn((SegmentIterator) iterator1);
+        when(batchClientFactory.readSegment(eq(RANGE2), anyObject())).thenReturn((SegmentIterator) iterator2);
+
+        List<PravegaInputSplit> splits = Arrays.asList(new PravegaInputSplit(0, RANGE1), new PravegaInputSplit(1, RANGE2));
+        try (SegmentRangeReader<Integer> reader = new SegmentRangeReader<>(batchClientFactory, deserializer(), splits)) {
+            assertEquals(splits, reader.snapshot());
+
+            assertTrue(reader.hasNext());
+            assertEquals(Integer.valueOf(1), reader.next());
+            assertEquals(10, reader.getReadLength());
+            reader.commit();
+            assertEquals(Integer.valueOf(2), reader.next());
+            assertEquals(10, reader.getReadLength());
+
+            // the second event is read but not committed
+            List<PravegaInputSplit> snapshot = reader.snapshot();
+            assertEquals(2, snapshot.size());
+            assertEquals(10L, snapshot.get(0).getSegmentRange().getStartOffset());
+            assertEquals(20L, snapshot.get(0).getSegmentRange().getEndOffset());
+            assertEquals(RANGE2, snapshot.get(1).getSegmentRange());
+
+            // the first segment range is skipped once fully committed
+            reader.commit();
+            assertEquals(Collections.singletonList(splits.get(1)), reader.snapshot());
+
+            assertEquals(Integer.valueOf(3), reader.next());
+            assertEquals(30, reader.getReadLength());
+            assertFalse(reader.hasNext());
+            reader.commit();
+            assertTrue(reader.snapshot().isEmpty());
+            verify(iterator1).close();
+            verify(iterator2).close();
+        }
+    }
+
+    /**
+     * Tests that the splits which combine several segment ranges are rejected, since the read position is tracked
+     * within a single segment range per split.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCombinedSplitsRejected() {
+        List<PravegaInputSplit> splits = Collections.singletonList(new PravegaInputSplit(0, Arrays.asList(RANGE1, RANGE2)));
+        new SegmentRangeReader<>(mock(BatchClientFactory.class), deserializer(), splits);
+    }
+
+    /**
+     * Tests that the splits are enumerated in a stable order and assigned in a round-robin fashion.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateAndAssignSplits() {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        SegmentRange range3 = range(3, 0L, 10L);
+        when(segments.getIterator()).thenReturn(Arrays.asList(range3, RANGE2, RANGE1).iterator());
+        when(batchClientFactory.getSegments(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)).thenReturn(segments);
+
+        List<PravegaInputSplit> splits = SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI,
+                Collections.singletonList(StreamWithBoundaries.of(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)));
+        assertEquals(3, splits.size());
+        for (int i = 0; i < splits.size(); i++) {
+            assertEquals(i, splits.get(i).getSplitNumber());
+            assertEquals(i + 1, splits.get(i).getSegmentRange().getSegmentId());
+        }
+
+        List<PravegaInputSplit> assigned = SegmentRangeReader.assignSplits(splits, 0, 2);
+        assertEquals(Arrays.asList(splits.get(0), splits.get(2)), assigned);
+        assertEquals(Collections.singletonList(splits.get(1)), SegmentRangeReader.assignSplits(splits, 1, 2));
+    }
+
+    /**
+     * Tests that the splits of several streams are enumerated concurrently, in a stable order, and cached when the
+     * streams are bounded at both ends.
+     */
+    @Test
+    public void testCreateSplitsConcurrently() throws Exception {
+        Stream bounded = Stream.of(SCOPE, "bounded");
+        StreamWithBoundaries boundedStream = StreamWithBoundaries.of(bounded,
+                new StreamCutImpl(bounded, Collections.singletonMap(new Segment(SCOPE, "bounded", 1), 0L)),
+                new StreamCutImpl(bounded, Collections.singletonMap(new Segment(SCOPE, "bounded", 1), 10L)));
+        StreamWithBoundaries unboundedStream = StreamWithBoundaries.of(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED);
+        SegmentRange boundedRange = SegmentRangeImpl.builder()
+                .segment(new Segment(SCOPE, "bounded", 1)).startOffset(0L).endOffset(10L).build();
+
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        StreamSegmentsIterator boundedSegments = mock(StreamSegmentsIterator.class);
+        when(boundedSegments.getIterator()).thenAnswer(i -> Collections.singletonList(boundedRange).iterator());
+        when(batchClientFactory.getSegments(bounded, boundedStream.getFrom(), boundedStream.getTo())).thenReturn(boundedSegments);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenAnswer(i -> Arrays.asList(RANGE2, RANGE1).iterator());
+        when(batchClientFactory.getSegments(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)).thenReturn(segments);
+
+        List<StreamWithBoundaries> streams = Arrays.asList(unboundedStream, boundedStream);
+        List<PravegaInputSplit> expected = Arrays.asList(new PravegaInputSplit(0, boundedRange),
+                new PravegaInputSplit(1, RANGE1), new PravegaInputSplit(2, RANGE2));
+        assertEquals(expected, SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, streams, new DirectExecutorService(), 1000L));
+        assertEquals(expected, SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, streams, new DirectExecutorService(), 1000L));
+        verify(batchClientFactory, times(1)).getSegments(bounded, boundedStream.getFrom(), boundedStream.getTo());
+        verify(batchClientFactory, times(2)).getSegments(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED);
+
+        // the same stream in another cluster is enumerated again
+        assertEquals(expected, SegmentRangeReader.createSplits(batchClientFactory, URI.create("tcp://other:9090"), streams,
+                new DirectExecutorService(), 1000L));
+        verify(batchClientFactory, times(2)).getSegments(bounded, boundedStream.getFrom(), boundedStream.getTo());
+
+        // the enumeration never completes
+        try {
+            SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, Collections.singletonList(unboundedStream), mock(ExecutorService.class), 10L);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Timed out"));
+        }
+    }
+
+    /**
+     * Tests that the timeout bounds the enumeration of all the streams, rather than that of each stream in turn.
+     */
+    @Test
+    public void testCreateSplitsDeadline() throws Exception {
+        Stream other = Stream.of(SCOPE, "other");
+        List<StreamWithBoundaries> streams = Arrays.asList(
+                StreamWithBoundaries.of(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED),
+                StreamWithBoundaries.of(other, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED));
+
+        // each stream is enumerated in time, but not both of them, one after the other
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenAnswer(i -> {
+            Thread.sleep(600L);
+            return Collections.singletonList(RANGE1).iterator();
+        });
+        when(batchClientFactory.getSegments(any(Stream.class), eq(StreamCut.UNBOUNDED), eq(StreamCut.UNBOUNDED))).thenReturn(segments);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, streams, executor, 1000L);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Timed out enumerating the segments of stream " + other, e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the parallel instances of a source which enumerate the same stream bounded at both ends at the same
+     * time enumerate it once.
+     */
+    @Test
+    public void testCreateSplitsOncePerStream() throws Exception {
+        Stream shared = Stream.of(SCOPE, "shared");
+        Segment segment = new Segment(SCOPE, "shared", 1);
+        StreamWithBoundaries sharedStream = StreamWithBoundaries.of(shared,
+                new StreamCutImpl(shared, Collections.singletonMap(segment, 0L)),
+                new StreamCutImpl(shared, Collections.singletonMap(segment, 10L)));
+        SegmentRange sharedRange = SegmentRangeImpl.builder().segment(segment).startOffset(0L).endOffset(10L).build();
+
+        CountDownLatch enumerating = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenAnswer(i -> {
+            enumerating.countDown();
+            proceed.await();
+            return Collections.singletonList(sharedRange).iterator();
+        });
+        when(batchClientFactory.getSegments(shared, sharedStream.getFrom(), sharedStream.getTo())).thenReturn(segments);
+
+        List<StreamWithBoundaries> streams = Collections.singletonList(sharedStream);
+        ExecutorService instances = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<PravegaInputSplit>> first = instances.submit(() ->
+                    SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, streams, new DirectExecutorService(), 10000L));
+            enumerating.await();
+            Future<List<PravegaInputSplit>> second = instances.submit(() ->
+                    SegmentRangeReader.createSplits(batchClientFactory, CONTROLLER_URI, streams, new DirectExecutorService(), 10000L));
+            proceed.countDown();
+
+            List<PravegaInputSplit> expected = Collections.singletonList(new PravegaInputSplit(0, sharedRange));
+            assertEquals(expected, first.get());
+            assertEquals(expected, second.get());
+            verify(batchClientFactory, times(1)).getSegments(shared, sharedStream.getFrom(), sharedStream.getTo());
+        } finally {
+            instances.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the large segment ranges are split at the offsets of the stream cuts of the time index.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSubdivideSplits() {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentRange indexRange = mock(SegmentRange.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Collections.singletonList(indexRange).iterator());
+        when(batchClientFactory.getSegments(StreamTimeIndex.indexStreamOf(STREAM), StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)).thenReturn(segments);
+        List<StreamTimeIndex.Entry> entries = Arrays.asList(
+                new StreamTimeIndex.Entry(1000L, 1500L, cut(2, 5L)),
+                new StreamTimeIndex.Entry(2000L, 2500L, cut(2, 12L)),
+                new StreamTimeIndex.Entry(3000L, 3500L, cut(2, 18L)),
+                new StreamTimeIndex.Entry(4000L, 4500L, cut(2, 25L)));
+        Iterator<StreamTimeIndex.Entry> iterator = entries.iterator();
+        SegmentIterator<StreamTimeIndex.Entry> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> iterator.next());
+        when(batchClientFactory.readSegment(eq(indexRange), any(StreamTimeIndex.EntrySerializer.class))).thenReturn(segmentIterator);
+
+        // the first segment range is small enough, and the stream has no zone maps
+        List<PravegaInputSplit> splits = Arrays.asList(new PravegaInputSplit(0, RANGE1), new PravegaInputSplit(1, RANGE2));
+        List<PravegaInputSplit> subdivided = SegmentRangeReader.subdivideSplits(batchClientFactory, splits, 10L);
+        assertEquals(Arrays.asList(
+                new PravegaInputSplit(0, RANGE1),
+                new PravegaInputSplit(1, range(2, 0L, 12L)),
+                new PravegaInputSplit(2, range(2, 12L, 25L)),
+                new PravegaInputSplit(3, range(2, 25L, 30L))), subdivided);
+    }
+
+    /**
+     * Tests that the small splits are combined up to the target size, and the large ones kept apart.
+     */
+    @Test
+    public void testCoalesceSplits() {
+        SegmentRange range3 = range(3, 0L, 5L);
+        SegmentRange range4 = range(4, 0L, 40L);
+        SegmentRange range5 = range(5, 0L, 5L);
+        List<PravegaInputSplit> splits = Arrays.asList(new PravegaInputSplit(0, RANGE1), new PravegaInputSplit(1, range3),
+                new PravegaInputSplit(2, range4), new PravegaInputSplit(3, RANGE2), new PravegaInputSplit(4, range5));
+        List<PravegaInputSplit> coalesced = SegmentRangeReader.coalesceSplits(splits, 25L);
+        assertEquals(Arrays.asList(
+                new PravegaInputSplit(0, Arrays.asList(RANGE1, range3)),
+                new PravegaInputSplit(1, range4),
+                new PravegaInputSplit(2, RANGE2),
+                new PravegaInputSplit(3, range5)), coalesced);
+        assertEquals(25L, coalesced.get(0).getLength());
+    }
+
+    private static StreamCut cut(long segmentId, long offset) {
+        return new StreamCutImpl(STREAM, Collections.singletonMap(new Segment(SCOPE, STREAM.getStreamName(), segmentId), offset));
+    }
+
+    private static SegmentRange range(long segmentId, long startOffset, long endOffset) {
+        return SegmentRangeImpl.builder()
+                .segment(new Segment(SCOPE, STREAM.getStreamName(), segmentId))
+                .startOffset(startOffset)
+                .endOffset(endOffset)
+                .build();
+    }
+
+    /**
+     * Creates a segment iterator over the given events, each followed by the given offset.
+     */
+    @SuppressWarnings("unchecked")
+    private static SegmentIterator<Integer> iterator(List<Integer> events, Long firstOffset, Long... offsets) {
+        Iterator<Integer> iterator = events.iterator();
+        SegmentIterator<Integer> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> iterator.next());
+        when(segmentIterator.getOffset()).thenReturn(firstOffset, offsets);
+        return segmentIterator;
+    }
+
+    private static Serializer<Integer> deserializer() {
+        return FlinkPravegaUtils.createDeserializer(new IntegerDeserializationSchema());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
+import io.pravega.connectors.flink.util.StreamWithBoundaries;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class StreamTimeIndexTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final StreamCut CUT1 = cut(100L);
+    private static final StreamCut CUT2 = cut(200L);
+    private static final StreamCut CUT3 = cut(300L);
+    private static final List<StreamTimeIndex.Entry> ENTRIES = Arrays.asList(
+            new StreamTimeIndex.Entry(1000L, 1500L, CUT1),
+            new StreamTimeIndex.Entry(2000L, 2500L, CUT2),
+            new StreamTimeIndex.Entry(3000L, 3500L, CUT3));
+
+    /**
+     * Tests the resolution of the start and end timestamps by binary search: the start on the highest timestamps
+     * of the samples, and the end on their watermarks.
+     */
+    @Test
+    public void testFindStreamCuts() {
+        // an event at 1500 may lie before the first stream cut
+        assertEquals(StreamCut.UNBOUNDED, StreamTimeIndex.findStartStreamCut(ENTRIES, 1000L));
+        assertEquals(StreamCut.UNBOUNDED, StreamTimeIndex.findStartStreamCut(ENTRIES, 1500L));
+        assertEquals(CUT1, StreamTimeIndex.findStartStreamCut(ENTRIES, 1501L));
+        assertEquals(CUT1, StreamTimeIndex.findStartStreamCut(ENTRIES, 2500L));
+        assertEquals(CUT2, StreamTimeIndex.findStartStreamCut(ENTRIES, 3000L));
+        assertEquals(CUT3, StreamTimeIndex.findStartStreamCut(ENTRIES, Long.MAX_VALUE));
+
+        assertEquals(CUT1, StreamTimeIndex.findEndStreamCut(ENTRIES, Long.MIN_VALUE));
+        assertEquals(CUT2, StreamTimeIndex.findEndStreamCut(ENTRIES, 1000L));
+        assertEquals(CUT3, StreamTimeIndex.findEndStreamCut(ENTRIES, 2500L));
+        assertEquals(StreamCut.UNBOUNDED, StreamTimeIndex.findEndStreamCut(ENTRIES, 3000L));
+
+        assertEquals(StreamCut.UNBOUNDED, StreamTimeIndex.findStartStreamCut(Collections.emptyList(), 1000L));
+        assertEquals(StreamCut.UNBOUNDED, StreamTimeIndex.findEndStreamCut(Collections.emptyList(), 1000L));
+    }
+
+    /**
+     * Tests that the samples survive their serialization.
+     */
+    @Test
+    public void testSerializer() {
+        StreamTimeIndex.EntrySerializer serializer = new StreamTimeIndex.EntrySerializer();
+        StreamTimeIndex.Entry entry = ENTRIES.get(1);
+        assertEquals(entry, serializer.deserialize(serializer.serialize(entry)));
+    }
+
+    /**
+     * Tests that the index stream is read once to resolve both timestamps, and not at all when unbounded.
+     */
+    @Test
+    public void testResolve() {
+        assertEquals("stream" + StreamTimeIndex.INDEX_STREAM_SUFFIX, StreamTimeIndex.indexStreamOf(STREAM).getStreamName());
+        SegmentIterator<StreamTimeIndex.Entry> segmentIterator = iterator(ENTRIES);
+        BatchClientFactory batchClientFactory = batchClientFactory(segmentIterator);
+        assertEquals(StreamWithBoundaries.of(STREAM, CUT1, CUT3), StreamTimeIndex.resolve(batchClientFactory, STREAM, 2000L, 2500L));
+        verify(segmentIterator).close();
+
+        // no event lies between the timestamps: the highest timestamp of the second sample is before the start,
+        // and the watermark of the second sample is after the end
+        List<StreamTimeIndex.Entry> idle = Arrays.asList(
+                new StreamTimeIndex.Entry(1000L, 1500L, CUT1),
+                new StreamTimeIndex.Entry(3000L, 1500L, CUT2),
+                new StreamTimeIndex.Entry(4000L, 4500L, CUT3));
+        assertEquals(StreamWithBoundaries.of(STREAM, CUT2, CUT2),
+                StreamTimeIndex.resolve(batchClientFactory(iterator(idle)), STREAM, 2000L, 2500L));
+
+        BatchClientFactory unused = mock(BatchClientFactory.class);
+        assertEquals(StreamWithBoundaries.of(STREAM, StreamCut.UNBOUNDED, StreamCut.UNBOUNDED),
+                StreamTimeIndex.resolve(unused, STREAM, Long.MIN_VALUE, Long.MAX_VALUE));
+        verifyZeroInteractions(unused);
+    }
+
+    /**
+     * Tests that the samples are read in the order of their timestamps, and that the highest timestamp of a sample
+     * is raised to those of the samples before it.
+     */
+    @Test
+    public void testRead() {
+        List<StreamTimeIndex.Entry> entries = Arrays.asList(
+                new StreamTimeIndex.Entry(2000L, 1800L, CUT2),
+                new StreamTimeIndex.Entry(1000L, 2200L, CUT1),
+                new StreamTimeIndex.Entry(3000L, 3500L, CUT3));
+        assertEquals(Arrays.asList(
+                new StreamTimeIndex.Entry(1000L, 2200L, CUT1),
+                new StreamTimeIndex.Entry(2000L, 2200L, CUT2),
+                new StreamTimeIndex.Entry(3000L, 3500L, CUT3)),
+                StreamTimeIndex.read(batchClientFactory(iterator(entries)), STREAM));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SegmentIterator<StreamTimeIndex.Entry> iterator(List<StreamTimeIndex.Entry> entries) {
+        Iterator<StreamTimeIndex.Entry> iterator = entries.iterator();
+        SegmentIterator<StreamTimeIndex.Entry> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> iterator.next());
+        return segmentIterator;
+    }
+
+    // a batch client factory which reads the given samples from the index stream
+    private static BatchClientFactory batchClientFactory(SegmentIterator<StreamTimeIndex.Entry> segmentIterator) {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentRange range = mock(SegmentRange.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Collections.singletonList(range).iterator());
+        when(batchClientFactory.getSegments(StreamTimeIndex.indexStreamOf(STREAM), StreamCut.UNBOUNDED, StreamCut.UNBOUNDED))
+                .thenReturn(segments);
+        when(batchClientFactory.readSegment(eq(range), any(StreamTimeIndex.EntrySerializer.class))).thenReturn(segmentIterator);
+        return batchClientFactory;
+    }
+
+    private static StreamCut cut(long offset) {
+        return new StreamCutImpl(STREAM, Collections.singletonMap(new Segment(STREAM.getScope(), STREAM.getStreamName(), 0), offset));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.EventStreamClientFactory;
+import io.pravega.client.admin.StreamInfo;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.EventStreamWriter;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.StreamTimeIndex;
+import io.pravega.connectors.flink.utils.DirectExecutorService;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TimeIndexWriterTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final StreamCut TAIL1 = cut(10L);
+    private static final StreamCut TAIL2 = cut(20L);
+
+    /**
+     * Tests that the tail is fetched once both parallel instances have committed a checkpoint, and that the sample
+     * is appended once both have reported their highest timestamp since.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCheckpointComplete() throws Exception {
+        GlobalAggregateManager aggregateManager = new WatermarkAlignerTest.TestGlobalAggregateManager();
+        StreamManager streamManager0 = streamManager(TAIL2);
+        StreamManager streamManager1 = streamManager(TAIL1);
+        EventStreamWriter<StreamTimeIndex.Entry> indexWriter0 = indexWriter();
+        EventStreamWriter<StreamTimeIndex.Entry> indexWriter1 = indexWriter();
+
+        try (TimeIndexWriter writer0 = new TimeIndexWriter(STREAM, streamManager0, new DirectExecutorService(), aggregateManager, "index", 0, 2);
+             TimeIndexWriter writer1 = new TimeIndexWriter(STREAM, streamManager1, new DirectExecutorService(), aggregateManager, "index", 1, 2)) {
+            writer0.open(clientFactory(indexWriter0));
+            writer1.open(clientFactory(indexWriter1));
+            verify(streamManager0).createStream(eq(STREAM.getScope()), eq("stream" + StreamTimeIndex.INDEX_STREAM_SUFFIX), any());
+
+            // no watermark yet
+            writer0.record(100L);
+            writer0.snapshot(1L, Long.MIN_VALUE);
+            writer1.snapshot(1L, Long.MIN_VALUE);
+            writer0.checkpointComplete(1L);
+            writer1.checkpointComplete(1L);
+            verify(streamManager0, never()).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+            verify(streamManager1, never()).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+
+            // the tail is fetched by the instance which commits last
+            writer0.record(1500L);
+            writer1.record(1200L);
+            writer0.snapshot(2L, 1000L);
+            writer1.snapshot(2L, 900L);
+            writer0.checkpointComplete(2L);
+            verify(streamManager0, never()).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+            writer1.checkpointComplete(2L);
+            verify(streamManager1).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+
+            // the first instance only learns that the tail was fetched
+            writer0.record(2000L);
+            writer0.snapshot(3L, 1800L);
+            writer1.snapshot(3L, 1700L);
+            writer0.checkpointComplete(3L);
+            writer1.checkpointComplete(3L);
+            verify(indexWriter0, never()).writeEvent(anyObject());
+            verify(indexWriter1, never()).writeEvent(anyObject());
+
+            // the sample covers the events of the first instance written before it learnt that the tail was fetched,
+            // and the next tail is fetched once appended
+            writer0.snapshot(4L, 2500L);
+            writer0.checkpointComplete(4L);
+            verify(indexWriter0).writeEvent(new StreamTimeIndex.Entry(900L, 2000L, TAIL1));
+            verify(streamManager0).getStreamInfo(STREAM.getScope(), STREAM.getStreamName());
+            verify(indexWriter1, never()).writeEvent(anyObject());
+        }
+        verify(indexWriter0).close();
+        verify(streamManager0).close();
+    }
+
+    /**
+     * Tests that the tail is requested again from another instance when the instance which was requested to fetch it
+     * reports again without having fetched it, e.g. after a failover.
+     */
+    @Test
+    public void testLostFetch() {
+        TimeIndexWriter.SampleAggregateFunction function = new TimeIndexWriter.SampleAggregateFunction();
+        TimeIndexWriter.SampleState state = function.createAccumulator();
+        state = function.add(TimeIndexWriter.SampleUpdate.report(0, 2, 1L, 1000L, 1000L, -1L), state);
+        state = function.add(TimeIndexWriter.SampleUpdate.report(1, 2, 1L, 1000L, 1000L, -1L), state);
+        assertFetch(1L, function.getResult(state));
+
+        // the first instance reports before the second one fetched the tail
+        state = function.add(TimeIndexWriter.SampleUpdate.report(0, 2, 2L, 2000L, 2000L, -1L), state);
+        assertFetch(-1L, function.getResult(state));
+        state = function.add(TimeIndexWriter.SampleUpdate.report(1, 2, 2L, 2000L, 2000L, -1L), state);
+        assertFetch(2L, function.getResult(state));
+
+        // the tail of the lost request is ignored
+        state = function.add(TimeIndexWriter.SampleUpdate.tail(1, 1L, new byte[0], 1000L), state);
+        assertFetch(-1L, function.getResult(state));
+    }
+
+    /**
+     * Tests that the sample covers the highest timestamp of the instance which fetched the tail read after fetching it,
+     * rather than the one it reported before.
+     */
+    @Test
+    public void testTailMaxTimestamp() {
+        TimeIndexWriter.SampleAggregateFunction function = new TimeIndexWriter.SampleAggregateFunction();
+        TimeIndexWriter.SampleState state = function.createAccumulator();
+        state = function.add(TimeIndexWriter.SampleUpdate.report(0, 2, 1L, 1000L, 1000L, -1L), state);
+        state = function.add(TimeIndexWriter.SampleUpdate.report(1, 2, 1L, 1000L, 1000L, -1L), state);
+        assertFetch(1L, function.getResult(state));
+
+        // the second instance wrote more events while the tail was fetched
+        state = function.add(TimeIndexWriter.SampleUpdate.tail(1, 1L, new byte[0], 1500L), state);
+        assertFetch(-1L, function.getResult(state));
+
+        state = function.add(TimeIndexWriter.SampleUpdate.report(0, 2, 2L, 2000L, 1200L, 1L), state);
+        assertEquals(1500L, function.getResult(state).getSampleMaxTimestamp());
+    }
+
+    private static void assertFetch(long checkpointId, TimeIndexWriter.SampleOutcome outcome) {
+        assertEquals(checkpointId, outcome.getFetchCheckpointId());
+    }
+
+    private static StreamManager streamManager(StreamCut tail) {
+        StreamInfo streamInfo = mock(StreamInfo.class);
+        when(streamInfo.getTailStreamCut()).thenReturn(tail);
+        StreamManager streamManager = mock(StreamManager.class);
+        when(streamManager.getStreamInfo(STREAM.getScope(), STREAM.getStreamName())).thenReturn(streamInfo);
+        return streamManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EventStreamWriter<StreamTimeIndex.Entry> indexWriter() {
+        EventStreamWriter<StreamTimeIndex.Entry> indexWriter = mock(EventStreamWriter.class);
+        when(indexWriter.writeEvent(anyObject())).thenReturn(CompletableFuture.completedFuture(null));
+        return indexWriter;
+    }
+
+    private static EventStreamClientFactory clientFactory(EventStreamWriter<StreamTimeIndex.Entry> indexWriter) {
+        EventStreamClientFactory clientFactory = mock(EventStreamClientFactory.class);
+        when(clientFactory.<StreamTimeIndex.Entry>createEventWriter(anyObject(), anyObject(), anyObject())).thenReturn(indexWriter);
+        return clientFactory;
+    }
+
+    private static StreamCut cut(long offset) {
+        return new StreamCutImpl(STREAM, Collections.singletonMap(new Segment(STREAM.getScope(), STREAM.getStreamName(), 0), offset));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.runtime.taskexecutor.GlobalAggregateManager;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatermarkAlignerTest {
+
+    private static final String AGGREGATE_NAME = "alignment";
+
+    /**
+     * Tests that a reader pauses while it is ahead of the slowest reader by more than the maximum drift.
+     */
+    @Test
+    public void testPauseIfAhead() throws Exception {
+        TestGlobalAggregateManager aggregateManager = new TestGlobalAggregateManager();
+        SimpleCounter pausedTime = new SimpleCounter();
+        WatermarkAligner slow = new WatermarkAligner(aggregateManager, AGGREGATE_NAME, 0, 100L, 1L, new SimpleCounter());
+        WatermarkAligner fast = new WatermarkAligner(aggregateManager, AGGREGATE_NAME, 1, 100L, 1L, pausedTime);
+
+        // a reader which has not emitted any event yet holds back the other readers
+        assertFalse(slow.pauseIfAhead(Long.MIN_VALUE, false));
+        assertTrue(fast.pauseIfAhead(1000L, false));
+        assertTrue(pausedTime.getCount() > 0);
+
+        // the first event time of a reader is published right away
+        assertFalse(slow.pauseIfAhead(950L, false));
+        Thread.sleep(2L);
+        assertFalse(fast.pauseIfAhead(1000L, false));
+
+        // the fast reader is ahead of the slow reader
+        Thread.sleep(2L);
+        assertFalse(slow.pauseIfAhead(0L, false));
+        Thread.sleep(2L);
+        assertTrue(fast.pauseIfAhead(1000L, false));
+
+        // a stalled reader, which does not publish anymore, keeps holding back the other readers
+        Thread.sleep(20L);
+        assertTrue(fast.pauseIfAhead(1000L, false));
+
+        // an idle reader does not hold back the other readers
+        assertFalse(slow.pauseIfAhead(0L, true));
+        Thread.sleep(2L);
+        assertFalse(fast.pauseIfAhead(1000L, false));
+
+        // nor does a closed reader
+        assertFalse(slow.pauseIfAhead(0L, false));
+        slow.close();
+        Thread.sleep(2L);
+        assertFalse(fast.pauseIfAhead(1000L, false));
+    }
+
+    /**
+     * Tests the aggregate function of the global event time.
+     */
+    @Test
+    public void testMinEventTimeAggregateFunction() {
+        WatermarkAligner.MinEventTimeAggregateFunction function = new WatermarkAligner.MinEventTimeAggregateFunction();
+        HashMap<Integer, Long> accumulator = function.createAccumulator();
+        assertEquals(Long.MAX_VALUE, (long) function.getResult(accumulator));
+
+        function.add(new WatermarkAligner.SubtaskEventTime(0, 10L), accumulator);
+        function.add(new WatermarkAligner.SubtaskEventTime(1, 5L), accumulator);
+        assertEquals(5L, (long) function.getResult(accumulator));
+
+        function.add(new WatermarkAligner.SubtaskEventTime(1, 20L), accumulator);
+        assertEquals(10L, (long) function.getResult(accumulator));
+
+        // a reader which has not emitted any event yet holds back the others
+        function.add(new WatermarkAligner.SubtaskEventTime(2, Long.MIN_VALUE), accumulator);
+        assertEquals(Long.MIN_VALUE, (long) function.getResult(accumulator));
+
+        // the merge keeps the event time of every reader
+        HashMap<Integer, Long> other = function.createAccumulator();
+        function.add(new WatermarkAligner.SubtaskEventTime(3, 1L), other);
+        assertEquals(Long.MIN_VALUE, (long) function.getResult(function.merge(other, accumulator)));
+        assertEquals(4, other.size());
+    }
+
+    /**
+     * A global aggregate manager which keeps the aggregates in memory.
+     */
+    static class TestGlobalAggregateManager implements GlobalAggregateManager {
+
+        private final Map<String, Object> accumulators = new HashMap<>();
+
+        // the values added to every aggregate when it is created, e.g. by the other parallel instances
+        private final List<Object> initialAggregands;
+
+        TestGlobalAggregateManager(Object... initialAggregands) {
+            this.initialAggregands = Arrays.asList(initialAggregands);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <IN, ACC, OUT> OUT updateGlobalAggregate(String aggregateName, Object aggregand,
+                                                        AggregateFunction<IN, ACC, OUT> aggregateFunction) {
+            ACC accumulator = (ACC) accumulators.computeIfAbsent(aggregateName, name -> {
+                ACC initial = aggregateFunction.createAccumulator();
+                for (Object initialAggregand : initialAggregands) {
+                    initial = aggregateFunction.add((IN) initialAggregand, initial);
+                }
+                return initial;
+            });
+            accumulator = aggregateFunction.add((IN) aggregand, accumulator);
+            accumulators.put(aggregateName, accumulator);
+            return aggregateFunction.getResult(accumulator);
+        }
+    }
+}
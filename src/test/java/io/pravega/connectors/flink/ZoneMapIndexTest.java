@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.BatchClientFactory;
+import io.pravega.client.batch.SegmentIterator;
+import io.pravega.client.batch.SegmentRange;
+import io.pravega.client.batch.StreamSegmentsIterator;
+import io.pravega.client.batch.impl.SegmentRangeImpl;
+import io.pravega.client.segment.impl.Segment;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.client.stream.impl.StreamCutImpl;
+import io.pravega.connectors.flink.util.ZoneMapIndex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ZoneMapIndexTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final Segment SEGMENT0 = new Segment(STREAM.getScope(), STREAM.getStreamName(), 0);
+    private static final Segment SEGMENT1 = new Segment(STREAM.getScope(), STREAM.getStreamName(), 1);
+
+    // segment 0 holds values 0..9 in [0, 100), and values 10..19 in [100, 200)
+    private static final List<ZoneMapIndex.Entry> ENTRIES = Arrays.asList(
+            entry(cut(0L), cut(100L), 0L, 9L),
+            entry(cut(100L), cut(200L), 10L, 19L));
+
+    /**
+     * Tests that a segment range is skipped only if it is fully covered by entries which cannot match the filter.
+     */
+    @Test
+    public void testMayMatch() {
+        ZoneMapFilter filter = ZoneMapFilter.of("ts", 12L, 15L);
+        assertFalse(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 0L, 100L), filter::test));
+        assertTrue(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 100L, 200L), filter::test));
+        assertTrue(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 0L, 200L), filter::test));
+
+        // the events after the last entry are not covered
+        assertTrue(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 50L, 250L), ZoneMapFilter.of("ts", 100L, 200L)::test));
+        assertFalse(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 50L, 200L), ZoneMapFilter.of("ts", 100L, 200L)::test));
+
+        // the fields which are not summarized match
+        assertTrue(ZoneMapIndex.mayMatch(ENTRIES, range(SEGMENT0, 0L, 100L), ZoneMapFilter.of("key", 100L, 200L)::test));
+        assertTrue(ZoneMapIndex.mayMatch(Collections.emptyList(), range(SEGMENT0, 0L, 100L), filter::test));
+    }
+
+    /**
+     * Tests that the events of a writer with two parallel instances are only covered where both instances have
+     * entries, since the stream cuts of an entry also enclose the events of the other instance.
+     */
+    @Test
+    public void testMayMatchWithParallelWriters() {
+        ZoneMapFilter filter = ZoneMapFilter.of("ts", 12L, 15L);
+        SegmentRange segmentRange = range(SEGMENT0, 0L, 100L);
+        ZoneMapIndex.Entry first = entry(0, 2, cut(0L), cut(100L), 0L, 9L);
+
+        // the second instance failed before appending its entry
+        assertTrue(ZoneMapIndex.mayMatch(Collections.singletonList(first), segmentRange, filter::test));
+
+        // the second instance has an entry for a part of the segment range only
+        ZoneMapIndex.Entry second1 = entry(1, 2, cut(0L), cut(50L), 0L, 9L);
+        assertTrue(ZoneMapIndex.mayMatch(Arrays.asList(first, second1), segmentRange, filter::test));
+
+        ZoneMapIndex.Entry second2 = entry(1, 2, cut(50L), cut(100L), 20L, 29L);
+        assertFalse(ZoneMapIndex.mayMatch(Arrays.asList(first, second1, second2), segmentRange, filter::test));
+        assertTrue(ZoneMapIndex.mayMatch(Arrays.asList(first, second1, second2), segmentRange, ZoneMapFilter.of("ts", 25L, 25L)::test));
+
+        // the entries of another writer do not complete the coverage
+        ZoneMapIndex.Entry other = new ZoneMapIndex.Entry("other", 1, 2, cut(50L), cut(100L),
+                Collections.singletonMap("ts", new ZoneMapIndex.Range(0L, 9L)));
+        assertTrue(ZoneMapIndex.mayMatch(Arrays.asList(first, second1, other), segmentRange, filter::test));
+    }
+
+    /**
+     * Tests that the entries of two writers cover a segment range only if they enclose disjoint offsets, since the
+     * entries of a writer do not summarize the events written meanwhile by the other one.
+     */
+    @Test
+    public void testMayMatchWithConcurrentWriters() {
+        ZoneMapFilter filter = ZoneMapFilter.of("ts", 12L, 15L);
+        SegmentRange segmentRange = range(SEGMENT0, 0L, 100L);
+        Map<String, ZoneMapIndex.Range> ranges = Collections.singletonMap("ts", new ZoneMapIndex.Range(0L, 9L));
+
+        // one writer after the other
+        ZoneMapIndex.Entry first = new ZoneMapIndex.Entry("first", 0, 1, cut(0L), cut(50L), ranges);
+        ZoneMapIndex.Entry second = new ZoneMapIndex.Entry("second", 0, 1, cut(50L), cut(100L), ranges);
+        assertFalse(ZoneMapIndex.mayMatch(Arrays.asList(first, second), segmentRange, filter::test));
+
+        // both writers at once
+        ZoneMapIndex.Entry concurrent = new ZoneMapIndex.Entry("second", 0, 1, cut(0L), cut(100L), ranges);
+        ZoneMapIndex.Entry whole = new ZoneMapIndex.Entry("first", 0, 1, cut(0L), cut(100L), ranges);
+        assertTrue(ZoneMapIndex.mayMatch(Arrays.asList(whole, concurrent), segmentRange, filter::test));
+    }
+
+    /**
+     * Tests that a segment missing from the first stream cut of an entry is covered only if it was created after it.
+     */
+    @Test
+    public void testOffsetsOfScaledSegments() {
+        ZoneMapIndex.Entry entry = entry(cut(100L), StreamCut.UNBOUNDED, 0L, 0L);
+        assertFalse(ZoneMapIndex.mayMatch(Collections.singletonList(entry), range(SEGMENT1, 0L, 500L), ZoneMapFilter.of("ts", 1L, 1L)::test));
+
+        ZoneMapIndex.Entry sealed = entry(
+                new StreamCutImpl(STREAM, Collections.singletonMap(SEGMENT1, 0L)), StreamCut.UNBOUNDED, 0L, 0L);
+        assertTrue(ZoneMapIndex.mayMatch(Collections.singletonList(sealed), range(SEGMENT0, 0L, 500L), ZoneMapFilter.of("ts", 1L, 1L)::test));
+    }
+
+    /**
+     * Tests that the entries survive their serialization.
+     */
+    @Test
+    public void testSerializer() {
+        ZoneMapIndex.EntrySerializer serializer = new ZoneMapIndex.EntrySerializer();
+        for (ZoneMapIndex.Entry entry : ENTRIES) {
+            assertEquals(entry, serializer.deserialize(serializer.serialize(entry)));
+        }
+        ZoneMapIndex.Entry unbounded = entry(StreamCut.UNBOUNDED, cut(100L), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(unbounded, serializer.deserialize(serializer.serialize(unbounded)));
+    }
+
+    /**
+     * Tests the intersection of the ranges of a filter.
+     */
+    @Test
+    public void testFilter() {
+        ZoneMapFilter filter = ZoneMapFilter.of("ts", 0L, 100L).and("ts", 50L, 200L).and("key", 1L, 1L);
+        assertEquals(ZoneMapFilter.of("ts", 50L, 100L).and("key", 1L, 1L), filter);
+        assertTrue(filter.test(Collections.singletonMap("ts", new ZoneMapIndex.Range(100L, 150L))));
+        assertFalse(filter.test(Collections.singletonMap("ts", new ZoneMapIndex.Range(101L, 150L))));
+        assertTrue(ZoneMapFilter.all().test(Collections.singletonMap("ts", new ZoneMapIndex.Range(0L, 0L))));
+    }
+
+    /**
+     * Tests that the splits which cannot match are removed and the others renumbered.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPruneSplits() {
+        BatchClientFactory batchClientFactory = mock(BatchClientFactory.class);
+        SegmentRange indexRange = mock(SegmentRange.class);
+        StreamSegmentsIterator segments = mock(StreamSegmentsIterator.class);
+        when(segments.getIterator()).thenReturn(Collections.singletonList(indexRange).iterator());
+        when(batchClientFactory.getSegments(ZoneMapIndex.indexStreamOf(STREAM), StreamCut.UNBOUNDED, StreamCut.UNBOUNDED)).thenReturn(segments);
+        Iterator<ZoneMapIndex.Entry> entries = ENTRIES.iterator();
+        SegmentIterator<ZoneMapIndex.Entry> segmentIterator = mock(SegmentIterator.class);
+        when(segmentIterator.hasNext()).thenAnswer(i -> entries.hasNext());
+        when(segmentIterator.next()).thenAnswer(i -> entries.next());
+        when(batchClientFactory.readSegment(eq(indexRange), any(ZoneMapIndex.EntrySerializer.class))).thenReturn(segmentIterator);
+
+        List<PravegaInputSplit> splits = Arrays.asList(
+                new PravegaInputSplit(0, range(SEGMENT0, 0L, 100L)),
+                new PravegaInputSplit(1, range(SEGMENT0, 100L, 200L)));
+        List<PravegaInputSplit> pruned = SegmentRangeReader.pruneSplits(batchClientFactory, splits, ZoneMapFilter.of("ts", 15L, 15L));
+        assertEquals(Collections.singletonList(new PravegaInputSplit(0, range(SEGMENT0, 100L, 200L))), pruned);
+    }
+
+    private static ZoneMapIndex.Entry entry(StreamCut from, StreamCut to, long min, long max) {
+        return entry(0, 1, from, to, min, max);
+    }
+
+    private static ZoneMapIndex.Entry entry(int writerIndex, int numWriters, StreamCut from, StreamCut to, long min, long max) {
+        Map<String, ZoneMapIndex.Range> ranges = new HashMap<>();
+        ranges.put("ts", new ZoneMapIndex.Range(min, max));
+        return new ZoneMapIndex.Entry("writer", writerIndex, numWriters, from, to, ranges);
+    }
+
+    private static SegmentRange range(Segment segment, long startOffset, long endOffset) {
+        return SegmentRangeImpl.builder().segment(segment).startOffset(startOffset).endOffset(endOffset).build();
+    }
+
+    private static StreamCut cut(long offset) {
+        return new StreamCutImpl(STREAM, Collections.singletonMap(SEGMENT0, offset));
+    }
+}
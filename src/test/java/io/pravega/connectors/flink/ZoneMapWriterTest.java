@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2017 Dell Inc., or its subsidiaries. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.pravega.connectors.flink;
+
+import io.pravega.client.EventStreamClientFactory;
+import io.pravega.client.admin.StreamInfo;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.EventStreamWriter;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.util.ZoneMapIndex;
+import io.pravega.connectors.flink.utils.DirectExecutorService;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZoneMapWriterTest {
+
+    private static final Stream STREAM = Stream.of("scope", "stream");
+    private static final String WRITER_ID = "writer";
+
+    /**
+     * Tests that an entry covering the events written since the previous checkpoint is appended at each checkpoint,
+     * even without events.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshot() throws Exception {
+        StreamCut tail0 = mock(StreamCut.class);
+        StreamCut tail1 = mock(StreamCut.class);
+        StreamCut tail2 = mock(StreamCut.class);
+        StreamCut tail3 = mock(StreamCut.class);
+        StreamManager streamManager = mockStreamManager(tail0, tail1, tail2, tail3);
+        EventStreamWriter<ZoneMapIndex.Entry> indexWriter = mock(EventStreamWriter.class);
+        when(indexWriter.writeEvent(anyObject())).thenReturn(CompletableFuture.completedFuture(null));
+
+        Map<String, ZoneMapFieldExtractor<Integer>> extractors = new LinkedHashMap<>();
+        extractors.put("value", i -> i);
+        extractors.put("negated", i -> -i);
+        try (ZoneMapWriter<Integer> writer = new ZoneMapWriter<>(STREAM, streamManager, new DirectExecutorService(),
+                WRITER_ID, 1, 2, extractors)) {
+            writer.open(mockClientFactory(indexWriter));
+            verify(streamManager).createStream(eq(STREAM.getScope()), eq("stream" + ZoneMapIndex.INDEX_STREAM_SUFFIX), any());
+
+            // nothing written
+            writer.snapshot();
+            Map<String, ZoneMapIndex.Range> ranges = new LinkedHashMap<>();
+            ranges.put("value", new ZoneMapIndex.Range(Long.MAX_VALUE, Long.MIN_VALUE));
+            ranges.put("negated", new ZoneMapIndex.Range(Long.MAX_VALUE, Long.MIN_VALUE));
+            verify(indexWriter).writeEvent(new ZoneMapIndex.Entry(WRITER_ID, 1, 2, tail0, tail1, ranges));
+
+            writer.add(5);
+            writer.add(2);
+            writer.add(7);
+            writer.snapshot();
+            ranges.put("value", new ZoneMapIndex.Range(2L, 7L));
+            ranges.put("negated", new ZoneMapIndex.Range(-7L, -2L));
+            verify(indexWriter).writeEvent(new ZoneMapIndex.Entry(WRITER_ID, 1, 2, tail1, tail2, ranges));
+
+            writer.add(10);
+            writer.snapshot();
+            ranges.put("value", new ZoneMapIndex.Range(10L, 10L));
+            ranges.put("negated", new ZoneMapIndex.Range(-10L, -10L));
+            verify(indexWriter).writeEvent(new ZoneMapIndex.Entry(WRITER_ID, 1, 2, tail2, tail3, ranges));
+        }
+        verify(indexWriter).close();
+        verify(streamManager).close();
+    }
+
+    /**
+     * Tests that an entry which cannot be appended fails the next checkpoint.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAppendFailure() throws Exception {
+        StreamCut tail = mock(StreamCut.class);
+        StreamManager streamManager = mockStreamManager(tail);
+        EventStreamWriter<ZoneMapIndex.Entry> indexWriter = mock(EventStreamWriter.class);
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("test"));
+        when(indexWriter.writeEvent(anyObject())).thenReturn(failed);
+
+        Map<String, ZoneMapFieldExtractor<Integer>> extractors = Collections.singletonMap("value", i -> i);
+        try (ZoneMapWriter<Integer> writer = new ZoneMapWriter<>(STREAM, streamManager, new DirectExecutorService(),
+                WRITER_ID, 0, 1, extractors)) {
+            writer.open(mockClientFactory(indexWriter));
+            writer.add(1);
+            writer.snapshot();
+            try {
+                writer.snapshot();
+                fail("expected an IOException");
+            } catch (IOException e) {
+                assertEquals("Write failure", e.getMessage());
+            }
+        }
+    }
+
+    private static StreamManager mockStreamManager(StreamCut tail, StreamCut... tails) {
+        StreamInfo streamInfo = mock(StreamInfo.class);
+        when(streamInfo.getTailStreamCut()).thenReturn(tail, tails);
+        StreamManager streamManager = mock(StreamManager.class);
+        when(streamManager.getStreamInfo(STREAM.getScope(), STREAM.getStreamName())).thenReturn(streamInfo);
+        return streamManager;
+    }
+
+    private static EventStreamClientFactory mockClientFactory(EventStreamWriter<ZoneMapIndex.Entry> indexWriter) {
+        EventStreamClientFactory clientFactory = mock(EventStreamClientFactory.class);
+        when(clientFactory.<ZoneMapIndex.Entry>createEventWriter(anyObject(), anyObject(), anyObject())).thenReturn(indexWriter);
+        return clientFactory;
+    }
+}